@@ -8,10 +8,18 @@ import wiki.creeper.creeperGiftBox.api.GiftBoxAPIImpl;
 import wiki.creeper.creeperGiftBox.command.GiftCommand;
 import wiki.creeper.creeperGiftBox.config.ConfigManager;
 import wiki.creeper.creeperGiftBox.database.DatabaseManager;
+import wiki.creeper.creeperGiftBox.event.GiftEventDispatcher;
 import wiki.creeper.creeperGiftBox.gui.GiftBoxGUI;
 import wiki.creeper.creeperGiftBox.listener.GUIListener;
 import wiki.creeper.creeperGiftBox.listener.PlayerListener;
 import wiki.creeper.creeperGiftBox.task.ExpirationTask;
+import wiki.creeper.creeperGiftBox.task.IdempotencyPurgeTask;
+import wiki.creeper.creeperGiftBox.task.CompactionTask;
+import wiki.creeper.creeperGiftBox.task.LogMaintenanceTask;
+import wiki.creeper.creeperGiftBox.task.OnlineExpiryTracker;
+import wiki.creeper.creeperGiftBox.task.ReplicaLagTask;
+import wiki.creeper.creeperGiftBox.util.PlayerNameIndex;
+import wiki.creeper.creeperGiftBox.util.SchedulerUtil;
 
 /**
  * CreeperGiftBox - A comprehensive gift box system for Minecraft servers
@@ -28,7 +36,10 @@ public final class CreeperGiftBox extends JavaPlugin {
     private ConfigManager configManager;
     private DatabaseManager databaseManager;
     private GiftBoxGUI giftBoxGUI;
+    private OnlineExpiryTracker onlineExpiryTracker;
+    private PlayerNameIndex playerNameIndex;
     private GiftBoxAPI giftBoxAPI;
+    private GiftEventDispatcher eventDispatcher;
 
     /**
      * Called when the plugin is enabled.
@@ -38,6 +49,8 @@ public final class CreeperGiftBox extends JavaPlugin {
     @Override
     public void onEnable() {
         configManager = new ConfigManager(this);
+        eventDispatcher = new GiftEventDispatcher(this);
+        SchedulerUtil.initialize(this, configManager.getMainThreadTickBudget());
 
         if (!ensureDatabaseDriver()) {
             getLogger().severe("MySQL JDBC driver not found. Dependent plugins may fail to connect to the database.");
@@ -53,33 +66,60 @@ public final class CreeperGiftBox extends JavaPlugin {
 
         giftBoxAPI = new GiftBoxAPIImpl(this, databaseManager);
         Bukkit.getServicesManager().register(GiftBoxAPI.class, giftBoxAPI, this, ServicePriority.Normal);
+
+        playerNameIndex = new PlayerNameIndex(this);
+        Bukkit.getOnlinePlayers().forEach(player -> playerNameIndex.playerJoined(player.getUniqueId(), player.getName()));
+        SchedulerUtil.asyncExecutor(this).execute(playerNameIndex::loadKnownPlayers);
+
+        // Registered before the database is ready; their calls wait in a bounded startup queue
+        giftBoxGUI = new GiftBoxGUI(this);
+        onlineExpiryTracker = new OnlineExpiryTracker(this, databaseManager);
+
+        GiftCommand giftCommand = new GiftCommand(this);
+        getCommand("우편함").setExecutor(giftCommand);
+        getCommand("우편함").setTabCompleter(giftCommand);
+
+        getServer().getPluginManager().registerEvents(new GUIListener(this), this);
+        getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
+        // Players already online after a reload
+        Bukkit.getOnlinePlayers().forEach(onlineExpiryTracker::load);
         getLogger().info("GiftBox API registered. Awaiting database initialization...");
+
         
         databaseManager.initialize().thenAccept(success -> {
             if (!success) {
                 getLogger().severe("Failed to initialize database. Plugin will be disabled.");
-                getServer().getScheduler().runTask(this, () -> getServer().getPluginManager().disablePlugin(this));
+                SchedulerUtil.runSync(this, () -> getServer().getPluginManager().disablePlugin(this));
                 return;
             }
             
-            getServer().getScheduler().runTask(this, () -> {
-                giftBoxGUI = new GiftBoxGUI(this);
-
-                GiftCommand giftCommand = new GiftCommand(this);
-                getCommand("우편함").setExecutor(giftCommand);
-                getCommand("우편함").setTabCompleter(giftCommand);
-
-                getServer().getPluginManager().registerEvents(new GUIListener(this), this);
-                getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
-
-                long interval = configManager.getExpirationCheckInterval() * 20;
-                new ExpirationTask(this, databaseManager).runTaskTimerAsynchronously(this, 20L * 60, interval);
+            SchedulerUtil.runSync(this, () -> {
+                // The sweeper task doubles as the lease heartbeat, three beats per lease period
+                long heartbeat = Math.max(configManager.getSweeperLeaseSeconds() * 20 / 3, 20L);
+                SchedulerUtil.runAsyncTimer(this, new ExpirationTask(this, databaseManager), 20L, heartbeat);
+                SchedulerUtil.runAsyncTimer(this, onlineExpiryTracker, 20L, 20L);
+                SchedulerUtil.runAsyncTimer(this, new IdempotencyPurgeTask(this, databaseManager), 20L * 60 * 5, 20L * 60 * 60);
+
+                if (databaseManager.hasReplica()) {
+                    long lagInterval = configManager.getReplicaLagCheckInterval() * 20;
+                    SchedulerUtil.runAsyncTimer(this, new ReplicaLagTask(this, databaseManager), 1L, lagInterval);
+                }
+
+                if (configManager.isLogRetentionEnabled()) {
+                    long maintenanceInterval = configManager.getLogMaintenanceInterval() * 20 * 60 * 60;
+                    SchedulerUtil.runAsyncTimer(this, new LogMaintenanceTask(this, databaseManager), 20L * 60 * 5, maintenanceInterval);
+                }
+
+                if (configManager.isCompactionEnabled()) {
+                    long compactionInterval = configManager.getCompactionInterval() * 20;
+                    SchedulerUtil.runAsyncTimer(this, new CompactionTask(this, databaseManager), compactionInterval, compactionInterval);
+                }
 
                 getLogger().info("CreeperGiftBox has been enabled successfully!");
             });
         }).exceptionally(throwable -> {
             getLogger().severe("Unexpected error during plugin initialization: " + throwable.getMessage());
-            getServer().getScheduler().runTask(this, () -> getServer().getPluginManager().disablePlugin(this));
+            SchedulerUtil.runSync(this, () -> getServer().getPluginManager().disablePlugin(this));
             return null;
         });
     }
@@ -98,6 +138,7 @@ public final class CreeperGiftBox extends JavaPlugin {
         if (databaseManager != null) {
             databaseManager.close();
         }
+        SchedulerUtil.shutdown();
         getLogger().info("CreeperGiftBox has been disabled.");
     }
 
@@ -128,6 +169,29 @@ public final class CreeperGiftBox extends JavaPlugin {
         return giftBoxGUI;
     }
 
+    /**
+     * @return the tracker for online players' gift deadlines
+     */
+    public OnlineExpiryTracker getOnlineExpiryTracker() {
+        return onlineExpiryTracker;
+    }
+
+    /**
+     * @return the index of known player names used for name resolution and tab completion
+     */
+    public PlayerNameIndex getPlayerNameIndex() {
+        return playerNameIndex;
+    }
+
+    /**
+     * Gets the dispatcher that delivers gift events to the main thread.
+     * 
+     * @return The GiftEventDispatcher instance
+     */
+    public GiftEventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
     /**
      * 이 플러그인의 공용 API 인스턴스를 반환합니다.
      * @return GiftBoxAPI 인스턴스.
@@ -1,11 +1,20 @@
 package wiki.creeper.creeperGiftBox.api;
 
 import org.bukkit.inventory.ItemStack;
+import wiki.creeper.creeperGiftBox.database.BulkMutationJob;
+import wiki.creeper.creeperGiftBox.database.DistributionJob;
+import wiki.creeper.creeperGiftBox.database.LogExportFormat;
 import wiki.creeper.creeperGiftBox.model.Gift;
+import wiki.creeper.creeperGiftBox.model.GiftSearch;
+import wiki.creeper.creeperGiftBox.model.LogEntry;
+import wiki.creeper.creeperGiftBox.model.LogQuery;
 
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 /**
  * CreeperGiftBox Public API
@@ -28,10 +37,67 @@ public interface GiftBoxAPI {
      * @param expireSeconds 만료 시간 (초 단위). -1은 영구 보관을 의미하며, 0 이상의 값은 해당 초 후에 만료됩니다.
      * @return 선물 지급 작업의 완료를 나타내는 CompletableFuture. 실패 시 예외를 포함합니다.
      * @throws IllegalArgumentException 잘못된 매개변수가 제공된 경우
-     * @throws CompletionException 데이터베이스 작업 중 오류가 발생한 경우
+     * @throws CompletionException 데이터베이스 작업 중 오류가 발생한 경우, 또는 우편함이 가득 차고 초과 정책이 REJECT인 경우
+     *         ({@link wiki.creeper.creeperGiftBox.database.InboxFullException} 포함)
      */
     CompletableFuture<Void> sendGift(UUID targetPlayerUUID, ItemStack itemStack, String senderName, long expireSeconds);
 
+    /**
+     * 캠페인(일괄 지급) ID를 붙여 선물을 보냅니다.
+     * 같은 캠페인으로 보낸 선물은 나중에 {@link #revokeCampaign}, {@link #extendCampaign}, {@link #reassignCampaign}으로 한꺼번에 변경할 수 있습니다.
+     *
+     * @param targetPlayerUUID 선물을 받을 플레이어의 UUID. (null 불가)
+     * @param itemStack 보낼 아이템 (ItemStack). (null 불가)
+     * @param senderName 발신인의 이름. (null 불가, 빈 문자열 불가)
+     * @param expireSeconds 만료 시간 (초 단위). -1은 영구 보관을 의미합니다.
+     * @param campaignId 캠페인 ID. 최대 64자이며 null이면 캠페인 없이 보냅니다.
+     * @return 선물 지급 작업의 완료를 나타내는 CompletableFuture. 실패 시 예외를 포함합니다.
+     */
+    CompletableFuture<Void> sendGift(UUID targetPlayerUUID, ItemStack itemStack, String senderName, long expireSeconds, String campaignId);
+
+    /**
+     * 여러 아이템을 하나의 꾸러미 선물로 보냅니다. 꾸러미는 우편함의 한 칸에 내용물 미리보기와 함께 표시되며,
+     * 모든 아이템이 인벤토리에 들어갈 때만 한꺼번에 수령됩니다. 아이템이 하나뿐이면 일반 선물로 보냅니다.
+     *
+     * @param targetPlayerUUID 선물을 받을 플레이어의 UUID. (null 불가)
+     * @param items 보낼 아이템 목록. 순서가 유지되며 1~36개까지 가능합니다. AIR 타입이나 0개 이하의 아이템은 불가합니다. (null 불가)
+     * @param senderName 발신인의 이름. (null 불가, 빈 문자열 불가)
+     * @param expireSeconds 만료 시간 (초 단위). -1은 영구 보관을 의미합니다.
+     * @param campaignId 캠페인 ID. 최대 64자이며 null이면 캠페인 없이 보냅니다.
+     * @return 선물 지급 작업의 완료를 나타내는 CompletableFuture. 실패 시 예외를 포함합니다.
+     */
+    CompletableFuture<Void> sendGift(UUID targetPlayerUUID, List<ItemStack> items, String senderName, long expireSeconds, String campaignId);
+
+    /**
+     * 멱등 키를 붙여 선물을 보냅니다. 같은 키로 이미 선물을 보냈다면 아무것도 저장하지 않고 정상 완료되므로,
+     * 시간 초과 등으로 결과를 알 수 없을 때 같은 키로 안전하게 다시 보낼 수 있습니다.
+     * 키는 config.yml의 {@code idempotency.key-ttl-hours} 동안 기억되며, 우편함이 가득 차 거절된 전송은 키를 남기지 않습니다.
+     *
+     * @param targetPlayerUUID 선물을 받을 플레이어의 UUID. (null 불가)
+     * @param itemStack 보낼 아이템 (ItemStack). (null 불가)
+     * @param senderName 발신인의 이름. (null 불가, 빈 문자열 불가)
+     * @param expireSeconds 만료 시간 (초 단위). -1은 영구 보관을 의미합니다.
+     * @param campaignId 캠페인 ID. 최대 64자이며 null이면 캠페인 없이 보냅니다.
+     * @param idempotencyKey 전송을 식별하는 멱등 키. 최대 128자이며 모든 플레이어에 걸쳐 고유해야 합니다. null이면 키 없이 보냅니다.
+     * @return 선물 지급 작업의 완료를 나타내는 CompletableFuture. 중복 전송도 정상 완료되며, 실패 시 예외를 포함합니다.
+     */
+    CompletableFuture<Void> sendGift(UUID targetPlayerUUID, ItemStack itemStack, String senderName, long expireSeconds,
+                                     String campaignId, String idempotencyKey);
+
+    /**
+     * 멱등 키를 붙여 여러 아이템을 하나의 꾸러미 선물로 보냅니다. 중복 전송의 처리는 단일 아이템 버전과 같습니다.
+     *
+     * @param targetPlayerUUID 선물을 받을 플레이어의 UUID. (null 불가)
+     * @param items 보낼 아이템 목록. 순서가 유지되며 1~36개까지 가능합니다. AIR 타입이나 0개 이하의 아이템은 불가합니다. (null 불가)
+     * @param senderName 발신인의 이름. (null 불가, 빈 문자열 불가)
+     * @param expireSeconds 만료 시간 (초 단위). -1은 영구 보관을 의미합니다.
+     * @param campaignId 캠페인 ID. 최대 64자이며 null이면 캠페인 없이 보냅니다.
+     * @param idempotencyKey 전송을 식별하는 멱등 키. 최대 128자이며 모든 플레이어에 걸쳐 고유해야 합니다. null이면 키 없이 보냅니다.
+     * @return 선물 지급 작업의 완료를 나타내는 CompletableFuture. 중복 전송도 정상 완료되며, 실패 시 예외를 포함합니다.
+     */
+    CompletableFuture<Void> sendGift(UUID targetPlayerUUID, List<ItemStack> items, String senderName, long expireSeconds,
+                                     String campaignId, String idempotencyKey);
+
     /**
      * 특정 플레이어의 선물 목록을 조회합니다.
      * 이 메서드는 비동기적으로 작동하며, 조회된 선물 목록을 CompletableFuture로 반환합니다.
@@ -44,6 +110,29 @@ public interface GiftBoxAPI {
      */
     CompletableFuture<List<Gift>> getPlayerGifts(UUID playerUUID, int limit);
 
+    /**
+     * 특정 플레이어의 만료되지 않은 선물 전체를 오래된 순서로 하나씩 전달하는 Publisher를 반환합니다.
+     * 구독자가 {@code request(n)}으로 요청한 만큼만 데이터베이스 커서에서 읽으므로, 선물 수와 관계없이 메모리 사용량이 일정합니다.
+     * 아이템은 처음 사용할 때 디코딩됩니다. 구독마다 쿼리를 새로 실행하며, 구독 중에는 연결 하나를 사용하므로
+     * 다 읽었거나 필요 없어지면 {@code cancel()}을 호출하세요. 설정된 시간 동안 요청이 없으면 TimeoutException으로 종료됩니다.
+     * 동시에 열 수 있는 스트림 수는 제한되며, 제한을 넘거나 데이터베이스를 사용할 수 없거나 선물 가져오기가 진행 중이면
+     * {@link wiki.creeper.creeperGiftBox.database.DatabaseUnavailableException}으로 종료됩니다.
+     * 신호는 데이터베이스 스레드에서 호출됩니다.
+     *
+     * @param playerUUID 선물을 조회할 플레이어의 UUID. (null 불가)
+     * @return 선물을 하나씩 전달하는 Publisher
+     */
+    Flow.Publisher<Gift> streamPlayerGifts(UUID playerUUID);
+
+    /**
+     * 모든 플레이어의 우편함에서 검색 조건에 맞는 선물 전체를 선물 ID 순서로 하나씩 전달하는 Publisher를 반환합니다.
+     * 빈 검색 조건은 저장된 모든 선물을 전달합니다. 요청 처리와 연결 사용은 {@link #streamPlayerGifts}와 같습니다.
+     *
+     * @param search 검색 조건. (null 불가)
+     * @return 선물을 하나씩 전달하는 Publisher
+     */
+    Flow.Publisher<Gift> streamGifts(GiftSearch search);
+
     /**
      * 특정 플레이어의 만료되지 않은 선물 개수를 조회합니다.
      * 이 메서드는 비동기적으로 작동하며, 선물 개수를 CompletableFuture로 반환합니다.
@@ -54,6 +143,84 @@ public interface GiftBoxAPI {
      */
     CompletableFuture<Integer> getPlayerGiftCount(UUID playerUUID);
 
+    /**
+     * 모든 플레이어의 우편함에서 발신인과 아이템 종류로 선물을 검색합니다.
+     * 결과는 선물 ID 순서이며, 다음 페이지는 이전 페이지의 마지막 선물 ID를 {@code afterId}로 넘겨 조회합니다.
+     *
+     * @param search 검색 조건. (null 불가)
+     * @param afterId 이전 페이지의 마지막 선물 ID. 첫 페이지는 null입니다.
+     * @param limit 조회할 최대 선물 개수. 1 이상 100 이하의 값이어야 합니다.
+     * @return 검색된 선물 목록을 포함하는 CompletableFuture. 실패 시 예외를 포함합니다.
+     * @throws IllegalArgumentException 잘못된 매개변수가 제공된 경우
+     */
+    CompletableFuture<List<Gift>> searchGifts(GiftSearch search, String afterId, int limit);
+
+    /**
+     * 선물 기록(지급, 수령, 만료)을 조건에 맞게 최신순으로 조회합니다.
+     * 게임 내 페이지 보기처럼 적은 양의 결과를 위한 메서드이며, 대량 조회에는 {@link #exportGiftLog}를 사용하세요.
+     *
+     * @param query 조회 조건. (null 불가)
+     * @param offset 건너뛸 결과 수. 0 이상이어야 합니다.
+     * @param limit 조회할 최대 기록 수. 1 이상 100 이하의 값이어야 합니다.
+     * @return 기록 목록을 포함하는 CompletableFuture. 실패 시 예외를 포함합니다.
+     * @throws IllegalArgumentException 잘못된 매개변수가 제공된 경우
+     */
+    CompletableFuture<List<LogEntry>> queryGiftLog(LogQuery query, int offset, int limit);
+
+    /**
+     * 조건에 맞는 선물 기록 전체를 플러그인 데이터 폴더의 exports 폴더에 압축 파일로 내보냅니다.
+     * 결과는 커서로 스트리밍되어 파일에 바로 기록되므로 기록 수와 관계없이 메모리를 적게 사용합니다.
+     *
+     * @param query 내보낼 조건. (null 불가)
+     * @param format 출력 형식 (CSV 또는 JSONL). (null 불가)
+     * @return 작성된 파일 경로를 포함하는 CompletableFuture. 실패 시 예외를 포함합니다.
+     */
+    CompletableFuture<Path> exportGiftLog(LogQuery query, LogExportFormat format);
+
+    /**
+     * 캠페인의 아직 수령되지 않은 선물을 모두 회수합니다. 우편함이 가득 차 초과 보관함에 옮겨진 선물도 포함됩니다.
+     * 작업은 설정된 크기의 청크 단위로 백그라운드에서 진행되며, 반환된 작업으로 진행 상황 확인과 일시정지/재개가 가능합니다.
+     *
+     * @param campaignId 캠페인 ID. (null 불가)
+     * @return 시작된 작업
+     * @throws IllegalStateException 플러그인이 종료 중인 경우
+     */
+    BulkMutationJob revokeCampaign(String campaignId);
+
+    /**
+     * 캠페인 선물의 만료 시간을 연장합니다. 영구 보관 선물은 변경되지 않습니다.
+     *
+     * @param campaignId 캠페인 ID. (null 불가)
+     * @param extendSeconds 연장할 시간 (초 단위). 1 이상이어야 합니다.
+     * @return 시작된 작업
+     * @throws IllegalArgumentException extendSeconds가 1 미만인 경우
+     */
+    BulkMutationJob extendCampaign(String campaignId, long extendSeconds);
+
+    /**
+     * 캠페인의 선물을 다른 플레이어의 우편함으로 옮깁니다.
+     *
+     * @param campaignId 캠페인 ID. (null 불가)
+     * @param targetPlayerUUID 선물을 받을 플레이어의 UUID. (null 불가)
+     * @return 시작된 작업
+     */
+    BulkMutationJob reassignCampaign(String campaignId, UUID targetPlayerUUID);
+
+    /**
+     * 수신자 목록 전체에 같은 아이템을 보내는 배포 작업을 시작합니다.
+     * 수신자 목록과 진행 위치가 데이터베이스에 저장되므로 서버가 재시작되어도 마지막 체크포인트부터 이어서 진행되며,
+     * 초당 지급 수는 설정의 distribution.rows-per-second를 넘지 않습니다. 각 선물의 만료 시간은 실제 지급 시점부터 계산됩니다.
+     *
+     * @param recipients 선물을 받을 플레이어의 UUID 목록. 중복은 한 번만 지급됩니다. (null 불가, 빈 목록 불가)
+     * @param itemStack 보낼 아이템 (ItemStack). (null 불가)
+     * @param senderName 발신인의 이름. (null 불가, 빈 문자열 불가)
+     * @param expireSeconds 만료 시간 (초 단위). -1은 영구 보관을 의미합니다.
+     * @param campaignId 캠페인 ID. 최대 64자이며 null이면 캠페인 없이 보냅니다.
+     * @return 수신자 목록 저장이 끝나 작업이 시작되면 완료되는 CompletableFuture
+     */
+    CompletableFuture<DistributionJob> startDistribution(Collection<UUID> recipients, ItemStack itemStack, String senderName,
+                                                         long expireSeconds, String campaignId);
+
     /**
      * 데이터베이스 초기화가 완료되었는지 확인하기 위해 사용할 수 있는 Future를 반환합니다.
      * 초기화가 이미 완료되었다면 즉시 완료된 Future가 반환됩니다.
@@ -3,19 +3,36 @@ package wiki.creeper.creeperGiftBox.api;
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
 import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.database.BulkMutationJob;
 import wiki.creeper.creeperGiftBox.database.DatabaseManager;
+import wiki.creeper.creeperGiftBox.database.DistributionJob;
+import wiki.creeper.creeperGiftBox.database.IdempotencyKeys;
+import wiki.creeper.creeperGiftBox.database.InboxFullException;
+import wiki.creeper.creeperGiftBox.database.LogExportFormat;
 import wiki.creeper.creeperGiftBox.model.Gift;
+import wiki.creeper.creeperGiftBox.model.GiftSearch;
+import wiki.creeper.creeperGiftBox.model.LogEntry;
+import wiki.creeper.creeperGiftBox.model.LogQuery;
+import wiki.creeper.creeperGiftBox.task.OnlineExpiryTracker;
+import wiki.creeper.creeperGiftBox.util.ItemSerializer;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
 import java.util.Objects;
 import java.util.logging.Level;
 
 public class GiftBoxAPIImpl implements GiftBoxAPI {
 
+    // A bundle never holds more items than a player inventory can take
+    private static final int MAX_BUNDLE_SIZE = 36;
+
     private final CreeperGiftBox plugin;
     private final DatabaseManager databaseManager;
 
@@ -26,23 +43,67 @@ public class GiftBoxAPIImpl implements GiftBoxAPI {
 
     @Override
     public CompletableFuture<Void> sendGift(UUID targetPlayerUUID, ItemStack itemStack, String senderName, long expireSeconds) {
+        return sendGift(targetPlayerUUID, itemStack, senderName, expireSeconds, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendGift(UUID targetPlayerUUID, ItemStack itemStack, String senderName, long expireSeconds, String campaignId) {
+        Objects.requireNonNull(itemStack, "itemStack cannot be null");
+        return sendGift(targetPlayerUUID, List.of(itemStack), senderName, expireSeconds, campaignId, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendGift(UUID targetPlayerUUID, List<ItemStack> items, String senderName, long expireSeconds, String campaignId) {
+        return sendGift(targetPlayerUUID, items, senderName, expireSeconds, campaignId, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendGift(UUID targetPlayerUUID, ItemStack itemStack, String senderName, long expireSeconds,
+                                            String campaignId, String idempotencyKey) {
+        Objects.requireNonNull(itemStack, "itemStack cannot be null");
+        return sendGift(targetPlayerUUID, List.of(itemStack), senderName, expireSeconds, campaignId, idempotencyKey);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendGift(UUID targetPlayerUUID, List<ItemStack> items, String senderName, long expireSeconds,
+                                            String campaignId, String idempotencyKey) {
         // Validate parameters
         Objects.requireNonNull(targetPlayerUUID, "targetPlayerUUID cannot be null");
-        Objects.requireNonNull(itemStack, "itemStack cannot be null");
+        Objects.requireNonNull(items, "items cannot be null");
         Objects.requireNonNull(senderName, "senderName cannot be null");
-        
-        if (itemStack.getType() == Material.AIR || itemStack.getAmount() <= 0) {
+
+        if (items.isEmpty() || items.size() > MAX_BUNDLE_SIZE) {
             return CompletableFuture.failedFuture(
-                new IllegalArgumentException("Cannot send an empty or invalid item")
+                new IllegalArgumentException("A gift must contain between 1 and " + MAX_BUNDLE_SIZE + " items")
             );
         }
         
+        for (ItemStack itemStack : items) {
+            if (itemStack == null || itemStack.getType() == Material.AIR || itemStack.getAmount() <= 0) {
+                return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Cannot send an empty or invalid item")
+                );
+            }
+        }
+        
         if (senderName.trim().isEmpty()) {
             return CompletableFuture.failedFuture(
                 new IllegalArgumentException("Sender name cannot be empty")
             );
         }
         
+        if (campaignId != null && (campaignId.isEmpty() || campaignId.length() > 64)) {
+            return CompletableFuture.failedFuture(
+                new IllegalArgumentException("Campaign ID must be between 1 and 64 characters")
+            );
+        }
+
+        if (idempotencyKey != null && (idempotencyKey.isEmpty() || idempotencyKey.length() > IdempotencyKeys.MAX_KEY_LENGTH)) {
+            return CompletableFuture.failedFuture(
+                new IllegalArgumentException("Idempotency key must be between 1 and " + IdempotencyKeys.MAX_KEY_LENGTH + " characters")
+            );
+        }
+
         if (expireSeconds < -1) {
             return CompletableFuture.failedFuture(
                 new IllegalArgumentException("Expire seconds must be -1 (never expire) or greater")
@@ -69,15 +130,21 @@ public class GiftBoxAPIImpl implements GiftBoxAPI {
         Gift gift = new Gift(
                 UUID.randomUUID().toString(),
                 targetPlayerUUID,
-                itemStack.clone(), // Clone to prevent external modification
+                items.stream().map(ItemStack::clone).toList(), // Clone to prevent external modification
                 sanitizedSender,
                 currentTime,
-                expireTime
+                expireTime,
+                campaignId
         );
         
         return databaseManager.whenReady()
-            .thenCompose(ignored -> databaseManager.addGift(gift))
+            .thenCompose(ignored -> databaseManager.addGift(gift, idempotencyKey))
             .exceptionally(throwable -> {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                // A full gift box is an expected outcome, passed on without an error log
+                if (cause instanceof InboxFullException full) {
+                    throw full;
+                }
                 plugin.getLogger().log(Level.SEVERE,
                     "Failed to send gift to player " + targetPlayerUUID, throwable);
                 throw new CompletionException("Failed to send gift", throwable);
@@ -107,6 +174,18 @@ public class GiftBoxAPIImpl implements GiftBoxAPI {
             });
     }
 
+    @Override
+    public Flow.Publisher<Gift> streamPlayerGifts(UUID playerUUID) {
+        Objects.requireNonNull(playerUUID, "playerUUID cannot be null");
+        return databaseManager.streamGifts(playerUUID);
+    }
+
+    @Override
+    public Flow.Publisher<Gift> streamGifts(GiftSearch search) {
+        Objects.requireNonNull(search, "search cannot be null");
+        return databaseManager.streamGifts(search);
+    }
+
     @Override
     public CompletableFuture<Integer> getPlayerGiftCount(UUID playerUUID) {
         Objects.requireNonNull(playerUUID, "playerUUID cannot be null");
@@ -121,6 +200,114 @@ public class GiftBoxAPIImpl implements GiftBoxAPI {
             });
     }
 
+    @Override
+    public CompletableFuture<List<Gift>> searchGifts(GiftSearch search, String afterId, int limit) {
+        Objects.requireNonNull(search, "search cannot be null");
+
+        if (limit <= 0 || limit > 100) {
+            return CompletableFuture.failedFuture(
+                new IllegalArgumentException("Limit must be between 1 and 100")
+            );
+        }
+
+        return databaseManager.whenReady()
+            .thenCompose(ignored -> databaseManager.searchGifts(search, afterId, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<LogEntry>> queryGiftLog(LogQuery query, int offset, int limit) {
+        Objects.requireNonNull(query, "query cannot be null");
+
+        if (offset < 0 || limit <= 0 || limit > 100) {
+            return CompletableFuture.failedFuture(
+                new IllegalArgumentException("Offset must be 0 or greater and limit between 1 and 100")
+            );
+        }
+
+        return databaseManager.whenReady()
+            .thenCompose(ignored -> databaseManager.queryLog(query, offset, limit));
+    }
+
+    @Override
+    public CompletableFuture<Path> exportGiftLog(LogQuery query, LogExportFormat format) {
+        Objects.requireNonNull(query, "query cannot be null");
+        Objects.requireNonNull(format, "format cannot be null");
+
+        return databaseManager.whenReady()
+            .thenCompose(ignored -> databaseManager.exportLog(query, format));
+    }
+
+    @Override
+    public BulkMutationJob revokeCampaign(String campaignId) {
+        Objects.requireNonNull(campaignId, "campaignId cannot be null");
+        return trackDeadlineChanges(databaseManager.startBulkMutation(BulkMutationJob.Type.REVOKE, campaignId, 0, null));
+    }
+
+    @Override
+    public BulkMutationJob extendCampaign(String campaignId, long extendSeconds) {
+        Objects.requireNonNull(campaignId, "campaignId cannot be null");
+        if (extendSeconds <= 0) {
+            throw new IllegalArgumentException("Extend seconds must be greater than 0");
+        }
+        return trackDeadlineChanges(databaseManager.startBulkMutation(BulkMutationJob.Type.EXTEND, campaignId,
+                Math.multiplyExact(extendSeconds, 1000L), null));
+    }
+
+    @Override
+    public BulkMutationJob reassignCampaign(String campaignId, UUID targetPlayerUUID) {
+        Objects.requireNonNull(campaignId, "campaignId cannot be null");
+        Objects.requireNonNull(targetPlayerUUID, "targetPlayerUUID cannot be null");
+        return trackDeadlineChanges(databaseManager.startBulkMutation(BulkMutationJob.Type.REASSIGN, campaignId, 0, targetPlayerUUID));
+    }
+
+    @Override
+    public CompletableFuture<DistributionJob> startDistribution(Collection<UUID> recipients, ItemStack itemStack, String senderName,
+                                                                long expireSeconds, String campaignId) {
+        Objects.requireNonNull(recipients, "recipients cannot be null");
+        Objects.requireNonNull(itemStack, "itemStack cannot be null");
+        Objects.requireNonNull(senderName, "senderName cannot be null");
+
+        if (recipients.isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Recipients cannot be empty"));
+        }
+        if (itemStack.getType() == Material.AIR || itemStack.getAmount() <= 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Cannot send an empty or invalid item"));
+        }
+        if (senderName.trim().isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Sender name cannot be empty"));
+        }
+        if (campaignId != null && (campaignId.isEmpty() || campaignId.length() > 64)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Campaign ID must be between 1 and 64 characters"));
+        }
+        if (expireSeconds < -1 || expireSeconds > Long.MAX_VALUE / 1000L) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Expire seconds must be -1 (never expire) or greater"));
+        }
+
+        String trimmedSender = senderName.trim();
+        String sanitizedSender = trimmedSender.substring(0, Math.min(trimmedSender.length(), 100));
+        // Copied so a caller changing its collection later cannot change who receives the item
+        List<UUID> uniqueRecipients = new ArrayList<>(new LinkedHashSet<>(recipients));
+        ItemStack item = itemStack.clone();
+        String serializedItem = ItemSerializer.serialize(item);
+
+        return databaseManager.whenReady()
+            .thenCompose(ignored -> databaseManager.startDistribution(uniqueRecipients, serializedItem, item.getAmount(),
+                    sanitizedSender, expireSeconds, campaignId));
+    }
+
+    /**
+     * Campaign jobs move and change deadlines in bulk, so online players are reloaded once the job ends.
+     */
+    private BulkMutationJob trackDeadlineChanges(BulkMutationJob job) {
+        job.getCompletion().whenComplete((count, throwable) -> {
+            OnlineExpiryTracker tracker = plugin.getOnlineExpiryTracker();
+            if (tracker != null) {
+                tracker.reloadAll();
+            }
+        });
+        return job;
+    }
+
     @Override
     public CompletableFuture<Void> whenReady() {
         return databaseManager.whenReady();
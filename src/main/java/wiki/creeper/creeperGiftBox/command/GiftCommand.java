@@ -12,17 +12,57 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.ChatColor;
 import wiki.creeper.creeperGiftBox.CreeperGiftBox;
 import wiki.creeper.creeperGiftBox.config.ConfigManager;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import wiki.creeper.creeperGiftBox.database.BulkMutationJob;
+import wiki.creeper.creeperGiftBox.database.CircuitBreaker;
 import wiki.creeper.creeperGiftBox.database.DatabaseManager;
+import wiki.creeper.creeperGiftBox.database.DistributionJob;
+import wiki.creeper.creeperGiftBox.database.GiftArchiveJob;
+import wiki.creeper.creeperGiftBox.database.InboxFullException;
+import wiki.creeper.creeperGiftBox.database.LogExportFormat;
+import wiki.creeper.creeperGiftBox.model.Gift;
+import wiki.creeper.creeperGiftBox.model.GiftSearch;
+import wiki.creeper.creeperGiftBox.model.LogEntry;
+import wiki.creeper.creeperGiftBox.model.LogQuery;
+import wiki.creeper.creeperGiftBox.util.MainThreadQueue;
+import wiki.creeper.creeperGiftBox.util.PlayerNameIndex;
 import wiki.creeper.creeperGiftBox.util.SchedulerUtil;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 
 public class GiftCommand implements CommandExecutor, TabCompleter {
 
+    private static final int LOG_PAGE_SIZE = 10;
+    private static final String LOG_USAGE = "/우편함 기록 [player:<플레이어>] [sender:<발신인>] [gift:<ID>] [from:<yyyy-MM-dd>] [to:<yyyy-MM-dd>] [page:<번호>]";
+    private static final String LOG_EXPORT_USAGE = "/우편함 기록내보내기 [player:<플레이어>] [sender:<발신인>] [gift:<ID>] [from:<yyyy-MM-dd>] [to:<yyyy-MM-dd>] [format:csv|jsonl]";
+    private static final int SEARCH_PAGE_SIZE = 10;
+    private static final int TAB_COMPLETE_LIMIT = 50;
+    private static final String SEARCH_USAGE = "/우편함 검색 [sender:<발신인>] [material:<아이템>] [cmd:<모델데이터>] [after:<ID>]";
+    private static final String CAMPAIGN_USAGE = "/우편함 캠페인 <회수|연장|이전|일시정지|재개|상태> ...";
+    private static final String DISTRIBUTION_USAGE = "/우편함 배포 <시작|상태|일시정지|재개|취소> ...";
+    private static final String DISTRIBUTION_START_USAGE = "/우편함 배포 시작 <파일|*> <발신인> [만료시간] [campaign:<ID>]";
+    private static final String DISTRIBUTION_DIRECTORY = "distributions";
+    private static final String ALL_PLAYERS = "*";
+    private static final String BACKUP_USAGE = "/우편함 백업 <내보내기 [이름]|가져오기 <이름>|상태>";
+    private static final DateTimeFormatter BACKUP_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final DateTimeFormatter LOG_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm").withZone(ZoneId.systemDefault());
+
     private final CreeperGiftBox plugin;
     private final DatabaseManager databaseManager;
     private final ConfigManager configManager;
@@ -54,7 +94,42 @@ public class GiftCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", "/우편함 [지급]"));
+        if (args[0].equalsIgnoreCase("기록")) {
+            handleLogCommand(sender, args);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("기록내보내기")) {
+            handleLogExportCommand(sender, args);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("검색")) {
+            handleSearchCommand(sender, args);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("캠페인")) {
+            handleCampaignCommand(sender, args);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("배포")) {
+            handleDistributionCommand(sender, args);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("통계")) {
+            handleStatsCommand(sender);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("백업")) {
+            handleBackupCommand(sender, args);
+            return true;
+        }
+
+        sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", "/우편함 [지급|기록|기록내보내기|검색|캠페인|배포|통계|백업]"));
         return true;
     }
 
@@ -82,12 +157,6 @@ public class GiftCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        OfflinePlayer targetPlayer = Bukkit.getOfflinePlayer(args[1]);
-        if (!targetPlayer.hasPlayedBefore() && !targetPlayer.isOnline()) {
-            sender.sendMessage(configManager.getMessage("player-not-found", "%player%", args[1]));
-            return;
-        }
-
         String from = args[2];
         long expireSeconds = -1;
 
@@ -104,34 +173,693 @@ public class GiftCommand implements CommandExecutor, TabCompleter {
             }
         }
 
-        plugin.getGiftBoxAPI().sendGift(
-                targetPlayer.getUniqueId(),
-                itemInHand.clone(),
-                from,
-                expireSeconds
-        ).thenRunAsync(() -> {
-            String targetName = targetPlayer.getName() != null ? targetPlayer.getName() : targetPlayer.getUniqueId().toString();
-            sender.sendMessage(configManager.getMessage("gift-sent", "%player%", targetName));
-        }, SchedulerUtil.syncExecutor(plugin)).exceptionally(throwable -> {
+        Executor senderExecutor = senderExecutor(sender);
+        ItemStack item = itemInHand.clone();
+        long expire = expireSeconds;
+        PlayerNameIndex nameIndex = plugin.getPlayerNameIndex();
+        // Unknown names may need a profile lookup, so the target is resolved off the main thread
+        nameIndex.resolve(args[1]).thenCompose(targetUUID -> {
+            if (targetUUID == null) {
+                senderExecutor.execute(() -> sender.sendMessage(configManager.getMessage("player-not-found", "%player%", args[1])));
+                return CompletableFuture.completedFuture(null);
+            }
+            return plugin.getGiftBoxAPI().sendGift(targetUUID, item, from, expire).thenRunAsync(() -> {
+                String targetName = nameIndex.getName(targetUUID);
+                sender.sendMessage(configManager.getMessage("gift-sent", "%player%", targetName != null ? targetName : targetUUID.toString()));
+            }, senderExecutor);
+        }).exceptionally(throwable -> {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            if (cause instanceof InboxFullException) {
+                senderExecutor.execute(() -> sender.sendMessage(configManager.getMessage("inbox-full", "%player%", args[1])));
+                return null;
+            }
             plugin.getLogger().log(Level.SEVERE, "Failed to send gift via command", throwable);
-            SchedulerUtil.runSync(plugin, () -> sender.sendMessage(
+            senderExecutor.execute(() -> sender.sendMessage(
                     configManager.getRawMessage("prefix") + ChatColor.RED + "선물 지급에 실패했습니다. 콘솔 로그를 확인해주세요."
             ));
             return null;
         });
     }
 
+    private void handleLogCommand(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("giftbox.admin.log")) {
+            sender.sendMessage(configManager.getMessage("no-permission"));
+            return;
+        }
+
+        LogFilter filter = parseLogFilter(sender, args, LOG_USAGE);
+        if (filter == null) {
+            return;
+        }
+
+        int page = filter.page;
+        Executor senderExecutor = senderExecutor(sender);
+        // Fetch one extra row to know whether a next page exists
+        buildLogQuery(sender, filter, senderExecutor)
+                .thenCompose(query -> query == null
+                        ? CompletableFuture.<List<LogEntry>>completedFuture(null)
+                        : plugin.getGiftBoxAPI().queryGiftLog(query, (page - 1) * LOG_PAGE_SIZE, LOG_PAGE_SIZE + 1))
+                .thenAcceptAsync(entries -> {
+                    if (entries == null) {
+                        return;
+                    }
+                    if (entries.isEmpty()) {
+                        sender.sendMessage(configManager.getMessage("log-empty"));
+                        return;
+                    }
+                    sender.sendMessage(configManager.getMessage("log-header", "%page%", String.valueOf(page)));
+                    for (LogEntry entry : entries.subList(0, Math.min(entries.size(), LOG_PAGE_SIZE))) {
+                        OfflinePlayer target = Bukkit.getOfflinePlayer(entry.getPlayerUUID());
+                        String targetName = target.getName() != null ? target.getName() : entry.getPlayerUUID().toString();
+                        sender.sendMessage(configManager.getRawMessage("log-entry")
+                                .replace("%date%", LOG_DATE_FORMAT.format(Instant.ofEpochMilli(entry.getTimestamp())))
+                                .replace("%result%", entry.getResult().name())
+                                .replace("%sender%", entry.getSender())
+                                .replace("%player%", targetName)
+                                .replace("%amount%", String.valueOf(entry.getAmount()))
+                                .replace("%gift%", entry.getGiftId()));
+                    }
+                    if (entries.size() > LOG_PAGE_SIZE) {
+                        sender.sendMessage(configManager.getRawMessage("log-next-page").replace("%page%", String.valueOf(page + 1)));
+                    }
+                }, senderExecutor)
+                .exceptionally(throwable -> {
+                    plugin.getLogger().log(Level.SEVERE, "Failed to query gift log via command", throwable);
+                    senderExecutor.execute(() -> sender.sendMessage(configManager.getMessage("log-query-failed")));
+                    return null;
+                });
+    }
+
+    private void handleLogExportCommand(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("giftbox.admin.log")) {
+            sender.sendMessage(configManager.getMessage("no-permission"));
+            return;
+        }
+
+        LogFilter filter = parseLogFilter(sender, args, LOG_EXPORT_USAGE);
+        if (filter == null) {
+            return;
+        }
+
+        Executor senderExecutor = senderExecutor(sender);
+        sender.sendMessage(configManager.getMessage("log-export-started"));
+        buildLogQuery(sender, filter, senderExecutor)
+                .thenCompose(query -> query == null
+                        ? CompletableFuture.<Path>completedFuture(null)
+                        : plugin.getGiftBoxAPI().exportGiftLog(query, filter.format))
+                .thenAcceptAsync(file -> {
+                    if (file != null) {
+                        sender.sendMessage(configManager.getMessage("log-export-complete",
+                                "%file%", plugin.getDataFolder().toPath().relativize(file).toString()));
+                    }
+                }, senderExecutor)
+                .exceptionally(throwable -> {
+                    plugin.getLogger().log(Level.SEVERE, "Failed to export gift log via command", throwable);
+                    senderExecutor.execute(() -> sender.sendMessage(configManager.getMessage("log-export-failed")));
+                    return null;
+                });
+    }
+
+    private void handleSearchCommand(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("giftbox.admin.search")) {
+            sender.sendMessage(configManager.getMessage("no-permission"));
+            return;
+        }
+
+        GiftSearch.Builder search = GiftSearch.builder();
+        String afterId = null;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            int separator = arg.indexOf(':');
+            if (separator <= 0 || separator == arg.length() - 1) {
+                sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", SEARCH_USAGE));
+                return;
+            }
+            String key = arg.substring(0, separator).toLowerCase();
+            String value = arg.substring(separator + 1);
+            try {
+                switch (key) {
+                    case "sender" -> search.sender(value);
+                    case "material" -> {
+                        Material material = Material.matchMaterial(value);
+                        if (material == null) {
+                            throw new IllegalArgumentException("Unknown material: " + value);
+                        }
+                        search.material(material);
+                    }
+                    case "cmd" -> search.customModelData(Integer.parseInt(value));
+                    case "after" -> afterId = value;
+                    default -> throw new IllegalArgumentException("Unknown filter: " + key);
+                }
+            } catch (IllegalArgumentException e) {
+                sender.sendMessage(configManager.getMessage("log-invalid-filter", "%filter%", arg));
+                return;
+            }
+        }
+
+        Executor senderExecutor = senderExecutor(sender);
+        // Fetch one extra gift to know whether a next page exists
+        plugin.getGiftBoxAPI().searchGifts(search.build(), afterId, SEARCH_PAGE_SIZE + 1)
+                .thenApply(this::formatSearchResults)
+                .thenAcceptAsync(lines -> lines.forEach(sender::sendMessage), senderExecutor)
+                .exceptionally(throwable -> {
+                    plugin.getLogger().log(Level.SEVERE, "Failed to search gifts via command", throwable);
+                    senderExecutor.execute(() -> sender.sendMessage(configManager.getMessage("search-failed")));
+                    return null;
+                });
+    }
+
+    private void handleCampaignCommand(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("giftbox.admin.campaign")) {
+            sender.sendMessage(configManager.getMessage("no-permission"));
+            return;
+        }
+        if (args.length < 2) {
+            sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", CAMPAIGN_USAGE));
+            return;
+        }
+
+        String action = args[1];
+        BulkMutationJob job;
+        try {
+            switch (action) {
+                case "회수" -> {
+                    if (args.length != 3) {
+                        sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", "/우편함 캠페인 회수 <캠페인>"));
+                        return;
+                    }
+                    job = plugin.getGiftBoxAPI().revokeCampaign(args[2]);
+                }
+                case "연장" -> {
+                    if (args.length != 4) {
+                        sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", "/우편함 캠페인 연장 <캠페인> <초>"));
+                        return;
+                    }
+                    job = plugin.getGiftBoxAPI().extendCampaign(args[2], Long.parseLong(args[3]));
+                }
+                case "이전" -> {
+                    if (args.length != 4) {
+                        sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", "/우편함 캠페인 이전 <캠페인> <플레이어>"));
+                        return;
+                    }
+                    handleCampaignReassign(sender, args[2], args[3]);
+                    return;
+                }
+                case "일시정지", "재개" -> {
+                    job = args.length == 3 ? databaseManager.getBulkMutation(args[2]) : null;
+                    if (job == null) {
+                        sender.sendMessage(configManager.getMessage("campaign-job-not-found", "%job%", args.length == 3 ? args[2] : "-"));
+                        return;
+                    }
+                    boolean changed = action.equals("일시정지") ? job.pause() : job.resume();
+                    sender.sendMessage(configManager.getMessage(changed ? "campaign-job-updated" : "campaign-job-unchanged",
+                            "%job%", job.getId(), "%state%", job.getState().name()));
+                    return;
+                }
+                case "상태" -> {
+                    if (databaseManager.getBulkMutations().isEmpty()) {
+                        sender.sendMessage(configManager.getMessage("campaign-no-jobs"));
+                        return;
+                    }
+                    for (BulkMutationJob each : databaseManager.getBulkMutations()) {
+                        sender.sendMessage(formatCampaignJob(each));
+                    }
+                    return;
+                }
+                default -> {
+                    sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", CAMPAIGN_USAGE));
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            sender.sendMessage(configManager.getMessage("invalid-number"));
+            return;
+        } catch (IllegalArgumentException | IllegalStateException | ArithmeticException e) {
+            sender.sendMessage(configManager.getMessage("campaign-job-failed", "%job%", "-"));
+            return;
+        }
+
+        watchCampaignJob(sender, job);
+    }
+
+    /**
+     * Starts a reassign job once the target player is resolved off the main thread.
+     * A name that has never joined is rejected, so a typo cannot move a campaign to a stranger.
+     */
+    private void handleCampaignReassign(CommandSender sender, String campaignId, String target) {
+        Executor senderExecutor = senderExecutor(sender);
+        resolvePlayerUUID(target).thenAcceptAsync(targetUUID -> {
+            if (targetUUID == null) {
+                sender.sendMessage(configManager.getMessage("player-not-found", "%player%", target));
+                return;
+            }
+            BulkMutationJob job;
+            try {
+                job = plugin.getGiftBoxAPI().reassignCampaign(campaignId, targetUUID);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                sender.sendMessage(configManager.getMessage("campaign-job-failed", "%job%", "-"));
+                return;
+            }
+            watchCampaignJob(sender, job);
+        }, senderExecutor).exceptionally(throwable -> {
+            plugin.getLogger().log(Level.SEVERE, "Failed to resolve player " + target, throwable);
+            senderExecutor.execute(() -> sender.sendMessage(configManager.getMessage("campaign-job-failed", "%job%", "-")));
+            return null;
+        });
+    }
+
+    private void watchCampaignJob(CommandSender sender, BulkMutationJob job) {
+        sender.sendMessage(configManager.getMessage("campaign-job-started", "%job%", job.getId(), "%campaign%", job.getCampaignId()));
+        Executor senderExecutor = senderExecutor(sender);
+        job.getCompletion()
+                .thenRunAsync(() -> sender.sendMessage(formatCampaignJob(job)), senderExecutor)
+                .exceptionally(throwable -> {
+                    senderExecutor.execute(() -> sender.sendMessage(configManager.getMessage("campaign-job-failed", "%job%", job.getId())));
+                    return null;
+                });
+    }
+
+    private void handleStatsCommand(CommandSender sender) {
+        if (!sender.hasPermission("giftbox.admin.stats")) {
+            sender.sendMessage(configManager.getMessage("no-permission"));
+            return;
+        }
+
+        CircuitBreaker breaker = databaseManager.getCircuitBreaker();
+        sender.sendMessage(configManager.getMessage("stats-header"));
+        sender.sendMessage(configManager.getRawMessage("stats-database")
+                .replace("%state%", breaker.getState().name())
+                .replace("%failures%", String.valueOf(breaker.getConsecutiveFailures()))
+                .replace("%rejected%", String.valueOf(breaker.getRejectedCalls())));
+        if (databaseManager.hasReplica()) {
+            long lag = databaseManager.getReplicaLag();
+            sender.sendMessage(configManager.getRawMessage("stats-replica")
+                    .replace("%state%", databaseManager.isReplicaHealthy() ? "ACTIVE" : "FALLBACK")
+                    .replace("%lag%", lag < 0 ? "?" : String.valueOf(lag)));
+        }
+        HikariPoolMXBean pool = databaseManager.getPoolStats();
+        if (pool != null) {
+            sender.sendMessage(configManager.getRawMessage("stats-pool")
+                    .replace("%active%", String.valueOf(pool.getActiveConnections()))
+                    .replace("%idle%", String.valueOf(pool.getIdleConnections()))
+                    .replace("%waiting%", String.valueOf(pool.getThreadsAwaitingConnection())));
+        }
+        MainThreadQueue queue = SchedulerUtil.getMainThreadQueue();
+        if (queue != null) {
+            sender.sendMessage(configManager.getRawMessage("stats-main-thread")
+                    .replace("%backlog%", String.valueOf(queue.getBacklogSize()))
+                    .replace("%max%", String.valueOf(queue.getMaxDrainTicks())));
+        }
+    }
+
+    private void handleBackupCommand(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("giftbox.admin.backup")) {
+            sender.sendMessage(configManager.getMessage("no-permission"));
+            return;
+        }
+        if (args.length < 2 || args.length > 3) {
+            sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", BACKUP_USAGE));
+            return;
+        }
+
+        if (args[1].equals("상태")) {
+            if (databaseManager.getArchiveJobs().isEmpty()) {
+                sender.sendMessage(configManager.getMessage("backup-no-jobs"));
+                return;
+            }
+            for (GiftArchiveJob job : databaseManager.getArchiveJobs()) {
+                sender.sendMessage(formatBackupJob(job));
+            }
+            return;
+        }
+
+        GiftArchiveJob job;
+        try {
+            switch (args[1]) {
+                case "내보내기" -> job = databaseManager.startExport(args.length == 3 ? args[2] : LocalDateTime.now().format(BACKUP_NAME_FORMAT));
+                case "가져오기" -> {
+                    if (args.length != 3) {
+                        sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", BACKUP_USAGE));
+                        return;
+                    }
+                    job = databaseManager.startImport(args[2]);
+                }
+                default -> {
+                    sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", BACKUP_USAGE));
+                    return;
+                }
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            sender.sendMessage(configManager.getMessage("backup-rejected", "%reason%", e.getMessage()));
+            return;
+        }
+
+        Executor senderExecutor = senderExecutor(sender);
+        sender.sendMessage(configManager.getMessage("backup-started",
+                "%name%", job.getName(), "%direction%", backupDirectionLabel(job)));
+        job.getCompletion().whenCompleteAsync((rows, throwable) -> {
+            if (throwable == null) {
+                sender.sendMessage(configManager.getMessage("backup-finished", "%name%", job.getName(),
+                        "%direction%", backupDirectionLabel(job), "%rows%", String.valueOf(rows), "%ranges%", String.valueOf(job.getRanges())));
+            } else {
+                sender.sendMessage(configManager.getMessage("backup-failed", "%name%", job.getName(),
+                        "%direction%", backupDirectionLabel(job), "%reason%", String.valueOf(throwable.getMessage())));
+            }
+        }, senderExecutor);
+    }
+
+    private String formatBackupJob(GiftArchiveJob job) {
+        return configManager.getRawMessage("backup-status")
+                .replace("%name%", job.getName())
+                .replace("%direction%", backupDirectionLabel(job))
+                .replace("%state%", job.getState().name())
+                .replace("%rows%", String.valueOf(job.getRows()))
+                .replace("%done%", String.valueOf(job.getFinishedRanges()))
+                .replace("%ranges%", String.valueOf(job.getRanges()));
+    }
+
+    private static String backupDirectionLabel(GiftArchiveJob job) {
+        return job.getDirection() == GiftArchiveJob.Direction.EXPORT ? "내보내기" : "가져오기";
+    }
+
+    private void handleDistributionCommand(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("giftbox.admin.distribute")) {
+            sender.sendMessage(configManager.getMessage("no-permission"));
+            return;
+        }
+        if (args.length < 2) {
+            sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", DISTRIBUTION_USAGE));
+            return;
+        }
+
+        switch (args[1]) {
+            case "시작" -> startDistribution(sender, args);
+            case "상태" -> {
+                if (databaseManager.getDistributions().isEmpty()) {
+                    sender.sendMessage(configManager.getMessage("distribution-no-jobs"));
+                    return;
+                }
+                for (DistributionJob job : databaseManager.getDistributions()) {
+                    sender.sendMessage(formatDistributionJob(job));
+                }
+            }
+            case "일시정지", "재개", "취소" -> {
+                DistributionJob job = null;
+                if (args.length == 3) {
+                    try {
+                        job = databaseManager.getDistribution(Long.parseLong(args[2]));
+                    } catch (NumberFormatException ignored) {
+                        // Reported as not found below
+                    }
+                }
+                if (job == null) {
+                    sender.sendMessage(configManager.getMessage("distribution-job-not-found", "%job%", args.length == 3 ? args[2] : "-"));
+                    return;
+                }
+                boolean changed = switch (args[1]) {
+                    case "일시정지" -> job.pause();
+                    case "재개" -> job.resume();
+                    default -> job.cancel();
+                };
+                sender.sendMessage(configManager.getMessage(changed ? "distribution-job-updated" : "distribution-job-unchanged",
+                        "%job%", String.valueOf(job.getId()), "%state%", job.getState().name()));
+            }
+            default -> sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", DISTRIBUTION_USAGE));
+        }
+    }
+
+    private void startDistribution(CommandSender sender, String[] args) {
+        if (args.length < 4 || args.length > 6 || !(sender instanceof Player player)) {
+            sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", DISTRIBUTION_START_USAGE));
+            return;
+        }
+        ItemStack itemInHand = player.getInventory().getItemInMainHand();
+        if (itemInHand.getType() == Material.AIR) {
+            sender.sendMessage(configManager.getMessage("no-item-in-hand"));
+            return;
+        }
+
+        String source = args[2];
+        String from = args[3];
+        long expireSeconds = -1;
+        String campaignId = null;
+        for (int i = 4; i < args.length; i++) {
+            if (args[i].startsWith("campaign:")) {
+                campaignId = args[i].substring("campaign:".length());
+                continue;
+            }
+            try {
+                expireSeconds = Long.parseLong(args[i]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(configManager.getMessage("invalid-number"));
+                return;
+            }
+        }
+
+        Executor senderExecutor = senderExecutor(sender);
+        ItemStack item = itemInHand.clone();
+        long expire = expireSeconds;
+        String campaign = campaignId;
+        // Reading 300k recipients from disk or player data must stay off the main thread
+        CompletableFuture.supplyAsync(() -> readRecipients(source), SchedulerUtil.asyncExecutor(plugin))
+                .thenCompose(recipients -> plugin.getGiftBoxAPI().startDistribution(recipients, item, from, expire, campaign))
+                .thenAcceptAsync(job -> {
+                    sender.sendMessage(configManager.getMessage("distribution-started",
+                            "%job%", String.valueOf(job.getId()), "%total%", String.valueOf(job.getTotal())));
+                    job.getCompletion().thenRunAsync(() -> sender.sendMessage(formatDistributionJob(job)), senderExecutor);
+                }, senderExecutor)
+                .exceptionally(throwable -> {
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                    if (cause instanceof RecipientFileException e) {
+                        senderExecutor.execute(() -> sender.sendMessage(e.getMessage()));
+                    } else {
+                        plugin.getLogger().log(Level.SEVERE, "Failed to start distribution via command", throwable);
+                        senderExecutor.execute(() -> sender.sendMessage(configManager.getMessage("distribution-failed")));
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Reads the recipient list: every player the server has seen for {@code *}, otherwise a file in the
+     * distributions folder with one UUID per line. Blank lines and lines starting with # are skipped.
+     */
+    private List<UUID> readRecipients(String source) {
+        List<UUID> recipients = new ArrayList<>();
+        if (source.equals(ALL_PLAYERS)) {
+            for (OfflinePlayer player : Bukkit.getOfflinePlayers()) {
+                recipients.add(player.getUniqueId());
+            }
+        } else {
+            Path directory = plugin.getDataFolder().toPath().resolve(DISTRIBUTION_DIRECTORY).normalize();
+            Path file = directory.resolve(source).normalize();
+            if (!file.startsWith(directory) || !Files.isRegularFile(file)) {
+                throw new RecipientFileException(configManager.getMessage("distribution-file-not-found", "%file%", source));
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    try {
+                        recipients.add(UUID.fromString(line));
+                    } catch (IllegalArgumentException e) {
+                        throw new RecipientFileException(configManager.getMessage("distribution-invalid-recipient",
+                                "%line%", String.valueOf(lineNumber), "%value%", line));
+                    }
+                }
+            } catch (IOException e) {
+                throw new CompletionException("Failed to read recipient file " + file, e);
+            }
+        }
+        if (recipients.isEmpty()) {
+            throw new RecipientFileException(configManager.getMessage("distribution-no-recipients"));
+        }
+        return recipients;
+    }
+
+    private String formatDistributionJob(DistributionJob job) {
+        long percent = job.getTotal() > 0 ? job.getSent() * 100 / job.getTotal() : 100;
+        return configManager.getRawMessage("distribution-job-status")
+                .replace("%job%", String.valueOf(job.getId()))
+                .replace("%state%", job.getState().name())
+                .replace("%sent%", String.valueOf(job.getSent()))
+                .replace("%total%", String.valueOf(job.getTotal()))
+                .replace("%percent%", String.valueOf(percent));
+    }
+
+    /**
+     * A problem with the recipient list that is reported to the sender instead of logged.
+     */
+    private static final class RecipientFileException extends RuntimeException {
+        private RecipientFileException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private String formatCampaignJob(BulkMutationJob job) {
+        return configManager.getRawMessage("campaign-job-status")
+                .replace("%job%", job.getId())
+                .replace("%type%", job.getType().name())
+                .replace("%campaign%", job.getCampaignId())
+                .replace("%state%", job.getState().name())
+                .replace("%processed%", String.valueOf(job.getProcessed()))
+                .replace("%total%", job.getTotal() < 0 ? "?" : String.valueOf(job.getTotal()));
+    }
+
+    /**
+     * Builds the chat lines for one search page. Runs off the main thread because items are decoded here.
+     */
+    private List<String> formatSearchResults(List<Gift> gifts) {
+        List<String> lines = new ArrayList<>();
+        if (gifts.isEmpty()) {
+            lines.add(configManager.getMessage("search-empty"));
+            return lines;
+        }
+        List<Gift> page = gifts.subList(0, Math.min(gifts.size(), SEARCH_PAGE_SIZE));
+        lines.add(configManager.getMessage("search-header"));
+        for (Gift gift : page) {
+            OfflinePlayer target = Bukkit.getOfflinePlayer(gift.getPlayerUUID());
+            String targetName = target.getName() != null ? target.getName() : gift.getPlayerUUID().toString();
+            String material;
+            try {
+                material = gift.getItemStack().getType().name();
+            } catch (IllegalStateException e) {
+                material = "?";
+            }
+            lines.add(configManager.getRawMessage("search-entry")
+                    .replace("%date%", LOG_DATE_FORMAT.format(Instant.ofEpochMilli(gift.getTimestamp())))
+                    .replace("%sender%", gift.getSender())
+                    .replace("%player%", targetName)
+                    .replace("%material%", material)
+                    .replace("%amount%", String.valueOf(gift.getAmount()))
+                    .replace("%gift%", gift.getId()));
+        }
+        if (gifts.size() > SEARCH_PAGE_SIZE) {
+            lines.add(configManager.getRawMessage("search-next-page").replace("%after%", page.get(page.size() - 1).getId()));
+        }
+        return lines;
+    }
+
+    /**
+     * Parses "key:value" filter arguments after the sub command.
+     *
+     * @return the parsed filter, or null after telling the sender what was wrong
+     */
+    private LogFilter parseLogFilter(CommandSender sender, String[] args, String usage) {
+        LogFilter filter = new LogFilter();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            int separator = arg.indexOf(':');
+            if (separator <= 0 || separator == arg.length() - 1) {
+                sender.sendMessage(configManager.getMessage("invalid-command-usage", "%usage%", usage));
+                return null;
+            }
+            String key = arg.substring(0, separator).toLowerCase();
+            String value = arg.substring(separator + 1);
+            try {
+                switch (key) {
+                    case "player" -> filter.player = value;
+                    case "sender" -> filter.query.sender(value);
+                    case "gift" -> filter.query.giftId(value);
+                    case "from" -> filter.query.from(LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                    case "to" -> filter.query.to(LocalDate.parse(value).plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                    case "page" -> filter.page = Math.max(1, Integer.parseInt(value));
+                    case "format" -> filter.format = LogExportFormat.valueOf(value.toUpperCase());
+                    default -> {
+                        sender.sendMessage(configManager.getMessage("log-invalid-filter", "%filter%", arg));
+                        return null;
+                    }
+                }
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                sender.sendMessage(configManager.getMessage("log-invalid-filter", "%filter%", arg));
+                return null;
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Finishes a parsed log filter once its player is resolved off the main thread.
+     *
+     * @return the query, or null after telling the sender the player is unknown
+     */
+    private CompletableFuture<LogQuery> buildLogQuery(CommandSender sender, LogFilter filter, Executor senderExecutor) {
+        if (filter.player == null) {
+            return CompletableFuture.completedFuture(filter.query.build());
+        }
+        return resolvePlayerUUID(filter.player).thenApply(playerUUID -> {
+            if (playerUUID == null) {
+                senderExecutor.execute(() -> sender.sendMessage(configManager.getMessage("player-not-found", "%player%", filter.player)));
+                return null;
+            }
+            return filter.query.player(playerUUID).build();
+        });
+    }
+
+    /**
+     * @return the UUID given as is or of a player who has joined before, or null if there is none
+     */
+    private CompletableFuture<UUID> resolvePlayerUUID(String value) {
+        try {
+            return CompletableFuture.completedFuture(UUID.fromString(value));
+        } catch (IllegalArgumentException e) {
+            return plugin.getPlayerNameIndex().resolve(value);
+        }
+    }
+
+    private Executor senderExecutor(CommandSender sender) {
+        return sender instanceof Player player
+                ? SchedulerUtil.playerExecutor(plugin, player)
+                : SchedulerUtil.syncExecutor(plugin, MainThreadQueue.Lane.PLAYER);
+    }
+
+    private static final class LogFilter {
+        private final LogQuery.Builder query = LogQuery.builder();
+        private int page = 1;
+        private LogExportFormat format = LogExportFormat.CSV;
+        private String player;
+    }
+
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (args.length == 1) {
+            List<String> subCommands = new ArrayList<>();
             if (sender.hasPermission("giftbox.admin.give")) {
-                return Arrays.asList("지급");
+                subCommands.add("지급");
+            }
+            if (sender.hasPermission("giftbox.admin.log")) {
+                subCommands.add("기록");
+                subCommands.add("기록내보내기");
+            }
+            if (sender.hasPermission("giftbox.admin.search")) {
+                subCommands.add("검색");
+            }
+            if (sender.hasPermission("giftbox.admin.campaign")) {
+                subCommands.add("캠페인");
+            }
+            if (sender.hasPermission("giftbox.admin.distribute")) {
+                subCommands.add("배포");
+            }
+            if (sender.hasPermission("giftbox.admin.stats")) {
+                subCommands.add("통계");
+            }
+            if (sender.hasPermission("giftbox.admin.backup")) {
+                subCommands.add("백업");
             }
+            return subCommands;
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("캠페인") && sender.hasPermission("giftbox.admin.campaign")) {
+            return List.of("회수", "연장", "이전", "일시정지", "재개", "상태");
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("배포") && sender.hasPermission("giftbox.admin.distribute")) {
+            return List.of("시작", "상태", "일시정지", "재개", "취소");
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("백업") && sender.hasPermission("giftbox.admin.backup")) {
+            return List.of("내보내기", "가져오기", "상태");
         } else if (args.length == 2 && args[0].equalsIgnoreCase("지급")) {
-            return Bukkit.getOnlinePlayers().stream()
-                    .map(Player::getName)
-                    .filter(name -> name.toLowerCase().startsWith(args[1].toLowerCase()))
-                    .collect(Collectors.toList());
+            return plugin.getPlayerNameIndex().complete(args[1], TAB_COMPLETE_LIMIT);
         }
         return new ArrayList<>();
     }
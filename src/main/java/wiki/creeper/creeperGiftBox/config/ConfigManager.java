@@ -3,8 +3,10 @@ package wiki.creeper.creeperGiftBox.config;
 import org.bukkit.ChatColor;
 import org.bukkit.configuration.file.FileConfiguration;
 import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.database.InboxOverflowPolicy;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Collectors;
 
 public class ConfigManager {
@@ -122,12 +124,185 @@ public class ConfigManager {
         return config.getString("database.password", "password");
     }
 
+    public boolean isReplicaEnabled() {
+        return config.getBoolean("database.replica.enabled", false);
+    }
+
+    public String getReplicaHost() {
+        return config.getString("database.replica.host", getDbHost()).trim();
+    }
+
+    public int getReplicaPort() {
+        int port = config.getInt("database.replica.port", getDbPort());
+        return (port >= 1 && port <= 65535) ? port : getDbPort();
+    }
+
+    public String getReplicaDbName() {
+        return config.getString("database.replica.database", getDbName()).trim();
+    }
+
+    public String getReplicaUser() {
+        return config.getString("database.replica.username", getDbUser()).trim();
+    }
+
+    public String getReplicaPassword() {
+        return config.getString("database.replica.password", getDbPassword());
+    }
+
+    public long getReplicaStickySeconds() {
+        return Math.max(config.getLong("database.replica.read-your-writes-seconds", 5), 0);
+    }
+
+    public long getReplicaMaxLagSeconds() {
+        return Math.max(config.getLong("database.replica.max-lag-seconds", 10), 1);
+    }
+
+    public long getReplicaLagCheckInterval() {
+        return Math.max(config.getLong("database.replica.lag-check-interval", 5), 1);
+    }
+
+    public int getPrewarmConnections() {
+        return Math.max(config.getInt("database.prewarm-connections", 4), 0);
+    }
+
+    public int getStartupQueueSize() {
+        return Math.max(config.getInt("database.startup-queue-size", 500), 0);
+    }
+
+    public int getQueryTimeout() {
+        // In seconds; 0 would disable the driver timeout
+        return Math.max(config.getInt("database.query-timeout", 5), 1);
+    }
+
+    public long getOperationTimeout() {
+        return Math.max(config.getLong("database.operation-timeout", 10), 1);
+    }
+
+    public long getMaintenanceTimeout() {
+        // In seconds
+        return Math.max(config.getLong("database.maintenance-timeout", 300), 1);
+    }
+
+    public long getStreamIdleTimeout() {
+        // In seconds
+        return Math.max(config.getLong("database.stream-idle-timeout", 30), 1);
+    }
+
+    public int getCircuitBreakerThreshold() {
+        return Math.max(config.getInt("database.circuit-breaker.failure-threshold", 5), 1);
+    }
+
+    public long getCircuitBreakerOpenSeconds() {
+        return Math.max(config.getLong("database.circuit-breaker.open-seconds", 10), 1);
+    }
+
     public long getExpirationCheckInterval() {
         long interval = config.getLong("expiration-check-interval", 600);
         // Minimum 60 seconds to prevent performance issues
         return Math.max(interval, 60);
     }
 
+    public long getSweeperLeaseSeconds() {
+        // Heartbeats run every third of the lease, so keep it long enough for a few seconds between them
+        return Math.max(config.getLong("expiration-sweeper.lease-seconds", 15), 3);
+    }
+
+    public boolean isLogRetentionEnabled() {
+        return config.getBoolean("log-retention.enabled", false);
+    }
+
+    public int getLogRetentionDays() {
+        // Keep at least one full day so the daily rollup always sees complete days
+        return Math.max(config.getInt("log-retention.days", 90), 1);
+    }
+
+    public String getLogRetentionMode() {
+        String mode = config.getString("log-retention.mode", "partition").trim().toLowerCase();
+        return mode.equals("rotate") ? "rotate" : "partition";
+    }
+
+    public boolean isLogPartitionMigrationEnabled() {
+        return config.getBoolean("log-retention.migrate-existing", false);
+    }
+
+    public boolean isLogArchiveEnabled() {
+        return config.getBoolean("log-retention.archive", true);
+    }
+
+    public String getLogArchiveDirectory() {
+        return config.getString("log-retention.archive-directory", "log-archive").trim();
+    }
+
+    public long getLogMaintenanceInterval() {
+        // In hours, at least hourly
+        return Math.max(config.getLong("log-retention.maintenance-interval", 24), 1);
+    }
+
+    public double getMainThreadTickBudget() {
+        double budget = config.getDouble("scheduler.tick-budget-ms", 2.0);
+        // Keep at least a small budget so queued work always makes progress
+        return Math.max(budget, 0.1);
+    }
+
+    public int getBulkMaxRowsPerStatement() {
+        int rows = config.getInt("bulk-mutation.max-rows-per-statement", 500);
+        return Math.max(1, Math.min(rows, 10000));
+    }
+
+    public long getBulkChunkDelay() {
+        return Math.max(0L, config.getLong("bulk-mutation.chunk-delay-ms", 250L));
+    }
+
+    public int getDistributionChunkSize() {
+        int rows = config.getInt("distribution.chunk-size", 250);
+        return Math.max(1, Math.min(rows, 5000));
+    }
+
+    public int getDistributionRowsPerSecond() {
+        return Math.max(1, config.getInt("distribution.rows-per-second", 500));
+    }
+
+    public int getIdempotencyKeyTtlHours() {
+        return Math.max(1, config.getInt("idempotency.key-ttl-hours", 72));
+    }
+
+    public int getBackupParallelism() {
+        return Math.max(1, config.getInt("backup.parallelism", 4));
+    }
+
+    public int getBackupBatchSize() {
+        int rows = config.getInt("backup.batch-size", 1000);
+        return Math.max(1, Math.min(rows, 5000));
+    }
+
+    public int getInboxMaxGifts() {
+        // 0 or less means unlimited
+        return Math.max(0, config.getInt("inbox.max-gifts", 0));
+    }
+
+    public InboxOverflowPolicy getInboxOverflowPolicy() {
+        String policy = config.getString("inbox.overflow-policy", "SPILL");
+        try {
+            return InboxOverflowPolicy.valueOf(policy.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Unknown inbox.overflow-policy '" + policy + "', using SPILL");
+            return InboxOverflowPolicy.SPILL;
+        }
+    }
+
+    public boolean isCompactionEnabled() {
+        return config.getBoolean("compaction.enabled", false);
+    }
+
+    public long getCompactionInterval() {
+        // In seconds
+        return Math.max(config.getLong("compaction.interval-seconds", 60), 5);
+    }
+
+    public int getCompactionPlayersPerRun() {
+        return Math.max(1, config.getInt("compaction.players-per-run", 20));
+    }
+
     public double getGuiMessageCooldown() {
         double cooldown = config.getDouble("messages.gui-message-cooldown", 0.2);
         // Ensure non-negative cooldown
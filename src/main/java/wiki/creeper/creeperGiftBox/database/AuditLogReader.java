@@ -0,0 +1,174 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.model.LogEntry;
+import wiki.creeper.creeperGiftBox.model.LogQuery;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reads the gift history log, including rotated log tables.
+ *
+ * Paged reads return small result sets for in-game viewing. Exports stream rows through
+ * a forward-only cursor straight into a compressed file, so their size is not bounded by heap.
+ */
+class AuditLogReader {
+
+    private static final String EXPORT_DIRECTORY = "exports";
+    private static final DateTimeFormatter EXPORT_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final CreeperGiftBox plugin;
+    private final DataSource dataSource;
+    private final StatementFactory statements;
+    private final LogRetentionManager logRetentionManager;
+
+    AuditLogReader(CreeperGiftBox plugin, DataSource dataSource, StatementFactory statements, LogRetentionManager logRetentionManager) {
+        this.plugin = plugin;
+        this.dataSource = dataSource;
+        this.statements = statements;
+        this.logRetentionManager = logRetentionManager;
+    }
+
+    /**
+     * Returns one page of matching rows, newest first.
+     */
+    List<LogEntry> query(LogQuery query, int offset, int limit) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String where = buildWhere(query);
+        try (Connection connection = dataSource.getConnection()) {
+            List<String> tables = logRetentionManager.getLogTables(connection);
+            StringBuilder sql = new StringBuilder("SELECT * FROM (");
+            for (int i = 0; i < tables.size(); i++) {
+                if (i > 0) {
+                    sql.append(" UNION ALL ");
+                }
+                // Each table only has to supply enough rows to fill the requested page
+                sql.append("(SELECT ").append(LogRowWriter.SELECT_COLUMNS).append(" FROM ").append(tables.get(i))
+                        .append(where).append(" ORDER BY TimeStamp DESC, LogID DESC LIMIT ?)");
+                addParams(query, params);
+                params.add(offset + limit);
+            }
+            sql.append(") AS log ORDER BY TimeStamp DESC, LogID DESC LIMIT ? OFFSET ?");
+            params.add(limit);
+            params.add(offset);
+
+            List<LogEntry> entries = new ArrayList<>();
+            try (PreparedStatement ps = statements.prepare(connection, sql.toString())) {
+                bind(ps, params);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        entries.add(new LogEntry(
+                                rs.getLong("LogID"),
+                                rs.getString("GiftID"),
+                                UUID.fromString(rs.getString("PlayerUUID")),
+                                rs.getString("Sender"),
+                                LogResult.fromValue(rs.getInt("Result")),
+                                rs.getInt("Count"),
+                                rs.getLong("TimeStamp"),
+                                rs.getString("ItemStack")
+                        ));
+                    }
+                }
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Streams every matching row, oldest first, into a compressed file in the exports folder.
+     *
+     * @return the written file
+     */
+    Path export(LogQuery query, LogExportFormat format) throws SQLException, IOException {
+        Path directory = plugin.getDataFolder().toPath().resolve(EXPORT_DIRECTORY);
+        Files.createDirectories(directory);
+        String fileName = "present_log-" + LocalDateTime.now().format(EXPORT_NAME_FORMAT) + "." + format.getExtension();
+        Path target = directory.resolve(fileName);
+        Path temp = directory.resolve(fileName + ".tmp");
+
+        String where = buildWhere(query);
+        try (Connection connection = dataSource.getConnection();
+             LogRowWriter writer = new LogRowWriter(temp, format)) {
+            List<String> tables = logRetentionManager.getLogTables(connection);
+            // Oldest table first so the file is in chronological order
+            for (int i = tables.size() - 1; i >= 0; i--) {
+                String sql = "SELECT " + LogRowWriter.SELECT_COLUMNS + " FROM " + tables.get(i) + where + " ORDER BY TimeStamp ASC";
+                try (PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    // Integer.MIN_VALUE makes the MySQL driver stream rows instead of buffering the result
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    List<Object> params = new ArrayList<>();
+                    addParams(query, params);
+                    bind(ps, params);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            writer.write(rs);
+                        }
+                    }
+                }
+            }
+            writer.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            plugin.getLogger().info("Exported " + writer.getRowCount() + " log rows to " + target.getFileName());
+            return target;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private String buildWhere(LogQuery query) {
+        List<String> conditions = new ArrayList<>();
+        if (query.getPlayerUUID() != null) {
+            conditions.add("PlayerUUID = ?");
+        }
+        if (query.getSender() != null) {
+            conditions.add("Sender = ?");
+        }
+        if (query.getGiftId() != null) {
+            conditions.add("GiftID = ?");
+        }
+        if (query.getFromTime() >= 0) {
+            conditions.add("TimeStamp >= ?");
+        }
+        if (query.getToTime() >= 0) {
+            conditions.add("TimeStamp < ?");
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private void addParams(LogQuery query, List<Object> params) {
+        if (query.getPlayerUUID() != null) {
+            params.add(query.getPlayerUUID().toString());
+        }
+        if (query.getSender() != null) {
+            params.add(query.getSender());
+        }
+        if (query.getGiftId() != null) {
+            params.add(query.getGiftId());
+        }
+        if (query.getFromTime() >= 0) {
+            params.add(query.getFromTime());
+        }
+        if (query.getToTime() >= 0) {
+            params.add(query.getToTime());
+        }
+    }
+
+    private void bind(PreparedStatement ps, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            ps.setObject(i + 1, params.get(i));
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.model.Gift;
+import wiki.creeper.creeperGiftBox.util.DebugLogger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+
+/**
+ * Applies campaign-wide changes to the present table in small, throttled chunks.
+ *
+ * Each chunk selects the next gifts of the campaign by ID (keyset pagination), changes them
+ * with a single statement limited to those IDs and writes their log rows in the same
+ * transaction. No statement touches more than {@code maxRowsPerStatement} rows, so locks stay
+ * short and replicas keep up.
+ *
+ * Spilled gifts of the campaign in the overflow table are changed first, and the campaign is
+ * held in {@link InboxLimiter} until the job ends, so no refill on this server moves its gifts
+ * back into a gift box behind the job's cursor.
+ */
+class BulkMutationEngine {
+
+    // How long a chunk waits before trying again while a gift import runs
+    private static final long IMPORT_RETRY_MILLIS = 5000;
+    private static final String TABLE_PRESENT = "present";
+
+    private final CreeperGiftBox plugin;
+    private final DataSource dataSource;
+    private final StatementFactory statements;
+    private final Executor queryExecutor;
+    private final InboxLimiter inboxLimiter;
+    private final MaintenanceGate maintenanceGate;
+    private final BiConsumer<Set<UUID>, List<Gift>> onChange;
+    private final DebugLogger debugLogger;
+    private final int maxRowsPerStatement;
+    private final long chunkDelayMillis;
+    private final Map<String, BulkMutationJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger nextJobId = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    BulkMutationEngine(CreeperGiftBox plugin, DataSource dataSource, StatementFactory statements, Executor queryExecutor,
+                       InboxLimiter inboxLimiter, MaintenanceGate maintenanceGate, BiConsumer<Set<UUID>, List<Gift>> onChange,
+                       int maxRowsPerStatement, long chunkDelayMillis) {
+        this.plugin = plugin;
+        this.dataSource = dataSource;
+        this.statements = statements;
+        this.queryExecutor = queryExecutor;
+        this.inboxLimiter = inboxLimiter;
+        this.maintenanceGate = maintenanceGate;
+        this.onChange = onChange;
+        this.debugLogger = new DebugLogger(plugin);
+        this.maxRowsPerStatement = maxRowsPerStatement;
+        this.chunkDelayMillis = chunkDelayMillis;
+    }
+
+    BulkMutationJob start(BulkMutationJob.Type type, String campaignId, long extendMillis, UUID targetPlayer) {
+        String id = String.valueOf(nextJobId.incrementAndGet());
+        BulkMutationJob job = new BulkMutationJob(id, type, campaignId, extendMillis, targetPlayer, this);
+        jobs.put(id, job);
+        inboxLimiter.hold(campaignId);
+        plugin.getLogger().info("Started bulk " + type + " job " + id + " for campaign " + campaignId);
+        schedule(job, 0);
+        return job;
+    }
+
+    BulkMutationJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    Collection<BulkMutationJob> getJobs() {
+        return Collections.unmodifiableCollection(jobs.values());
+    }
+
+    /**
+     * Pauses every running job. Called on shutdown so no chunk starts against a closed pool.
+     */
+    void close() {
+        closed = true;
+        jobs.values().forEach(BulkMutationJob::pause);
+    }
+
+    /**
+     * Runs the next chunk of the job after the given delay, unless a chunk is already pending.
+     */
+    void schedule(BulkMutationJob job, long delayMillis) {
+        if (closed || !job.active.compareAndSet(false, true)) {
+            return;
+        }
+        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, queryExecutor).execute(() -> run(job));
+    }
+
+    private void run(BulkMutationJob job) {
+        if (closed || job.getState() != BulkMutationJob.State.RUNNING) {
+            job.active.set(false);
+            // A resume may have slipped in between the state check and releasing the chunk slot
+            if (job.getState() == BulkMutationJob.State.RUNNING) {
+                schedule(job, 0);
+            }
+            return;
+        }
+
+        if (!maintenanceGate.tryEnter()) {
+            job.active.set(false);
+            schedule(job, IMPORT_RETRY_MILLIS);
+            return;
+        }
+        boolean hasMore;
+        try {
+            hasMore = processChunk(job);
+        } catch (SQLException | RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "Bulk " + job.getType() + " job " + job.getId() + " failed after "
+                    + job.getProcessed() + " gifts", e);
+            job.active.set(false);
+            inboxLimiter.release(job.getCampaignId());
+            job.fail(e);
+            return;
+        } finally {
+            maintenanceGate.exit();
+        }
+
+        job.active.set(false);
+        if (!hasMore) {
+            inboxLimiter.release(job.getCampaignId());
+            job.complete();
+            plugin.getLogger().info("Bulk " + job.getType() + " job " + job.getId() + " finished, "
+                    + job.getProcessed() + " gifts changed");
+            return;
+        }
+        schedule(job, chunkDelayMillis);
+    }
+
+    /**
+     * @return true if the campaign may have more gifts after this chunk
+     */
+    private boolean processChunk(BulkMutationJob job) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            if (job.getTotal() < 0) {
+                job.setTotal(countCampaign(connection, job.getCampaignId()));
+            }
+
+            List<Gift> gifts = selectChunk(connection, job);
+            if (gifts.isEmpty()) {
+                return nextTable(job);
+            }
+            boolean inGiftBoxes = job.table.equals(TABLE_PRESENT);
+            List<Gift> targets = job.getType() == BulkMutationJob.Type.EXTEND
+                    ? gifts.stream().filter(gift -> gift.getExpireStamp() != -1).toList()
+                    : gifts;
+
+            if (!targets.isEmpty()) {
+                List<Gift> refilled = List.of();
+                Set<UUID> owners = new HashSet<>();
+                targets.forEach(gift -> owners.add(gift.getPlayerUUID()));
+                connection.setAutoCommit(false);
+                try {
+                    if (job.getType() == BulkMutationJob.Type.EXTEND) {
+                        mutate(connection, job, targets);
+                    } else if (!inGiftBoxes) {
+                        // Spilled gifts are not counted, so only the rows themselves change
+                        targets = lockOwned(connection, job, targets);
+                        if (!targets.isEmpty()) {
+                            mutate(connection, job, targets);
+                        }
+                    } else {
+                        // Revokes and reassigns move gifts between gift boxes, so the owners' counters change with them
+                        Map<UUID, Integer> changes = new HashMap<>();
+                        if (job.getType() == BulkMutationJob.Type.REASSIGN) {
+                            owners.add(job.getTargetPlayer());
+                        }
+                        Map<UUID, Integer> counts = inboxLimiter.lock(connection, owners);
+                        targets = lockOwned(connection, job, targets);
+                        if (!targets.isEmpty()) {
+                            mutate(connection, job, targets);
+                        }
+                        targets.forEach(gift -> changes.merge(gift.getPlayerUUID(), -1, Integer::sum));
+                        if (job.getType() == BulkMutationJob.Type.REASSIGN) {
+                            // Reassigning is an admin action and may take the target over the limit
+                            changes.merge(job.getTargetPlayer(), targets.size(), Integer::sum);
+                        }
+                        refilled = inboxLimiter.settle(connection, counts, changes, System.currentTimeMillis());
+                    }
+                    writeLogRows(connection, job, targets);
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+                onChange.accept(owners, refilled);
+            }
+
+            job.lastId = gifts.get(gifts.size() - 1).getId();
+            job.addProcessed(targets.size());
+            debugLogger.debug("Bulk %s job %s: %d/%d gifts", job.getType(), job.getId(), job.getProcessed(), job.getTotal());
+            return gifts.size() == maxRowsPerStatement || nextTable(job);
+        }
+    }
+
+    /**
+     * Moves the job from the overflow table on to the gift boxes.
+     *
+     * @return false if the job already went through the gift boxes
+     */
+    private boolean nextTable(BulkMutationJob job) {
+        if (job.table.equals(TABLE_PRESENT)) {
+            return false;
+        }
+        job.table = TABLE_PRESENT;
+        job.lastId = null;
+        return true;
+    }
+
+    private long countCampaign(Connection connection, String campaignId) throws SQLException {
+        try (PreparedStatement ps = statements.prepare(connection, "SELECT (SELECT COUNT(*) FROM present WHERE CampaignID = ?) + " +
+                "(SELECT COUNT(*) FROM " + InboxLimiter.TABLE_OVERFLOW + " WHERE CampaignID = ?)")) {
+            ps.setString(1, campaignId);
+            ps.setString(2, campaignId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private List<Gift> selectChunk(Connection connection, BulkMutationJob job) throws SQLException {
+        String sql = job.lastId == null
+                ? "SELECT * FROM " + job.table + " WHERE CampaignID = ? ORDER BY ID ASC LIMIT ?"
+                : "SELECT * FROM " + job.table + " WHERE CampaignID = ? AND ID > ? ORDER BY ID ASC LIMIT ?";
+        List<Gift> gifts = new ArrayList<>();
+        try (PreparedStatement ps = statements.prepare(connection, sql)) {
+            int index = 1;
+            ps.setString(index++, job.getCampaignId());
+            if (job.lastId != null) {
+                ps.setString(index++, job.lastId);
+            }
+            ps.setInt(index, maxRowsPerStatement);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    gifts.add(DatabaseManager.readGift(rs));
+                }
+            }
+        }
+        return gifts;
+    }
+
+    /**
+     * Locks the selected gifts and drops those claimed or moved since they were selected.
+     */
+    private List<Gift> lockOwned(Connection connection, BulkMutationJob job, List<Gift> gifts) throws SQLException {
+        String ids = String.join(", ", Collections.nCopies(gifts.size(), "?"));
+        Map<String, String> owners = new HashMap<>();
+        try (PreparedStatement ps = statements.prepare(connection, "SELECT ID, UUID FROM " + job.table + " WHERE ID IN (" + ids + ") FOR UPDATE")) {
+            int index = 1;
+            for (Gift gift : gifts) {
+                ps.setString(index++, gift.getId());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    owners.put(rs.getString("ID"), rs.getString("UUID"));
+                }
+            }
+        }
+        return gifts.stream()
+                .filter(gift -> gift.getPlayerUUID().toString().equals(owners.get(gift.getId())))
+                .toList();
+    }
+
+    private void mutate(Connection connection, BulkMutationJob job, List<Gift> gifts) throws SQLException {
+        String ids = String.join(", ", Collections.nCopies(gifts.size(), "?"));
+        String sql = switch (job.getType()) {
+            case REVOKE -> "DELETE FROM " + job.table + " WHERE ID IN (" + ids + ")";
+            case EXTEND -> "UPDATE " + job.table + " SET ExpireStamp = ExpireStamp + ? WHERE ExpireStamp != -1 AND ID IN (" + ids + ")";
+            case REASSIGN -> "UPDATE " + job.table + " SET UUID = ? WHERE ID IN (" + ids + ")";
+        };
+        try (PreparedStatement ps = statements.prepare(connection, sql)) {
+            int index = 1;
+            if (job.getType() == BulkMutationJob.Type.EXTEND) {
+                ps.setLong(index++, job.getExtendMillis());
+            } else if (job.getType() == BulkMutationJob.Type.REASSIGN) {
+                ps.setString(index++, job.getTargetPlayer().toString());
+            }
+            for (Gift gift : gifts) {
+                ps.setString(index++, gift.getId());
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    private void writeLogRows(Connection connection, BulkMutationJob job, List<Gift> gifts) throws SQLException {
+        LogResult result = switch (job.getType()) {
+            case REVOKE -> LogResult.REVOKED;
+            case EXTEND -> LogResult.EXTENDED;
+            case REASSIGN -> LogResult.REASSIGNED;
+        };
+        String sql = "INSERT INTO present_log (GiftID, PlayerUUID, ItemStack, Count, Sender, Result, TimeStamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        long now = System.currentTimeMillis();
+        try (PreparedStatement ps = statements.prepare(connection, sql)) {
+            for (Gift gift : gifts) {
+                ps.setString(1, gift.getId());
+                ps.setString(2, gift.getPlayerUUID().toString());
+                ps.setString(3, gift.getSerializedItem());
+                ps.setInt(4, gift.getAmount());
+                ps.setString(5, gift.getSender());
+                ps.setInt(6, result.getValue());
+                ps.setLong(7, now);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+}
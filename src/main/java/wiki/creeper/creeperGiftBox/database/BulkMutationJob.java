@@ -0,0 +1,150 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A running bulk change to every gift of one campaign.
+ *
+ * Jobs work through the campaign in chunks ordered by gift ID, first in the overflow table and
+ * then in the gift boxes, and can be paused and resumed between chunks. The completion future yields the number of gifts changed.
+ */
+public class BulkMutationJob {
+
+    public enum Type {
+        /** 캠페인의 선물을 모두 회수(삭제)합니다. */
+        REVOKE,
+        /** 캠페인 선물의 만료 시간을 연장합니다. 영구 보관 선물은 변경되지 않습니다. */
+        EXTEND,
+        /** 캠페인의 선물을 다른 플레이어에게 옮깁니다. */
+        REASSIGN
+    }
+
+    public enum State {
+        RUNNING,
+        PAUSED,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String id;
+    private final Type type;
+    private final String campaignId;
+    private final long extendMillis;
+    private final UUID targetPlayer;
+    private final BulkMutationEngine engine;
+    private final AtomicLong processed = new AtomicLong();
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+    final AtomicBoolean active = new AtomicBoolean();
+    volatile String table = InboxLimiter.TABLE_OVERFLOW;
+    volatile String lastId;
+    private volatile long total = -1;
+    private volatile State state = State.RUNNING;
+
+    BulkMutationJob(String id, Type type, String campaignId, long extendMillis, UUID targetPlayer, BulkMutationEngine engine) {
+        this.id = id;
+        this.type = type;
+        this.campaignId = campaignId;
+        this.extendMillis = extendMillis;
+        this.targetPlayer = targetPlayer;
+        this.engine = engine;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getCampaignId() {
+        return campaignId;
+    }
+
+    /**
+     * @return 연장할 시간 (밀리초), EXTEND 작업이 아니면 0
+     */
+    public long getExtendMillis() {
+        return extendMillis;
+    }
+
+    /**
+     * @return 선물을 받을 플레이어, REASSIGN 작업이 아니면 null
+     */
+    public UUID getTargetPlayer() {
+        return targetPlayer;
+    }
+
+    /**
+     * @return 지금까지 변경된 선물 수
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return 작업 시작 시점의 캠페인 선물 수, 아직 세지 않았으면 -1
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return 작업이 끝나면 변경된 선물 수로 완료되는 CompletableFuture
+     */
+    public CompletableFuture<Long> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * 현재 청크가 끝난 뒤 작업을 멈춥니다.
+     *
+     * @return 실행 중이던 작업이 멈췄으면 true
+     */
+    public synchronized boolean pause() {
+        if (state != State.RUNNING) {
+            return false;
+        }
+        state = State.PAUSED;
+        return true;
+    }
+
+    /**
+     * 멈춘 작업을 마지막으로 처리한 선물 다음부터 다시 시작합니다.
+     *
+     * @return 멈춰 있던 작업이 재개되었으면 true
+     */
+    public synchronized boolean resume() {
+        if (state != State.PAUSED) {
+            return false;
+        }
+        state = State.RUNNING;
+        engine.schedule(this, 0);
+        return true;
+    }
+
+    void setTotal(long total) {
+        this.total = total;
+    }
+
+    void addProcessed(long count) {
+        processed.addAndGet(count);
+    }
+
+    synchronized void complete() {
+        state = State.COMPLETED;
+        completion.complete(processed.get());
+    }
+
+    synchronized void fail(Throwable throwable) {
+        state = State.FAILED;
+        completion.completeExceptionally(throwable);
+    }
+}
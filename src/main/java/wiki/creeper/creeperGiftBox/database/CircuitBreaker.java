@@ -0,0 +1,144 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops sending work to the database while it is failing.
+ *
+ * After {@code failureThreshold} consecutive database failures the breaker opens and calls
+ * fail immediately instead of waiting for connection and query timeouts. Once the open period
+ * has passed a single probe call is let through (half-open); its success closes the breaker
+ * and its failure opens it again. Calls let through before the last state change are ignored
+ * when they complete, so a slow call from before an outage cannot close or reopen the breaker.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final CreeperGiftBox plugin;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final AtomicLong rejectedCalls = new AtomicLong();
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private boolean probeInFlight = false;
+    // Changes with every state transition; permits from an earlier generation are stale
+    private long generation = 0;
+
+    CircuitBreaker(CreeperGiftBox plugin, int failureThreshold, long openMillis) {
+        this.plugin = plugin;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return the permit to pass to {@link #record} once the call completes, or null if it must fail fast
+     */
+    synchronized Permit tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return new Permit(generation, false);
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt >= openMillis) {
+                    transition(State.HALF_OPEN);
+                    probeInFlight = true;
+                    return new Permit(generation, true);
+                }
+                break;
+            case HALF_OPEN:
+                if (!probeInFlight) {
+                    probeInFlight = true;
+                    return new Permit(generation, true);
+                }
+                break;
+        }
+        rejectedCalls.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Records the outcome of a call let through by {@link #tryAcquire()}.
+     * Failures that are not caused by the database, such as bad input, do not count.
+     * Outcomes of calls let through before the last state change are ignored.
+     */
+    synchronized void record(Permit permit, Throwable throwable) {
+        if (permit.generation != generation) {
+            return;
+        }
+        if (permit.probe) {
+            probeInFlight = false;
+        }
+        if (throwable != null && !isDatabaseFailure(throwable)) {
+            return;
+        }
+        if (throwable == null) {
+            consecutiveFailures = 0;
+            if (state != State.CLOSED) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            openedAt = System.currentTimeMillis();
+            transition(State.OPEN);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return number of calls failed fast since the plugin was enabled
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.get();
+    }
+
+    private void transition(State next) {
+        if (next == State.OPEN) {
+            plugin.getLogger().warning("Database circuit breaker opened after " + consecutiveFailures
+                    + " failures, failing fast for " + (openMillis / 1000) + "s");
+        } else if (next == State.CLOSED) {
+            plugin.getLogger().info("Database circuit breaker closed, database calls resumed");
+        }
+        state = next;
+        generation++;
+    }
+
+    /**
+     * A call let through by {@link #tryAcquire()}.
+     */
+    static final class Permit {
+        private final long generation;
+        private final boolean probe;
+
+        private Permit(long generation, boolean probe) {
+            this.generation = generation;
+            this.probe = probe;
+        }
+    }
+
+    private static boolean isDatabaseFailure(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
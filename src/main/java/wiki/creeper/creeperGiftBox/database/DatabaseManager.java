@@ -2,27 +2,40 @@ package wiki.creeper.creeperGiftBox.database;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
-import org.bukkit.Bukkit;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import wiki.creeper.creeperGiftBox.CreeperGiftBox;
 import wiki.creeper.creeperGiftBox.config.ConfigManager;
-import wiki.creeper.creeperGiftBox.event.GiftExpiredEvent;
-import wiki.creeper.creeperGiftBox.event.GiftSentEvent;
 import wiki.creeper.creeperGiftBox.model.Gift;
-import wiki.creeper.creeperGiftBox.util.ItemSerializer;
+import wiki.creeper.creeperGiftBox.model.GiftSearch;
+import wiki.creeper.creeperGiftBox.model.LogEntry;
+import wiki.creeper.creeperGiftBox.model.LogQuery;
+import wiki.creeper.creeperGiftBox.task.OnlineExpiryTracker;
 import wiki.creeper.creeperGiftBox.util.SchedulerUtil;
 
+import javax.sql.DataSource;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 /**
@@ -38,14 +51,50 @@ public class DatabaseManager {
 
     private static final String TABLE_PRESENT = "present";
     private static final String TABLE_PRESENT_LOG = "present_log";
+    private static final int MAX_POOL_SIZE = 10;
+    // Gift streams hold their connection for as long as the subscriber reads, so only a few may be open
+    private static final int MAX_OPEN_STREAMS = MAX_POOL_SIZE / 4;
+    private static final String TABLE_SCHEMA = "giftbox_schema";
+    // Bump whenever createSchema changes, so existing servers run the schema checks once more
+    private static final int SCHEMA_VERSION = 4;
+
+    private static final String SQL_INSERT_GIFT = "INSERT INTO present (ID, UUID, ItemStack, Count, Sender, TimeStamp, ExpireStamp, Material, CustomModelData, SenderKey, CampaignID) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_SELECT_GIFTS = "SELECT * FROM present WHERE UUID = ? AND (ExpireStamp = -1 OR ExpireStamp > ?) ORDER BY TimeStamp ASC LIMIT ?";
+    private static final String SQL_COUNT_GIFTS = "SELECT COUNT(*) FROM present WHERE UUID = ? AND (ExpireStamp = -1 OR ExpireStamp > ?)";
+    private static final String SQL_DELETE_GIFT = "DELETE FROM " + TABLE_PRESENT + " WHERE ID = ?";
+    // Expired gifts removed per sweep, so one sweep stays within the maintenance deadline
+    private static final int SWEEP_LIMIT = 5000;
+    private static final List<String> HOT_STATEMENTS = List.of(SQL_INSERT_GIFT, SQL_SELECT_GIFTS, SQL_COUNT_GIFTS, SQL_DELETE_GIFT);
     
     private final CreeperGiftBox plugin;
     private final HikariDataSource dataSource;
+    private final LogRetentionManager logRetentionManager;
+    private final AuditLogReader auditLogReader;
+    private final GiftSearchIndex giftSearchIndex;
+    private final BulkMutationEngine bulkMutationEngine;
+    private final DistributionEngine distributionEngine;
+    private final GiftCompactor giftCompactor;
+    private final GiftArchiver giftArchiver;
+    private final IdempotencyKeys idempotencyKeys;
+    private final InboxLimiter inboxLimiter;
+    private final MaintenanceGate maintenanceGate = new MaintenanceGate();
+    private final SweeperLease sweeperLease;
+    private final CircuitBreaker circuitBreaker;
+    private final ReplicaRouter replicaRouter;
+    private final StatementFactory statements;
+    private final long operationTimeoutMillis;
+    private final long maintenanceTimeoutMillis;
+    private final long streamIdleTimeoutMillis;
+    private final int prewarmConnections;
+    private final Semaphore startupQueuePermits;
+    private final Semaphore streamPermits = new Semaphore(MAX_OPEN_STREAMS);
     private volatile boolean isInitialized = false;
     private final Executor queryExecutor;
     private volatile boolean closed = false;
     private final CompletableFuture<Void> initializationFuture = new CompletableFuture<>();
     private final AtomicBoolean initializationStarted = new AtomicBoolean(false);
+    private final ConcurrentHashMap<UUID, InFlightGiftRead> inFlightGiftReads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, CompletableFuture<Integer>> inFlightCountReads = new ConcurrentHashMap<>();
 
     /**
      * Creates a new DatabaseManager with HikariCP connection pool.
@@ -56,20 +105,14 @@ public class DatabaseManager {
      */
     public DatabaseManager(CreeperGiftBox plugin, ConfigManager configManager) {
         this.plugin = plugin;
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:mysql://" + configManager.getDbHost() + ":" + configManager.getDbPort() + "/" + configManager.getDbName());
-        config.setUsername(configManager.getDbUser());
-        config.setPassword(configManager.getDbPassword());
-        config.addDataSourceProperty("cachePrepStmts", "true");
-        config.addDataSourceProperty("prepStmtCacheSize", "250");
-        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-        config.setPoolName("CreeperGiftBox-Pool");
-        config.setMaximumPoolSize(10);
-        config.setMinimumIdle(2);
-        config.setConnectionTimeout(30000);
-        config.setIdleTimeout(600000);
-        config.setMaxLifetime(1800000);
-        config.setLeakDetectionThreshold(60000);
+        this.statements = new StatementFactory(configManager.getQueryTimeout());
+        this.operationTimeoutMillis = configManager.getOperationTimeout() * 1000L;
+        this.maintenanceTimeoutMillis = configManager.getMaintenanceTimeout() * 1000L;
+        this.streamIdleTimeoutMillis = configManager.getStreamIdleTimeout() * 1000L;
+        this.prewarmConnections = configManager.getPrewarmConnections();
+        this.startupQueuePermits = new Semaphore(configManager.getStartupQueueSize());
+        HikariConfig config = createPoolConfig("CreeperGiftBox-Pool", configManager.getDbHost(), configManager.getDbPort(),
+                configManager.getDbName(), configManager.getDbUser(), configManager.getDbPassword());
         
         try {
             this.dataSource = new HikariDataSource(config);
@@ -78,7 +121,57 @@ public class DatabaseManager {
             throw new RuntimeException("Database initialization failed", e);
         }
 
+        HikariDataSource replicaDataSource = null;
+        if (configManager.isReplicaEnabled()) {
+            HikariConfig replicaConfig = createPoolConfig("CreeperGiftBox-Replica", configManager.getReplicaHost(), configManager.getReplicaPort(),
+                    configManager.getReplicaDbName(), configManager.getReplicaUser(), configManager.getReplicaPassword());
+            replicaConfig.setReadOnly(true);
+            try {
+                replicaDataSource = new HikariDataSource(replicaConfig);
+            } catch (Exception e) {
+                // The primary can serve every read, so a broken replica is not fatal
+                plugin.getLogger().log(Level.WARNING, "Failed to connect to the read replica, reading from the primary", e);
+            }
+        }
+        this.replicaRouter = new ReplicaRouter(plugin, dataSource, replicaDataSource,
+                configManager.getReplicaStickySeconds() * 1000L, configManager.getReplicaMaxLagSeconds() * 1000L);
+
         this.queryExecutor = SchedulerUtil.asyncExecutor(plugin);
+        this.logRetentionManager = new LogRetentionManager(plugin, configManager, dataSource);
+        this.auditLogReader = new AuditLogReader(plugin, dataSource, statements, logRetentionManager);
+        this.giftSearchIndex = new GiftSearchIndex(plugin, dataSource, statements, TABLE_PRESENT);
+        this.inboxLimiter = new InboxLimiter(statements, giftSearchIndex, configManager.getInboxMaxGifts(), configManager.getInboxOverflowPolicy());
+        this.bulkMutationEngine = new BulkMutationEngine(plugin, dataSource, statements, queryExecutor, inboxLimiter, maintenanceGate, this::bulkChunkApplied,
+                configManager.getBulkMaxRowsPerStatement(), configManager.getBulkChunkDelay());
+        this.distributionEngine = new DistributionEngine(plugin, dataSource, statements, queryExecutor, giftSearchIndex, inboxLimiter, maintenanceGate, this::distributionChunkSent,
+                configManager.getDistributionChunkSize(), configManager.getDistributionRowsPerSecond());
+        this.giftCompactor = new GiftCompactor(dataSource, statements, inboxLimiter);
+        this.idempotencyKeys = new IdempotencyKeys(statements, configManager.getIdempotencyKeyTtlHours() * 3600_000L);
+        // Half the pool at most, so players are still served while a backup runs
+        this.giftArchiver = new GiftArchiver(plugin, dataSource, queryExecutor, inboxLimiter, maintenanceGate, maintenanceTimeoutMillis,
+                Math.min(configManager.getBackupParallelism(), MAX_POOL_SIZE / 2), configManager.getBackupBatchSize());
+        this.circuitBreaker = new CircuitBreaker(plugin, configManager.getCircuitBreakerThreshold(),
+                configManager.getCircuitBreakerOpenSeconds() * 1000L);
+        this.sweeperLease = new SweeperLease(plugin, dataSource, statements, configManager.getSweeperLeaseSeconds() * 1000L);
+    }
+
+    private HikariConfig createPoolConfig(String poolName, String host, int port, String database, String user, String password) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database);
+        config.setUsername(user);
+        config.setPassword(password);
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        config.setPoolName(poolName);
+        config.setMaximumPoolSize(MAX_POOL_SIZE);
+        config.setMinimumIdle(2);
+        // Never wait longer for a connection than the whole operation may take
+        config.setConnectionTimeout(Math.min(30000, operationTimeoutMillis));
+        config.setIdleTimeout(600000);
+        config.setMaxLifetime(1800000);
+        config.setLeakDetectionThreshold(60000);
+        return config;
     }
 
     /**
@@ -101,38 +194,25 @@ public class DatabaseManager {
                 return true;
             }
 
+            // Connections and hot statements warm up while the schema is checked
+            prewarmPool();
             try (Connection connection = dataSource.getConnection()) {
-                String createPresentTable = "CREATE TABLE IF NOT EXISTS present (" +
-                        "ID VARCHAR(36) PRIMARY KEY, " +
-                        "UUID VARCHAR(36) NOT NULL, " +
-                        "ItemStack TEXT NOT NULL, " +
-                        "Count INT NOT NULL, " +
-                        "Sender VARCHAR(255) NOT NULL, " +
-                        "TimeStamp BIGINT NOT NULL, " +
-                        "ExpireStamp BIGINT NOT NULL, " +
-                        "INDEX uuid_index (UUID));";
-                try (PreparedStatement ps = connection.prepareStatement(createPresentTable)) {
-                    ps.execute();
-                }
-
-                String createLogTable = "CREATE TABLE IF NOT EXISTS present_log (" +
-                        "LogID INT AUTO_INCREMENT PRIMARY KEY, " +
-                        "GiftID VARCHAR(36) NOT NULL, " +
-                        "PlayerUUID VARCHAR(36) NOT NULL, " +
-                        "ItemStack TEXT NOT NULL, " +
-                        "Count INT NOT NULL, " +
-                        "Sender VARCHAR(255) NOT NULL, " +
-                        "Result INT NOT NULL, " +
-                        "TimeStamp BIGINT NOT NULL);";
-                try (PreparedStatement ps = connection.prepareStatement(createLogTable)) {
-                    ps.execute();
+                if (readSchemaVersion(connection) == SCHEMA_VERSION) {
+                    plugin.getLogger().info("Database schema is at version " + SCHEMA_VERSION + ", skipping schema checks");
+                } else {
+                    createSchema(connection);
+                    writeSchemaVersion(connection);
                 }
+                // Only exists while a replica is configured, so it is not covered by the version
+                replicaRouter.ensureSchema(connection);
 
                 isInitialized = true;
                 if (!initializationFuture.isDone()) {
                     initializationFuture.complete(null);
                 }
                 plugin.getLogger().info("Database tables initialized successfully");
+                backfillSearchColumns();
+                resumeDistributions();
                 return true;
             } catch (SQLException e) {
                 if (!initializationFuture.isDone()) {
@@ -150,6 +230,135 @@ public class DatabaseManager {
         });
     }
 
+    /**
+     * Creates or upgrades every table, column and index of the current schema version.
+     */
+    private void createSchema(Connection connection) throws SQLException {
+        String createPresentTable = "CREATE TABLE IF NOT EXISTS present (" +
+                "ID VARCHAR(36) PRIMARY KEY, " +
+                "UUID VARCHAR(36) NOT NULL, " +
+                "ItemStack TEXT NOT NULL, " +
+                "Count INT NOT NULL, " +
+                "Sender VARCHAR(255) NOT NULL, " +
+                "TimeStamp BIGINT NOT NULL, " +
+                "ExpireStamp BIGINT NOT NULL, " +
+                "Material VARCHAR(64) NULL, " +
+                "CustomModelData INT NULL, " +
+                "SenderKey VARCHAR(255) NULL, " +
+                "CampaignID VARCHAR(64) NULL, " +
+                "INDEX uuid_index (UUID), " +
+                "INDEX campaign_index (CampaignID, ID), " +
+                "INDEX expire_index (ExpireStamp), " +
+                "INDEX material_index (Material, CustomModelData, ID), " +
+                "INDEX sender_key_index (SenderKey, ID));";
+        try (PreparedStatement ps = connection.prepareStatement(createPresentTable)) {
+            ps.execute();
+        }
+        // Search columns are nullable so older tables get them without a rebuild
+        ensureColumn(connection, TABLE_PRESENT, "Material", "VARCHAR(64) NULL");
+        ensureColumn(connection, TABLE_PRESENT, "CustomModelData", "INT NULL");
+        ensureColumn(connection, TABLE_PRESENT, "SenderKey", "VARCHAR(255) NULL");
+        ensureColumn(connection, TABLE_PRESENT, "CampaignID", "VARCHAR(64) NULL");
+        ensureIndex(connection, TABLE_PRESENT, "campaign_index", "CampaignID, ID");
+        ensureIndex(connection, TABLE_PRESENT, "expire_index", "ExpireStamp");
+        sweeperLease.ensureSchema(connection);
+        ensureIndex(connection, TABLE_PRESENT, "material_index", "Material, CustomModelData, ID");
+        ensureIndex(connection, TABLE_PRESENT, "sender_key_index", "SenderKey, ID");
+
+        String createLogTable = logRetentionManager.usePartitionedLogTable()
+                ? logRetentionManager.createPartitionedLogTableSql()
+                : "CREATE TABLE IF NOT EXISTS present_log (" +
+                "LogID INT AUTO_INCREMENT PRIMARY KEY, " +
+                "GiftID VARCHAR(36) NOT NULL, " +
+                "PlayerUUID VARCHAR(36) NOT NULL, " +
+                "ItemStack TEXT NOT NULL, " +
+                "Count INT NOT NULL, " +
+                "Sender VARCHAR(255) NOT NULL, " +
+                "Result INT NOT NULL, " +
+                "TimeStamp BIGINT NOT NULL, " +
+                "INDEX timestamp_index (TimeStamp), " +
+                "INDEX player_time_index (PlayerUUID, TimeStamp), " +
+                "INDEX sender_time_index (Sender, TimeStamp), " +
+                "INDEX gift_index (GiftID));";
+        try (PreparedStatement ps = connection.prepareStatement(createLogTable)) {
+            ps.execute();
+        }
+        // Tables created before the index existed get it added online
+        ensureIndex(connection, TABLE_PRESENT_LOG, "timestamp_index", "TimeStamp");
+        ensureIndex(connection, TABLE_PRESENT_LOG, "player_time_index", "PlayerUUID, TimeStamp");
+        ensureIndex(connection, TABLE_PRESENT_LOG, "sender_time_index", "Sender, TimeStamp");
+        ensureIndex(connection, TABLE_PRESENT_LOG, "gift_index", "GiftID");
+        logRetentionManager.ensureSchema(connection);
+        distributionEngine.ensureSchema(connection);
+        inboxLimiter.ensureSchema(connection);
+        idempotencyKeys.ensureSchema(connection);
+    }
+
+    private int readSchemaVersion(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("CREATE TABLE IF NOT EXISTS " + TABLE_SCHEMA + " (" +
+                "Name VARCHAR(32) PRIMARY KEY, " +
+                "Version INT NOT NULL);")) {
+            ps.execute();
+        }
+        try (PreparedStatement ps = connection.prepareStatement("SELECT Version FROM " + TABLE_SCHEMA + " WHERE Name = ?")) {
+            ps.setString(1, TABLE_PRESENT);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    private void writeSchemaVersion(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO " + TABLE_SCHEMA + " (Name, Version) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE Version = VALUES(Version)")) {
+            ps.setString(1, TABLE_PRESENT);
+            ps.setInt(2, SCHEMA_VERSION);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Opens several pool connections at once and prepares the hot statements on each,
+     * so the first players after a start do not pay for connection setup.
+     * Failures are only logged; the pool opens connections on demand anyway.
+     */
+    private void prewarmPool() {
+        List<CompletableFuture<Connection>> opened = new ArrayList<>();
+        for (int i = 0; i < Math.min(prewarmConnections, MAX_POOL_SIZE); i++) {
+            opened.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    Connection connection = dataSource.getConnection();
+                    for (String sql : HOT_STATEMENTS) {
+                        prepare(connection, sql).close();
+                    }
+                    return connection;
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, queryExecutor));
+        }
+        // Connections are held until all are open so each task warms a different one
+        CompletableFuture.allOf(opened.toArray(CompletableFuture[]::new)).whenComplete((ignored, throwable) -> {
+            int warmed = 0;
+            for (CompletableFuture<Connection> future : opened) {
+                Connection connection = future.getNow(null);
+                if (future.isCompletedExceptionally() || connection == null) {
+                    continue;
+                }
+                warmed++;
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.FINE, "Failed to return a prewarmed connection", e);
+                }
+            }
+            if (throwable != null) {
+                plugin.getLogger().log(Level.WARNING, "Failed to prewarm the connection pool", throwable);
+            }
+            plugin.getLogger().info("Prewarmed " + warmed + " database connections");
+        });
+    }
+
     /**
      * Returns a future that completes when the database has finished initializing.
      * External callers can await this to ensure the schema is ready.
@@ -166,6 +375,15 @@ public class DatabaseManager {
      */
     public void close() {
         closed = true;
+        bulkMutationEngine.close();
+        distributionEngine.close();
+        giftArchiver.close();
+        try {
+            sweeperLease.release();
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to release the expiration sweeper lease", e);
+        }
+        replicaRouter.close();
         if (dataSource != null && !dataSource.isClosed()) {
             try {
                 dataSource.close();
@@ -179,47 +397,102 @@ public class DatabaseManager {
 
     /**
      * Adds a new gift to the database asynchronously.
-     * Also logs the action and fires a GiftSentEvent.
+     * The recipient's gift box limit is checked against their stored gift counter; a gift over the
+     * limit is handled by the configured overflow policy and fires a {@code GiftBoxFullEvent}.
+     * Also logs the action and queues the sent gift for the next event batch.
      * 
      * @param gift The gift to add
-     * @return CompletableFuture<Void> that completes when the gift is added
-     * @throws CompletionException if the database operation fails
+     * @return CompletableFuture<Void> that completes when the gift is stored
+     * @throws CompletionException if the database operation fails, or with an {@link InboxFullException}
+     *         if the gift box is full and the policy is REJECT
      */
     public CompletableFuture<Void> addGift(Gift gift) {
+        return addGift(gift, null);
+    }
+
+    /**
+     * Adds a new gift unless a send with the same idempotency key already stored one within the
+     * key horizon, in which case the future completes normally without storing anything.
+     * A rejected gift releases its key, so the send can be retried once there is room.
+     *
+     * @param gift The gift to add
+     * @param idempotencyKey Key identifying the send across retries, or null to always store the gift
+     * @return CompletableFuture<Void> that completes when the gift is stored or found to be a duplicate
+     * @throws CompletionException if the database operation fails, or with an {@link InboxFullException}
+     *         if the gift box is full and the policy is REJECT
+     */
+    public CompletableFuture<Void> addGift(Gift gift, String idempotencyKey) {
         if (closed) {
             return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
         }
-        return CompletableFuture.runAsync(() -> {
-            try (Connection connection = dataSource.getConnection();
-                 PreparedStatement ps = connection.prepareStatement("INSERT INTO present (ID, UUID, ItemStack, Count, Sender, TimeStamp, ExpireStamp) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
-                ps.setString(1, gift.getId());
-                ps.setString(2, gift.getPlayerUUID().toString());
-                ps.setString(3, ItemSerializer.serialize(gift.getItemStack()));
-                ps.setInt(4, gift.getItemStack().getAmount());
-                ps.setString(5, gift.getSender());
-                ps.setLong(6, gift.getTimestamp());
-                ps.setLong(7, gift.getExpireStamp());
-                int affectedRows = ps.executeUpdate();
-                if (affectedRows == 0) {
-                    throw new SQLException("Failed to insert gift, no rows affected");
+        return supplyGated(() -> {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    // Claimed before the counters are locked, so every send takes its locks in the same order
+                    if (idempotencyKey != null && !idempotencyKeys.claim(connection, idempotencyKey, gift.getId(), gift.getTimestamp())) {
+                        connection.rollback();
+                        return null;
+                    }
+                    InboxLimiter.Admission admission = inboxLimiter.admit(connection, List.of(gift), gift.getTimestamp());
+                    if (!admission.accepted.isEmpty()) {
+                        try (PreparedStatement ps = prepare(connection, SQL_INSERT_GIFT)) {
+                            ps.setString(1, gift.getId());
+                            ps.setString(2, gift.getPlayerUUID().toString());
+                            ps.setString(3, gift.getSerializedItem());
+                            ps.setInt(4, gift.getAmount());
+                            ps.setString(5, gift.getSender());
+                            ps.setLong(6, gift.getTimestamp());
+                            ps.setLong(7, gift.getExpireStamp());
+                            giftSearchIndex.bindColumns(ps, 8, gift);
+                            ps.setString(11, gift.getCampaignId());
+                            if (ps.executeUpdate() == 0) {
+                                throw new SQLException("Failed to insert gift, no rows affected");
+                            }
+                        }
+                    }
+                    if (idempotencyKey != null && !admission.rejected.isEmpty()) {
+                        // Nothing was stored, so the key must not turn a later retry into a no-op
+                        connection.rollback();
+                    } else {
+                        connection.commit();
+                    }
+                    return admission;
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
                 }
-                
-                logAction(gift, LogResult.SENT).exceptionally(ex -> {
-                    plugin.getLogger().log(Level.WARNING, "Failed to log gift sent action", ex);
-                    return null;
-                });
-                
-                Bukkit.getScheduler().runTask(plugin, () -> Bukkit.getPluginManager().callEvent(new GiftSentEvent(gift)));
             } catch (SQLException | IllegalStateException e) {
                 plugin.getLogger().log(Level.SEVERE, "Error adding gift to database for player " + gift.getPlayerUUID(), e);
                 throw new CompletionException("Failed to add gift", e);
             }
-        }, queryExecutor);
+        }).thenAccept(admission -> {
+            if (admission == null) {
+                // A retry of a send that already stored its gift
+                return;
+            }
+            // Thrown outside the guarded call so a full gift box never counts as a database failure
+            giftsAdmitted(admission);
+            if (!admission.rejected.isEmpty()) {
+                throw new InboxFullException(gift.getPlayerUUID());
+            }
+            logAction(gift, LogResult.SENT).exceptionally(ex -> {
+                plugin.getLogger().log(Level.WARNING, "Failed to log gift sent action", ex);
+                return null;
+            });
+        });
     }
 
     /**
      * Retrieves gifts for a specific player asynchronously.
      * Only returns non-expired gifts, ordered by timestamp.
+     * Concurrent calls for the same player share a single in-flight query; a query
+     * started with a larger limit also serves callers asking for fewer gifts.
+     * Every caller receives its own Gift instances, which decode their own ItemStacks,
+     * so one caller modifying or rendering a gift never affects another.
+     * Nothing is retained once the query completes.
      * 
      * @param playerUUID The player's UUID
      * @param limit Maximum number of gifts to retrieve
@@ -230,39 +503,70 @@ public class DatabaseManager {
         if (closed) {
             return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
         }
-        return CompletableFuture.supplyAsync(() -> {
-            List<Gift> gifts = new ArrayList<>();
-            String query = "SELECT * FROM present WHERE UUID = ? AND (ExpireStamp = -1 OR ExpireStamp > ?) ORDER BY TimeStamp ASC LIMIT ?";
-            try (Connection connection = dataSource.getConnection();
-                 PreparedStatement ps = connection.prepareStatement(query)) {
-                ps.setString(1, playerUUID.toString());
-                ps.setLong(2, System.currentTimeMillis());
-                ps.setInt(3, limit);
-                try (ResultSet rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        gifts.add(new Gift(
-                                rs.getString("ID"),
-                                UUID.fromString(rs.getString("UUID")),
-                                ItemSerializer.deserialize(rs.getString("ItemStack")),
-                                rs.getString("Sender"),
-                                rs.getLong("TimeStamp"),
-                                rs.getLong("ExpireStamp")
-                        ));
-                    }
+        InFlightGiftRead candidate = new InFlightGiftRead(limit);
+        InFlightGiftRead read = inFlightGiftReads.compute(playerUUID, (uuid, current) ->
+                current != null && current.limit >= limit ? current : candidate);
+
+        if (read == candidate) {
+            supplyGated(() -> queryGifts(replicaRouter.forPlayerRead(playerUUID), playerUUID, limit))
+                    .whenComplete((gifts, throwable) -> {
+                        inFlightGiftReads.remove(playerUUID, candidate);
+                        if (throwable != null) {
+                            candidate.future.completeExceptionally(throwable);
+                        } else {
+                            candidate.future.complete(gifts);
+                        }
+                    });
+        }
+        // The shared rows are only ever copied, never handed out or decoded themselves
+        return read.future.thenApply(gifts -> {
+            List<Gift> copies = new ArrayList<>(Math.min(limit, gifts.size()));
+            for (Gift gift : gifts.subList(0, Math.min(limit, gifts.size()))) {
+                copies.add(copyStoredGift(gift));
+            }
+            return copies;
+        });
+    }
+
+    /**
+     * Retrieves gifts a player is about to claim asynchronously, always from the primary.
+     * A replica may still hold gifts that were already claimed, revoked or expired elsewhere,
+     * so claims never read from it, and they never share a query with other reads.
+     *
+     * @param playerUUID The player's UUID
+     * @param limit Maximum number of gifts to retrieve
+     * @return CompletableFuture<List<Gift>> containing the player's gifts
+     * @throws CompletionException if the database operation fails
+     */
+    public CompletableFuture<List<Gift>> getGiftsForClaim(UUID playerUUID, int limit) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return supplyGated(() -> queryGifts(dataSource, playerUUID, limit));
+    }
+
+    private List<Gift> queryGifts(DataSource source, UUID playerUUID, int limit) {
+        List<Gift> gifts = new ArrayList<>();
+        try (Connection connection = source.getConnection();
+             PreparedStatement ps = prepare(connection, SQL_SELECT_GIFTS)) {
+            ps.setString(1, playerUUID.toString());
+            ps.setLong(2, System.currentTimeMillis());
+            ps.setInt(3, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    gifts.add(readGift(rs));
                 }
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Database error while getting gifts for player " + playerUUID, e);
-                throw new CompletionException("Failed to retrieve gifts", e);
-            } catch (IOException e) {
-                plugin.getLogger().log(Level.SEVERE, "Deserialization error while getting gifts for player " + playerUUID, e);
-                throw new CompletionException("Failed to deserialize gift items", e);
             }
-            return gifts;
-        }, queryExecutor);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Database error while getting gifts for player " + playerUUID, e);
+            throw new CompletionException("Failed to retrieve gifts", e);
+        }
+        return gifts;
     }
 
     /**
      * Gets the count of non-expired gifts for a player asynchronously.
+     * Concurrent calls for the same player share a single in-flight query.
      * 
      * @param playerUUID The player's UUID
      * @return CompletableFuture<Integer> containing the gift count
@@ -272,91 +576,141 @@ public class DatabaseManager {
         if (closed) {
             return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
         }
-        return CompletableFuture.supplyAsync(() -> {
-            String query = "SELECT COUNT(*) FROM present WHERE UUID = ? AND (ExpireStamp = -1 OR ExpireStamp > ?)";
-            try (Connection connection = dataSource.getConnection();
-                 PreparedStatement ps = connection.prepareStatement(query)) {
-                ps.setString(1, playerUUID.toString());
-                ps.setLong(2, System.currentTimeMillis());
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getInt(1);
+        CompletableFuture<Integer> candidate = new CompletableFuture<>();
+        CompletableFuture<Integer> read = inFlightCountReads.putIfAbsent(playerUUID, candidate);
+        if (read != null) {
+            return read;
+        }
+
+        supplyGated(() -> queryGiftCount(playerUUID))
+                .whenComplete((count, throwable) -> {
+                    inFlightCountReads.remove(playerUUID, candidate);
+                    if (throwable != null) {
+                        candidate.completeExceptionally(throwable);
+                    } else {
+                        candidate.complete(count);
                     }
+                });
+        return candidate;
+    }
+
+    private int queryGiftCount(UUID playerUUID) {
+        try (Connection connection = replicaRouter.forPlayerRead(playerUUID).getConnection();
+             PreparedStatement ps = prepare(connection, SQL_COUNT_GIFTS)) {
+            ps.setString(1, playerUUID.toString());
+            ps.setLong(2, System.currentTimeMillis());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
                 }
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Error getting gift count for player " + playerUUID, e);
-                throw new CompletionException("Failed to get gift count", e);
             }
-            return 0;
-        }, queryExecutor);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Error getting gift count for player " + playerUUID, e);
+            throw new CompletionException("Failed to get gift count", e);
+        }
+        return 0;
+    }
+
+    /**
+     * Detaches in-flight reads for a player so that callers arriving after a write
+     * never join a query that started before it. Running queries still complete
+     * for the callers already waiting on them.
+     *
+     * @param playerUUID The player whose inbox changed
+     */
+    private void invalidateInFlightReads(UUID playerUUID) {
+        inFlightGiftReads.remove(playerUUID);
+        inFlightCountReads.remove(playerUUID);
+    }
+
+    /**
+     * Detaches every in-flight read. Used by writes that do not know the affected players.
+     */
+    private void invalidateInFlightReads() {
+        inFlightGiftReads.clear();
+        inFlightCountReads.clear();
     }
 
     /**
      * Deletes a single gift from the database asynchronously.
+     * The owner's gift counter is lowered in the same transaction, and spilled gifts move back if there is room.
+     * The owner's reads stay on the primary for the read-your-writes window afterwards.
      * 
+     * @param playerUUID The owner of the gift
      * @param giftId The unique ID of the gift to delete
      * @return CompletableFuture<Boolean> true if the gift was deleted, false if not found
      * @throws CompletionException if the database operation fails
      */
-    public CompletableFuture<Boolean> deleteGift(String giftId) {
-        if (closed) {
-            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
-        }
-        return CompletableFuture.supplyAsync(() -> {
-            try (Connection connection = dataSource.getConnection();
-                 PreparedStatement ps = connection.prepareStatement("DELETE FROM " + TABLE_PRESENT + " WHERE ID = ?")) {
-                ps.setString(1, giftId);
-                int affectedRows = ps.executeUpdate();
-                return affectedRows > 0;
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Error deleting gift " + giftId + " from database", e);
-                throw new CompletionException("Failed to delete gift", e);
-            }
-        }, queryExecutor);
+    public CompletableFuture<Boolean> deleteGift(UUID playerUUID, String giftId) {
+        return claimGifts(playerUUID, List.of(giftId)).thenApply(deleted -> !deleted.isEmpty());
     }
 
     /**
      * Deletes multiple gifts from the database asynchronously.
      * Uses batch operations for better performance.
+     * The owner's gift counter is lowered in the same transaction, and spilled gifts move back if there is room.
+     * The owner's reads stay on the primary for the read-your-writes window afterwards.
      * 
+     * @param playerUUID The owner of the gifts
      * @param giftIds List of gift IDs to delete
      * @return CompletableFuture<Integer> number of gifts actually deleted
      * @throws CompletionException if the database operation fails
      */
-    public CompletableFuture<Integer> deleteGifts(List<String> giftIds) {
+    public CompletableFuture<Integer> deleteGifts(UUID playerUUID, List<String> giftIds) {
+        return claimGifts(playerUUID, giftIds).thenApply(Set::size);
+    }
+
+    /**
+     * Deletes gifts a player is claiming asynchronously, like {@link #deleteGifts(UUID, List)},
+     * and reports which of them this call deleted. Only those may be handed out; the others were
+     * already claimed, revoked or expired by someone else.
+     *
+     * @param playerUUID The owner of the gifts
+     * @param giftIds List of gift IDs to delete
+     * @return CompletableFuture<Set<String>> IDs of the gifts actually deleted
+     * @throws CompletionException if the database operation fails
+     */
+    public CompletableFuture<Set<String>> claimGifts(UUID playerUUID, List<String> giftIds) {
         if (closed) {
             return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
         }
-        return CompletableFuture.supplyAsync(() -> {
-            if (giftIds.isEmpty()) return 0;
+        return supplyGated(() -> {
+            Set<String> deleted = new HashSet<>();
+            if (giftIds.isEmpty()) return deleted;
 
-            // Use batch delete for better performance
-            String query = "DELETE FROM " + TABLE_PRESENT + " WHERE ID = ?";
-            try (Connection connection = dataSource.getConnection();
-                 PreparedStatement ps = connection.prepareStatement(query)) {
-                
+            try (Connection connection = dataSource.getConnection()) {
                 connection.setAutoCommit(false);
                 try {
-                    int totalDeleted = 0;
-                    int batchSize = 0;
-                    for (String giftId : giftIds) {
-                        ps.setString(1, giftId);
-                        ps.addBatch();
-                        batchSize++;
-
-                        if (batchSize == 100) {
-                            totalDeleted += countSuccessfulUpdates(ps.executeBatch());
-                            batchSize = 0;
+                    Map<UUID, Integer> counts = inboxLimiter.lock(connection, List.of(playerUUID));
+                    // Use batch delete for better performance
+                    try (PreparedStatement ps = prepare(connection, SQL_DELETE_GIFT)) {
+                        for (int start = 0; start < giftIds.size(); start += 100) {
+                            List<String> batch = giftIds.subList(start, Math.min(start + 100, giftIds.size()));
+                            for (String giftId : batch) {
+                                ps.setString(1, giftId);
+                                ps.addBatch();
+                            }
+                            int[] results = ps.executeBatch();
+                            for (int i = 0; i < results.length; i++) {
+                                if (results[i] > 0 || results[i] == PreparedStatement.SUCCESS_NO_INFO) {
+                                    deleted.add(batch.get(i));
+                                }
+                            }
                         }
                     }
 
-                    if (batchSize > 0) {
-                        totalDeleted += countSuccessfulUpdates(ps.executeBatch());
+                    List<Gift> refilled = List.of();
+                    if (!deleted.isEmpty()) {
+                        refilled = inboxLimiter.settle(connection, counts, Map.of(playerUUID, -deleted.size()), System.currentTimeMillis());
                     }
-
                     connection.commit();
-                    return totalDeleted;
-                } catch (SQLException e) {
+                    if (!deleted.isEmpty()) {
+                        replicaRouter.recordWrite(playerUUID);
+                        invalidateInFlightReads(playerUUID);
+                        giftsRefilled(refilled);
+                    }
+                    return deleted;
+                } catch (SQLException | RuntimeException e) {
                     connection.rollback();
                     throw e;
                 } finally {
@@ -366,7 +720,97 @@ public class DatabaseManager {
                 plugin.getLogger().log(Level.SEVERE, "Error deleting " + giftIds.size() + " gifts from database", e);
                 throw new CompletionException("Failed to delete gifts", e);
             }
-        }, queryExecutor);
+        });
+    }
+
+    /**
+     * Puts claimed gifts back into their owner's gift box asynchronously, when they were deleted
+     * by {@link #claimGifts} but could not be handed out, for example because the player logged
+     * out first. They go back even over the gift box limit, since they were there a moment ago.
+     *
+     * @param playerUUID The owner of the gifts
+     * @param gifts The gifts to put back
+     * @return CompletableFuture<Void> that completes when the gifts are stored again
+     * @throws CompletionException if the database operation fails
+     */
+    public CompletableFuture<Void> returnGifts(UUID playerUUID, List<Gift> gifts) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return supplyGated(() -> {
+            if (gifts.isEmpty()) return null;
+
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    Map<UUID, Integer> counts = inboxLimiter.lock(connection, List.of(playerUUID));
+                    insertGifts(connection, gifts);
+                    inboxLimiter.settle(connection, counts, Map.of(playerUUID, gifts.size()), System.currentTimeMillis());
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Error returning " + gifts.size() + " gifts of " + playerUUID, e);
+                throw new CompletionException("Failed to return gifts", e);
+            }
+            replicaRouter.recordWrite(playerUUID);
+            invalidateInFlightReads(playerUUID);
+            OnlineExpiryTracker tracker = plugin.getOnlineExpiryTracker();
+            if (tracker != null) {
+                gifts.forEach(tracker::track);
+            }
+            return null;
+        });
+    }
+
+    private void insertGifts(Connection connection, List<Gift> gifts) throws SQLException {
+        try (PreparedStatement ps = prepare(connection, SQL_INSERT_GIFT)) {
+            for (Gift gift : gifts) {
+                ps.setString(1, gift.getId());
+                ps.setString(2, gift.getPlayerUUID().toString());
+                ps.setString(3, gift.getSerializedItem());
+                ps.setInt(4, gift.getAmount());
+                ps.setString(5, gift.getSender());
+                ps.setLong(6, gift.getTimestamp());
+                ps.setLong(7, gift.getExpireStamp());
+                giftSearchIndex.bindColumns(ps, 8, gift);
+                ps.setString(11, gift.getCampaignId());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Merges a player's identical gifts (same item, sender, expiry and campaign) into as few
+     * full stacks as possible. Nothing is changed while the player has their gift box open.
+     * The owner's reads stay on the primary for the read-your-writes window afterwards.
+     *
+     * @param playerUUID The owner of the gifts
+     * @return CompletableFuture<Integer> number of gift rows merged away
+     * @throws CompletionException if the database operation fails
+     */
+    public CompletableFuture<Integer> compactGifts(UUID playerUUID) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return supplyGated(() -> {
+            try {
+                int removed = giftCompactor.compact(playerUUID, uuid -> plugin.getGiftBoxGUI().isViewing(uuid));
+                if (removed > 0) {
+                    replicaRouter.recordWrite(playerUUID);
+                    invalidateInFlightReads(playerUUID);
+                }
+                return removed;
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Error compacting gifts of " + playerUUID, e);
+                throw new CompletionException("Failed to compact gifts", e);
+            }
+        });
     }
 
     /**
@@ -381,30 +825,37 @@ public class DatabaseManager {
         if (closed) {
             return CompletableFuture.completedFuture(null);
         }
-        return CompletableFuture.runAsync(() -> {
+        return this.<Void>supplyGuarded(() -> {
             String query = "INSERT INTO present_log (GiftID, PlayerUUID, ItemStack, Count, Sender, Result, TimeStamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
             try (Connection connection = dataSource.getConnection();
-                 PreparedStatement ps = connection.prepareStatement(query)) {
+                 PreparedStatement ps = prepare(connection, query)) {
                 ps.setString(1, gift.getId());
                 ps.setString(2, gift.getPlayerUUID().toString());
-                ps.setString(3, ItemSerializer.serialize(gift.getItemStack()));
-                ps.setInt(4, gift.getItemStack().getAmount());
+                // Reuses the stored payload, so logging never re-encodes the item
+                ps.setString(3, gift.getSerializedItem());
+                ps.setInt(4, gift.getAmount());
                 ps.setString(5, gift.getSender());
                 ps.setInt(6, result.getValue());
                 ps.setLong(7, System.currentTimeMillis());
                 ps.executeUpdate();
             } catch (SQLException e) {
-                plugin.getLogger().log(Level.WARNING, "Error logging gift action for gift " + gift.getId(), e);
-                // Don't throw exception for logging failures - they shouldn't break the main operation
-            } catch (IllegalStateException e) {
-                plugin.getLogger().log(Level.WARNING, "Error serializing item for log: " + gift.getId(), e);
+                // Thrown so the circuit breaker counts it; reported below
+                throw new CompletionException("Failed to log gift action", e);
             }
-        }, queryExecutor);
+            return null;
+        }).exceptionally(throwable -> {
+            // Don't fail the future for logging failures - they shouldn't break the main operation
+            plugin.getLogger().log(Level.WARNING, "Error logging gift action for gift " + gift.getId(), throwable);
+            return null;
+        });
     }
 
     /**
      * Finds and removes all expired gifts from the database asynchronously.
-     * Logs each expired gift and fires GiftExpiredEvent for each.
+     * The delete only commits while this server holds the sweeper lease, and only gifts it actually
+     * deleted are logged, in the same transaction, and announced in a single batch of expiry events.
+     * At most a bounded number of gifts is removed per call.
+     * Skipped while a backup is being imported, so restored rows match the backup when verified.
      * 
      * @return CompletableFuture<Void> that completes when all expired gifts are processed
      * @throws CompletionException if the database operation fails
@@ -413,72 +864,713 @@ public class DatabaseManager {
         if (closed) {
             return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
         }
-        return CompletableFuture.runAsync(() -> {
+        if (maintenanceGate.isBlocked()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return this.<List<Gift>>supplyGated(() -> {
             List<Gift> expiredGifts = new ArrayList<>();
-            String selectQuery = "SELECT * FROM present WHERE ExpireStamp != -1 AND ExpireStamp <= ?";
+            List<Gift> expiredOverflow;
+            // One cutoff for select and delete, so nothing expiring in between is deleted without a log row
+            long cutoff = System.currentTimeMillis();
+            // Bounded per sweep; the next expiry is then already due, so the next heartbeat sweeps the rest
+            String selectQuery = "SELECT * FROM present WHERE ExpireStamp != -1 AND ExpireStamp <= ? ORDER BY ExpireStamp ASC LIMIT ?";
             try (Connection connection = dataSource.getConnection();
-                 PreparedStatement psSelect = connection.prepareStatement(selectQuery)) {
-                psSelect.setLong(1, System.currentTimeMillis());
+                 PreparedStatement psSelect = prepare(connection, selectQuery)) {
+                psSelect.setLong(1, cutoff);
+                psSelect.setInt(2, SWEEP_LIMIT);
                 try (ResultSet rs = psSelect.executeQuery()) {
                     while (rs.next()) {
-                        expiredGifts.add(new Gift(
-                                rs.getString("ID"),
-                                UUID.fromString(rs.getString("UUID")),
-                                ItemSerializer.deserialize(rs.getString("ItemStack")),
-                                rs.getString("Sender"),
-                                rs.getLong("TimeStamp"),
-                                rs.getLong("ExpireStamp")
-                        ));
+                        expiredGifts.add(readGift(rs));
                     }
                 }
+                expiredOverflow = inboxLimiter.selectExpiredOverflow(connection, cutoff);
+                expiredGifts.addAll(expiredOverflow);
             } catch (SQLException e) {
                 plugin.getLogger().log(Level.SEVERE, "Database error while finding expired gifts", e);
                 throw new CompletionException("Failed to find expired gifts", e);
-            } catch (IOException e) {
-                plugin.getLogger().log(Level.SEVERE, "Deserialization error while processing expired gifts", e);
-                return;
             }
 
-            if (expiredGifts.isEmpty()) return;
+            if (expiredGifts.isEmpty()) return List.of();
 
-            // Log and fire events for expired gifts
-            CompletableFuture<?>[] logFutures = expiredGifts.stream()
-                .map(gift -> logAction(gift, LogResult.EXPIRED)
-                    .thenRun(() -> Bukkit.getScheduler().runTask(plugin, 
-                        () -> Bukkit.getPluginManager().callEvent(new GiftExpiredEvent(gift))))
-                    .exceptionally(ex -> {
-                        plugin.getLogger().log(Level.WARNING, "Failed to process expired gift " + gift.getId(), ex);
-                        return null;
-                    }))
-                .toArray(CompletableFuture[]::new);
-            
-            // Wait for all logging operations to complete
-            CompletableFuture.allOf(logFutures).join();
+            // Deleted by ID so only gifts that were still there lower their owner's counter and are logged
+            List<Gift> deleted = new ArrayList<>();
+            List<Gift> refilled;
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    // Locks the lease row until commit, so no other server can take over and sweep the same rows
+                    if (!sweeperLease.fence(connection)) {
+                        connection.rollback();
+                        return List.of();
+                    }
+                    List<Gift> stored = expiredGifts.subList(0, expiredGifts.size() - expiredOverflow.size());
+                    Set<UUID> owners = new HashSet<>();
+                    stored.forEach(gift -> owners.add(gift.getPlayerUUID()));
+                    Map<UUID, Integer> counts = inboxLimiter.lock(connection, owners);
 
-            String deleteQuery = "DELETE FROM present WHERE ExpireStamp != -1 AND ExpireStamp <= ?";
-            try (Connection connection = dataSource.getConnection();
-                 PreparedStatement psDelete = connection.prepareStatement(deleteQuery)) {
-                psDelete.setLong(1, System.currentTimeMillis());
-                int deletedCount = psDelete.executeUpdate();
-                if (deletedCount > 0) {
-                    plugin.getLogger().info("Removed " + deletedCount + " expired gifts from database");
+                    Map<UUID, Integer> removed = new HashMap<>();
+                    try (PreparedStatement psDelete = prepare(connection, SQL_DELETE_GIFT)) {
+                        for (Gift gift : stored) {
+                            psDelete.setString(1, gift.getId());
+                            psDelete.addBatch();
+                        }
+                        int[] results = psDelete.executeBatch();
+                        for (int i = 0; i < results.length; i++) {
+                            if (results[i] > 0 || results[i] == PreparedStatement.SUCCESS_NO_INFO) {
+                                removed.merge(stored.get(i).getPlayerUUID(), -1, Integer::sum);
+                                deleted.add(stored.get(i));
+                            }
+                        }
+                    }
+                    deleted.addAll(inboxLimiter.deleteOverflow(connection, expiredOverflow));
+                    writeLogRows(connection, deleted, LogResult.EXPIRED, cutoff);
+                    refilled = inboxLimiter.settle(connection, counts, removed, cutoff);
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
                 }
             } catch (SQLException e) {
                 plugin.getLogger().log(Level.SEVERE, "Error removing expired gifts from database", e);
                 throw new CompletionException("Failed to remove expired gifts", e);
             }
-        }, queryExecutor);
+            if (!deleted.isEmpty()) {
+                deleted.forEach(gift -> replicaRouter.recordWrite(gift.getPlayerUUID()));
+                invalidateInFlightReads();
+                giftsRefilled(refilled);
+            }
+            return deleted;
+        }, maintenanceTimeoutMillis).thenAccept(deleted -> {
+            // Announced after the guarded call, so slow listeners neither hold the gate nor count against the deadline
+            if (!deleted.isEmpty()) {
+                plugin.getEventDispatcher().giftsExpired(deleted);
+                plugin.getLogger().info("Removed " + deleted.size() + " expired gifts from database");
+            }
+        });
     }
 
-
-    private int countSuccessfulUpdates(int[] results) {
-        int deleted = 0;
-        for (int result : results) {
-            if (result > 0 || result == PreparedStatement.SUCCESS_NO_INFO) {
-                deleted++;
+    private void writeLogRows(Connection connection, List<Gift> gifts, LogResult result, long now) throws SQLException {
+        if (gifts.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO present_log (GiftID, PlayerUUID, ItemStack, Count, Sender, Result, TimeStamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = prepare(connection, sql)) {
+            for (Gift gift : gifts) {
+                ps.setString(1, gift.getId());
+                ps.setString(2, gift.getPlayerUUID().toString());
+                ps.setString(3, gift.getSerializedItem());
+                ps.setInt(4, gift.getAmount());
+                ps.setString(5, gift.getSender());
+                ps.setInt(6, result.getValue());
+                ps.setLong(7, now);
+                ps.addBatch();
             }
+            ps.executeBatch();
+        }
+    }
+
+
+    /**
+     * Searches every inbox by sender and item type asynchronously, ordered by gift ID.
+     * Pass the ID of the last gift of a page as {@code afterId} to fetch the next page.
+     *
+     * @param search Search criteria
+     * @param afterId ID of the last gift already returned, or null for the first page
+     * @param limit Maximum number of gifts to return
+     * @return CompletableFuture<List<Gift>> containing the matching gifts
+     * @throws CompletionException if the database operation fails
+     */
+    public CompletableFuture<List<Gift>> searchGifts(GiftSearch search, String afterId, int limit) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
         }
-        return deleted;
+        return supplyGuarded(() -> {
+            try {
+                return giftSearchIndex.search(search, afterId, limit);
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Database error while searching gifts", e);
+                throw new CompletionException("Failed to search gifts", e);
+            }
+        });
     }
 
+    /**
+     * Streams every unexpired gift of a player, oldest first, as fast as the subscriber requests them.
+     * Each subscription reads its own forward-only cursor on a pool connection until it completes,
+     * is cancelled, or requests nothing for the stream idle timeout. Only a few streams may be open
+     * at once; further subscriptions, and those made while the circuit breaker is open or a gift
+     * import runs, fail with a {@link DatabaseUnavailableException}.
+     *
+     * @param playerUUID The player's UUID
+     * @return a cold publisher; every subscriber runs the query again
+     */
+    public Flow.Publisher<Gift> streamGifts(UUID playerUUID) {
+        return new GiftPublisher(plugin, () -> replicaRouter.forPlayerRead(playerUUID), queryExecutor, streamReady(),
+                circuitBreaker, maintenanceGate, streamPermits,
+                "SELECT * FROM " + TABLE_PRESENT + " WHERE UUID = ? AND (ExpireStamp = -1 OR ExpireStamp > ?) ORDER BY TimeStamp ASC",
+                ps -> {
+                    ps.setString(1, playerUUID.toString());
+                    // Bound when the cursor opens, so a publisher kept around does not stream gifts that expired since
+                    ps.setLong(2, System.currentTimeMillis());
+                }, streamIdleTimeoutMillis);
+    }
+
+    /**
+     * Streams every gift of every inbox matching the search, ordered by gift ID, from the primary.
+     * An empty search streams all stored gifts.
+     *
+     * @param search Search criteria
+     * @return a cold publisher; every subscriber runs the query again
+     */
+    public Flow.Publisher<Gift> streamGifts(GiftSearch search) {
+        List<Object> params = new ArrayList<>();
+        String sql = giftSearchIndex.query(search, null, params);
+        return new GiftPublisher(plugin, () -> dataSource, queryExecutor, streamReady(),
+                circuitBreaker, maintenanceGate, streamPermits, sql, ps -> {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+        }, streamIdleTimeoutMillis);
+    }
+
+    private CompletableFuture<Void> streamReady() {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return initializationFuture;
+    }
+
+    /**
+     * Starts a chunked bulk change to every gift of a campaign. The job runs in the background;
+     * use the returned job to follow progress, pause or resume it.
+     *
+     * @param type The change to apply
+     * @param campaignId The campaign whose gifts are changed
+     * @param extendMillis Time added to the expiry of each gift, for {@link BulkMutationJob.Type#EXTEND}
+     * @param targetPlayer New owner of the gifts, for {@link BulkMutationJob.Type#REASSIGN}
+     * @return the started job
+     * @throws IllegalStateException if the database manager is shut down
+     */
+    public BulkMutationJob startBulkMutation(BulkMutationJob.Type type, String campaignId, long extendMillis, UUID targetPlayer) {
+        if (closed) {
+            throw new IllegalStateException("Database manager is shut down");
+        }
+        return bulkMutationEngine.start(type, campaignId, extendMillis, targetPlayer);
+    }
+
+    /**
+     * @param jobId ID of a bulk job started since the plugin was enabled
+     * @return the job, or null if unknown
+     */
+    public BulkMutationJob getBulkMutation(String jobId) {
+        return bulkMutationEngine.getJob(jobId);
+    }
+
+    /**
+     * @return every bulk job started since the plugin was enabled
+     */
+    public Collection<BulkMutationJob> getBulkMutations() {
+        return bulkMutationEngine.getJobs();
+    }
+
+    /**
+     * Stores a distribution job with its recipient list and starts delivering it.
+     * Delivery runs in chunks at the configured insert rate and resumes after a restart.
+     *
+     * @param recipients Players to receive the item, in delivery order
+     * @param serializedItem The item every recipient receives
+     * @param amount Item amount
+     * @param sender Sender name
+     * @param expireSeconds Lifetime of each gift from its delivery, or -1 for no expiration
+     * @param campaignId Optional campaign ID for the gifts
+     * @return CompletableFuture<DistributionJob> that completes once the recipients are stored
+     */
+    public CompletableFuture<DistributionJob> startDistribution(Collection<UUID> recipients, String serializedItem, int amount,
+                                                                String sender, long expireSeconds, String campaignId) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return distributionEngine.create(recipients, serializedItem, amount, sender, expireSeconds, campaignId);
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to create distribution job", e);
+                throw new CompletionException("Failed to create distribution job", e);
+            }
+        }, queryExecutor);
+    }
+
+    /**
+     * @return the distribution job with the given ID, or null if it is not known to this server
+     */
+    public DistributionJob getDistribution(long jobId) {
+        return distributionEngine.getJob(jobId);
+    }
+
+    /**
+     * @return unfinished distribution jobs and the ones finished since this server started
+     */
+    public Collection<DistributionJob> getDistributions() {
+        return distributionEngine.getJobs();
+    }
+
+    /**
+     * Loads distribution jobs left unfinished by a previous run and resumes the running ones, in the background.
+     */
+    private void resumeDistributions() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                distributionEngine.resumeJobs();
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to load distribution jobs", e);
+            }
+        }, queryExecutor);
+    }
+
+    /**
+     * Called after each committed distribution chunk, the same bookkeeping {@link #addGift(Gift)} does per gift.
+     */
+    private void distributionChunkSent(InboxLimiter.Admission admission) {
+        giftsAdmitted(admission);
+    }
+
+    /**
+     * Bookkeeping after gifts were stored through {@link InboxLimiter#admit}: reads, events and expiry tracking.
+     */
+    private void giftsAdmitted(InboxLimiter.Admission admission) {
+        OnlineExpiryTracker tracker = plugin.getOnlineExpiryTracker();
+        for (Gift gift : admission.delivered()) {
+            replicaRouter.recordWrite(gift.getPlayerUUID());
+            invalidateInFlightReads(gift.getPlayerUUID());
+            plugin.getEventDispatcher().giftSent(gift);
+        }
+        if (tracker != null) {
+            admission.accepted.forEach(tracker::track);
+        }
+
+        if (!admission.overflowed.isEmpty()) {
+            plugin.getEventDispatcher().giftBoxFull(admission.overflowed, inboxLimiter.getPolicy(), admission.evicted);
+        }
+        if (!admission.evicted.isEmpty()) {
+            Set<UUID> players = new HashSet<>();
+            admission.evicted.forEach(gift -> players.add(gift.getPlayerUUID()));
+            for (UUID playerUUID : players) {
+                replicaRouter.recordWrite(playerUUID);
+                invalidateInFlightReads(playerUUID);
+                // Evicted gifts must not raise expiry notices later
+                if (tracker != null) {
+                    tracker.reload(playerUUID);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tracks gifts that moved back from the overflow table into their owners' gift boxes.
+     */
+    private void giftsRefilled(List<Gift> gifts) {
+        OnlineExpiryTracker tracker = plugin.getOnlineExpiryTracker();
+        for (Gift gift : gifts) {
+            replicaRouter.recordWrite(gift.getPlayerUUID());
+            invalidateInFlightReads(gift.getPlayerUUID());
+            if (tracker != null) {
+                tracker.track(gift);
+            }
+        }
+    }
+
+    /**
+     * Called after each committed bulk mutation chunk.
+     */
+    private void bulkChunkApplied(Set<UUID> owners, List<Gift> refilled) {
+        owners.forEach(replicaRouter::recordWrite);
+        invalidateInFlightReads();
+        giftsRefilled(refilled);
+    }
+
+    /**
+     * Fills the search columns of gifts stored before they existed, in the background.
+     */
+    private void backfillSearchColumns() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                int updated = giftSearchIndex.backfill(maintenanceGate);
+                if (updated > 0) {
+                    plugin.getLogger().info("Indexed " + updated + " existing gifts for search");
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to index existing gifts for search", e);
+            }
+        }, queryExecutor);
+    }
+
+    /**
+     * Renews this server's expiration sweeper lease, or takes it over if the current holder
+     * stopped renewing it. Only the holder should sweep expired gifts.
+     *
+     * @return CompletableFuture<Boolean> true if this server is the sweeper
+     * @throws CompletionException if the database operation fails
+     */
+    public CompletableFuture<Boolean> heartbeatSweeperLease() {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return supplyGuarded(() -> {
+            try {
+                return sweeperLease.heartbeat();
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.WARNING, "Database error while renewing the expiration sweeper lease", e);
+                throw new CompletionException("Failed to renew sweeper lease", e);
+            }
+        });
+    }
+
+    /**
+     * Looks up the earliest expiry among all stored gifts. Served from the ExpireStamp index.
+     *
+     * @return CompletableFuture<Long> the earliest ExpireStamp, or -1 if no gift expires
+     * @throws CompletionException if the database operation fails
+     */
+    public CompletableFuture<Long> findNextExpiry() {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return supplyGuarded(() -> {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement ps = prepare(connection, "SELECT MIN(ExpireStamp) FROM " + TABLE_PRESENT + " WHERE ExpireStamp > -1");
+                 ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    long next = rs.getLong(1);
+                    return rs.wasNull() ? -1L : next;
+                }
+                return -1L;
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Database error while finding the next gift expiry", e);
+                throw new CompletionException("Failed to find next expiry", e);
+            }
+        });
+    }
+
+    /**
+     * Runs one present_log maintenance pass asynchronously: partition upkeep or rotation,
+     * the daily rollup, and archiving and dropping of rows past the retention window.
+     *
+     * @return CompletableFuture<Void> that completes when maintenance finishes
+     * @throws CompletionException if maintenance fails
+     */
+    public CompletableFuture<Void> runLogMaintenance() {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                logRetentionManager.runMaintenance();
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Database error during log maintenance", e);
+                throw new CompletionException("Failed to maintain gift log", e);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to archive gift log", e);
+                throw new CompletionException("Failed to archive gift log", e);
+            }
+        }, queryExecutor);
+    }
+
+    /**
+     * Deletes idempotency keys past their horizon asynchronously. Safe to run on every server at
+     * once, since each key is only deleted once.
+     *
+     * @return CompletableFuture<Integer> containing the number of keys deleted
+     * @throws CompletionException if the database operation fails
+     */
+    public CompletableFuture<Integer> purgeIdempotencyKeys() {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return supplyGuarded(() -> {
+            try (Connection connection = dataSource.getConnection()) {
+                int purged = idempotencyKeys.purge(connection, System.currentTimeMillis());
+                if (purged > 0) {
+                    plugin.getLogger().info("Removed " + purged + " expired idempotency keys from database");
+                }
+                return purged;
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Database error while purging idempotency keys", e);
+                throw new CompletionException("Failed to purge idempotency keys", e);
+            }
+        }, maintenanceTimeoutMillis);
+    }
+
+    /**
+     * Retrieves one page of the gift history log asynchronously, newest first.
+     *
+     * @param query Search criteria
+     * @param offset Number of matching rows to skip
+     * @param limit Maximum number of rows to return
+     * @return CompletableFuture<List<LogEntry>> containing the matching rows
+     * @throws CompletionException if the database operation fails
+     */
+    public CompletableFuture<List<LogEntry>> queryLog(LogQuery query, int offset, int limit) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return supplyGuarded(() -> {
+            try {
+                return auditLogReader.query(query, offset, limit);
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Database error while querying gift log", e);
+                throw new CompletionException("Failed to query gift log", e);
+            }
+        });
+    }
+
+    /**
+     * Streams every matching gift history row into a compressed file in the plugin's
+     * exports folder asynchronously. Rows are never buffered in memory.
+     *
+     * @param query Search criteria
+     * @param format Output format
+     * @return CompletableFuture<Path> containing the written file
+     * @throws CompletionException if the export fails
+     */
+    public CompletableFuture<Path> exportLog(LogQuery query, LogExportFormat format) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return supplyGuarded(() -> {
+            try {
+                return auditLogReader.export(query, format);
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Database error while exporting gift log", e);
+                throw new CompletionException("Failed to export gift log", e);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to write gift log export", e);
+                throw new CompletionException("Failed to export gift log", e);
+            }
+        }, maintenanceTimeoutMillis);
+    }
+
+    /**
+     * Starts exporting the present and overflow tables and the gift counters to the named backup
+     * folder, or continues an export that stopped. Ranges are streamed in parallel, each from its own consistent snapshot.
+     *
+     * @param name Backup folder name under the plugin's backups folder
+     * @return the started job
+     * @throws IllegalArgumentException if the name is not a valid folder name
+     * @throws IllegalStateException if the database manager is shut down or another backup job is running
+     */
+    public GiftArchiveJob startExport(String name) {
+        if (closed) {
+            throw new IllegalStateException("Database manager is shut down");
+        }
+        return giftArchiver.start(GiftArchiveJob.Direction.EXPORT, name);
+    }
+
+    /**
+     * Starts importing the named backup into the present and overflow tables, which must be empty
+     * unless the same import is being continued. Gift counters are rebuilt once every range is
+     * verified. Until the import finishes, gift writes and players' gift reads fail with
+     * {@link DatabaseUnavailableException}, and distributions and bulk edits wait.
+     *
+     * @param name Backup folder name under the plugin's backups folder
+     * @return the started job
+     * @throws IllegalArgumentException if the name is not a valid folder name
+     * @throws IllegalStateException if the database manager is shut down or another backup job is running
+     */
+    public GiftArchiveJob startImport(String name) {
+        if (closed) {
+            throw new IllegalStateException("Database manager is shut down");
+        }
+        return giftArchiver.start(GiftArchiveJob.Direction.IMPORT, name);
+    }
+
+    /**
+     * @return backup jobs started since this server started
+     */
+    public List<GiftArchiveJob> getArchiveJobs() {
+        return giftArchiver.getJobs();
+    }
+
+    /**
+     * @return true if a read replica is configured
+     */
+    public boolean hasReplica() {
+        return replicaRouter.hasReplica();
+    }
+
+    /**
+     * @return true if player reads are currently served by the replica
+     */
+    public boolean isReplicaHealthy() {
+        return replicaRouter.isReplicaHealthy();
+    }
+
+    /**
+     * @return replica lag measured by the last check in milliseconds, or -1 if unknown
+     */
+    public long getReplicaLag() {
+        return replicaRouter.getLastLagMillis();
+    }
+
+    /**
+     * Measures the read replica's lag and moves reads to the primary while it is too far behind.
+     *
+     * @return CompletableFuture<Void> that completes when the check finishes
+     */
+    public CompletableFuture<Void> checkReplicaLag() {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database manager is shut down"));
+        }
+        return CompletableFuture.runAsync(replicaRouter::checkLag, queryExecutor);
+    }
+
+    /**
+     * @return the circuit breaker guarding player-facing database calls
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return connection pool statistics, or null if the pool is not running
+     */
+    public HikariPoolMXBean getPoolStats() {
+        return dataSource.isClosed() ? null : dataSource.getHikariPoolMXBean();
+    }
+
+    /**
+     * Runs a short database operation with a deadline, failing fast while the circuit breaker is open.
+     * The future fails with a TimeoutException once the deadline passes; the statement itself is
+     * cancelled by its query timeout.
+     */
+    private <T> CompletableFuture<T> supplyGuarded(Supplier<T> task) {
+        return supplyGuarded(task, operationTimeoutMillis);
+    }
+
+    /**
+     * Runs a database operation like {@link #supplyGuarded(Supplier)}, with its own deadline for
+     * background work that may take longer than a player-facing call.
+     */
+    private <T> CompletableFuture<T> supplyGuarded(Supplier<T> task, long deadlineMillis) {
+        if (!isInitialized) {
+            return afterStartup(() -> supplyGuarded(task, deadlineMillis));
+        }
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return CompletableFuture.failedFuture(new DatabaseUnavailableException("Database is unavailable, circuit breaker is open"));
+        }
+        return CompletableFuture.supplyAsync(task, queryExecutor)
+                .orTimeout(deadlineMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((result, throwable) -> circuitBreaker.record(permit, throwable));
+    }
+
+    /**
+     * Runs a gift write or a player's gift read like {@link #supplyGuarded(Supplier)}, refused while a gift import runs.
+     */
+    private <T> CompletableFuture<T> supplyGated(Supplier<T> task) {
+        return supplyGated(task, operationTimeoutMillis);
+    }
+
+    private <T> CompletableFuture<T> supplyGated(Supplier<T> task, long deadlineMillis) {
+        return supplyGuarded(() -> {
+            if (!maintenanceGate.tryEnter()) {
+                throw new DatabaseUnavailableException("Gift boxes are unavailable while a gift import is running");
+            }
+            try {
+                return task.get();
+            } finally {
+                maintenanceGate.exit();
+            }
+        }, deadlineMillis);
+    }
+
+    /**
+     * Holds a call that arrived before the schema was ready until initialization finishes.
+     * Only a bounded number of calls may wait, and none waits longer than the operation deadline.
+     */
+    private <T> CompletableFuture<T> afterStartup(Supplier<CompletableFuture<T>> call) {
+        if (!startupQueuePermits.tryAcquire()) {
+            return CompletableFuture.failedFuture(new DatabaseUnavailableException("Database is still starting up"));
+        }
+        return initializationFuture.copy()
+                .orTimeout(operationTimeoutMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, throwable) -> startupQueuePermits.release())
+                .thenCompose(ignored -> call.get());
+    }
+
+    /**
+     * Prepares a statement for a short operation, cancelled by the driver after the query timeout.
+     */
+    private PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        return statements.prepare(connection, sql);
+    }
+
+    private void ensureIndex(Connection connection, String table, String indexName, String columns) throws SQLException {
+        String query = "SELECT 1 FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ? LIMIT 1";
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            ps.setString(1, table);
+            ps.setString(2, indexName);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+        }
+        plugin.getLogger().info("Creating index " + indexName + " on " + table + ", this may take a while on large tables...");
+        try (PreparedStatement ps = connection.prepareStatement("CREATE INDEX " + indexName + " ON " + table + " (" + columns + ")")) {
+            ps.execute();
+        }
+    }
+
+    private void ensureColumn(Connection connection, String table, String column, String definition) throws SQLException {
+        String query = "SELECT 1 FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ? LIMIT 1";
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+        }
+        plugin.getLogger().info("Adding column " + column + " to " + table + "...");
+        try (PreparedStatement ps = connection.prepareStatement("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition)) {
+            ps.execute();
+        }
+    }
+
+    /**
+     * Builds a gift from the current row without decoding its item.
+     */
+    static Gift readGift(ResultSet rs) throws SQLException {
+        return new Gift(
+                rs.getString("ID"),
+                UUID.fromString(rs.getString("UUID")),
+                rs.getString("ItemStack"),
+                rs.getInt("Count"),
+                rs.getString("Sender"),
+                rs.getLong("TimeStamp"),
+                rs.getLong("ExpireStamp"),
+                rs.getString("CampaignID")
+        );
+    }
+
+    /**
+     * Copies a gift read by {@link #readGift}. The copy starts from the serialized payload and
+     * decodes its ItemStacks independently of the original.
+     */
+    private static Gift copyStoredGift(Gift gift) {
+        return new Gift(gift.getId(), gift.getPlayerUUID(), gift.getSerializedItem(), gift.getAmount(),
+                gift.getSender(), gift.getTimestamp(), gift.getExpireStamp(), gift.getCampaignId());
+    }
+
+    private static final class InFlightGiftRead {
+        private final int limit;
+        private final CompletableFuture<List<Gift>> future = new CompletableFuture<>();
+
+        private InFlightGiftRead(int limit) {
+            this.limit = limit;
+        }
+    }
 }
@@ -0,0 +1,11 @@
+package wiki.creeper.creeperGiftBox.database;
+
+/**
+ * Thrown when a database call is refused because the circuit breaker is open or a gift import is running.
+ */
+public class DatabaseUnavailableException extends IllegalStateException {
+
+    public DatabaseUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,469 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.model.Gift;
+import wiki.creeper.creeperGiftBox.util.DebugLogger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Delivers one item to a large recipient list at a bounded insert rate.
+ *
+ * The recipient list is stored in {@code giftbox_distribution_recipient} when the job is created.
+ * Each chunk inserts the gifts, writes their log rows, deletes the handled recipients and moves the
+ * job's cursor in one transaction. The cursor update only succeeds while the cursor is still where
+ * the chunk started and the job is running, so a job resumed by two servers at once, or paused
+ * mid-chunk, never sends a gift twice.
+ */
+class DistributionEngine {
+
+    static final String TABLE_JOB = "giftbox_distribution";
+    static final String TABLE_RECIPIENT = "giftbox_distribution_recipient";
+    private static final int RECIPIENT_BATCH_SIZE = 1000;
+    // How long a chunk waits before trying again while a gift import runs
+    private static final long IMPORT_RETRY_MILLIS = 5000;
+
+    private final CreeperGiftBox plugin;
+    private final DataSource dataSource;
+    private final StatementFactory statements;
+    private final Executor queryExecutor;
+    private final GiftSearchIndex giftSearchIndex;
+    private final InboxLimiter inboxLimiter;
+    private final MaintenanceGate maintenanceGate;
+    private final Consumer<InboxLimiter.Admission> onSent;
+    private final DebugLogger debugLogger;
+    private final int chunkSize;
+    private final int rowsPerSecond;
+    private final Map<Long, DistributionJob> jobs = new ConcurrentSkipListMap<>();
+    private final Map<Long, Gift> templates = new ConcurrentHashMap<>();
+    private final AtomicLong nextFreeMillis = new AtomicLong();
+    private volatile boolean closed = false;
+
+    DistributionEngine(CreeperGiftBox plugin, DataSource dataSource, StatementFactory statements, Executor queryExecutor,
+                       GiftSearchIndex giftSearchIndex, InboxLimiter inboxLimiter, MaintenanceGate maintenanceGate,
+                       Consumer<InboxLimiter.Admission> onSent, int chunkSize, int rowsPerSecond) {
+        this.plugin = plugin;
+        this.dataSource = dataSource;
+        this.statements = statements;
+        this.queryExecutor = queryExecutor;
+        this.giftSearchIndex = giftSearchIndex;
+        this.inboxLimiter = inboxLimiter;
+        this.maintenanceGate = maintenanceGate;
+        this.onSent = onSent;
+        this.debugLogger = new DebugLogger(plugin);
+        // A chunk never holds more rows than one second of the rate allows
+        this.chunkSize = Math.min(chunkSize, rowsPerSecond);
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    void ensureSchema(Connection connection) throws SQLException {
+        String createJobTable = "CREATE TABLE IF NOT EXISTS " + TABLE_JOB + " (" +
+                "JobID BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "ItemStack TEXT NOT NULL, " +
+                "Count INT NOT NULL, " +
+                "Sender VARCHAR(255) NOT NULL, " +
+                "ExpireSeconds BIGINT NOT NULL, " +
+                "CampaignID VARCHAR(64) NULL, " +
+                "State VARCHAR(16) NOT NULL, " +
+                "RecipientCursor BIGINT NOT NULL, " +
+                "Sent BIGINT NOT NULL, " +
+                "Total BIGINT NOT NULL, " +
+                "CreatedAt BIGINT NOT NULL, " +
+                "UpdatedAt BIGINT NOT NULL);";
+        try (PreparedStatement ps = connection.prepareStatement(createJobTable)) {
+            ps.execute();
+        }
+        String createRecipientTable = "CREATE TABLE IF NOT EXISTS " + TABLE_RECIPIENT + " (" +
+                "JobID BIGINT NOT NULL, " +
+                "Seq BIGINT NOT NULL, " +
+                "UUID VARCHAR(36) NOT NULL, " +
+                "PRIMARY KEY (JobID, Seq));";
+        try (PreparedStatement ps = connection.prepareStatement(createRecipientTable)) {
+            ps.execute();
+        }
+    }
+
+    /**
+     * Loads unfinished jobs and resumes the running ones. Jobs left in PREPARING have an
+     * incomplete recipient list and are marked failed. Must be called off the main thread.
+     */
+    void resumeJobs() throws SQLException {
+        List<DistributionJob> loaded = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = statements.prepare(connection, "SELECT * FROM " + TABLE_JOB + " WHERE State IN (?, ?, ?) ORDER BY JobID")) {
+            ps.setString(1, DistributionJob.State.PREPARING.name());
+            ps.setString(2, DistributionJob.State.RUNNING.name());
+            ps.setString(3, DistributionJob.State.PAUSED.name());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    loaded.add(new DistributionJob(
+                            rs.getLong("JobID"),
+                            rs.getString("ItemStack"),
+                            rs.getInt("Count"),
+                            rs.getString("Sender"),
+                            rs.getLong("ExpireSeconds"),
+                            rs.getString("CampaignID"),
+                            DistributionJob.State.valueOf(rs.getString("State")),
+                            rs.getLong("RecipientCursor"),
+                            rs.getLong("Sent"),
+                            rs.getLong("Total"),
+                            this));
+                }
+            }
+        }
+
+        for (DistributionJob job : loaded) {
+            jobs.put(job.getId(), job);
+            if (job.getState() == DistributionJob.State.PREPARING) {
+                plugin.getLogger().warning("Distribution job " + job.getId() + " was interrupted while storing its recipients, marking it failed");
+                job.fail(new IllegalStateException("Recipient list is incomplete"));
+                saveState(job);
+            } else if (job.getState() == DistributionJob.State.RUNNING) {
+                plugin.getLogger().info("Resuming distribution job " + job.getId() + " at " + job.getSent() + "/" + job.getTotal());
+                schedule(job, 0);
+            }
+        }
+    }
+
+    /**
+     * Stores the job and its recipients, then starts it. Must be called off the main thread.
+     */
+    DistributionJob create(Collection<UUID> recipients, String serializedItem, int amount, String sender,
+                           long expireSeconds, String campaignId) throws SQLException {
+        long now = System.currentTimeMillis();
+        long jobId;
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement ps = statements.prepare(connection, "INSERT INTO " + TABLE_JOB +
+                    " (ItemStack, Count, Sender, ExpireSeconds, CampaignID, State, RecipientCursor, Sent, Total, CreatedAt, UpdatedAt)" +
+                    " VALUES (?, ?, ?, ?, ?, ?, 0, 0, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+                ps.setString(1, serializedItem);
+                ps.setInt(2, amount);
+                ps.setString(3, sender);
+                ps.setLong(4, expireSeconds);
+                ps.setString(5, campaignId);
+                ps.setString(6, DistributionJob.State.PREPARING.name());
+                ps.setLong(7, recipients.size());
+                ps.setLong(8, now);
+                ps.setLong(9, now);
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    if (!keys.next()) {
+                        throw new SQLException("Failed to create distribution job, no ID returned");
+                    }
+                    jobId = keys.getLong(1);
+                }
+            }
+
+            DistributionJob job = new DistributionJob(jobId, serializedItem, amount, sender, expireSeconds, campaignId,
+                    DistributionJob.State.PREPARING, 0, 0, recipients.size(), this);
+            jobs.put(jobId, job);
+            try {
+                storeRecipients(connection, jobId, recipients);
+                try (PreparedStatement ps = statements.prepare(connection, "UPDATE " + TABLE_JOB + " SET State = ?, UpdatedAt = ? WHERE JobID = ?")) {
+                    ps.setString(1, DistributionJob.State.RUNNING.name());
+                    ps.setLong(2, System.currentTimeMillis());
+                    ps.setLong(3, jobId);
+                    ps.executeUpdate();
+                }
+            } catch (SQLException e) {
+                job.fail(e);
+                saveState(job);
+                throw e;
+            }
+            job.markRunning();
+            plugin.getLogger().info("Started distribution job " + jobId + " for " + recipients.size() + " recipients");
+            schedule(job, 0);
+            return job;
+        }
+    }
+
+    DistributionJob getJob(long id) {
+        return jobs.get(id);
+    }
+
+    Collection<DistributionJob> getJobs() {
+        return Collections.unmodifiableCollection(jobs.values());
+    }
+
+    /**
+     * Stops starting new chunks. Running jobs stay RUNNING in the database so the next start resumes them.
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Persists the job's state. Cancelled and failed jobs also drop their remaining recipients.
+     */
+    CompletableFuture<Void> saveState(DistributionJob job) {
+        if (closed) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            try (Connection connection = dataSource.getConnection()) {
+                try (PreparedStatement ps = statements.prepare(connection, "UPDATE " + TABLE_JOB + " SET State = ?, UpdatedAt = ? WHERE JobID = ?")) {
+                    ps.setString(1, job.getState().name());
+                    ps.setLong(2, System.currentTimeMillis());
+                    ps.setLong(3, job.getId());
+                    ps.executeUpdate();
+                }
+                if (job.getState() == DistributionJob.State.CANCELLED || job.getState() == DistributionJob.State.FAILED) {
+                    deleteRecipients(connection, job.getId());
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to save the state of distribution job " + job.getId(), e);
+                throw new CompletionException("Failed to save distribution job", e);
+            }
+        }, queryExecutor);
+    }
+
+    /**
+     * Runs the next chunk of the job after the given delay, unless a chunk is already pending.
+     */
+    void schedule(DistributionJob job, long delayMillis) {
+        if (closed || !job.active.compareAndSet(false, true)) {
+            return;
+        }
+        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, queryExecutor).execute(() -> run(job));
+    }
+
+    private void run(DistributionJob job) {
+        if (closed || job.getState() != DistributionJob.State.RUNNING) {
+            job.active.set(false);
+            return;
+        }
+
+        if (!maintenanceGate.tryEnter()) {
+            job.active.set(false);
+            schedule(job, IMPORT_RETRY_MILLIS);
+            return;
+        }
+        long started = System.currentTimeMillis();
+        int handled;
+        try {
+            handled = processChunk(job);
+        } catch (SQLException | RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "Distribution job " + job.getId() + " failed after "
+                    + job.getSent() + " gifts, it can be resumed from the last checkpoint", e);
+            job.active.set(false);
+            // Paused rather than failed: every committed chunk is intact and the cursor is consistent
+            job.pause();
+            return;
+        } finally {
+            maintenanceGate.exit();
+        }
+
+        job.active.set(false);
+        if (handled == 0) {
+            return;
+        }
+        // Every chunk books its share of the rate, so jobs running side by side share one ceiling
+        long cost = handled * 1000L / rowsPerSecond;
+        long free = nextFreeMillis.accumulateAndGet(cost, (previous, add) -> Math.max(previous, started) + add);
+        schedule(job, Math.max(0, free - System.currentTimeMillis()));
+    }
+
+    /**
+     * @return the number of recipients handled, or 0 if the job finished or was taken over
+     */
+    private int processChunk(DistributionJob job) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            List<UUID> recipients = new ArrayList<>();
+            long lastSeq = job.cursor;
+            try (PreparedStatement ps = statements.prepare(connection, "SELECT Seq, UUID FROM " + TABLE_RECIPIENT +
+                    " WHERE JobID = ? AND Seq > ? ORDER BY Seq ASC LIMIT ?")) {
+                ps.setLong(1, job.getId());
+                ps.setLong(2, job.cursor);
+                ps.setInt(3, chunkSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        lastSeq = rs.getLong("Seq");
+                        recipients.add(UUID.fromString(rs.getString("UUID")));
+                    }
+                }
+            }
+            if (recipients.isEmpty()) {
+                finish(connection, job);
+                return 0;
+            }
+
+            long now = System.currentTimeMillis();
+            long expireStamp = job.getExpireSeconds() > 0 ? now + job.getExpireSeconds() * 1000L : -1;
+            List<Gift> gifts = new ArrayList<>(recipients.size());
+            for (UUID recipient : recipients) {
+                gifts.add(new Gift(UUID.randomUUID().toString(), recipient, job.getSerializedItem(), job.getAmount(),
+                        job.getSender(), now, expireStamp, job.getCampaignId()));
+            }
+
+            InboxLimiter.Admission admission;
+            connection.setAutoCommit(false);
+            try {
+                // Recipients with a full gift box are handled by the overflow policy; rejected ones are skipped
+                admission = inboxLimiter.admit(connection, gifts, now);
+                if (!admission.accepted.isEmpty()) {
+                    insertGifts(connection, job, admission.accepted);
+                }
+                writeLogRows(connection, admission.delivered(), now);
+                try (PreparedStatement ps = statements.prepare(connection, "DELETE FROM " + TABLE_RECIPIENT + " WHERE JobID = ? AND Seq <= ?")) {
+                    ps.setLong(1, job.getId());
+                    ps.setLong(2, lastSeq);
+                    ps.executeUpdate();
+                }
+                if (!advanceCursor(connection, job, lastSeq, admission.delivered().size(), now)) {
+                    connection.rollback();
+                    refresh(connection, job);
+                    return 0;
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            job.cursor = lastSeq;
+            job.addSent(admission.delivered().size());
+            onSent.accept(admission);
+            debugLogger.debug("Distribution job %d: %d/%d gifts", job.getId(), job.getSent(), job.getTotal());
+            return gifts.size();
+        }
+    }
+
+    private boolean advanceCursor(Connection connection, DistributionJob job, long cursor, int sent, long now) throws SQLException {
+        try (PreparedStatement ps = statements.prepare(connection, "UPDATE " + TABLE_JOB +
+                " SET RecipientCursor = ?, Sent = Sent + ?, UpdatedAt = ? WHERE JobID = ? AND RecipientCursor = ? AND State = ?")) {
+            ps.setLong(1, cursor);
+            ps.setInt(2, sent);
+            ps.setLong(3, now);
+            ps.setLong(4, job.getId());
+            ps.setLong(5, job.cursor);
+            ps.setString(6, DistributionJob.State.RUNNING.name());
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    private void finish(Connection connection, DistributionJob job) throws SQLException {
+        try (PreparedStatement ps = statements.prepare(connection, "UPDATE " + TABLE_JOB + " SET State = ?, UpdatedAt = ? WHERE JobID = ? AND State = ?")) {
+            ps.setString(1, DistributionJob.State.COMPLETED.name());
+            ps.setLong(2, System.currentTimeMillis());
+            ps.setLong(3, job.getId());
+            ps.setString(4, DistributionJob.State.RUNNING.name());
+            ps.executeUpdate();
+        }
+        job.complete();
+        templates.remove(job.getId());
+        plugin.getLogger().info("Distribution job " + job.getId() + " finished, " + job.getSent() + " gifts sent");
+    }
+
+    /**
+     * Reloads progress after another server moved the cursor or the job was paused elsewhere.
+     */
+    private void refresh(Connection connection, DistributionJob job) throws SQLException {
+        try (PreparedStatement ps = statements.prepare(connection, "SELECT State, RecipientCursor, Sent FROM " + TABLE_JOB + " WHERE JobID = ?")) {
+            ps.setLong(1, job.getId());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    DistributionJob.State state = DistributionJob.State.valueOf(rs.getString("State"));
+                    job.sync(state, rs.getLong("RecipientCursor"), rs.getLong("Sent"));
+                    if (state == DistributionJob.State.RUNNING) {
+                        plugin.getLogger().info("Distribution job " + job.getId() + " is being run by another server, stopping here");
+                    }
+                }
+            }
+        }
+    }
+
+    private void storeRecipients(Connection connection, long jobId, Collection<UUID> recipients) throws SQLException {
+        Iterator<UUID> iterator = recipients.iterator();
+        long seq = 0;
+        List<UUID> batch = new ArrayList<>(RECIPIENT_BATCH_SIZE);
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if (batch.size() == RECIPIENT_BATCH_SIZE || !iterator.hasNext()) {
+                String values = String.join(", ", Collections.nCopies(batch.size(), "(?, ?, ?)"));
+                try (PreparedStatement ps = statements.prepare(connection, "INSERT INTO " + TABLE_RECIPIENT + " (JobID, Seq, UUID) VALUES " + values)) {
+                    int index = 1;
+                    for (UUID recipient : batch) {
+                        ps.setLong(index++, jobId);
+                        ps.setLong(index++, ++seq);
+                        ps.setString(index++, recipient.toString());
+                    }
+                    ps.executeUpdate();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void deleteRecipients(Connection connection, long jobId) throws SQLException {
+        // Small deletes so a cancelled job with many recipients does not hold a long lock
+        try (PreparedStatement ps = statements.prepare(connection, "DELETE FROM " + TABLE_RECIPIENT + " WHERE JobID = ? LIMIT " + RECIPIENT_BATCH_SIZE)) {
+            ps.setLong(1, jobId);
+            while (ps.executeUpdate() > 0) {
+                // keep deleting
+            }
+        }
+    }
+
+    private void insertGifts(Connection connection, DistributionJob job, List<Gift> gifts) throws SQLException {
+        // Every gift of a job has the same item and sender, so the search columns are computed once
+        Gift template = templates.computeIfAbsent(job.getId(), id -> gifts.get(0));
+        String values = String.join(", ", Collections.nCopies(gifts.size(), "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"));
+        try (PreparedStatement ps = statements.prepare(connection, "INSERT INTO present (ID, UUID, ItemStack, Count, Sender, TimeStamp, ExpireStamp, " +
+                "Material, CustomModelData, SenderKey, CampaignID) VALUES " + values)) {
+            int index = 1;
+            for (Gift gift : gifts) {
+                ps.setString(index, gift.getId());
+                ps.setString(index + 1, gift.getPlayerUUID().toString());
+                ps.setString(index + 2, gift.getSerializedItem());
+                ps.setInt(index + 3, gift.getAmount());
+                ps.setString(index + 4, gift.getSender());
+                ps.setLong(index + 5, gift.getTimestamp());
+                ps.setLong(index + 6, gift.getExpireStamp());
+                giftSearchIndex.bindColumns(ps, index + 7, template);
+                ps.setString(index + 10, gift.getCampaignId());
+                index += 11;
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    private void writeLogRows(Connection connection, List<Gift> gifts, long now) throws SQLException {
+        String sql = "INSERT INTO present_log (GiftID, PlayerUUID, ItemStack, Count, Sender, Result, TimeStamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = statements.prepare(connection, sql)) {
+            for (Gift gift : gifts) {
+                ps.setString(1, gift.getId());
+                ps.setString(2, gift.getPlayerUUID().toString());
+                ps.setString(3, gift.getSerializedItem());
+                ps.setInt(4, gift.getAmount());
+                ps.setString(5, gift.getSender());
+                ps.setInt(6, LogResult.SENT.getValue());
+                ps.setLong(7, now);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+}
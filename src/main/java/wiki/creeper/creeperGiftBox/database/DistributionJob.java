@@ -0,0 +1,186 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A persistent delivery of one item to a list of recipients.
+ *
+ * The recipient list and the job's cursor are stored in the database, and the cursor moves in the
+ * same transaction as each chunk of gifts, so a job resumes after a restart exactly where it stopped
+ * without sending anyone a second gift. The completion future yields the number of gifts sent; it is
+ * only completed by the server that finishes the job.
+ */
+public class DistributionJob {
+
+    public enum State {
+        /** 수신자 목록을 저장하는 중입니다. 서버가 이 상태에서 종료되면 작업은 FAILED가 됩니다. */
+        PREPARING,
+        RUNNING,
+        PAUSED,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    private final long id;
+    private final String serializedItem;
+    private final int amount;
+    private final String sender;
+    private final long expireSeconds;
+    private final String campaignId;
+    private final DistributionEngine engine;
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+    final AtomicBoolean active = new AtomicBoolean();
+    volatile long cursor;
+    private volatile long sent;
+    private final long total;
+    private volatile State state;
+
+    DistributionJob(long id, String serializedItem, int amount, String sender, long expireSeconds, String campaignId,
+                    State state, long cursor, long sent, long total, DistributionEngine engine) {
+        this.id = id;
+        this.serializedItem = serializedItem;
+        this.amount = amount;
+        this.sender = sender;
+        this.expireSeconds = expireSeconds;
+        this.campaignId = campaignId;
+        this.state = state;
+        this.cursor = cursor;
+        this.sent = sent;
+        this.total = total;
+        this.engine = engine;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getSerializedItem() {
+        return serializedItem;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    /**
+     * @return 각 선물이 지급된 시점부터 만료까지의 시간 (초 단위), 만료되지 않으면 -1
+     */
+    public long getExpireSeconds() {
+        return expireSeconds;
+    }
+
+    /**
+     * @return 지급되는 선물의 캠페인 ID, 없으면 null
+     */
+    public String getCampaignId() {
+        return campaignId;
+    }
+
+    /**
+     * @return 지금까지 지급된 선물 수
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return 전체 수신자 수
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return 작업이 끝나면 지급된 선물 수로 완료되는 CompletableFuture
+     */
+    public CompletableFuture<Long> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * 현재 청크가 끝난 뒤 작업을 멈춥니다. 멈춘 상태는 재시작 후에도 유지됩니다.
+     *
+     * @return 실행 중이던 작업이 멈췄으면 true
+     */
+    public synchronized boolean pause() {
+        if (state != State.RUNNING) {
+            return false;
+        }
+        state = State.PAUSED;
+        engine.saveState(this);
+        return true;
+    }
+
+    /**
+     * 멈춘 작업을 마지막 체크포인트부터 다시 시작합니다.
+     *
+     * @return 멈춰 있던 작업이 재개되었으면 true
+     */
+    public synchronized boolean resume() {
+        if (state != State.PAUSED) {
+            return false;
+        }
+        state = State.RUNNING;
+        engine.saveState(this).thenRun(() -> engine.schedule(this, 0));
+        return true;
+    }
+
+    /**
+     * 작업을 취소합니다. 이미 지급된 선물은 회수되지 않습니다.
+     *
+     * @return 작업이 취소되었으면 true
+     */
+    public synchronized boolean cancel() {
+        if (state != State.RUNNING && state != State.PAUSED) {
+            return false;
+        }
+        state = State.CANCELLED;
+        engine.saveState(this);
+        completion.complete(sent);
+        return true;
+    }
+
+    void addSent(long count) {
+        sent += count;
+    }
+
+    /**
+     * Takes over progress and state stored by another server.
+     */
+    synchronized void sync(State state, long cursor, long sent) {
+        this.cursor = cursor;
+        this.sent = sent;
+        if (state != State.RUNNING && state != State.PREPARING) {
+            this.state = state;
+        }
+        if (state == State.COMPLETED || state == State.CANCELLED) {
+            completion.complete(sent);
+        }
+    }
+
+    synchronized void markRunning() {
+        if (state == State.PREPARING) {
+            state = State.RUNNING;
+        }
+    }
+
+    synchronized void complete() {
+        state = State.COMPLETED;
+        completion.complete(sent);
+    }
+
+    synchronized void fail(Throwable throwable) {
+        state = State.FAILED;
+        completion.completeExceptionally(throwable);
+    }
+}
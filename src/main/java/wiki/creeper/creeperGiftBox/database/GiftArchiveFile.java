@@ -0,0 +1,394 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The binary format of gift store backups: one gzip-compressed file per key range of a gift
+ * table, and one file holding the gift counters.
+ *
+ * A file starts with a magic number, the format version and the name of its key range, followed
+ * by one length-prefixed record per gift or counter. A record length of -1 ends the rows and is followed by
+ * the row count and the range hash, so a truncated or altered file is detected before anything
+ * is imported. The range hash adds up a SHA-256 prefix of every record; it does not depend on row
+ * order, so the same hash computed from the target database verifies an import whatever the
+ * collation there.
+ */
+final class GiftArchiveFile {
+
+    static final String SELECT_COLUMNS = "ID, UUID, ItemStack, Count, Sender, TimeStamp, ExpireStamp, Material, CustomModelData, SenderKey, CampaignID";
+    static final int COLUMN_COUNT = 11;
+
+    private static final int MAGIC = 0x43474258;
+    private static final short VERSION = 1;
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private GiftArchiveFile() {
+    }
+
+    /**
+     * One row of the present table, with every column stored as is.
+     */
+    static final class Row {
+        private final String id;
+        private final String playerUUID;
+        private final String itemStack;
+        private final int count;
+        private final String sender;
+        private final long timestamp;
+        private final long expireStamp;
+        private final String material;
+        private final Integer customModelData;
+        private final String senderKey;
+        private final String campaignId;
+
+        private Row(String id, String playerUUID, String itemStack, int count, String sender, long timestamp, long expireStamp,
+                    String material, Integer customModelData, String senderKey, String campaignId) {
+            this.id = id;
+            this.playerUUID = playerUUID;
+            this.itemStack = itemStack;
+            this.count = count;
+            this.sender = sender;
+            this.timestamp = timestamp;
+            this.expireStamp = expireStamp;
+            this.material = material;
+            this.customModelData = customModelData;
+            this.senderKey = senderKey;
+            this.campaignId = campaignId;
+        }
+
+        /**
+         * Reads the current row of a result set selecting {@link #SELECT_COLUMNS}.
+         */
+        static Row read(ResultSet rs) throws SQLException {
+            int customModelData = rs.getInt("CustomModelData");
+            return new Row(rs.getString("ID"), rs.getString("UUID"), rs.getString("ItemStack"), rs.getInt("Count"),
+                    rs.getString("Sender"), rs.getLong("TimeStamp"), rs.getLong("ExpireStamp"), rs.getString("Material"),
+                    rs.wasNull() ? null : customModelData, rs.getString("SenderKey"), rs.getString("CampaignID"));
+        }
+
+        /**
+         * Binds the row to {@link #COLUMN_COUNT} parameters in {@link #SELECT_COLUMNS} order, starting at {@code index}.
+         */
+        void bind(PreparedStatement ps, int index) throws SQLException {
+            ps.setString(index, id);
+            ps.setString(index + 1, playerUUID);
+            ps.setString(index + 2, itemStack);
+            ps.setInt(index + 3, count);
+            ps.setString(index + 4, sender);
+            ps.setLong(index + 5, timestamp);
+            ps.setLong(index + 6, expireStamp);
+            ps.setString(index + 7, material);
+            if (customModelData != null) {
+                ps.setInt(index + 8, customModelData);
+            } else {
+                ps.setNull(index + 8, Types.INTEGER);
+            }
+            ps.setString(index + 9, senderKey);
+            ps.setString(index + 10, campaignId);
+        }
+
+        byte[] encode() {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + itemStack.length());
+                DataOutputStream out = new DataOutputStream(bytes);
+                writeString(out, id);
+                writeString(out, playerUUID);
+                writeString(out, itemStack);
+                out.writeInt(count);
+                writeString(out, sender);
+                out.writeLong(timestamp);
+                out.writeLong(expireStamp);
+                writeString(out, material);
+                out.writeBoolean(customModelData != null);
+                out.writeInt(customModelData != null ? customModelData : 0);
+                writeString(out, senderKey);
+                writeString(out, campaignId);
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                // Writing to memory cannot fail
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static Row decode(byte[] record) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            String id = readString(in);
+            String playerUUID = readString(in);
+            String itemStack = readString(in);
+            int count = in.readInt();
+            String sender = readString(in);
+            long timestamp = in.readLong();
+            long expireStamp = in.readLong();
+            String material = readString(in);
+            boolean hasCustomModelData = in.readBoolean();
+            int customModelData = in.readInt();
+            String senderKey = readString(in);
+            String campaignId = readString(in);
+            if (id == null || playerUUID == null || itemStack == null || sender == null) {
+                throw new IOException("Backup record is missing a required column");
+            }
+            return new Row(id, playerUUID, itemStack, count, sender, timestamp, expireStamp, material,
+                    hasCustomModelData ? customModelData : null, senderKey, campaignId);
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length == -1) {
+                return null;
+            }
+            if (length < 0 || length > in.available()) {
+                throw new IOException("Backup record has a bad field length " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * One row of the gift counter table.
+     */
+    static final class Counter {
+        static final String SELECT_COLUMNS = "UUID, Count";
+
+        private final String playerUUID;
+        private final int count;
+
+        private Counter(String playerUUID, int count) {
+            this.playerUUID = playerUUID;
+            this.count = count;
+        }
+
+        static Counter read(ResultSet rs) throws SQLException {
+            return new Counter(rs.getString("UUID"), rs.getInt("Count"));
+        }
+
+        String getPlayerUUID() {
+            return playerUUID;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        byte[] encode() {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+                DataOutputStream out = new DataOutputStream(bytes);
+                Row.writeString(out, playerUUID);
+                out.writeInt(count);
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                // Writing to memory cannot fail
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static Counter decode(byte[] record) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            String playerUUID = Row.readString(in);
+            int count = in.readInt();
+            if (playerUUID == null) {
+                throw new IOException("Backup counter record is missing its player");
+            }
+            return new Counter(playerUUID, count);
+        }
+    }
+
+    /**
+     * Order-independent hash of a set of records, with their count.
+     */
+    static final class RangeHash {
+        private final MessageDigest digest;
+        private long high;
+        private long low;
+        private long rows;
+
+        RangeHash() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        void add(byte[] record) {
+            ByteBuffer hash = ByteBuffer.wrap(digest.digest(record));
+            // Summing instead of XOR so a duplicated row changes the hash
+            high += hash.getLong();
+            low += hash.getLong();
+            rows++;
+        }
+
+        long getRows() {
+            return rows;
+        }
+
+        String toHex() {
+            return String.format("%016x%016x", high, low);
+        }
+    }
+
+    /**
+     * Writes one key range. Rows can be written in any order.
+     */
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final RangeHash hash = new RangeHash();
+        private boolean finished;
+
+        Writer(Path path, String range) throws IOException {
+            this.out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeUTF(range);
+        }
+
+        void write(Row row) throws IOException {
+            writeRecord(row.encode());
+        }
+
+        void write(Counter counter) throws IOException {
+            writeRecord(counter.encode());
+        }
+
+        private void writeRecord(byte[] record) throws IOException {
+            out.writeInt(record.length);
+            out.write(record);
+            hash.add(record);
+        }
+
+        /**
+         * Writes the trailer and closes the file.
+         */
+        RangeHash finish() throws IOException {
+            out.writeInt(-1);
+            out.writeLong(hash.getRows());
+            out.writeUTF(hash.toHex());
+            finished = true;
+            out.close();
+            return hash;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Reads one key range, checking the trailer once the last row has been read.
+     */
+    static final class Reader implements Closeable {
+        private final Path path;
+        private final DataInputStream in;
+        private final RangeHash hash = new RangeHash();
+        private long expectedRows = -1;
+        private String expectedHash;
+
+        Reader(Path path, String range) throws IOException {
+            this.path = path;
+            this.in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE), BUFFER_SIZE));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(path.getFileName() + " is not a gift backup file");
+                }
+                short version = in.readShort();
+                if (version != VERSION) {
+                    throw new IOException(path.getFileName() + " has unsupported format version " + version);
+                }
+                String fileRange = in.readUTF();
+                if (!fileRange.equals(range)) {
+                    throw new IOException(path.getFileName() + " holds range " + fileRange + ", expected " + range);
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the next row, or null after the last row once the trailer matched
+         * @throws IOException if the file is truncated or its trailer does not match its rows
+         */
+        Row next() throws IOException {
+            byte[] record = nextRecord();
+            return record != null ? Row.decode(record) : null;
+        }
+
+        /**
+         * Like {@link #next()}, for the counter file.
+         */
+        Counter nextCounter() throws IOException {
+            byte[] record = nextRecord();
+            return record != null ? Counter.decode(record) : null;
+        }
+
+        private byte[] nextRecord() throws IOException {
+            if (expectedRows >= 0) {
+                return null;
+            }
+            int length = in.readInt();
+            if (length == -1) {
+                expectedRows = in.readLong();
+                expectedHash = in.readUTF();
+                if (expectedRows != hash.getRows() || !expectedHash.equals(hash.toHex())) {
+                    throw new IOException(path.getFileName() + " is corrupt: trailer says " + expectedRows + " rows, hash "
+                            + expectedHash + " but the file holds " + hash.getRows() + " rows, hash " + hash.toHex());
+                }
+                return null;
+            }
+            if (length < 0 || length > MAX_RECORD_BYTES) {
+                throw new IOException(path.getFileName() + " is corrupt: bad record length " + length);
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+            hash.add(record);
+            return record;
+        }
+
+        /**
+         * @return the hash of the rows read so far; after the last row, of the whole file
+         */
+        RangeHash getHash() {
+            return hash;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
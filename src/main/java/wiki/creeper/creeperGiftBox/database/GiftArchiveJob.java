@@ -0,0 +1,111 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A running export or import of the whole gift store.
+ *
+ * The gift tables are split into key ranges that are processed in parallel, each into or from its
+ * own file; the gift counters are one more range. Every finished range is recorded in the backup folder, so a job started again with the
+ * same backup name continues where the last one stopped. The completion future yields the number
+ * of rows written.
+ */
+public class GiftArchiveJob {
+
+    public enum Direction {
+        /** 선물 저장소를 백업 파일로 내보냅니다. */
+        EXPORT,
+        /** 백업 파일의 선물을 비어 있는 선물 저장소로 가져옵니다. */
+        IMPORT
+    }
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String name;
+    private final Direction direction;
+    private volatile int ranges;
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicInteger finishedRanges = new AtomicInteger();
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+    private volatile State state = State.RUNNING;
+
+    GiftArchiveJob(String name, Direction direction, int ranges) {
+        this.name = name;
+        this.direction = direction;
+        this.ranges = ranges;
+    }
+
+    /**
+     * @return 백업 이름 (백업 폴더 이름)
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return 지금까지 내보내거나 가져온 행 수. 이어서 진행한 작업은 이전에 끝난 행도 포함합니다.
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    /**
+     * @return 전체 키 범위 수
+     */
+    public int getRanges() {
+        return ranges;
+    }
+
+    /**
+     * @return 검증까지 끝난 키 범위 수
+     */
+    public int getFinishedRanges() {
+        return finishedRanges.get();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return 작업이 끝나면 처리된 행 수로 완료되는 CompletableFuture
+     */
+    public CompletableFuture<Long> getCompletion() {
+        return completion;
+    }
+
+    void setRanges(int ranges) {
+        this.ranges = ranges;
+    }
+
+    void addRows(long count) {
+        rows.addAndGet(count);
+    }
+
+    void rangeFinished() {
+        finishedRanges.incrementAndGet();
+    }
+
+    synchronized void complete() {
+        state = State.COMPLETED;
+        completion.complete(rows.get());
+    }
+
+    synchronized void fail(Throwable throwable) {
+        if (state != State.RUNNING) {
+            return;
+        }
+        state = State.FAILED;
+        completion.completeExceptionally(throwable);
+    }
+}
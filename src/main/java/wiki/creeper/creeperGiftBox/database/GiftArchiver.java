@@ -0,0 +1,697 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Exports the gift tables (present, present_overflow and the gift counters) to backup files and
+ * imports them back. Both gift tables are split into key ranges by the first character of the gift
+ * ID so several ranges are processed at once.
+ *
+ * An export streams each range from its own consistent snapshot into a {@link GiftArchiveFile},
+ * checks the written rows against a count taken in the same snapshot and records the range in
+ * the backup's manifest; the counters are written the same way as one more range. An import only
+ * runs against empty gift tables and blocks every other write to them until it is done: it drops
+ * the secondary indexes of present, inserts each range in large batches, verifies the range's
+ * count and hash against the manifest, and builds the indexes once at the end. The counters are
+ * then rebuilt from the restored gifts and checked against the exported ones. Progress of both is
+ * kept in the backup folder, so a failed or interrupted job continues where it stopped when
+ * started again.
+ */
+class GiftArchiver {
+
+    static final String DIRECTORY = "backups";
+    private static final String MANIFEST = "manifest.properties";
+    private static final String IMPORT_STATE = "import.properties";
+    // Version 1 backups hold the present table only
+    private static final int FORMAT_VERSION = 2;
+    private static final String TABLE_PRESENT = "present";
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    // Gift IDs are UUID strings, so their first character spreads them evenly over 16 ranges
+    private static final String[] RANGES = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f"};
+    private static final List<Part> PRESENT_PARTS = List.copyOf(parts(TABLE_PRESENT));
+    private static final List<Part> ALL_PARTS = new ArrayList<>(PRESENT_PARTS);
+    // Secondary indexes of the present table; the primary key is kept so replayed batches stay idempotent
+    private static final Map<String, String> DEFERRED_INDEXES = new LinkedHashMap<>();
+
+    static {
+        DEFERRED_INDEXES.put("uuid_index", "UUID");
+        DEFERRED_INDEXES.put("campaign_index", "CampaignID, ID");
+        DEFERRED_INDEXES.put("expire_index", "ExpireStamp");
+        DEFERRED_INDEXES.put("material_index", "Material, CustomModelData, ID");
+        DEFERRED_INDEXES.put("sender_key_index", "SenderKey, ID");
+        ALL_PARTS.addAll(parts(InboxLimiter.TABLE_OVERFLOW));
+        ALL_PARTS.add(new Part(InboxLimiter.TABLE_COUNTER, null));
+    }
+
+    private final CreeperGiftBox plugin;
+    private final DataSource dataSource;
+    private final Executor executor;
+    private final InboxLimiter inboxLimiter;
+    private final MaintenanceGate maintenanceGate;
+    private final long drainTimeoutMillis;
+    private final int parallelism;
+    private final int batchSize;
+    private final List<GiftArchiveJob> jobs = new CopyOnWriteArrayList<>();
+    private volatile boolean closed = false;
+
+    /**
+     * @param drainTimeoutMillis how long an import waits for gift operations in progress before it gives up
+     */
+    GiftArchiver(CreeperGiftBox plugin, DataSource dataSource, Executor executor, InboxLimiter inboxLimiter,
+                 MaintenanceGate maintenanceGate, long drainTimeoutMillis, int parallelism, int batchSize) {
+        this.plugin = plugin;
+        this.dataSource = dataSource;
+        this.executor = executor;
+        this.inboxLimiter = inboxLimiter;
+        this.maintenanceGate = maintenanceGate;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.parallelism = Math.max(1, Math.min(parallelism, RANGES.length));
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Starts an export or import in the background.
+     *
+     * @throws IllegalArgumentException if the name is not a valid folder name
+     * @throws IllegalStateException if another export or import is running
+     */
+    synchronized GiftArchiveJob start(GiftArchiveJob.Direction direction, String name) {
+        if (!NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException("Backup names may only contain letters, digits, '-' and '_'");
+        }
+        for (GiftArchiveJob job : jobs) {
+            if (job.getState() == GiftArchiveJob.State.RUNNING) {
+                throw new IllegalStateException("Backup job " + job.getName() + " is still running");
+            }
+        }
+        GiftArchiveJob job = new GiftArchiveJob(name, direction, ALL_PARTS.size());
+        jobs.add(job);
+        plugin.getLogger().info("Started gift " + direction.name().toLowerCase() + " " + name);
+        CompletableFuture.runAsync(() -> {
+            try {
+                if (direction == GiftArchiveJob.Direction.EXPORT) {
+                    export(job);
+                } else {
+                    restore(job);
+                }
+                job.complete();
+                plugin.getLogger().info("Finished gift " + direction.name().toLowerCase() + " " + name + ": " + job.getRows() + " rows");
+            } catch (SQLException | IOException | RuntimeException e) {
+                plugin.getLogger().severe("Gift " + direction.name().toLowerCase() + " " + name + " failed: " + e.getMessage());
+                job.fail(e);
+            }
+        }, executor);
+        return job;
+    }
+
+    List<GiftArchiveJob> getJobs() {
+        return Collections.unmodifiableList(jobs);
+    }
+
+    /**
+     * Stops running jobs after their current batch; they continue from there when started again.
+     */
+    void close() {
+        closed = true;
+    }
+
+    private void export(GiftArchiveJob job) throws IOException, SQLException {
+        Path directory = plugin.getDataFolder().toPath().resolve(DIRECTORY).resolve(job.getName());
+        Files.createDirectories(directory);
+        Manifest manifest = new Manifest(directory.resolve(MANIFEST));
+        manifest.initialize();
+
+        Queue<Part> pending = new ConcurrentLinkedQueue<>();
+        for (Part part : ALL_PARTS) {
+            if (manifest.hasRange(part.key()) && Files.exists(directory.resolve(part.fileName()))) {
+                job.addRows(manifest.getRows(part.key()));
+                job.rangeFinished();
+            } else {
+                pending.add(part);
+            }
+        }
+        runRanges(pending, part -> exportRange(job, directory, manifest, part));
+    }
+
+    private void exportRange(GiftArchiveJob job, Path directory, Manifest manifest, Part part) throws IOException, SQLException {
+        Path target = directory.resolve(part.fileName());
+        Path temp = directory.resolve(part.fileName() + ".tmp");
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            connection.setAutoCommit(false);
+            try {
+                // The count and the rows come from the same snapshot, so they must agree
+                long expected;
+                try (PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM " + part.table() + part.where())) {
+                    part.bind(ps);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        expected = rs.getLong(1);
+                    }
+                }
+
+                GiftArchiveFile.RangeHash hash;
+                try (GiftArchiveFile.Writer writer = new GiftArchiveFile.Writer(temp, part.key());
+                     PreparedStatement ps = connection.prepareStatement(part.select() + " ORDER BY " + part.orderColumn(),
+                             ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    // Integer.MIN_VALUE makes the MySQL driver stream rows instead of buffering the result
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    part.bind(ps);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            if (part.isCounters()) {
+                                writer.write(GiftArchiveFile.Counter.read(rs));
+                            } else {
+                                writer.write(GiftArchiveFile.Row.read(rs));
+                            }
+                            job.addRows(1);
+                        }
+                    }
+                    hash = writer.finish();
+                }
+                connection.commit();
+                if (hash.getRows() != expected) {
+                    throw new IOException("Exported " + hash.getRows() + " rows of range " + part.key() + " but it holds " + expected);
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                manifest.putRange(part.key(), hash);
+                job.rangeFinished();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void restore(GiftArchiveJob job) throws IOException, SQLException {
+        Path directory = plugin.getDataFolder().toPath().resolve(DIRECTORY).resolve(job.getName());
+        Path manifestPath = directory.resolve(MANIFEST);
+        if (!Files.exists(manifestPath)) {
+            throw new IOException("Backup " + job.getName() + " does not exist");
+        }
+        Manifest manifest = new Manifest(manifestPath);
+        List<Part> parts = manifest.getVersion() == 1 ? PRESENT_PARTS : ALL_PARTS;
+        job.setRanges(parts.size());
+        for (Part part : parts) {
+            if (!manifest.hasRange(part.key())) {
+                throw new IOException("Backup " + job.getName() + " is incomplete, run its export again to finish it");
+            }
+        }
+
+        ImportState state = new ImportState(directory.resolve(IMPORT_STATE));
+        if (state.isCompleted()) {
+            throw new IllegalStateException("Backup " + job.getName() + " has already been imported");
+        }
+
+        // Held until the counters are rebuilt, so no gift is written, loaded, claimed or swept while the tables are restored
+        maintenanceGate.block(drainTimeoutMillis);
+        plugin.getLogger().info("Gift boxes are unavailable until import " + job.getName() + " finishes");
+        try {
+            if (!state.isStarted()) {
+                if (!isTableEmpty(TABLE_PRESENT) || !isTableEmpty(InboxLimiter.TABLE_OVERFLOW)) {
+                    throw new IllegalStateException("The gift tables are not empty; imports only restore into empty tables");
+                }
+                dropDeferredIndexes();
+                state.markStarted();
+            }
+
+            Queue<Part> pending = new ConcurrentLinkedQueue<>();
+            Part counters = null;
+            for (Part part : parts) {
+                if (part.isCounters()) {
+                    counters = part;
+                } else if (state.isVerified(part.key())) {
+                    job.addRows(manifest.getRows(part.key()));
+                    job.rangeFinished();
+                } else {
+                    pending.add(part);
+                }
+            }
+            runRanges(pending, part -> importRange(job, directory, manifest, state, part));
+
+            createDeferredIndexes();
+            restoreCounters(job, directory, manifest, counters);
+            state.markCompleted();
+        } finally {
+            maintenanceGate.unblock();
+            plugin.getLogger().info("Gift boxes are available again");
+        }
+    }
+
+    private void importRange(GiftArchiveJob job, Path directory, Manifest manifest, ImportState state, Part part)
+            throws IOException, SQLException {
+        Path file = directory.resolve(part.fileName());
+        // Read the whole file once first so a corrupt file is caught before any of it is inserted
+        try (GiftArchiveFile.Reader reader = new GiftArchiveFile.Reader(file, part.key())) {
+            while (reader.next() != null) {
+                // Only reading to check the trailer
+            }
+            checkAgainstManifest(manifest, part.key(), reader.getHash(), file.getFileName().toString());
+        }
+
+        long committed = state.getRows(part.key());
+        job.addRows(committed);
+        try (GiftArchiveFile.Reader reader = new GiftArchiveFile.Reader(file, part.key());
+             Connection connection = dataSource.getConnection()) {
+            for (long skipped = 0; skipped < committed; skipped++) {
+                reader.next();
+            }
+            String fullBatchSql = insertSql(part.table(), batchSize);
+            List<GiftArchiveFile.Row> batch = new ArrayList<>(batchSize);
+            GiftArchiveFile.Row row;
+            while ((row = reader.next()) != null) {
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    insert(connection, fullBatchSql, batch);
+                    committed += batch.size();
+                    job.addRows(batch.size());
+                    state.putRows(part.key(), committed);
+                    batch.clear();
+                    if (closed) {
+                        throw new IllegalStateException("Plugin is shutting down, import will continue from row " + committed);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                insert(connection, insertSql(part.table(), batch.size()), batch);
+                committed += batch.size();
+                job.addRows(batch.size());
+                state.putRows(part.key(), committed);
+            }
+
+            checkAgainstManifest(manifest, part.key(), hashRange(connection, part), part.table() + " table");
+        }
+        state.markVerified(part.key());
+        job.rangeFinished();
+    }
+
+    /**
+     * Rebuilds the gift counters from the restored gifts. Exported counters are only compared: they
+     * come from another snapshot than the gifts, so gifts written during the export make them differ.
+     *
+     * @param counters the counter part of the backup, or null for backups made before counters were exported
+     */
+    private void restoreCounters(GiftArchiveJob job, Path directory, Manifest manifest, Part counters) throws IOException, SQLException {
+        GiftArchiveFile.RangeHash exported = null;
+        if (counters != null) {
+            Path file = directory.resolve(counters.fileName());
+            try (GiftArchiveFile.Reader reader = new GiftArchiveFile.Reader(file, counters.key())) {
+                while (reader.nextCounter() != null) {
+                    // Only reading to check the trailer
+                }
+                exported = reader.getHash();
+            }
+            checkAgainstManifest(manifest, counters.key(), exported, file.getFileName().toString());
+        }
+
+        GiftArchiveFile.RangeHash rebuilt;
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                inboxLimiter.recount(connection);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            rebuilt = counters != null ? hashRange(connection, counters) : null;
+        }
+
+        if (counters != null) {
+            if (!rebuilt.toHex().equals(exported.toHex())) {
+                plugin.getLogger().warning("Gift counters of backup " + job.getName() + " did not match its gifts, "
+                        + "which were probably changed during the export; they were rebuilt from the imported gifts");
+            }
+            job.addRows(rebuilt.getRows());
+            job.rangeFinished();
+        }
+    }
+
+    private void insert(Connection connection, String sql, List<GiftArchiveFile.Row> batch) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (GiftArchiveFile.Row row : batch) {
+                row.bind(ps, index);
+                index += GiftArchiveFile.COLUMN_COUNT;
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    private static String insertSql(String table, int rows) {
+        String values = "(" + String.join(", ", Collections.nCopies(GiftArchiveFile.COLUMN_COUNT, "?")) + ")";
+        // IGNORE makes a batch replayed after a crash, committed but not yet recorded, a no-op
+        return "INSERT IGNORE INTO " + table + " (" + GiftArchiveFile.SELECT_COLUMNS + ") VALUES "
+                + String.join(", ", Collections.nCopies(rows, values));
+    }
+
+    private GiftArchiveFile.RangeHash hashRange(Connection connection, Part part) throws SQLException {
+        GiftArchiveFile.RangeHash hash = new GiftArchiveFile.RangeHash();
+        try (PreparedStatement ps = connection.prepareStatement(part.select(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(Integer.MIN_VALUE);
+            part.bind(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    hash.add(part.isCounters() ? GiftArchiveFile.Counter.read(rs).encode() : GiftArchiveFile.Row.read(rs).encode());
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static void checkAgainstManifest(Manifest manifest, String range, GiftArchiveFile.RangeHash hash, String source) throws IOException {
+        if (hash.getRows() != manifest.getRows(range) || !hash.toHex().equals(manifest.getHash(range))) {
+            throw new IOException("Range " + range + " of the " + source + " does not match the manifest: " + hash.getRows()
+                    + " rows, hash " + hash.toHex() + ", expected " + manifest.getRows(range) + " rows, hash " + manifest.getHash(range));
+        }
+    }
+
+    private boolean isTableEmpty(String table) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement("SELECT 1 FROM " + table + " LIMIT 1");
+             ResultSet rs = ps.executeQuery()) {
+            return !rs.next();
+        }
+    }
+
+    private void dropDeferredIndexes() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            List<String> drops = new ArrayList<>();
+            for (String index : existingIndexes(connection, true)) {
+                drops.add("DROP INDEX " + index);
+            }
+            if (drops.isEmpty()) {
+                return;
+            }
+            try (PreparedStatement ps = connection.prepareStatement("ALTER TABLE present " + String.join(", ", drops))) {
+                ps.execute();
+            }
+        }
+    }
+
+    private void createDeferredIndexes() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            List<String> adds = new ArrayList<>();
+            for (String index : existingIndexes(connection, false)) {
+                adds.add("ADD INDEX " + index + " (" + DEFERRED_INDEXES.get(index) + ")");
+            }
+            if (adds.isEmpty()) {
+                return;
+            }
+            plugin.getLogger().info("Building " + adds.size() + " indexes on present, this may take a while on large tables...");
+            // One statement so the table is rebuilt once for all indexes
+            try (PreparedStatement ps = connection.prepareStatement("ALTER TABLE present " + String.join(", ", adds))) {
+                ps.execute();
+            }
+        }
+    }
+
+    /**
+     * @param present true for the deferred indexes that exist, false for the ones that are missing
+     */
+    private List<String> existingIndexes(Connection connection, boolean present) throws SQLException {
+        List<String> existing = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT DISTINCT INDEX_NAME FROM information_schema.STATISTICS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'present'");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                existing.add(rs.getString(1));
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (String index : DEFERRED_INDEXES.keySet()) {
+            if (existing.contains(index) == present) {
+                result.add(index);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the ranges on up to {@code parallelism} workers and waits for all of them.
+     * The first failure stops the other workers after their current range.
+     */
+    private void runRanges(Queue<Part> pending, RangeTask task) throws IOException, SQLException {
+        AtomicBoolean failed = new AtomicBoolean(false);
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < parallelism; i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                Part part;
+                while (!failed.get() && !closed && (part = pending.poll()) != null) {
+                    try {
+                        task.run(part);
+                    } catch (IOException | SQLException e) {
+                        failed.set(true);
+                        throw new CompletionException(e);
+                    } catch (RuntimeException e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof SQLException sql) {
+                throw sql;
+            }
+            throw e;
+        }
+        if (!pending.isEmpty()) {
+            throw new IllegalStateException("Plugin is shutting down, " + pending.size() + " ranges left");
+        }
+    }
+
+    private static List<Part> parts(String table) {
+        List<Part> parts = new ArrayList<>(RANGES.length);
+        for (String range : RANGES) {
+            parts.add(new Part(table, range));
+        }
+        return parts;
+    }
+
+    private interface RangeTask {
+        void run(Part part) throws IOException, SQLException;
+    }
+
+    /**
+     * One file of a backup: a key range of a gift table, or the whole counter table when {@code range} is null.
+     */
+    private record Part(String table, String range) {
+
+        /**
+         * @return the name of the part in the manifest and the file header; ranges of present keep their bare
+         *         name, so backups made before the other tables were exported stay readable
+         */
+        String key() {
+            if (range == null) {
+                return table;
+            }
+            return table.equals(TABLE_PRESENT) ? range : table + "-" + range;
+        }
+
+        String fileName() {
+            return (range == null ? table : table + "-" + range) + ".cgb";
+        }
+
+        boolean isCounters() {
+            return range == null;
+        }
+
+        String orderColumn() {
+            return isCounters() ? "UUID" : "ID";
+        }
+
+        String select() {
+            return "SELECT " + (isCounters() ? GiftArchiveFile.Counter.SELECT_COLUMNS : GiftArchiveFile.SELECT_COLUMNS)
+                    + " FROM " + table + where();
+        }
+
+        String where() {
+            if (isCounters()) {
+                // Players without gifts have no counter after an import, so empty counters are not part of a backup
+                return " WHERE Count > 0";
+            }
+            int index = List.of(RANGES).indexOf(range);
+            List<String> conditions = new ArrayList<>();
+            // The first and last ranges are open so IDs of any form are exported exactly once
+            if (index > 0) {
+                conditions.add("ID >= ?");
+            }
+            if (index < RANGES.length - 1) {
+                conditions.add("ID < ?");
+            }
+            return " WHERE " + String.join(" AND ", conditions);
+        }
+
+        void bind(PreparedStatement ps) throws SQLException {
+            if (isCounters()) {
+                return;
+            }
+            int index = List.of(RANGES).indexOf(range);
+            int parameter = 1;
+            if (index > 0) {
+                ps.setString(parameter++, range);
+            }
+            if (index < RANGES.length - 1) {
+                ps.setString(parameter, RANGES[index + 1]);
+            }
+        }
+    }
+
+    /**
+     * A properties file in the backup folder, rewritten atomically on every change.
+     */
+    private static class StateFile {
+        protected final Properties properties = new Properties();
+        private final Path path;
+
+        StateFile(Path path) throws IOException {
+            this.path = path;
+            if (Files.exists(path)) {
+                try (InputStream in = Files.newInputStream(path)) {
+                    properties.load(in);
+                }
+            }
+        }
+
+        protected synchronized void save() throws IOException {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "CreeperGiftBox backup");
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Row count and hash of every exported range.
+     */
+    private static final class Manifest extends StateFile {
+
+        Manifest(Path path) throws IOException {
+            super(path);
+        }
+
+        synchronized void initialize() throws IOException {
+            String version = properties.getProperty("format");
+            if (version != null && Integer.parseInt(version) != FORMAT_VERSION) {
+                throw new IOException("Backup has unsupported format version " + version);
+            }
+            if (version == null) {
+                properties.setProperty("format", String.valueOf(FORMAT_VERSION));
+                properties.setProperty("ranges", String.valueOf(RANGES.length));
+                properties.setProperty("started", String.valueOf(System.currentTimeMillis()));
+                save();
+            }
+        }
+
+        synchronized int getVersion() {
+            return Integer.parseInt(properties.getProperty("format", "1"));
+        }
+
+        synchronized boolean hasRange(String range) {
+            return properties.containsKey("range." + range + ".hash");
+        }
+
+        synchronized long getRows(String range) {
+            return Long.parseLong(properties.getProperty("range." + range + ".rows", "0"));
+        }
+
+        synchronized String getHash(String range) {
+            return properties.getProperty("range." + range + ".hash");
+        }
+
+        synchronized void putRange(String range, GiftArchiveFile.RangeHash hash) throws IOException {
+            properties.setProperty("range." + range + ".rows", String.valueOf(hash.getRows()));
+            properties.setProperty("range." + range + ".hash", hash.toHex());
+            save();
+        }
+    }
+
+    /**
+     * Rows committed and verified per range of an import, next to the backup it reads.
+     */
+    private static final class ImportState extends StateFile {
+
+        ImportState(Path path) throws IOException {
+            super(path);
+        }
+
+        synchronized boolean isStarted() {
+            return properties.containsKey("started");
+        }
+
+        synchronized void markStarted() throws IOException {
+            properties.setProperty("started", String.valueOf(System.currentTimeMillis()));
+            save();
+        }
+
+        synchronized boolean isCompleted() {
+            return properties.containsKey("completed");
+        }
+
+        synchronized void markCompleted() throws IOException {
+            properties.setProperty("completed", String.valueOf(System.currentTimeMillis()));
+            save();
+        }
+
+        synchronized long getRows(String range) {
+            return Long.parseLong(properties.getProperty("range." + range + ".rows", "0"));
+        }
+
+        synchronized void putRows(String range, long rows) throws IOException {
+            properties.setProperty("range." + range + ".rows", String.valueOf(rows));
+            save();
+        }
+
+        synchronized boolean isVerified(String range) {
+            return properties.containsKey("range." + range + ".verified");
+        }
+
+        synchronized void markVerified(String range) throws IOException {
+            properties.setProperty("range." + range + ".verified", "true");
+            save();
+        }
+    }
+}
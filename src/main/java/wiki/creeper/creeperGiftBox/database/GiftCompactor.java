@@ -0,0 +1,234 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import org.bukkit.inventory.ItemStack;
+import wiki.creeper.creeperGiftBox.model.Gift;
+import wiki.creeper.creeperGiftBox.util.ItemSerializer;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Merges a player's identical gifts into fewer rows.
+ *
+ * Gifts are merged when they have the same sender, expiry and campaign and their items are
+ * {@code isSimilar}; bundles are never touched. Each group is packed into as few full stacks as
+ * possible, keeping the oldest rows (and their IDs) and deleting the rest. All changes for one
+ * player, including their gift counter, are one transaction, which is rolled back if any row
+ * changed in the meantime or the player opened the gift box before the commit.
+ */
+class GiftCompactor {
+
+    private static final int SCAN_LIMIT = 1000;
+
+    private final DataSource dataSource;
+    private final StatementFactory statements;
+    private final InboxLimiter inboxLimiter;
+
+    GiftCompactor(DataSource dataSource, StatementFactory statements, InboxLimiter inboxLimiter) {
+        this.dataSource = dataSource;
+        this.statements = statements;
+        this.inboxLimiter = inboxLimiter;
+    }
+
+    /**
+     * Compacts one player's gift box. Must be called off the main thread.
+     *
+     * @param busy Tells whether the player is looking at their gift box right now
+     * @return the number of rows removed
+     */
+    int compact(UUID playerUUID, Predicate<UUID> busy) throws SQLException {
+        if (busy.test(playerUUID)) {
+            return 0;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            List<Gift> gifts = loadCandidates(connection, playerUUID);
+            List<Merge> merges = plan(gifts);
+            if (merges.isEmpty()) {
+                return 0;
+            }
+
+            int removed = 0;
+            connection.setAutoCommit(false);
+            try {
+                Map<UUID, Integer> counts = inboxLimiter.lock(connection, List.of(playerUUID));
+                for (Merge merge : merges) {
+                    apply(connection, merge);
+                    removed += merge.removed.size();
+                }
+                // Merged rows free gift box slots, which spilled gifts may take
+                inboxLimiter.settle(connection, counts, Map.of(playerUUID, -removed), System.currentTimeMillis());
+                // The gift box may have been opened while the rows were being rewritten
+                if (busy.test(playerUUID)) {
+                    connection.rollback();
+                    return 0;
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            return removed;
+        }
+    }
+
+    private List<Gift> loadCandidates(Connection connection, UUID playerUUID) throws SQLException {
+        List<Gift> gifts = new ArrayList<>();
+        String sql = "SELECT * FROM present WHERE UUID = ? AND (ExpireStamp = -1 OR ExpireStamp > ?) " +
+                "AND ItemStack NOT LIKE 'bundle:%' ORDER BY TimeStamp ASC LIMIT ?";
+        try (PreparedStatement ps = statements.prepare(connection, sql)) {
+            ps.setString(1, playerUUID.toString());
+            ps.setLong(2, System.currentTimeMillis());
+            ps.setInt(3, SCAN_LIMIT);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    gifts.add(DatabaseManager.readGift(rs));
+                }
+            }
+        }
+        return gifts;
+    }
+
+    private List<Merge> plan(List<Gift> gifts) {
+        // Cheap grouping first so items are only compared within a sender/expiry/campaign group
+        Map<List<Object>, List<Gift>> groups = new LinkedHashMap<>();
+        for (Gift gift : gifts) {
+            groups.computeIfAbsent(List.of(gift.getSender(), gift.getExpireStamp(), Objects.toString(gift.getCampaignId(), "")),
+                    key -> new ArrayList<>()).add(gift);
+        }
+
+        List<Merge> merges = new ArrayList<>();
+        for (List<Gift> group : groups.values()) {
+            if (group.size() < 2) {
+                continue;
+            }
+            List<List<Gift>> similar = new ArrayList<>();
+            for (Gift gift : group) {
+                ItemStack item;
+                try {
+                    item = gift.getItemStack();
+                } catch (IllegalStateException e) {
+                    continue;
+                }
+                if (item == null) {
+                    continue;
+                }
+                List<Gift> match = null;
+                for (List<Gift> candidate : similar) {
+                    if (candidate.get(0).getItemStack().isSimilar(item)) {
+                        match = candidate;
+                        break;
+                    }
+                }
+                if (match == null) {
+                    match = new ArrayList<>();
+                    similar.add(match);
+                }
+                match.add(gift);
+            }
+            for (List<Gift> rows : similar) {
+                Merge merge = planMerge(rows);
+                if (merge != null) {
+                    merges.add(merge);
+                }
+            }
+        }
+        return merges;
+    }
+
+    /**
+     * @return the merge packing the rows into full stacks, or null if that would not remove a row
+     */
+    private Merge planMerge(List<Gift> rows) {
+        if (rows.size() < 2) {
+            return null;
+        }
+        int maxStackSize = Math.max(1, rows.get(0).getItemStack().getMaxStackSize());
+        long total = rows.stream().mapToLong(Gift::getAmount).sum();
+        int needed = (int) ((total + maxStackSize - 1) / maxStackSize);
+        if (needed >= rows.size()) {
+            return null;
+        }
+
+        Merge merge = new Merge();
+        long remaining = total;
+        for (int i = 0; i < rows.size(); i++) {
+            Gift row = rows.get(i);
+            if (i < needed) {
+                int amount = (int) Math.min(remaining, maxStackSize);
+                remaining -= amount;
+                merge.kept.add(row);
+                merge.keptAmounts.add(amount);
+            } else {
+                merge.removed.add(row);
+            }
+        }
+        return merge;
+    }
+
+    private void apply(Connection connection, Merge merge) throws SQLException {
+        try (PreparedStatement ps = statements.prepare(connection, "UPDATE present SET ItemStack = ?, Count = ? WHERE ID = ? AND Count = ?")) {
+            for (int i = 0; i < merge.kept.size(); i++) {
+                Gift row = merge.kept.get(i);
+                int amount = merge.keptAmounts.get(i);
+                ItemStack item = row.getItemStack().clone();
+                item.setAmount(amount);
+                ps.setString(1, ItemSerializer.serialize(item));
+                ps.setInt(2, amount);
+                ps.setString(3, row.getId());
+                ps.setInt(4, row.getAmount());
+                ps.addBatch();
+            }
+            for (int updated : ps.executeBatch()) {
+                if (updated != 1) {
+                    throw new SQLException("Gift changed during compaction");
+                }
+            }
+        }
+
+        String ids = String.join(", ", Collections.nCopies(merge.removed.size(), "?"));
+        try (PreparedStatement ps = statements.prepare(connection, "DELETE FROM present WHERE ID IN (" + ids + ")")) {
+            int index = 1;
+            for (Gift row : merge.removed) {
+                ps.setString(index++, row.getId());
+            }
+            if (ps.executeUpdate() != merge.removed.size()) {
+                throw new SQLException("Gift claimed during compaction");
+            }
+        }
+
+        String sql = "INSERT INTO present_log (GiftID, PlayerUUID, ItemStack, Count, Sender, Result, TimeStamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        long now = System.currentTimeMillis();
+        try (PreparedStatement ps = statements.prepare(connection, sql)) {
+            for (Gift row : merge.removed) {
+                ps.setString(1, row.getId());
+                ps.setString(2, row.getPlayerUUID().toString());
+                ps.setString(3, row.getSerializedItem());
+                ps.setInt(4, row.getAmount());
+                ps.setString(5, row.getSender());
+                ps.setInt(6, LogResult.MERGED.getValue());
+                ps.setLong(7, now);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static final class Merge {
+        private final List<Gift> kept = new ArrayList<>();
+        private final List<Integer> keptAmounts = new ArrayList<>();
+        private final List<Gift> removed = new ArrayList<>();
+    }
+}
@@ -0,0 +1,320 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.model.Gift;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Streams the rows of one query to subscribers as gifts, reading a forward-only cursor only as far
+ * as the subscriber has asked for.
+ *
+ * Every subscription runs the query on its own connection with the MySQL driver in streaming mode,
+ * so at most one row is held in memory however large the result is. Items are decoded by the gift
+ * itself when first used. All cursor work of a subscription happens in one drain loop that never
+ * runs on two threads at once; requests and cancels made from any thread only schedule that loop.
+ * A subscription that requests nothing for the idle timeout is failed so it does not hold its
+ * pool connection forever.
+ *
+ * Opening a cursor takes one of a few stream permits shared by all publishers, so streams never
+ * hold more than a small part of the pool, and goes through the circuit breaker like any other
+ * call. An open stream stays inside the maintenance gate until it is closed and fails as soon as
+ * an import blocks the gate, so it neither reads a half-restored table nor holds the import up.
+ */
+class GiftPublisher implements Flow.Publisher<Gift> {
+
+    /**
+     * Binds the parameters of the streamed query.
+     */
+    interface Binder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    private final CreeperGiftBox plugin;
+    private final Supplier<DataSource> dataSource;
+    private final Executor executor;
+    private final CompletableFuture<Void> ready;
+    private final String sql;
+    private final Binder binder;
+    private final CircuitBreaker circuitBreaker;
+    private final MaintenanceGate maintenanceGate;
+    private final Semaphore streamPermits;
+    private final long idleTimeoutMillis;
+
+    GiftPublisher(CreeperGiftBox plugin, Supplier<DataSource> dataSource, Executor executor, CompletableFuture<Void> ready,
+                  CircuitBreaker circuitBreaker, MaintenanceGate maintenanceGate, Semaphore streamPermits,
+                  String sql, Binder binder, long idleTimeoutMillis) {
+        this.plugin = plugin;
+        this.dataSource = dataSource;
+        this.executor = executor;
+        this.ready = ready;
+        this.circuitBreaker = circuitBreaker;
+        this.maintenanceGate = maintenanceGate;
+        this.streamPermits = streamPermits;
+        this.sql = sql;
+        this.binder = binder;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Gift> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber cannot be null");
+        subscriber.onSubscribe(new CursorSubscription(subscriber));
+    }
+
+    private final class CursorSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Gift> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicLong emitted = new AtomicLong();
+        private volatile boolean cancelled;
+        private volatile Throwable pendingError;
+        // Only touched inside the drain loop
+        private boolean done;
+        private boolean exhausted;
+        private Connection connection;
+        private PreparedStatement statement;
+        private ResultSet cursor;
+        private boolean holdsPermit;
+        private boolean insideGate;
+        private CircuitBreaker.Permit openPermit;
+
+        private CursorSubscription(Flow.Subscriber<? super Gift> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                pendingError = new IllegalArgumentException("Requested " + n + " gifts, must be positive");
+            } else {
+                demand.accumulateAndGet(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            if (ready.isDone()) {
+                executor.execute(this::drain);
+            } else {
+                // Nothing runs against the database before its schema is ready
+                ready.whenComplete((ignored, throwable) -> executor.execute(this::drain));
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            while (true) {
+                if (!done) {
+                    step();
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void step() {
+            if (cancelled) {
+                finish(null, false);
+                return;
+            }
+            if (pendingError != null) {
+                finish(pendingError, true);
+                return;
+            }
+            if (ready.isCompletedExceptionally()) {
+                finish(new IllegalStateException("Database is not available"), true);
+                return;
+            }
+            if (insideGate && maintenanceGate.isBlocked()) {
+                finish(new DatabaseUnavailableException("Gift streams are closed while a gift import is running"), true);
+                return;
+            }
+
+            long requested = demand.get();
+            if (requested == 0) {
+                return;
+            }
+            if (cursor == null) {
+                Throwable refused = admit();
+                if (refused != null) {
+                    finish(refused, true);
+                    return;
+                }
+            }
+            try {
+                if (cursor == null) {
+                    open();
+                }
+                long sent = 0;
+                while (true) {
+                    while (sent != requested) {
+                        if (cancelled) {
+                            finish(null, false);
+                            return;
+                        }
+                        if (!cursor.next()) {
+                            exhausted = true;
+                            finish(null, true);
+                            return;
+                        }
+                        Gift gift = DatabaseManager.readGift(cursor);
+                        sent++;
+                        emitted.incrementAndGet();
+                        subscriber.onNext(gift);
+                    }
+                    requested = demand.addAndGet(-sent);
+                    sent = 0;
+                    if (requested == 0) {
+                        break;
+                    }
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.WARNING, "Gift stream failed", e);
+                finish(e, true);
+                return;
+            } catch (RuntimeException e) {
+                // A subscriber that throws breaks the protocol; stop without calling it again
+                plugin.getLogger().log(Level.WARNING, "Gift stream subscriber failed, cancelling the stream", e);
+                finish(null, false);
+                return;
+            }
+            watchIdle(emitted.get());
+        }
+
+        /**
+         * Takes a stream permit and enters the gate before the cursor is opened; both are given back by {@link #close()}.
+         * The circuit breaker is asked last, so a refused stream does not use up its probe.
+         *
+         * @return the error to fail the subscription with, or null if the cursor may be opened
+         */
+        private Throwable admit() {
+            if (!holdsPermit) {
+                if (!streamPermits.tryAcquire()) {
+                    return new DatabaseUnavailableException("Too many gift streams are open, try again later");
+                }
+                holdsPermit = true;
+            }
+            if (!insideGate) {
+                if (!maintenanceGate.tryEnter()) {
+                    return new DatabaseUnavailableException("Gift boxes are unavailable while a gift import is running");
+                }
+                insideGate = true;
+            }
+            openPermit = circuitBreaker.tryAcquire();
+            if (openPermit == null) {
+                return new DatabaseUnavailableException("Database is unavailable, circuit breaker is open");
+            }
+            return null;
+        }
+
+        private void open() throws SQLException {
+            CircuitBreaker.Permit permit = openPermit;
+            openPermit = null;
+            try {
+                connection = dataSource.get().getConnection();
+                statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                // Integer.MIN_VALUE makes the MySQL driver stream rows instead of buffering the result
+                statement.setFetchSize(Integer.MIN_VALUE);
+                binder.bind(statement);
+                cursor = statement.executeQuery();
+            } catch (SQLException | RuntimeException e) {
+                circuitBreaker.record(permit, e);
+                throw e;
+            }
+            circuitBreaker.record(permit, null);
+        }
+
+        private void watchIdle(long emittedAtPause) {
+            CompletableFuture.delayedExecutor(idleTimeoutMillis, TimeUnit.MILLISECONDS, executor).execute(() -> {
+                if (!cancelled && emitted.get() == emittedAtPause && demand.get() == 0) {
+                    pendingError = new TimeoutException("No gifts requested for " + idleTimeoutMillis + "ms");
+                    schedule();
+                }
+            });
+        }
+
+        private void finish(Throwable error, boolean signal) {
+            done = true;
+            close();
+            if (!signal) {
+                return;
+            }
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+
+        private void close() {
+            // Closing a streaming result set reads the rest of it, so the statement is cancelled first
+            try {
+                if (statement != null && cursor != null && !exhausted) {
+                    statement.cancel();
+                }
+            } catch (SQLException ignored) {
+                // The statement may already have finished
+            }
+            try {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            } catch (SQLException ignored) {
+                // Cancelled queries may fail to close cleanly
+            }
+            try {
+                if (statement != null) {
+                    statement.close();
+                }
+            } catch (SQLException ignored) {
+                // Same as above
+            }
+            try {
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to close gift stream connection", e);
+            }
+            cursor = null;
+            statement = null;
+            connection = null;
+            if (insideGate) {
+                insideGate = false;
+                maintenanceGate.exit();
+            }
+            if (holdsPermit) {
+                holdsPermit = false;
+                streamPermits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.model.Gift;
+import wiki.creeper.creeperGiftBox.model.GiftSearch;
+import wiki.creeper.creeperGiftBox.util.ItemSerializer;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Fills and queries the searchable columns of the present table.
+ *
+ * Material, custom model data and a lowercased sender are extracted when a gift is written,
+ * so admin searches run on indexes instead of decoding every stored item.
+ * Results are paged by gift ID (keyset pagination), which stays fast however deep the page is.
+ */
+class GiftSearchIndex {
+
+    static final String UNKNOWN_MATERIAL = "UNKNOWN";
+    private static final int BACKFILL_CHUNK_SIZE = 500;
+
+    private final CreeperGiftBox plugin;
+    private final DataSource dataSource;
+    private final StatementFactory statements;
+    private final String table;
+
+    GiftSearchIndex(CreeperGiftBox plugin, DataSource dataSource, StatementFactory statements, String table) {
+        this.plugin = plugin;
+        this.dataSource = dataSource;
+        this.statements = statements;
+        this.table = table;
+    }
+
+    /**
+     * Binds Material, CustomModelData and SenderKey for the given gift starting at {@code index}.
+     */
+    void bindColumns(PreparedStatement ps, int index, Gift gift) throws SQLException {
+        ItemStack item = gift.getItemStack();
+        ps.setString(index, item.getType().name());
+        Integer customModelData = customModelDataOf(item);
+        if (customModelData != null) {
+            ps.setInt(index + 1, customModelData);
+        } else {
+            ps.setNull(index + 1, Types.INTEGER);
+        }
+        ps.setString(index + 2, senderKey(gift.getSender()));
+    }
+
+    /**
+     * Returns up to {@code limit} gifts matching the search whose ID sorts after {@code afterId}.
+     *
+     * @param afterId ID of the last gift of the previous page, or null for the first page
+     */
+    List<Gift> search(GiftSearch search, String afterId, int limit) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = query(search, afterId, params) + " LIMIT ?";
+        params.add(limit);
+
+        List<Gift> gifts = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = statements.prepare(connection, sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    gifts.add(DatabaseManager.readGift(rs));
+                }
+            }
+        }
+        return gifts;
+    }
+
+    /**
+     * Builds the query for every gift matching the search whose ID sorts after {@code afterId}, ordered by ID.
+     *
+     * @param params Receives the values to bind, in order
+     */
+    String query(GiftSearch search, String afterId, List<Object> params) {
+        List<String> conditions = new ArrayList<>();
+        if (search.getSender() != null) {
+            conditions.add("SenderKey = ?");
+            params.add(senderKey(search.getSender()));
+        }
+        if (search.getMaterial() != null) {
+            conditions.add("Material = ?");
+            params.add(search.getMaterial().name());
+        }
+        if (search.getCustomModelData() != null) {
+            conditions.add("CustomModelData = ?");
+            params.add(search.getCustomModelData());
+        }
+        if (afterId != null) {
+            conditions.add("ID > ?");
+            params.add(afterId);
+        }
+        return "SELECT * FROM " + table
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                + " ORDER BY ID ASC";
+    }
+
+    /**
+     * Fills the searchable columns of rows written before they existed, one chunk at a time.
+     * Each row is decoded once here so searches never have to. Stops early while a gift import
+     * runs; the rest is filled on the next start.
+     *
+     * @return number of rows updated
+     */
+    int backfill(MaintenanceGate maintenanceGate) throws SQLException {
+        String select = "SELECT ID, ItemStack, Sender FROM " + table + " WHERE Material IS NULL LIMIT " + BACKFILL_CHUNK_SIZE;
+        String update = "UPDATE " + table + " SET Material = ?, CustomModelData = ?, SenderKey = ? WHERE ID = ?";
+        int total = 0;
+        while (maintenanceGate.tryEnter()) {
+            Map<String, String[]> rows = new LinkedHashMap<>();
+            try (Connection connection = dataSource.getConnection()) {
+                try (PreparedStatement ps = statements.prepare(connection, select);
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rows.put(rs.getString("ID"), new String[]{rs.getString("ItemStack"), rs.getString("Sender")});
+                    }
+                }
+                if (rows.isEmpty()) {
+                    break;
+                }
+
+                connection.setAutoCommit(false);
+                try (PreparedStatement ps = statements.prepare(connection, update)) {
+                    for (Map.Entry<String, String[]> row : rows.entrySet()) {
+                        String material = UNKNOWN_MATERIAL;
+                        Integer customModelData = null;
+                        try {
+                            ItemStack item = ItemSerializer.deserialize(row.getValue()[0]);
+                            material = item.getType().name();
+                            customModelData = customModelDataOf(item);
+                        } catch (IOException | RuntimeException e) {
+                            // Undecodable rows are marked so the backfill does not retry them forever
+                            plugin.getLogger().log(Level.WARNING, "Could not decode gift " + row.getKey() + " for the search index", e);
+                        }
+                        ps.setString(1, material);
+                        if (customModelData != null) {
+                            ps.setInt(2, customModelData);
+                        } else {
+                            ps.setNull(2, Types.INTEGER);
+                        }
+                        ps.setString(3, senderKey(row.getValue()[1]));
+                        ps.setString(4, row.getKey());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } finally {
+                maintenanceGate.exit();
+            }
+            total += rows.size();
+            if (rows.size() < BACKFILL_CHUNK_SIZE) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    static String senderKey(String sender) {
+        return sender.toLowerCase(Locale.ROOT);
+    }
+
+    private static Integer customModelDataOf(ItemStack item) {
+        if (!item.hasItemMeta()) {
+            return null;
+        }
+        ItemMeta meta = item.getItemMeta();
+        return meta != null && meta.hasCustomModelData() ? meta.getCustomModelData() : null;
+    }
+}
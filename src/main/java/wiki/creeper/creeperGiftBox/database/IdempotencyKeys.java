@@ -0,0 +1,89 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Remembers the idempotency keys of recent sends so a retried send stores its gift only once.
+ *
+ * A key is claimed by the send's own transaction before anything else is written, through the
+ * primary key of the key table: a concurrent retry with the same key waits for the first send to
+ * commit or roll back and then sees its row. Keys outlive the gifts they stored, so a retry after
+ * the gift was claimed is still recognised, until the key horizon has passed. Expired keys are
+ * taken over by the next send using them and are purged by an hourly task.
+ */
+public final class IdempotencyKeys {
+
+    static final String TABLE = "giftbox_idempotency";
+    /** Longest idempotency key a send may carry */
+    public static final int MAX_KEY_LENGTH = 128;
+    private static final int PURGE_CHUNK = 5000;
+
+    private final StatementFactory statements;
+    private final long ttlMillis;
+
+    IdempotencyKeys(StatementFactory statements, long ttlMillis) {
+        this.statements = statements;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Binary collation so keys differing only in case or trailing spaces stay distinct
+    void ensureSchema(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                "IdempotencyKey VARCHAR(" + MAX_KEY_LENGTH + ") CHARACTER SET utf8mb4 COLLATE utf8mb4_bin PRIMARY KEY, " +
+                "GiftID VARCHAR(36) NOT NULL, " +
+                "CreatedAt BIGINT NOT NULL, " +
+                "INDEX created_index (CreatedAt));")) {
+            ps.execute();
+        }
+    }
+
+    /**
+     * Claims a key for a gift inside the caller's transaction. Must be the first write of the
+     * transaction; the key row stays locked until it ends, and a rollback releases the key.
+     *
+     * @return true if the gift should be stored, false if a send with this key already stored one
+     */
+    boolean claim(Connection connection, String key, String giftId, long now) throws SQLException {
+        long cutoff = now - ttlMillis;
+        // An upsert takes the row lock at once; CreatedAt is assigned last so both checks see the old value
+        try (PreparedStatement ps = statements.prepare(connection, "INSERT INTO " + TABLE + " (IdempotencyKey, GiftID, CreatedAt) " +
+                "VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                "GiftID = IF(CreatedAt < ?, VALUES(GiftID), GiftID), " +
+                "CreatedAt = IF(CreatedAt < ?, VALUES(CreatedAt), CreatedAt)")) {
+            ps.setString(1, key);
+            ps.setString(2, giftId);
+            ps.setLong(3, now);
+            ps.setLong(4, cutoff);
+            ps.setLong(5, cutoff);
+            ps.executeUpdate();
+        }
+        // The affected row count cannot tell an insert from an unchanged row with the driver's defaults
+        try (PreparedStatement ps = statements.prepare(connection, "SELECT GiftID FROM " + TABLE + " WHERE IdempotencyKey = ?")) {
+            ps.setString(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && giftId.equals(rs.getString(1));
+            }
+        }
+    }
+
+    /**
+     * Deletes keys older than the horizon in small chunks.
+     *
+     * @return the number of keys deleted
+     */
+    int purge(Connection connection, long now) throws SQLException {
+        int deleted = 0;
+        try (PreparedStatement ps = statements.prepare(connection, "DELETE FROM " + TABLE + " WHERE CreatedAt < ? LIMIT " + PURGE_CHUNK)) {
+            ps.setLong(1, now - ttlMillis);
+            int chunk;
+            do {
+                chunk = ps.executeUpdate();
+                deleted += chunk;
+            } while (chunk == PURGE_CHUNK);
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,21 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import java.util.UUID;
+
+/**
+ * Thrown when a gift is refused because the recipient's gift box is full and the overflow policy is
+ * {@link InboxOverflowPolicy#REJECT}.
+ */
+public class InboxFullException extends IllegalStateException {
+
+    private final UUID playerUUID;
+
+    public InboxFullException(UUID playerUUID) {
+        super("Gift box of " + playerUUID + " is full");
+        this.playerUUID = playerUUID;
+    }
+
+    public UUID getPlayerUUID() {
+        return playerUUID;
+    }
+}
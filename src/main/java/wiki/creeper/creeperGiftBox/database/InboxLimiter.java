@@ -0,0 +1,409 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import wiki.creeper.creeperGiftBox.model.Gift;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a count of stored gifts per player and enforces the gift box limit with it.
+ *
+ * Every write to the present table locks the counter rows of the affected players first, in UUID
+ * order, then changes the gifts and the counters in the same transaction. Checking the limit is a
+ * primary key lookup however many gifts a player has, and two servers sending to the same player
+ * at once cannot both take the last free slot.
+ *
+ * Gifts over the limit are rejected, make room by evicting the player's oldest gifts, or are
+ * spilled into the overflow table. Spilled gifts move back to the gift box, oldest first, whenever
+ * a write through {@link #settle} leaves the player room, except gifts of campaigns held by a
+ * running bulk job.
+ */
+class InboxLimiter {
+
+    static final String TABLE_COUNTER = "giftbox_inbox";
+    static final String TABLE_OVERFLOW = "present_overflow";
+    // Named explicitly so moving rows between the tables never depends on their column order
+    private static final String GIFT_COLUMNS = "ID, UUID, ItemStack, Count, Sender, TimeStamp, ExpireStamp, Material, CustomModelData, SenderKey, CampaignID";
+    // Spilled gifts moved back per player and write, so one claim never moves thousands of rows
+    private static final int REFILL_LIMIT = 500;
+
+    private final StatementFactory statements;
+    private final GiftSearchIndex giftSearchIndex;
+    private final int maxGifts;
+    private final InboxOverflowPolicy policy;
+    // Campaigns with a running bulk job on this server, with the number of such jobs
+    private final Map<String, Integer> heldCampaigns = new ConcurrentHashMap<>();
+
+    InboxLimiter(StatementFactory statements, GiftSearchIndex giftSearchIndex, int maxGifts, InboxOverflowPolicy policy) {
+        this.statements = statements;
+        this.giftSearchIndex = giftSearchIndex;
+        this.maxGifts = maxGifts;
+        this.policy = policy;
+    }
+
+    InboxOverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Keeps spilled gifts of the campaign in the overflow table until {@link #release} is called as often.
+     */
+    void hold(String campaignId) {
+        heldCampaigns.merge(campaignId, 1, Integer::sum);
+    }
+
+    void release(String campaignId) {
+        heldCampaigns.computeIfPresent(campaignId, (id, jobs) -> jobs > 1 ? jobs - 1 : null);
+    }
+
+    void ensureSchema(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("CREATE TABLE IF NOT EXISTS " + TABLE_COUNTER + " (" +
+                "UUID VARCHAR(36) PRIMARY KEY, " +
+                "Count INT NOT NULL);")) {
+            ps.execute();
+        }
+        // Counters start from the stored gifts; players who already have a counter keep it
+        try (PreparedStatement ps = connection.prepareStatement("INSERT IGNORE INTO " + TABLE_COUNTER +
+                " (UUID, Count) SELECT UUID, COUNT(*) FROM present GROUP BY UUID")) {
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = connection.prepareStatement("CREATE TABLE IF NOT EXISTS " + TABLE_OVERFLOW + " LIKE present")) {
+            ps.execute();
+        }
+    }
+
+    /**
+     * Rebuilds every counter from the stored gifts, after rows were written without going through the counters.
+     * Players without gifts lose their counter row; it is created again by their next gift.
+     * Must run in a transaction, with nothing else writing gifts.
+     */
+    void recount(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("DELETE FROM " + TABLE_COUNTER)) {
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO " + TABLE_COUNTER +
+                " (UUID, Count) SELECT UUID, COUNT(*) FROM present GROUP BY UUID")) {
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Locks the counter rows of the given players, creating missing ones.
+     * Must be the first write of the caller's transaction.
+     *
+     * @return the stored gift count of each player
+     */
+    Map<UUID, Integer> lock(Connection connection, Collection<UUID> players) throws SQLException {
+        Map<UUID, Integer> counts = new HashMap<>();
+        if (players.isEmpty()) {
+            return counts;
+        }
+        // Sorted so two transactions always lock shared players in the same order
+        TreeSet<String> keys = new TreeSet<>();
+        players.forEach(player -> keys.add(player.toString()));
+
+        String values = String.join(", ", Collections.nCopies(keys.size(), "(?, 0)"));
+        try (PreparedStatement ps = statements.prepare(connection, "INSERT INTO " + TABLE_COUNTER + " (UUID, Count) VALUES " + values +
+                " ON DUPLICATE KEY UPDATE Count = Count")) {
+            int index = 1;
+            for (String key : keys) {
+                ps.setString(index++, key);
+            }
+            ps.executeUpdate();
+        }
+
+        String ids = String.join(", ", Collections.nCopies(keys.size(), "?"));
+        try (PreparedStatement ps = statements.prepare(connection, "SELECT UUID, Count FROM " + TABLE_COUNTER +
+                " WHERE UUID IN (" + ids + ") FOR UPDATE")) {
+            int index = 1;
+            for (String key : keys) {
+                ps.setString(index++, key);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(UUID.fromString(rs.getString("UUID")), rs.getInt("Count"));
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Decides where new gifts go and updates the counters, inside the caller's transaction.
+     * Spilled gifts are written to the overflow table and evicted gifts are deleted and logged here;
+     * inserting the accepted gifts is left to the caller.
+     */
+    Admission admit(Connection connection, List<Gift> gifts, long now) throws SQLException {
+        Map<UUID, List<Gift>> byPlayer = new LinkedHashMap<>();
+        gifts.forEach(gift -> byPlayer.computeIfAbsent(gift.getPlayerUUID(), uuid -> new ArrayList<>()).add(gift));
+        Map<UUID, Integer> counts = lock(connection, byPlayer.keySet());
+
+        Admission admission = new Admission();
+        Map<UUID, Integer> updated = new HashMap<>();
+        for (Map.Entry<UUID, List<Gift>> entry : byPlayer.entrySet()) {
+            UUID player = entry.getKey();
+            List<Gift> incoming = entry.getValue();
+            int count = counts.getOrDefault(player, 0);
+            if (maxGifts <= 0) {
+                admission.accepted.addAll(incoming);
+                updated.put(player, count + incoming.size());
+                continue;
+            }
+
+            int fit = Math.min(Math.max(maxGifts - count, 0), incoming.size());
+            admission.accepted.addAll(incoming.subList(0, fit));
+            List<Gift> over = incoming.subList(fit, incoming.size());
+            if (over.isEmpty()) {
+                updated.put(player, count + fit);
+                continue;
+            }
+            admission.overflowed.addAll(over);
+            switch (policy) {
+                case REJECT -> {
+                    admission.rejected.addAll(over);
+                    updated.put(player, count + fit);
+                }
+                case SPILL -> {
+                    spill(connection, over);
+                    admission.spilled.addAll(over);
+                    updated.put(player, count + fit);
+                }
+                case EVICT_OLDEST -> {
+                    // A single send larger than the whole gift box keeps only its first gifts
+                    int acceptable = Math.min(incoming.size(), maxGifts);
+                    int wanted = Math.max(count + acceptable - maxGifts, 0);
+                    List<Gift> evicted = evictOldest(connection, player, wanted, now);
+                    // Fewer rows than expected means the counter was ahead, and the box is empty now
+                    int remaining = evicted.size() < wanted ? 0 : count - evicted.size();
+                    admission.accepted.addAll(incoming.subList(fit, acceptable));
+                    admission.rejected.addAll(incoming.subList(acceptable, incoming.size()));
+                    admission.evicted.addAll(evicted);
+                    updated.put(player, remaining + acceptable);
+                }
+            }
+        }
+        writeCounts(connection, updated);
+        return admission;
+    }
+
+    /**
+     * Applies gift count changes of players locked through {@link #lock}, then moves spilled gifts back
+     * for players who now have room. The moved gifts are already in the counts written here.
+     *
+     * @param counts The counts returned by {@link #lock}
+     * @param changes Gifts added (positive) or removed (negative) per player
+     * @return the gifts moved back from the overflow table
+     */
+    List<Gift> settle(Connection connection, Map<UUID, Integer> counts, Map<UUID, Integer> changes, long now) throws SQLException {
+        List<Gift> refilled = new ArrayList<>();
+        Map<UUID, Integer> updated = new HashMap<>();
+        for (Map.Entry<UUID, Integer> change : changes.entrySet()) {
+            UUID player = change.getKey();
+            int count = Math.max(counts.getOrDefault(player, 0) + change.getValue(), 0);
+            if (change.getValue() < 0) {
+                List<Gift> moved = refill(connection, player, count, now);
+                refilled.addAll(moved);
+                count += moved.size();
+            }
+            updated.put(player, count);
+        }
+        writeCounts(connection, updated);
+        return refilled;
+    }
+
+    /**
+     * @return expired gifts of the overflow table, oldest deadline first
+     */
+    List<Gift> selectExpiredOverflow(Connection connection, long cutoff) throws SQLException {
+        List<Gift> gifts = new ArrayList<>();
+        try (PreparedStatement ps = statements.prepare(connection, "SELECT * FROM " + TABLE_OVERFLOW +
+                " WHERE ExpireStamp != -1 AND ExpireStamp <= ? ORDER BY ExpireStamp ASC LIMIT ?")) {
+            ps.setLong(1, cutoff);
+            ps.setInt(2, REFILL_LIMIT);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    gifts.add(DatabaseManager.readGift(rs));
+                }
+            }
+        }
+        return gifts;
+    }
+
+    /**
+     * @return the given gifts that were still in the overflow table and are deleted now
+     */
+    List<Gift> deleteOverflow(Connection connection, List<Gift> gifts) throws SQLException {
+        List<Gift> deleted = new ArrayList<>();
+        if (gifts.isEmpty()) {
+            return deleted;
+        }
+        try (PreparedStatement ps = statements.prepare(connection, "DELETE FROM " + TABLE_OVERFLOW + " WHERE ID = ?")) {
+            for (Gift gift : gifts) {
+                ps.setString(1, gift.getId());
+                ps.addBatch();
+            }
+            int[] results = ps.executeBatch();
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] > 0 || results[i] == PreparedStatement.SUCCESS_NO_INFO) {
+                    deleted.add(gifts.get(i));
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private List<Gift> refill(Connection connection, UUID player, int count, long now) throws SQLException {
+        int room = maxGifts <= 0 ? REFILL_LIMIT : Math.min(maxGifts - count, REFILL_LIMIT);
+        if (room <= 0) {
+            return Collections.emptyList();
+        }
+        List<Gift> gifts = new ArrayList<>();
+        List<String> held = List.copyOf(heldCampaigns.keySet());
+        String excluded = held.isEmpty() ? ""
+                : " AND (CampaignID IS NULL OR CampaignID NOT IN (" + String.join(", ", Collections.nCopies(held.size(), "?")) + "))";
+        try (PreparedStatement ps = statements.prepare(connection, "SELECT * FROM " + TABLE_OVERFLOW +
+                " WHERE UUID = ? AND (ExpireStamp = -1 OR ExpireStamp > ?)" + excluded + " ORDER BY TimeStamp ASC LIMIT ? FOR UPDATE")) {
+            int index = 1;
+            ps.setString(index++, player.toString());
+            ps.setLong(index++, now);
+            for (String campaignId : held) {
+                ps.setString(index++, campaignId);
+            }
+            ps.setInt(index, room);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    gifts.add(DatabaseManager.readGift(rs));
+                }
+            }
+        }
+        if (gifts.isEmpty()) {
+            return gifts;
+        }
+
+        String ids = String.join(", ", Collections.nCopies(gifts.size(), "?"));
+        try (PreparedStatement ps = statements.prepare(connection, "INSERT INTO present (" + GIFT_COLUMNS + ") SELECT " + GIFT_COLUMNS +
+                " FROM " + TABLE_OVERFLOW + " WHERE ID IN (" + ids + ")")) {
+            int index = 1;
+            for (Gift gift : gifts) {
+                ps.setString(index++, gift.getId());
+            }
+            ps.executeUpdate();
+        }
+        deleteOverflow(connection, gifts);
+        return gifts;
+    }
+
+    private void spill(Connection connection, List<Gift> gifts) throws SQLException {
+        try (PreparedStatement ps = statements.prepare(connection, "INSERT INTO " + TABLE_OVERFLOW + " (" + GIFT_COLUMNS +
+                ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (Gift gift : gifts) {
+                ps.setString(1, gift.getId());
+                ps.setString(2, gift.getPlayerUUID().toString());
+                ps.setString(3, gift.getSerializedItem());
+                ps.setInt(4, gift.getAmount());
+                ps.setString(5, gift.getSender());
+                ps.setLong(6, gift.getTimestamp());
+                ps.setLong(7, gift.getExpireStamp());
+                giftSearchIndex.bindColumns(ps, 8, gift);
+                ps.setString(11, gift.getCampaignId());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private List<Gift> evictOldest(Connection connection, UUID player, int limit, long now) throws SQLException {
+        List<Gift> gifts = new ArrayList<>();
+        if (limit <= 0) {
+            return gifts;
+        }
+        try (PreparedStatement ps = statements.prepare(connection, "SELECT * FROM present WHERE UUID = ? ORDER BY TimeStamp ASC LIMIT ? FOR UPDATE")) {
+            ps.setString(1, player.toString());
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    gifts.add(DatabaseManager.readGift(rs));
+                }
+            }
+        }
+        if (gifts.isEmpty()) {
+            return gifts;
+        }
+
+        String ids = String.join(", ", Collections.nCopies(gifts.size(), "?"));
+        try (PreparedStatement ps = statements.prepare(connection, "DELETE FROM present WHERE ID IN (" + ids + ")")) {
+            int index = 1;
+            for (Gift gift : gifts) {
+                ps.setString(index++, gift.getId());
+            }
+            ps.executeUpdate();
+        }
+
+        String sql = "INSERT INTO present_log (GiftID, PlayerUUID, ItemStack, Count, Sender, Result, TimeStamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = statements.prepare(connection, sql)) {
+            for (Gift gift : gifts) {
+                ps.setString(1, gift.getId());
+                ps.setString(2, gift.getPlayerUUID().toString());
+                ps.setString(3, gift.getSerializedItem());
+                ps.setInt(4, gift.getAmount());
+                ps.setString(5, gift.getSender());
+                ps.setInt(6, LogResult.EVICTED.getValue());
+                ps.setLong(7, now);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        return gifts;
+    }
+
+    private void writeCounts(Connection connection, Map<UUID, Integer> counts) throws SQLException {
+        if (counts.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = statements.prepare(connection, "UPDATE " + TABLE_COUNTER + " SET Count = ? WHERE UUID = ?")) {
+            for (Map.Entry<UUID, Integer> entry : counts.entrySet()) {
+                ps.setInt(1, entry.getValue());
+                ps.setString(2, entry.getKey().toString());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Where the gifts of one {@link #admit} call went.
+     */
+    static final class Admission {
+        /** Gifts with room in the gift box, to be inserted by the caller. */
+        final List<Gift> accepted = new ArrayList<>();
+        /** Gifts written to the overflow table. */
+        final List<Gift> spilled = new ArrayList<>();
+        /** Gifts not stored anywhere. */
+        final List<Gift> rejected = new ArrayList<>();
+        /** Stored gifts deleted to make room. */
+        final List<Gift> evicted = new ArrayList<>();
+        /** Every gift that did not fit at first, whatever the policy did with it. */
+        final List<Gift> overflowed = new ArrayList<>();
+
+        /**
+         * @return the gifts that were stored, in the gift box or the overflow table
+         */
+        List<Gift> delivered() {
+            List<Gift> delivered = new ArrayList<>(accepted);
+            delivered.addAll(spilled);
+            return delivered;
+        }
+    }
+}
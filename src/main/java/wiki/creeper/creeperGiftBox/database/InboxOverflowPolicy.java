@@ -0,0 +1,13 @@
+package wiki.creeper.creeperGiftBox.database;
+
+/**
+ * What happens to a gift sent to a player whose gift box is full.
+ */
+public enum InboxOverflowPolicy {
+    /** 선물을 지급하지 않습니다. */
+    REJECT,
+    /** 가장 오래된 선물을 삭제하고 새 선물을 지급합니다. */
+    EVICT_OLDEST,
+    /** 선물을 보관함(overflow)에 저장하고, 우편함에 자리가 나면 옮깁니다. */
+    SPILL
+}
@@ -0,0 +1,19 @@
+package wiki.creeper.creeperGiftBox.database;
+
+public enum LogExportFormat {
+    CSV("csv"),
+    JSONL("jsonl");
+
+    private final String extension;
+
+    LogExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return file extension of the compressed output, e.g. "csv.gz"
+     */
+    public String getExtension() {
+        return extension + ".gz";
+    }
+}
@@ -3,7 +3,12 @@ package wiki.creeper.creeperGiftBox.database;
 public enum LogResult {
     EXPIRED(0),
     CLAIMED(1),
-    SENT(2);
+    SENT(2),
+    REVOKED(3),
+    EXTENDED(4),
+    REASSIGNED(5),
+    MERGED(6),
+    EVICTED(7);
 
     private final int value;
 
@@ -14,4 +19,13 @@ public enum LogResult {
     public int getValue() {
         return value;
     }
+
+    public static LogResult fromValue(int value) {
+        for (LogResult result : values()) {
+            if (result.value == value) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Unknown log result: " + value);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,404 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.config.ConfigManager;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+/**
+ * Keeps the present_log table bounded.
+ *
+ * In partition mode present_log is range-partitioned by day on TimeStamp, so expired
+ * days are removed with DROP PARTITION. Tables that cannot be partitioned fall back
+ * to rotation: present_log is periodically renamed to present_log_r&lt;time&gt; and
+ * rotated tables are dropped whole once all their rows are past retention.
+ * Before anything is dropped it is rolled up into present_log_daily and, if enabled,
+ * archived to a gzip-compressed CSV file in the data folder.
+ */
+public class LogRetentionManager {
+
+    static final String TABLE_LOG = "present_log";
+    static final String TABLE_LOG_DAILY = "present_log_daily";
+    private static final String ROTATED_PREFIX = TABLE_LOG + "_r";
+    private static final String MAX_PARTITION = "pmax";
+    private static final int PARTITION_LOOKAHEAD_DAYS = 7;
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter ROTATION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final CreeperGiftBox plugin;
+    private final ConfigManager configManager;
+    private final DataSource dataSource;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    LogRetentionManager(CreeperGiftBox plugin, ConfigManager configManager, DataSource dataSource) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return true if a newly created present_log should be partitioned
+     */
+    boolean usePartitionedLogTable() {
+        return configManager.isLogRetentionEnabled() && "partition".equals(configManager.getLogRetentionMode());
+    }
+
+    /**
+     * Builds the DDL for a new, day-partitioned present_log table.
+     * The partition key has to be part of the primary key, hence (LogID, TimeStamp).
+     */
+    String createPartitionedLogTableSql() {
+        LocalDate today = LocalDate.now(zone);
+        return "CREATE TABLE IF NOT EXISTS " + TABLE_LOG + " (" +
+                "LogID BIGINT AUTO_INCREMENT, " +
+                "GiftID VARCHAR(36) NOT NULL, " +
+                "PlayerUUID VARCHAR(36) NOT NULL, " +
+                "ItemStack TEXT NOT NULL, " +
+                "Count INT NOT NULL, " +
+                "Sender VARCHAR(255) NOT NULL, " +
+                "Result INT NOT NULL, " +
+                "TimeStamp BIGINT NOT NULL, " +
+                "PRIMARY KEY (LogID, TimeStamp), " +
+                "INDEX timestamp_index (TimeStamp), " +
+                "INDEX player_time_index (PlayerUUID, TimeStamp), " +
+                "INDEX sender_time_index (Sender, TimeStamp), " +
+                "INDEX gift_index (GiftID)) " +
+                "PARTITION BY RANGE (TimeStamp) (" + partitionDefinitions(today, today.plusDays(PARTITION_LOOKAHEAD_DAYS)) + ")";
+    }
+
+    /**
+     * Creates the rollup table.
+     */
+    void ensureSchema(Connection connection) throws SQLException {
+        String createDailyTable = "CREATE TABLE IF NOT EXISTS " + TABLE_LOG_DAILY + " (" +
+                "Day DATE NOT NULL, " +
+                "Sender VARCHAR(255) NOT NULL, " +
+                "Result INT NOT NULL, " +
+                "GiftCount BIGINT NOT NULL, " +
+                "ItemCount BIGINT NOT NULL, " +
+                "PRIMARY KEY (Day, Sender, Result));";
+        try (PreparedStatement ps = connection.prepareStatement(createDailyTable)) {
+            ps.execute();
+        }
+    }
+
+    /**
+     * Returns every table currently holding log rows, newest first.
+     * In rotation mode this includes the rotated tables.
+     */
+    List<String> getLogTables(Connection connection) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        tables.add(TABLE_LOG);
+        tables.addAll(findRotatedTables(connection).descendingMap().values());
+        return tables;
+    }
+
+    /**
+     * Runs one maintenance pass: extends partitions or rotates, refreshes the daily
+     * rollup, then archives and drops everything older than the retention window.
+     * Must be called off the main thread.
+     */
+    void runMaintenance() throws SQLException, IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean partitioned = isPartitioned(connection);
+            if (!partitioned && "partition".equals(configManager.getLogRetentionMode())) {
+                partitioned = configManager.isLogPartitionMigrationEnabled() && migrateToPartitions(connection);
+                if (!partitioned) {
+                    plugin.getLogger().info(TABLE_LOG + " is not partitioned, using table rotation for log retention");
+                }
+            }
+
+            if (partitioned) {
+                ensureFuturePartitions(connection);
+            } else {
+                rotateIfDue(connection);
+            }
+
+            // Rollups must be complete before any rows are dropped
+            rollup(connection, partitioned);
+
+            long cutoff = LocalDate.now(zone).minusDays(configManager.getLogRetentionDays()).atStartOfDay(zone).toInstant().toEpochMilli();
+            if (partitioned) {
+                dropExpiredPartitions(connection, cutoff);
+            } else {
+                dropExpiredRotations(connection, cutoff);
+            }
+        }
+    }
+
+    private boolean isPartitioned(Connection connection) throws SQLException {
+        String query = "SELECT COUNT(*) FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL";
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            ps.setString(1, TABLE_LOG);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    private boolean migrateToPartitions(Connection connection) {
+        plugin.getLogger().warning("Converting " + TABLE_LOG + " to a partitioned table. This rebuilds the table and may take a long time.");
+        LocalDate today = LocalDate.now(zone);
+        LocalDate first = today.minusDays(configManager.getLogRetentionDays() + 1L);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE " + TABLE_LOG + " MODIFY LogID BIGINT NOT NULL AUTO_INCREMENT, " +
+                    "DROP PRIMARY KEY, ADD PRIMARY KEY (LogID, TimeStamp)");
+            // The first partition also collects every older row, so it is archived and dropped on this pass
+            statement.execute("ALTER TABLE " + TABLE_LOG + " PARTITION BY RANGE (TimeStamp) (" +
+                    partitionDefinitions(first, today.plusDays(PARTITION_LOOKAHEAD_DAYS)) + ")");
+            plugin.getLogger().info(TABLE_LOG + " is now partitioned by day");
+            return true;
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not partition " + TABLE_LOG + ", falling back to table rotation", e);
+            return false;
+        }
+    }
+
+    private void ensureFuturePartitions(Connection connection) throws SQLException {
+        Map<Long, String> partitions = findPartitions(connection);
+        LocalDate last = partitions.isEmpty()
+                ? LocalDate.now(zone).minusDays(1)
+                : partitionDay(partitions.keySet().stream().max(Long::compare).orElseThrow());
+        LocalDate target = LocalDate.now(zone).plusDays(PARTITION_LOOKAHEAD_DAYS);
+        if (!last.isBefore(target)) {
+            return;
+        }
+
+        // Splitting the empty catch-all partition is a metadata-only change
+        String sql = "ALTER TABLE " + TABLE_LOG + " REORGANIZE PARTITION " + MAX_PARTITION + " INTO (" +
+                partitionDefinitions(last.plusDays(1), target) + ")";
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private void dropExpiredPartitions(Connection connection, long cutoff) throws SQLException, IOException {
+        for (Map.Entry<Long, String> partition : findPartitions(connection).entrySet()) {
+            if (partition.getKey() > cutoff) {
+                break;
+            }
+            String name = partition.getValue();
+            archive(connection, TABLE_LOG + " PARTITION (" + name + ")", TABLE_LOG + "-" + name);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ALTER TABLE " + TABLE_LOG + " DROP PARTITION " + name);
+            }
+            plugin.getLogger().info("Dropped log partition " + name);
+        }
+    }
+
+    /**
+     * @return non-catch-all partitions keyed by their exclusive upper bound, oldest first
+     */
+    private TreeMap<Long, String> findPartitions(Connection connection) throws SQLException {
+        TreeMap<Long, String> partitions = new TreeMap<>();
+        String query = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL";
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            ps.setString(1, TABLE_LOG);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String description = rs.getString("PARTITION_DESCRIPTION");
+                    if (description == null || "MAXVALUE".equalsIgnoreCase(description)) {
+                        continue;
+                    }
+                    partitions.put(Long.parseLong(description.trim()), rs.getString("PARTITION_NAME"));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    private void rotateIfDue(Connection connection) throws SQLException {
+        TreeMap<Long, String> rotated = findRotatedTables(connection);
+        long now = System.currentTimeMillis();
+        long lastRotation = rotated.isEmpty() ? oldestTimestamp(connection, TABLE_LOG) : rotated.lastKey();
+        if (lastRotation < 0 || now - lastRotation < 24L * 60 * 60 * 1000) {
+            return;
+        }
+
+        String rotatedName = ROTATED_PREFIX + LocalDateTime.now(zone).format(ROTATION_FORMAT);
+        String staging = TABLE_LOG + "_next";
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + staging);
+            statement.execute("CREATE TABLE " + staging + " LIKE " + TABLE_LOG);
+            // A multi-table RENAME is atomic, so writers never see a missing table
+            statement.execute("RENAME TABLE " + TABLE_LOG + " TO " + rotatedName + ", " + staging + " TO " + TABLE_LOG);
+        }
+        plugin.getLogger().info("Rotated " + TABLE_LOG + " to " + rotatedName);
+    }
+
+    private void dropExpiredRotations(Connection connection, long cutoff) throws SQLException, IOException {
+        for (Map.Entry<Long, String> table : findRotatedTables(connection).entrySet()) {
+            // A rotated table only holds rows written before its rotation time
+            if (table.getKey() > cutoff) {
+                break;
+            }
+            archive(connection, table.getValue(), table.getValue());
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE " + table.getValue());
+            }
+            plugin.getLogger().info("Dropped rotated log table " + table.getValue());
+        }
+    }
+
+    /**
+     * @return rotated tables keyed by rotation time, oldest first
+     */
+    private TreeMap<Long, String> findRotatedTables(Connection connection) throws SQLException {
+        TreeMap<Long, String> tables = new TreeMap<>();
+        String query = "SELECT TABLE_NAME FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME LIKE ?";
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            ps.setString(1, ROTATED_PREFIX.replace("_", "\\_") + "%");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    try {
+                        LocalDateTime rotatedAt = LocalDateTime.parse(name.substring(ROTATED_PREFIX.length()), ROTATION_FORMAT);
+                        tables.put(rotatedAt.atZone(zone).toInstant().toEpochMilli(), name);
+                    } catch (DateTimeParseException ignored) {
+                        // Not one of ours
+                    }
+                }
+            }
+        }
+        return tables;
+    }
+
+    private void rollup(Connection connection, boolean partitioned) throws SQLException {
+        LocalDate today = LocalDate.now(zone);
+        LocalDate day = lastRolledUpDay(connection);
+        List<String> tables = partitioned ? List.of(TABLE_LOG) : getLogTables(connection);
+        if (day == null) {
+            long oldest = -1;
+            for (String table : tables) {
+                long tableOldest = oldestTimestamp(connection, table);
+                if (tableOldest >= 0 && (oldest < 0 || tableOldest < oldest)) {
+                    oldest = tableOldest;
+                }
+            }
+            if (oldest < 0) {
+                return;
+            }
+            day = Instant.ofEpochMilli(oldest).atZone(zone).toLocalDate();
+        }
+
+        // The last rolled-up day is recomputed in case rows arrived after its previous rollup
+        for (; day.isBefore(today); day = day.plusDays(1)) {
+            rollupDay(connection, day, tables);
+        }
+    }
+
+    private LocalDate lastRolledUpDay(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT MAX(Day) FROM " + TABLE_LOG_DAILY);
+             ResultSet rs = ps.executeQuery()) {
+            if (rs.next()) {
+                Date day = rs.getDate(1);
+                return day != null ? day.toLocalDate() : null;
+            }
+            return null;
+        }
+    }
+
+    private void rollupDay(Connection connection, LocalDate day, List<String> tables) throws SQLException {
+        long start = day.atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+
+        StringBuilder source = new StringBuilder();
+        for (String table : tables) {
+            if (!source.isEmpty()) {
+                source.append(" UNION ALL ");
+            }
+            source.append("SELECT Sender, Result, Count FROM ").append(table).append(" WHERE TimeStamp >= ? AND TimeStamp < ?");
+        }
+        String sql = "INSERT INTO " + TABLE_LOG_DAILY + " (Day, Sender, Result, GiftCount, ItemCount) " +
+                "SELECT ?, Sender, Result, COUNT(*), SUM(Count) FROM (" + source + ") AS day_log GROUP BY Sender, Result " +
+                "ON DUPLICATE KEY UPDATE GiftCount = VALUES(GiftCount), ItemCount = VALUES(ItemCount)";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int index = 1;
+            ps.setDate(index++, Date.valueOf(day));
+            for (int i = 0; i < tables.size(); i++) {
+                ps.setLong(index++, start);
+                ps.setLong(index++, end);
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    private long oldestTimestamp(Connection connection, String table) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT MIN(TimeStamp) FROM " + table);
+             ResultSet rs = ps.executeQuery()) {
+            if (rs.next()) {
+                long oldest = rs.getLong(1);
+                return rs.wasNull() ? -1 : oldest;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Streams every row of the source to a compressed archive file. The file is written
+     * under a temporary name and moved into place only once complete.
+     */
+    private void archive(Connection connection, String source, String archiveName) throws SQLException, IOException {
+        if (!configManager.isLogArchiveEnabled()) {
+            return;
+        }
+        Path directory = plugin.getDataFolder().toPath().resolve(configManager.getLogArchiveDirectory());
+        Files.createDirectories(directory);
+        String fileName = archiveName + "." + LogExportFormat.CSV.getExtension();
+        Path target = directory.resolve(fileName);
+        Path temp = directory.resolve(fileName + ".tmp");
+
+        long rows;
+        try (PreparedStatement ps = connection.prepareStatement("SELECT " + LogRowWriter.SELECT_COLUMNS + " FROM " + source,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Integer.MIN_VALUE makes the MySQL driver stream rows instead of buffering the result
+            ps.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = ps.executeQuery();
+                 LogRowWriter writer = new LogRowWriter(temp, LogExportFormat.CSV)) {
+                while (rs.next()) {
+                    writer.write(rs);
+                }
+                rows = writer.getRowCount();
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        plugin.getLogger().info("Archived " + rows + " log rows to " + target.getFileName());
+    }
+
+    private String partitionDefinitions(LocalDate from, LocalDate to) {
+        StringBuilder definitions = new StringBuilder();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            long bound = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            definitions.append("PARTITION p").append(day.format(PARTITION_FORMAT))
+                    .append(" VALUES LESS THAN (").append(bound).append("), ");
+        }
+        return definitions.append("PARTITION ").append(MAX_PARTITION).append(" VALUES LESS THAN MAXVALUE").toString();
+    }
+
+    private LocalDate partitionDay(long upperBound) {
+        return Instant.ofEpochMilli(upperBound - 1).atZone(zone).toLocalDate();
+    }
+}
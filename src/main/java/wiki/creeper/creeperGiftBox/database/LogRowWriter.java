@@ -0,0 +1,123 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes present_log rows to a gzip-compressed CSV or JSON Lines file.
+ * Rows are written as they are read so the caller can stream a cursor straight to disk.
+ */
+final class LogRowWriter implements Closeable {
+
+    static final String SELECT_COLUMNS = "LogID, GiftID, PlayerUUID, Sender, Result, Count, TimeStamp, ItemStack";
+    private static final String[] COLUMNS = {"LogID", "GiftID", "PlayerUUID", "Sender", "Result", "Count", "TimeStamp", "ItemStack"};
+
+    private final LogExportFormat format;
+    private final BufferedWriter writer;
+    private long rowCount;
+
+    LogRowWriter(Path file, LogExportFormat format) throws IOException {
+        this.format = format;
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024), StandardCharsets.UTF_8));
+        if (format == LogExportFormat.CSV) {
+            writer.write(String.join(",", COLUMNS));
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Writes the current row of a result set selected with {@link #SELECT_COLUMNS}.
+     */
+    void write(ResultSet rs) throws SQLException, IOException {
+        if (format == LogExportFormat.CSV) {
+            writer.write(Long.toString(rs.getLong("LogID")));
+            writer.write(',');
+            writer.write(csv(rs.getString("GiftID")));
+            writer.write(',');
+            writer.write(csv(rs.getString("PlayerUUID")));
+            writer.write(',');
+            writer.write(csv(rs.getString("Sender")));
+            writer.write(',');
+            writer.write(Integer.toString(rs.getInt("Result")));
+            writer.write(',');
+            writer.write(Integer.toString(rs.getInt("Count")));
+            writer.write(',');
+            writer.write(Long.toString(rs.getLong("TimeStamp")));
+            writer.write(',');
+            writer.write(csv(rs.getString("ItemStack")));
+        } else {
+            writer.write("{\"LogID\":");
+            writer.write(Long.toString(rs.getLong("LogID")));
+            writer.write(",\"GiftID\":");
+            writer.write(json(rs.getString("GiftID")));
+            writer.write(",\"PlayerUUID\":");
+            writer.write(json(rs.getString("PlayerUUID")));
+            writer.write(",\"Sender\":");
+            writer.write(json(rs.getString("Sender")));
+            writer.write(",\"Result\":");
+            writer.write(Integer.toString(rs.getInt("Result")));
+            writer.write(",\"Count\":");
+            writer.write(Integer.toString(rs.getInt("Count")));
+            writer.write(",\"TimeStamp\":");
+            writer.write(Long.toString(rs.getLong("TimeStamp")));
+            writer.write(",\"ItemStack\":");
+            writer.write(json(rs.getString("ItemStack")));
+            writer.write('}');
+        }
+        writer.newLine();
+        rowCount++;
+    }
+
+    long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,66 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps gift writes and players' gift reads out of a running gift import.
+ *
+ * Every write to present, present_overflow or the gift counters, and every gift box a player
+ * loads, runs between {@link #tryEnter()} and {@link #exit()}. An import blocks the gate, waits for
+ * the calls already inside to finish and keeps it blocked until it is done. Nothing changes the
+ * tables while ranges are inserted and hashed or while the indexes of present are dropped and
+ * rebuilt, and no player is handed a gift from a half-restored table.
+ */
+class MaintenanceGate {
+
+    private static final long DRAIN_POLL_NANOS = 10_000_000L;
+
+    private final AtomicInteger inside = new AtomicInteger();
+    private volatile boolean blocked = false;
+
+    /**
+     * @return true if the caller may go ahead and must call {@link #exit()} afterwards, false while an import runs
+     */
+    boolean tryEnter() {
+        if (blocked) {
+            return false;
+        }
+        inside.incrementAndGet();
+        // Checked again, so no call slips in after an import saw the gate drained
+        if (blocked) {
+            exit();
+            return false;
+        }
+        return true;
+    }
+
+    void exit() {
+        inside.decrementAndGet();
+    }
+
+    boolean isBlocked() {
+        return blocked;
+    }
+
+    /**
+     * Refuses new calls and waits for the ones in progress.
+     *
+     * @throws IllegalStateException if calls are still in progress after the timeout; the gate is open again then
+     */
+    void block(long timeoutMillis) {
+        blocked = true;
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (inside.get() > 0) {
+            if (System.nanoTime() - deadline > 0) {
+                blocked = false;
+                throw new IllegalStateException(inside.get() + " gift operations are still running, try the import again");
+            }
+            LockSupport.parkNanos(DRAIN_POLL_NANOS);
+        }
+    }
+
+    void unblock() {
+        blocked = false;
+    }
+}
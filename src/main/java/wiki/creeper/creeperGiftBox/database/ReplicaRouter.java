@@ -0,0 +1,172 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Chooses between the primary and the optional read replica for player reads.
+ *
+ * Writes always go to the primary. A player's reads stay on the primary for a short window
+ * after any write this server makes to their gift box, so a gift they just claimed never shows
+ * up again from a replica that has not caught up. Writes made by other servers are not seen
+ * here, which is why claims themselves always read from the primary. Replica lag is measured with a heartbeat row that this server writes on
+ * the primary and reads back from the replica; while the lag exceeds the limit, or the replica
+ * cannot be reached, every read goes to the primary.
+ */
+class ReplicaRouter {
+
+    private static final String TABLE_HEARTBEAT = "giftbox_replica_heartbeat";
+
+    private final CreeperGiftBox plugin;
+    private final DataSource primary;
+    private final HikariDataSource replica;
+    private final long stickyMillis;
+    private final long maxLagMillis;
+    private final String serverId = UUID.randomUUID().toString();
+    private final ConcurrentHashMap<UUID, Long> stickyUntil = new ConcurrentHashMap<>();
+    private volatile boolean replicaHealthy = false;
+    private volatile long lastLagMillis = -1;
+    private long lastWrittenBeat = -1;
+
+    /**
+     * @param replica the replica pool, or null to send every read to the primary
+     */
+    ReplicaRouter(CreeperGiftBox plugin, DataSource primary, HikariDataSource replica, long stickyMillis, long maxLagMillis) {
+        this.plugin = plugin;
+        this.primary = primary;
+        this.replica = replica;
+        this.stickyMillis = stickyMillis;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    boolean hasReplica() {
+        return replica != null;
+    }
+
+    boolean isReplicaHealthy() {
+        return replicaHealthy;
+    }
+
+    /**
+     * @return replica lag measured by the last check, or -1 if unknown
+     */
+    long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    void ensureSchema(Connection connection) throws SQLException {
+        if (replica == null) {
+            return;
+        }
+        String sql = "CREATE TABLE IF NOT EXISTS " + TABLE_HEARTBEAT + " (" +
+                "ServerID VARCHAR(36) PRIMARY KEY, " +
+                "Beat BIGINT NOT NULL);";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.execute();
+        }
+    }
+
+    /**
+     * Returns the data source for reading a player's inbox.
+     */
+    DataSource forPlayerRead(UUID playerUUID) {
+        if (replica == null || !replicaHealthy) {
+            return primary;
+        }
+        Long until = stickyUntil.get(playerUUID);
+        if (until != null) {
+            if (until > System.currentTimeMillis()) {
+                return primary;
+            }
+            stickyUntil.remove(playerUUID, until);
+        }
+        return replica;
+    }
+
+    /**
+     * Keeps the player's reads on the primary for the stickiness window.
+     */
+    void recordWrite(UUID playerUUID) {
+        if (replica != null && playerUUID != null) {
+            stickyUntil.put(playerUUID, System.currentTimeMillis() + stickyMillis);
+        }
+    }
+
+    /**
+     * Measures replica lag and updates the replica's health. Not called concurrently.
+     *
+     * The lag is the age of the newest heartbeat that has not reached the replica yet, so it is
+     * zero while the replica keeps up with the heartbeat interval.
+     */
+    void checkLag() {
+        if (replica == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        stickyUntil.values().removeIf(until -> until <= now);
+
+        long lag;
+        try (Connection connection = replica.getConnection();
+             PreparedStatement ps = connection.prepareStatement("SELECT Beat FROM " + TABLE_HEARTBEAT + " WHERE ServerID = ?")) {
+            ps.setString(1, serverId);
+            try (ResultSet rs = ps.executeQuery()) {
+                long replicaBeat = rs.next() ? rs.getLong(1) : -1;
+                lag = lastWrittenBeat < 0 || replicaBeat >= lastWrittenBeat ? 0 : now - lastWrittenBeat;
+            }
+        } catch (SQLException e) {
+            if (replicaHealthy) {
+                plugin.getLogger().log(Level.WARNING, "Read replica is unreachable, reading from the primary", e);
+            }
+            replicaHealthy = false;
+            lastLagMillis = -1;
+            return;
+        }
+
+        try (Connection connection = primary.getConnection();
+             PreparedStatement ps = connection.prepareStatement(
+                     "INSERT INTO " + TABLE_HEARTBEAT + " (ServerID, Beat) VALUES (?, ?) ON DUPLICATE KEY UPDATE Beat = VALUES(Beat)")) {
+            ps.setString(1, serverId);
+            ps.setLong(2, now);
+            ps.executeUpdate();
+            lastWrittenBeat = now;
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to write replica heartbeat", e);
+        }
+
+        lastLagMillis = lag;
+        boolean healthy = lag <= maxLagMillis;
+        if (healthy != replicaHealthy) {
+            if (healthy) {
+                plugin.getLogger().info("Read replica caught up, routing reads to the replica");
+            } else {
+                plugin.getLogger().warning("Read replica is " + (lag / 1000) + "s behind, reading from the primary");
+            }
+        }
+        replicaHealthy = healthy;
+    }
+
+    void close() {
+        if (replica == null) {
+            return;
+        }
+        try (Connection connection = primary.getConnection();
+             PreparedStatement ps = connection.prepareStatement("DELETE FROM " + TABLE_HEARTBEAT + " WHERE ServerID = ?")) {
+            ps.setString(1, serverId);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.FINE, "Failed to remove replica heartbeat row", e);
+        }
+        if (!replica.isClosed()) {
+            replica.close();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Prepares statements that the driver cancels after the configured query timeout.
+ *
+ * Every statement on a gift read or write path goes through it, including the row locks taken
+ * inside transactions, so a lock wait fails after the query timeout instead of holding a pooled
+ * connection and a worker thread until the database's own lock wait timeout.
+ */
+final class StatementFactory {
+
+    private final int queryTimeoutSeconds;
+
+    StatementFactory(int queryTimeoutSeconds) {
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+    }
+
+    PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql);
+        ps.setQueryTimeout(queryTimeoutSeconds);
+        return ps;
+    }
+
+    PreparedStatement prepare(Connection connection, String sql, int autoGeneratedKeys) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql, autoGeneratedKeys);
+        ps.setQueryTimeout(queryTimeoutSeconds);
+        return ps;
+    }
+}
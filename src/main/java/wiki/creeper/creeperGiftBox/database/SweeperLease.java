@@ -0,0 +1,131 @@
+package wiki.creeper.creeperGiftBox.database;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * Elects a single expiration sweeper across every server sharing the database.
+ *
+ * Leadership is a row in {@code giftbox_lease} that the owner renews on every heartbeat.
+ * A server takes the lease over once it has not been renewed for the lease duration, so a
+ * crashed leader is replaced within one lease period. Expiry is compared against the
+ * database clock, so clock skew between game servers does not matter. A sweep also fences its
+ * delete with the lease, so a sweeper that lost the lease mid-sweep commits nothing.
+ */
+class SweeperLease {
+
+    private static final String TABLE_LEASE = "giftbox_lease";
+    private static final String LEASE_NAME = "expiration-sweeper";
+    private static final String DB_NOW_MILLIS = "CAST(UNIX_TIMESTAMP(NOW(3)) * 1000 AS SIGNED)";
+
+    private final CreeperGiftBox plugin;
+    private final DataSource dataSource;
+    private final StatementFactory statements;
+    private final String ownerId = UUID.randomUUID().toString();
+    private final long leaseMillis;
+    private volatile boolean leader = false;
+
+    SweeperLease(CreeperGiftBox plugin, DataSource dataSource, StatementFactory statements, long leaseMillis) {
+        this.plugin = plugin;
+        this.dataSource = dataSource;
+        this.statements = statements;
+        this.leaseMillis = leaseMillis;
+    }
+
+    void ensureSchema(Connection connection) throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS " + TABLE_LEASE + " (" +
+                "Name VARCHAR(64) PRIMARY KEY, " +
+                "Owner VARCHAR(36) NOT NULL, " +
+                "ExpiresAt BIGINT NOT NULL);";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.execute();
+        }
+    }
+
+    /**
+     * Renews the lease if this server holds it, or takes it over if it has lapsed.
+     *
+     * @return true if this server is the sweeper until the next heartbeat
+     */
+    boolean heartbeat() throws SQLException {
+        boolean acquired;
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement ps = statements.prepare(connection, 
+                    "INSERT IGNORE INTO " + TABLE_LEASE + " (Name, Owner, ExpiresAt) VALUES (?, ?, " + DB_NOW_MILLIS + " + ?)")) {
+                ps.setString(1, LEASE_NAME);
+                ps.setString(2, ownerId);
+                ps.setLong(3, leaseMillis);
+                acquired = ps.executeUpdate() > 0;
+            }
+            if (!acquired) {
+                try (PreparedStatement ps = statements.prepare(connection, 
+                        "UPDATE " + TABLE_LEASE + " SET Owner = ?, ExpiresAt = " + DB_NOW_MILLIS + " + ? " +
+                        "WHERE Name = ? AND (Owner = ? OR ExpiresAt < " + DB_NOW_MILLIS + ")")) {
+                    ps.setString(1, ownerId);
+                    ps.setLong(2, leaseMillis);
+                    ps.setString(3, LEASE_NAME);
+                    ps.setString(4, ownerId);
+                    acquired = ps.executeUpdate() > 0;
+                }
+            }
+        }
+
+        if (acquired != leader) {
+            plugin.getLogger().info(acquired
+                    ? "This server is now the expiration sweeper"
+                    : "Another server took over the expiration sweeper");
+        }
+        leader = acquired;
+        return acquired;
+    }
+
+    /**
+     * Renews the lease inside the caller's transaction if this server still holds it. The lease row
+     * stays locked until that transaction ends, so no other server can take the lease over before
+     * the caller's writes are committed.
+     *
+     * @return false if the lease was lost or has lapsed, in which case the caller must roll back
+     */
+    boolean fence(Connection connection) throws SQLException {
+        boolean held;
+        try (PreparedStatement ps = statements.prepare(connection, 
+                "UPDATE " + TABLE_LEASE + " SET ExpiresAt = " + DB_NOW_MILLIS + " + ? " +
+                "WHERE Name = ? AND Owner = ? AND ExpiresAt >= " + DB_NOW_MILLIS)) {
+            ps.setLong(1, leaseMillis);
+            ps.setString(2, LEASE_NAME);
+            ps.setString(3, ownerId);
+            held = ps.executeUpdate() > 0;
+        }
+        if (!held && leader) {
+            plugin.getLogger().info("Another server took over the expiration sweeper");
+            leader = false;
+        }
+        return held;
+    }
+
+    boolean isLeader() {
+        return leader;
+    }
+
+    /**
+     * Gives the lease up so another server can take over without waiting for it to lapse.
+     */
+    void release() throws SQLException {
+        if (!leader) {
+            return;
+        }
+        leader = false;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = statements.prepare(connection, 
+                     "UPDATE " + TABLE_LEASE + " SET ExpiresAt = 0 WHERE Name = ? AND Owner = ?")) {
+            ps.setString(1, LEASE_NAME);
+            ps.setString(2, ownerId);
+            ps.executeUpdate();
+        }
+    }
+}
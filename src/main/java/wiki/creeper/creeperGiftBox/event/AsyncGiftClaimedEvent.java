@@ -0,0 +1,37 @@
+package wiki.creeper.creeperGiftBox.event;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
+import wiki.creeper.creeperGiftBox.model.Gift;
+
+/**
+ * Asynchronous counterpart of {@link GiftClaimedEvent}, fired as soon as the claim is committed.
+ * Fired on a database thread, never the main thread, so listeners may do blocking work but must
+ * not touch the world or the player without scheduling onto their thread.
+ */
+public class AsyncGiftClaimedEvent extends GiftBoxEvent {
+    private static final HandlerList HANDLERS = new HandlerList();
+    private final Player player;
+
+    public AsyncGiftClaimedEvent(Gift gift, Player player) {
+        super(gift, true);
+        this.player = player;
+    }
+
+    /**
+     * 선물을 수령한 플레이어를 반환합니다.
+     * @return 선물을 수령한 플레이어 (Player).
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,26 @@
+package wiki.creeper.creeperGiftBox.event;
+
+import org.bukkit.event.HandlerList;
+import wiki.creeper.creeperGiftBox.model.Gift;
+
+/**
+ * Asynchronous counterpart of {@link GiftExpiredEvent}, fired by the expiration sweep.
+ * Fired on a database thread, never the main thread, so listeners may do blocking work but must
+ * not touch the world.
+ */
+public class AsyncGiftExpiredEvent extends GiftBoxEvent {
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    public AsyncGiftExpiredEvent(Gift gift) {
+        super(gift, true);
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,26 @@
+package wiki.creeper.creeperGiftBox.event;
+
+import org.bukkit.event.HandlerList;
+import wiki.creeper.creeperGiftBox.model.Gift;
+
+/**
+ * Asynchronous counterpart of {@link GiftSentEvent}, fired as soon as the gift is stored.
+ * Fired on a database thread, never the main thread, so listeners may do blocking work but must
+ * not touch the world.
+ */
+public class AsyncGiftSentEvent extends GiftBoxEvent {
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    public AsyncGiftSentEvent(Gift gift) {
+        super(gift, true);
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
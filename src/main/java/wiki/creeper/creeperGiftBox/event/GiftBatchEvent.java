@@ -0,0 +1,23 @@
+package wiki.creeper.creeperGiftBox.event;
+
+import org.bukkit.event.Event;
+import wiki.creeper.creeperGiftBox.model.Gift;
+
+import java.util.Collections;
+import java.util.List;
+
+public abstract class GiftBatchEvent extends Event {
+    protected final List<Gift> gifts;
+
+    public GiftBatchEvent(List<Gift> gifts) {
+        this.gifts = Collections.unmodifiableList(gifts);
+    }
+
+    /**
+     * 이 이벤트로 한 번에 전달되는 선물 목록을 반환합니다.
+     * @return 수정할 수 없는 선물 목록 (List&lt;Gift&gt;).
+     */
+    public List<Gift> getGifts() {
+        return gifts;
+    }
+}
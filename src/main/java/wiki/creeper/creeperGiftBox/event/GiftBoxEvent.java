@@ -10,6 +10,11 @@ public abstract class GiftBoxEvent extends Event {
         this.gift = gift;
     }
 
+    protected GiftBoxEvent(Gift gift, boolean async) {
+        super(async);
+        this.gift = gift;
+    }
+
     /**
      * 이 이벤트와 관련된 선물 객체를 반환합니다.
      * @return 선물 객체 (Gift).
@@ -0,0 +1,60 @@
+package wiki.creeper.creeperGiftBox.event;
+
+import org.bukkit.event.HandlerList;
+import wiki.creeper.creeperGiftBox.database.InboxOverflowPolicy;
+import wiki.creeper.creeperGiftBox.model.Gift;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Fired when gifts are sent to a player whose gift box is already at the limit.
+ * {@link #getGifts()} holds the gifts that did not fit.
+ */
+public class GiftBoxFullEvent extends GiftBatchEvent {
+    private static final HandlerList HANDLERS = new HandlerList();
+    private final UUID playerUUID;
+    private final InboxOverflowPolicy policy;
+    private final List<Gift> evicted;
+
+    public GiftBoxFullEvent(UUID playerUUID, List<Gift> gifts, InboxOverflowPolicy policy, List<Gift> evicted) {
+        super(gifts);
+        this.playerUUID = playerUUID;
+        this.policy = policy;
+        this.evicted = Collections.unmodifiableList(evicted);
+    }
+
+    /**
+     * 우편함이 가득 찬 플레이어의 UUID를 반환합니다.
+     * @return 플레이어 UUID
+     */
+    public UUID getPlayerUUID() {
+        return playerUUID;
+    }
+
+    /**
+     * 넘친 선물에 적용된 정책을 반환합니다.
+     * @return 초과 정책 (InboxOverflowPolicy).
+     */
+    public InboxOverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * 자리를 만들기 위해 삭제된 선물 목록을 반환합니다. EVICT_OLDEST 정책이 아니면 비어 있습니다.
+     * @return 수정할 수 없는 선물 목록 (List&lt;Gift&gt;).
+     */
+    public List<Gift> getEvicted() {
+        return evicted;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,166 @@
+package wiki.creeper.creeperGiftBox.event;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.database.InboxOverflowPolicy;
+import wiki.creeper.creeperGiftBox.model.Gift;
+import wiki.creeper.creeperGiftBox.util.MainThreadQueue;
+import wiki.creeper.creeperGiftBox.util.SchedulerUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Delivers gift events to the main thread in batches.
+ *
+ * Each batch is a single scheduler hop and a single batch event. The per-gift
+ * events are only constructed and fired when a listener is registered for them,
+ * each as its own main-thread task so a large sweep is spread over ticks by the
+ * main-thread queue's budget. The hop itself is skipped when no synchronous
+ * listener is registered.
+ * The async events are fired on the calling database thread, without a hop.
+ */
+public class GiftEventDispatcher {
+
+    private final CreeperGiftBox plugin;
+    private final ConcurrentLinkedQueue<Gift> pendingSent = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean sentFlushScheduled = new AtomicBoolean(false);
+
+    public GiftEventDispatcher(CreeperGiftBox plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Queues a sent gift. Gifts sent within the same tick are delivered together.
+     *
+     * @param gift The gift that was stored
+     */
+    public void giftSent(Gift gift) {
+        if (hasListeners(AsyncGiftSentEvent.getHandlerList())) {
+            callAsync(() -> Bukkit.getPluginManager().callEvent(new AsyncGiftSentEvent(gift)));
+        }
+        if (!hasListeners(GiftsSentBatchEvent.getHandlerList()) && !hasListeners(GiftSentEvent.getHandlerList())) {
+            return;
+        }
+        pendingSent.add(gift);
+        if (sentFlushScheduled.compareAndSet(false, true)) {
+            SchedulerUtil.runSync(plugin, MainThreadQueue.Lane.EVENT, this::flushSent);
+        }
+    }
+
+    /**
+     * Fires the expiry events for one sweep.
+     *
+     * @param gifts The gifts removed by the sweep
+     */
+    public void giftsExpired(List<Gift> gifts) {
+        if (gifts.isEmpty()) {
+            return;
+        }
+        if (hasListeners(AsyncGiftExpiredEvent.getHandlerList())) {
+            callAsync(() -> gifts.forEach(gift -> Bukkit.getPluginManager().callEvent(new AsyncGiftExpiredEvent(gift))));
+        }
+        if (!hasListeners(GiftsExpiredBatchEvent.getHandlerList()) && !hasListeners(GiftExpiredEvent.getHandlerList())) {
+            return;
+        }
+        if (hasListeners(GiftsExpiredBatchEvent.getHandlerList())) {
+            SchedulerUtil.queueSync(plugin, MainThreadQueue.Lane.EVENT,
+                    () -> Bukkit.getPluginManager().callEvent(new GiftsExpiredBatchEvent(gifts)));
+        }
+        if (hasListeners(GiftExpiredEvent.getHandlerList())) {
+            callEach(gifts, GiftExpiredEvent::new);
+        }
+    }
+
+    /**
+     * Fires the claim events for gifts a player received in one action.
+     *
+     * @param player The player who claimed the gifts
+     * @param gifts The claimed gifts
+     */
+    public void giftsClaimed(Player player, List<Gift> gifts) {
+        if (gifts.isEmpty()) {
+            return;
+        }
+        if (hasListeners(AsyncGiftClaimedEvent.getHandlerList())) {
+            callAsync(() -> gifts.forEach(gift -> Bukkit.getPluginManager().callEvent(new AsyncGiftClaimedEvent(gift, player))));
+        }
+        if (!hasListeners(GiftsClaimedBatchEvent.getHandlerList()) && !hasListeners(GiftClaimedEvent.getHandlerList())) {
+            return;
+        }
+        if (hasListeners(GiftsClaimedBatchEvent.getHandlerList())) {
+            SchedulerUtil.queueSync(plugin, MainThreadQueue.Lane.EVENT,
+                    () -> Bukkit.getPluginManager().callEvent(new GiftsClaimedBatchEvent(gifts, player)));
+        }
+        if (hasListeners(GiftClaimedEvent.getHandlerList())) {
+            callEach(gifts, gift -> new GiftClaimedEvent(gift, player));
+        }
+    }
+
+    /**
+     * Fires one full gift box event per player for gifts that did not fit.
+     *
+     * @param gifts The gifts over the limit
+     * @param policy The policy applied to them
+     * @param evicted The gifts removed to make room, if any
+     */
+    public void giftBoxFull(List<Gift> gifts, InboxOverflowPolicy policy, List<Gift> evicted) {
+        if (gifts.isEmpty() || !hasListeners(GiftBoxFullEvent.getHandlerList())) {
+            return;
+        }
+        SchedulerUtil.runSync(plugin, MainThreadQueue.Lane.EVENT, () -> {
+            Map<UUID, List<Gift>> byPlayer = new LinkedHashMap<>();
+            gifts.forEach(gift -> byPlayer.computeIfAbsent(gift.getPlayerUUID(), uuid -> new ArrayList<>()).add(gift));
+            byPlayer.forEach((playerUUID, overflowed) -> Bukkit.getPluginManager().callEvent(new GiftBoxFullEvent(playerUUID, overflowed,
+                    policy, evicted.stream().filter(gift -> gift.getPlayerUUID().equals(playerUUID)).toList())));
+        });
+    }
+
+    private void flushSent() {
+        // Reset first so gifts queued while draining schedule their own flush
+        sentFlushScheduled.set(false);
+        List<Gift> batch = new ArrayList<>();
+        Gift gift;
+        while ((gift = pendingSent.poll()) != null) {
+            batch.add(gift);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (hasListeners(GiftsSentBatchEvent.getHandlerList())) {
+            Bukkit.getPluginManager().callEvent(new GiftsSentBatchEvent(batch));
+        }
+        if (hasListeners(GiftSentEvent.getHandlerList())) {
+            callEach(batch, GiftSentEvent::new);
+        }
+    }
+
+    // One queued task per gift; the lane is FIFO, so they still follow the batch event in order
+    private void callEach(List<Gift> gifts, Function<Gift, Event> factory) {
+        for (Gift gift : gifts) {
+            SchedulerUtil.queueSync(plugin, MainThreadQueue.Lane.EVENT, () -> Bukkit.getPluginManager().callEvent(factory.apply(gift)));
+        }
+    }
+
+    private void callAsync(Runnable call) {
+        // Bukkit rejects async events fired from the main thread, so those callers pay one hop off it
+        if (Bukkit.isPrimaryThread()) {
+            SchedulerUtil.asyncExecutor(plugin).execute(call);
+        } else {
+            call.run();
+        }
+    }
+
+    private static boolean hasListeners(HandlerList handlers) {
+        return handlers.getRegisteredListeners().length > 0;
+    }
+}
@@ -0,0 +1,34 @@
+package wiki.creeper.creeperGiftBox.event;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
+import wiki.creeper.creeperGiftBox.model.Gift;
+
+import java.util.List;
+
+public class GiftsClaimedBatchEvent extends GiftBatchEvent {
+    private static final HandlerList HANDLERS = new HandlerList();
+    private final Player player;
+
+    public GiftsClaimedBatchEvent(List<Gift> gifts, Player player) {
+        super(gifts);
+        this.player = player;
+    }
+
+    /**
+     * 선물을 수령한 플레이어를 반환합니다.
+     * @return 선물을 수령한 플레이어 (Player).
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
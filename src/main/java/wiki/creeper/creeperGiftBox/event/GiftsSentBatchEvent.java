@@ -0,0 +1,23 @@
+package wiki.creeper.creeperGiftBox.event;
+
+import org.bukkit.event.HandlerList;
+import wiki.creeper.creeperGiftBox.model.Gift;
+
+import java.util.List;
+
+public class GiftsSentBatchEvent extends GiftBatchEvent {
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    public GiftsSentBatchEvent(List<Gift> gifts) {
+        super(gifts);
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -5,19 +5,29 @@ import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryView;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.persistence.PersistentDataType;
 import wiki.creeper.creeperGiftBox.CreeperGiftBox;
 import wiki.creeper.creeperGiftBox.config.ConfigManager;
 import wiki.creeper.creeperGiftBox.database.DatabaseManager;
+import wiki.creeper.creeperGiftBox.database.DatabaseUnavailableException;
 import wiki.creeper.creeperGiftBox.model.Gift;
+import wiki.creeper.creeperGiftBox.task.OnlineExpiryTracker;
+import wiki.creeper.creeperGiftBox.util.DebugLogger;
+import wiki.creeper.creeperGiftBox.util.SchedulerUtil;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.Map;
 
 public class GiftBoxGUI {
@@ -25,9 +35,20 @@ public class GiftBoxGUI {
     private final CreeperGiftBox plugin;
     private final DatabaseManager databaseManager;
     private final ConfigManager configManager;
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy.MM.dd. HH:mm");
+    private final DebugLogger debugLogger;
+    // Immutable and thread-safe, so display items can be built on any thread
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM.dd. HH:mm").withZone(ZoneId.systemDefault());
     private final Map<UUID, Long> lastOpenTime = new ConcurrentHashMap<>();
+    private final Set<UUID> viewers = ConcurrentHashMap.newKeySet();
     private static final long OPEN_COOLDOWN = 500; // 500ms cooldown between opens
+    private static final int BUNDLE_PREVIEW_LINES = 8;
+    // Slots 9 to 44; the top row holds the buttons and the bottom row stays empty
+    private static final int PAGE_GIFTS = 36;
+    // Timings of opens that filled every gift slot, so opens of different gift boxes compare
+    private final AtomicLong fullPageOpens = new AtomicLong();
+    private final AtomicLong fullPageRenderNanos = new AtomicLong();
+    private final AtomicLong fullPageCommitNanos = new AtomicLong();
+    private final AtomicLong maxFullPageCommitNanos = new AtomicLong();
 
     public static final NamespacedKey GIFT_ID_KEY = new NamespacedKey(CreeperGiftBox.getPlugin(CreeperGiftBox.class), "gift_id");
     public static final NamespacedKey GIFT_ACTION_KEY = new NamespacedKey(CreeperGiftBox.getPlugin(CreeperGiftBox.class), "gift_action");
@@ -37,6 +58,7 @@ public class GiftBoxGUI {
         this.plugin = plugin;
         this.databaseManager = plugin.getDatabaseManager();
         this.configManager = plugin.getConfigManager();
+        this.debugLogger = new DebugLogger(plugin);
     }
 
     public void open(Player player) {
@@ -57,26 +79,118 @@ public class GiftBoxGUI {
         gui.setItem(4, loadingItem);
 
         player.openInventory(gui);
+        // Added after opening, since opening closes the previous inventory first
+        viewers.add(player.getUniqueId());
 
         // Load gifts asynchronously
-        databaseManager.getGifts(player.getUniqueId(), 36).thenAccept(gifts -> {
+        databaseManager.getGifts(player.getUniqueId(), OnlineExpiryTracker.TRACKED_GIFTS_PER_PLAYER).thenAccept(gifts -> {
+            plugin.getOnlineExpiryTracker().track(player.getUniqueId(), gifts);
+            // Decoding and every display item are built here, off the main thread
+            long renderStart = System.nanoTime();
+            ItemStack[] contents = renderContents(gifts, gui.getSize());
+            long renderNanos = System.nanoTime() - renderStart;
             // Only update if player still has the GUI open
-            Bukkit.getScheduler().runTask(plugin, () -> {
+            SchedulerUtil.runForPlayer(plugin, player, () -> {
                 if (player.getOpenInventory() != null && 
                     player.getOpenInventory().getTitle().equals(title)) {
-                    populateGUI(gui, gifts, player);
+                    long commitStart = System.nanoTime();
+                    gui.setContents(contents);
+                    long commitNanos = System.nanoTime() - commitStart;
+                    if (gifts.size() >= PAGE_GIFTS) {
+                        fullPageOpens.incrementAndGet();
+                        fullPageRenderNanos.addAndGet(renderNanos);
+                        fullPageCommitNanos.addAndGet(commitNanos);
+                        maxFullPageCommitNanos.accumulateAndGet(commitNanos, Math::max);
+                    }
+                    debugLogger.debug("Rendered %d gifts for %s in %dus off the main thread, committed in %dus",
+                            gifts.size(), player.getName(), renderNanos / 1000, commitNanos / 1000);
                 }
             });
         }).exceptionally(throwable -> {
             plugin.getLogger().severe("Failed to load gifts for player " + player.getName() + ": " + throwable.getMessage());
-            Bukkit.getScheduler().runTask(plugin, () -> {
+            boolean unavailable = isDatabaseUnavailable(throwable);
+            SchedulerUtil.runForPlayer(plugin, player, () -> {
                 player.closeInventory();
-                player.sendMessage(configManager.getMessage("loading-error", "Failed to load gifts. Please try again."));
+                if (unavailable) {
+                    player.sendMessage(configManager.getMessage("database-unavailable"));
+                } else {
+                    player.sendMessage(configManager.getMessage("loading-error", "Failed to load gifts. Please try again."));
+                }
             });
             return null;
         });
     }
     
+    /**
+     * Tells whether a player currently has the gift box open. Safe to call from any thread.
+     */
+    public boolean isViewing(UUID playerUUID) {
+        return viewers.contains(playerUUID);
+    }
+
+    public void closed(UUID playerUUID) {
+        viewers.remove(playerUUID);
+    }
+
+    /**
+     * @return number of opens that showed a full page of 36 gifts, since the plugin was enabled
+     */
+    public long getFullPageOpens() {
+        return fullPageOpens.get();
+    }
+
+    /**
+     * @return total time spent building the contents of full pages, off the main thread
+     */
+    public long getFullPageRenderNanos() {
+        return fullPageRenderNanos.get();
+    }
+
+    /**
+     * @return total time spent handing full pages to their inventories, on the player's thread
+     */
+    public long getFullPageCommitNanos() {
+        return fullPageCommitNanos.get();
+    }
+
+    /**
+     * @return longest time a single full page took to hand to its inventory
+     */
+    public long getMaxFullPageCommitNanos() {
+        return maxFullPageCommitNanos.get();
+    }
+
+    /**
+     * Removes the given gifts from the player's open gift box, if it is open.
+     * Must be called on the player's thread.
+     */
+    public void removeGifts(Player player, Set<String> giftIds) {
+        InventoryView view = player.getOpenInventory();
+        if (view == null || !view.getTitle().startsWith(configManager.getRawMessage("gui-title").split("%")[0])) {
+            return;
+        }
+        Inventory gui = view.getTopInventory();
+        for (int slot = 9; slot < 45; slot++) {
+            ItemStack item = gui.getItem(slot);
+            if (item == null || !item.hasItemMeta()) {
+                continue;
+            }
+            String giftId = item.getItemMeta().getPersistentDataContainer().get(GIFT_ID_KEY, PersistentDataType.STRING);
+            if (giftId != null && giftIds.contains(giftId)) {
+                gui.setItem(slot, null);
+            }
+        }
+    }
+
+    private static boolean isDatabaseUnavailable(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DatabaseUnavailableException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private ItemStack createLoadingItem() {
         ItemStack loadingItem = new ItemStack(Material.PAPER);
         ItemMeta loadingMeta = loadingItem.getItemMeta();
@@ -87,24 +201,22 @@ public class GiftBoxGUI {
         return loadingItem;
     }
 
-    private void populateGUI(Inventory gui, List<Gift> gifts, Player player) {
-        gui.clear();
+    /**
+     * Builds the full contents of the gift box. Touches no world or inventory state, so it runs
+     * off the main thread; only the returned array is handed to the inventory.
+     */
+    private ItemStack[] renderContents(List<Gift> gifts, int size) {
+        ItemStack[] contents = new ItemStack[size];
 
         // Only show claim all button if there are gifts
         if (!gifts.isEmpty()) {
-            ItemStack claimAllItem = createClaimAllItem();
-            gui.setItem(4, claimAllItem);
+            contents[4] = createClaimAllItem();
         }
 
-        // Populate gifts efficiently
         int slot = 9;
         for (Gift gift : gifts) {
-            if (slot >= 45) break; // Leave bottom row empty
-            
-            ItemStack displayItem = createGiftDisplayItem(gift);
-            if (displayItem != null) {
-                gui.setItem(slot, displayItem);
-            }
+            if (slot >= 9 + PAGE_GIFTS) break; // Leave bottom row empty
+            contents[slot] = createGiftDisplayItem(gift);
             slot++;
         }
         
@@ -113,6 +225,7 @@ public class GiftBoxGUI {
             long cutoffTime = System.currentTimeMillis() - 60000; // 1 minute ago
             lastOpenTime.entrySet().removeIf(entry -> entry.getValue() < cutoffTime);
         }
+        return contents;
     }
     
     private ItemStack createClaimAllItem() {
@@ -127,23 +240,42 @@ public class GiftBoxGUI {
         return claimAllItem;
     }
     
+    private void addBundlePreview(List<String> lore, List<ItemStack> items) {
+        lore.add(configManager.getRawMessage("bundle-contents-header").replace("%count%", String.valueOf(items.size())));
+        int shown = Math.min(items.size(), BUNDLE_PREVIEW_LINES);
+        for (ItemStack item : items.subList(0, shown)) {
+            ItemMeta meta = item.getItemMeta();
+            String name = meta != null && meta.hasDisplayName() ? meta.getDisplayName() : item.getType().name();
+            lore.add(configManager.getRawMessage("bundle-contents-entry")
+                    .replace("%item%", name)
+                    .replace("%amount%", String.valueOf(item.getAmount())));
+        }
+        if (items.size() > shown) {
+            lore.add(configManager.getRawMessage("bundle-contents-more").replace("%count%", String.valueOf(items.size() - shown)));
+        }
+    }
+
     private ItemStack createGiftDisplayItem(Gift gift) {
         try {
             ItemStack displayItem = gift.getItemStack().clone();
             ItemMeta meta = displayItem.getItemMeta();
             if (meta != null) {
                 // Format dates once
-                String dateStr = dateFormat.format(new Date(gift.getTimestamp()));
+                String dateStr = DATE_FORMAT.format(Instant.ofEpochMilli(gift.getTimestamp()));
                 String expireStr = gift.getExpireStamp() == -1 
                     ? configManager.getRawMessage("expire-never") 
-                    : dateFormat.format(new Date(gift.getExpireStamp()));
+                    : DATE_FORMAT.format(Instant.ofEpochMilli(gift.getExpireStamp()));
                 
                 List<String> lore = configManager.getMessageList("gift-item-lore",
                         "%sender%", gift.getSender(),
-                        "%amount%", String.valueOf(gift.getItemStack().getAmount()),
+                        "%amount%", String.valueOf(gift.getAmount()),
                         "%date%", dateStr,
                         "%expire%", expireStr
                 );
+                if (gift.isBundle()) {
+                    lore = new ArrayList<>(lore);
+                    addBundlePreview(lore, gift.getItems());
+                }
                 meta.setLore(lore);
                 meta.getPersistentDataContainer().set(GIFT_ID_KEY, PersistentDataType.STRING, gift.getId());
                 displayItem.setItemMeta(meta);
@@ -1,11 +1,11 @@
 package wiki.creeper.creeperGiftBox.listener;
 
-import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.metadata.FixedMetadataValue;
@@ -15,16 +15,18 @@ import wiki.creeper.creeperGiftBox.CreeperGiftBox;
 import wiki.creeper.creeperGiftBox.config.ConfigManager;
 import wiki.creeper.creeperGiftBox.database.DatabaseManager;
 import wiki.creeper.creeperGiftBox.database.LogResult;
-import wiki.creeper.creeperGiftBox.event.GiftClaimedEvent;
 import wiki.creeper.creeperGiftBox.gui.GiftBoxGUI;
 import wiki.creeper.creeperGiftBox.model.Gift;
+import wiki.creeper.creeperGiftBox.util.InventorySpace;
 import wiki.creeper.creeperGiftBox.util.SchedulerUtil;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 public class GUIListener implements Listener {
@@ -42,6 +44,13 @@ public class GUIListener implements Listener {
         this.configManager = plugin.getConfigManager();
     }
 
+    @EventHandler
+    public void onInventoryClose(InventoryCloseEvent event) {
+        if (event.getView().getTitle().startsWith(configManager.getRawMessage("gui-title").split("%")[0])) {
+            plugin.getGiftBoxGUI().closed(event.getPlayer().getUniqueId());
+        }
+    }
+
     @EventHandler
     public void onInventoryClick(InventoryClickEvent event) {
         if (!(event.getWhoClicked() instanceof Player)) return;
@@ -88,155 +97,157 @@ public class GUIListener implements Listener {
 
         player.setMetadata(METADATA_KEY, new FixedMetadataValue(plugin, true));
 
-        databaseManager.getGifts(player.getUniqueId(), 100)
-                .thenAcceptAsync(gifts -> {
-                    try {
-                        Gift targetGift = gifts.stream()
-                                .filter(g -> g.getId().equals(giftId))
-                                .findFirst()
-                                .orElse(null);
-
-                        if (targetGift == null) {
-                            return;
-                        }
+        databaseManager.getGiftsForClaim(player.getUniqueId(), 100)
+                .thenApply(gifts -> {
+                    // Decode the claimed item off the main thread
+                    gifts.stream().filter(g -> g.getId().equals(giftId)).forEach(Gift::getItems);
+                    return gifts;
+                })
+                .thenComposeAsync(gifts -> {
+                    Gift targetGift = gifts.stream()
+                            .filter(g -> g.getId().equals(giftId))
+                            .findFirst()
+                            .orElse(null);
+
+                    if (targetGift == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
 
-                        if (targetGift.getExpireStamp() != -1 && System.currentTimeMillis() > targetGift.getExpireStamp()) {
-                            player.sendMessage(configManager.getMessage("gift-expired"));
-                            databaseManager.deleteGift(giftId).thenRun(() ->
-                                    databaseManager.logAction(targetGift, LogResult.EXPIRED)
-                            ).exceptionally(ex -> {
-                                plugin.getLogger().log(Level.SEVERE, "Failed to delete expired gift", ex);
-                                return null;
-                            });
-                            return;
-                        }
+                    if (targetGift.getExpireStamp() != -1 && System.currentTimeMillis() > targetGift.getExpireStamp()) {
+                        player.sendMessage(configManager.getMessage("gift-expired"));
+                        deleteExpired(targetGift);
+                        return CompletableFuture.completedFuture(null);
+                    }
 
-                        if (player.getInventory().firstEmpty() == -1) {
-                            player.sendMessage(configManager.getMessage("inventory-full"));
-                            return;
-                        }
+                    // A bundle is only claimed when every item in it fits
+                    if (!InventorySpace.tryAdd(player.getInventory().getStorageContents(), targetGift.getItems())) {
+                        player.sendMessage(configManager.getMessage("inventory-full"));
+                        return CompletableFuture.completedFuture(null);
+                    }
 
-                        try {
-                            ItemStack originalItem = targetGift.getItemStack().clone();
-                            player.getInventory().addItem(originalItem);
-                            player.sendMessage(configManager.getMessage("gift-claimed"));
-
-                            databaseManager.deleteGift(giftId).thenAccept(deleted -> {
-                                if (deleted) {
-                                    databaseManager.logAction(targetGift, LogResult.CLAIMED);
-                                    SchedulerUtil.runSync(plugin, () ->
-                                            Bukkit.getPluginManager().callEvent(new GiftClaimedEvent(targetGift, player))
-                                    );
-                                }
-                            }).exceptionally(ex -> {
-                                plugin.getLogger().log(Level.SEVERE, "Failed to delete claimed gift", ex);
-                                return null;
-                            });
-
-                        } catch (Exception e) {
-                            plugin.getLogger().log(Level.SEVERE, "Error claiming single gift", e);
-                        }
-                    } finally {
-                        player.removeMetadata(METADATA_KEY, plugin);
-                        if (player.isOnline()) {
-                            plugin.getGiftBoxGUI().open(player);
-                        }
+                    return claim(player, List.of(targetGift), granted ->
+                            player.sendMessage(configManager.getMessage("gift-claimed")));
+                }, SchedulerUtil.playerExecutor(plugin, player))
+                .whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        plugin.getLogger().log(Level.SEVERE, "Failed to process single gift claim", ex);
                     }
-                }, SchedulerUtil.syncExecutor(plugin))
-                .exceptionally(ex -> {
-                    plugin.getLogger().log(Level.SEVERE, "Failed to process single gift claim", ex);
-                    SchedulerUtil.runSync(plugin, () -> {
-                        player.removeMetadata(METADATA_KEY, plugin);
-                        if (player.isOnline()) {
-                            plugin.getGiftBoxGUI().open(player);
-                        }
-                    });
-                    return null;
+                    finishClaim(player);
                 });
     }
 
     private void handleClaimAll(Player player) {
         player.setMetadata(METADATA_KEY, new FixedMetadataValue(plugin, true));
 
-        databaseManager.getGifts(player.getUniqueId(), 36)
-                .thenAcceptAsync(gifts -> {
-                    try {
-                        if (gifts.isEmpty()) {
-                            player.sendMessage(configManager.getMessage("no-gifts-to-claim"));
-                            return;
-                        }
-
-                        List<Gift> claimedGifts = new ArrayList<>();
-                        List<String> claimedGiftIds = new ArrayList<>();
-                        int claimedCount = 0;
-
-                        for (Gift gift : gifts) {
-                            if (gift.getExpireStamp() != -1 && System.currentTimeMillis() > gift.getExpireStamp()) {
-                                databaseManager.deleteGift(gift.getId()).thenRun(() ->
-                                        databaseManager.logAction(gift, LogResult.EXPIRED)
-                                ).exceptionally(ex -> {
-                                    plugin.getLogger().log(Level.WARNING,
-                                            "Failed to delete expired gift during claim all", ex);
-                                    return null;
-                                });
-                                continue;
-                            }
-
-                            if (player.getInventory().firstEmpty() == -1) {
-                                player.sendMessage(configManager.getMessage("inventory-full"));
-                                break;
-                            }
-
-                            try {
-                                ItemStack originalItem = gift.getItemStack().clone();
-                                player.getInventory().addItem(originalItem);
-                                claimedGifts.add(gift);
-                                claimedGiftIds.add(gift.getId());
-                                claimedCount++;
-                            } catch (Exception e) {
-                                plugin.getLogger().log(Level.SEVERE, "Error claiming multiple gifts", e);
-                            }
-                        }
+        databaseManager.getGiftsForClaim(player.getUniqueId(), 36)
+                .thenApply(gifts -> {
+                    // Decode items off the main thread
+                    gifts.forEach(Gift::getItems);
+                    return gifts;
+                })
+                .thenComposeAsync(gifts -> {
+                    if (gifts.isEmpty()) {
+                        player.sendMessage(configManager.getMessage("no-gifts-to-claim"));
+                        return CompletableFuture.completedFuture(null);
+                    }
 
-                        if (!claimedGiftIds.isEmpty()) {
-                            final int finalClaimedCount = claimedCount;
-                            databaseManager.deleteGifts(claimedGiftIds)
-                                    .thenAcceptAsync(deletedCount -> {
-                                        claimedGifts.forEach(g -> {
-                                            databaseManager.logAction(g, LogResult.CLAIMED);
-                                            SchedulerUtil.runSync(plugin, () ->
-                                                    Bukkit.getPluginManager().callEvent(new GiftClaimedEvent(g, player))
-                                            );
-                                        });
-                                        player.sendMessage(configManager.getMessage("all-gifts-claimed", "%amount%", String.valueOf(finalClaimedCount)));
-                                    }, SchedulerUtil.syncExecutor(plugin))
-                                    .exceptionally(ex -> {
-                                        plugin.getLogger().log(Level.SEVERE, "Failed to delete claimed gifts", ex);
-                                        SchedulerUtil.runSync(plugin, () ->
-                                                player.sendMessage(configManager.getMessage("all-gifts-claimed", "%amount%", String.valueOf(finalClaimedCount))));
-                                        return null;
-                                    });
-                        } else if (claimedCount == 0 && !gifts.isEmpty()) {
-                            if (player.getInventory().firstEmpty() == -1) {
-                                player.sendMessage(configManager.getMessage("inventory-full"));
-                            }
+                    // Only plans what fits; items are handed out once the gifts are deleted
+                    List<Gift> planned = new ArrayList<>();
+                    ItemStack[] space = player.getInventory().getStorageContents();
+                    for (Gift gift : gifts) {
+                        if (gift.getExpireStamp() != -1 && System.currentTimeMillis() > gift.getExpireStamp()) {
+                            deleteExpired(gift);
+                            continue;
                         }
-                    } finally {
-                        player.removeMetadata(METADATA_KEY, plugin);
-                        if (player.isOnline()) {
-                            plugin.getGiftBoxGUI().open(player);
+                        if (!InventorySpace.tryAdd(space, gift.getItems())) {
+                            player.sendMessage(configManager.getMessage("inventory-full"));
+                            break;
                         }
+                        planned.add(gift);
                     }
-                }, SchedulerUtil.syncExecutor(plugin))
-                .exceptionally(ex -> {
-                    plugin.getLogger().log(Level.SEVERE, "Failed to claim all gifts", ex);
-                    SchedulerUtil.runSync(plugin, () -> {
-                        player.removeMetadata(METADATA_KEY, plugin);
-                        if (player.isOnline()) {
-                            plugin.getGiftBoxGUI().open(player);
-                        }
-                    });
+
+                    if (planned.isEmpty()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return claim(player, planned, granted ->
+                            player.sendMessage(configManager.getMessage("all-gifts-claimed", "%amount%", String.valueOf(granted.size()))));
+                }, SchedulerUtil.playerExecutor(plugin, player))
+                .whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        plugin.getLogger().log(Level.SEVERE, "Failed to claim all gifts", ex);
+                    }
+                    finishClaim(player);
+                });
+    }
+
+    /**
+     * Deletes the gifts, then hands out the items of only those this claim actually deleted, so a
+     * gift claimed, revoked or expired elsewhere in the meantime is never handed out twice. If the
+     * player is gone by then, the deleted gifts are put back into the gift box instead.
+     *
+     * @param onGranted Runs on the player's thread after the items were handed out
+     * @return future completing once the items were handed out or put back
+     */
+    private CompletableFuture<Void> claim(Player player, List<Gift> gifts, Consumer<List<Gift>> onGranted) {
+        List<String> giftIds = gifts.stream().map(Gift::getId).toList();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        databaseManager.claimGifts(player.getUniqueId(), giftIds).whenComplete((deletedIds, throwable) -> {
+            if (throwable != null) {
+                done.completeExceptionally(throwable);
+                return;
+            }
+            List<Gift> deleted = gifts.stream().filter(gift -> deletedIds.contains(gift.getId())).toList();
+            if (deleted.isEmpty()) {
+                done.complete(null);
+                return;
+            }
+            SchedulerUtil.runForPlayer(plugin, player, () -> {
+                try {
+                    give(player, deleted);
+                    onGranted.accept(deleted);
+                } finally {
+                    done.complete(null);
+                }
+                deleted.forEach(gift -> databaseManager.logAction(gift, LogResult.CLAIMED));
+                plugin.getEventDispatcher().giftsClaimed(player, deleted);
+            }, () -> {
+                databaseManager.returnGifts(player.getUniqueId(), deleted).exceptionally(ex -> {
+                    plugin.getLogger().log(Level.SEVERE, "Failed to return " + deleted.size() + " claimed gifts of "
+                            + player.getUniqueId() + " who logged out: " + giftIds, ex);
                     return null;
                 });
+                done.complete(null);
+            });
+        });
+        return done;
+    }
+
+    private void give(Player player, List<Gift> gifts) {
+        for (Gift gift : gifts) {
+            ItemStack[] items = gift.getItems().stream().map(ItemStack::clone).toArray(ItemStack[]::new);
+            // The inventory may have filled up since the claim was planned; nothing is lost then
+            player.getInventory().addItem(items).values()
+                    .forEach(left -> player.getWorld().dropItemNaturally(player.getLocation(), left));
+        }
+    }
+
+    private void deleteExpired(Gift gift) {
+        databaseManager.deleteGift(gift.getPlayerUUID(), gift.getId()).thenAccept(deleted -> {
+            if (deleted) {
+                databaseManager.logAction(gift, LogResult.EXPIRED);
+            }
+        }).exceptionally(ex -> {
+            plugin.getLogger().log(Level.WARNING, "Failed to delete expired gift " + gift.getId(), ex);
+            return null;
+        });
+    }
+
+    private void finishClaim(Player player) {
+        SchedulerUtil.runForPlayer(plugin, player, () -> {
+            player.removeMetadata(METADATA_KEY, plugin);
+            if (player.isOnline()) {
+                plugin.getGiftBoxGUI().open(player);
+            }
+        });
     }
 }
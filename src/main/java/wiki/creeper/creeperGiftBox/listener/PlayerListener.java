@@ -4,6 +4,7 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import wiki.creeper.creeperGiftBox.CreeperGiftBox;
 import wiki.creeper.creeperGiftBox.config.ConfigManager;
 import wiki.creeper.creeperGiftBox.database.DatabaseManager;
@@ -26,6 +27,8 @@ public class PlayerListener implements Listener {
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
+        plugin.getPlayerNameIndex().playerJoined(player.getUniqueId(), player.getName());
+        plugin.getOnlineExpiryTracker().load(player);
         databaseManager.getGiftCount(player.getUniqueId())
                 .thenAcceptAsync(count -> {
                     if (!player.isOnline()) {
@@ -34,11 +37,18 @@ public class PlayerListener implements Listener {
                     if (count > 0) {
                         player.sendMessage(configManager.getMessage("join-notification", "%amount%", String.valueOf(count)));
                     }
-                }, SchedulerUtil.syncExecutor(plugin))
+                }, SchedulerUtil.playerExecutor(plugin, player))
                 .exceptionally(throwable -> {
                     plugin.getLogger().log(Level.WARNING,
                             "Failed to fetch gift count for " + player.getName(), throwable);
                     return null;
                 });
     }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getOnlineExpiryTracker().untrack(event.getPlayer().getUniqueId());
+        plugin.getGiftBoxGUI().closed(event.getPlayer().getUniqueId());
+        plugin.getPlayerNameIndex().playerQuit(event.getPlayer().getUniqueId());
+    }
 }
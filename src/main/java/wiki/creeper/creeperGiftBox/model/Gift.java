@@ -1,24 +1,78 @@
 package wiki.creeper.creeperGiftBox.model;
 
 import org.bukkit.inventory.ItemStack;
+import wiki.creeper.creeperGiftBox.util.ItemSerializer;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.UUID;
 
+/**
+ * A gift stored in a player's gift box.
+ *
+ * The item is kept in whichever form the gift was created with. Gifts loaded from the
+ * database carry the serialized payload and decode the ItemStack on the first call to
+ * {@link #getItemStack()}; gifts created from an ItemStack encode the payload on the first
+ * call to {@link #getSerializedItem()}. Each conversion happens at most once.
+ *
+ * A gift may also be a bundle: an ordered list of items stored as one payload, shown as one
+ * slot and claimed together. For a bundle {@link #getItemStack()} returns the first item.
+ */
 public class Gift {
     private final String id;
     private final UUID playerUUID;
-    private final ItemStack itemStack;
+    private final int amount;
     private final String sender;
     private final long timestamp;
     private final long expireStamp;
+    private final String campaignId;
+    private volatile ItemStack itemStack;
+    private volatile String serializedItem;
+    private volatile List<ItemStack> items;
 
     public Gift(String id, UUID playerUUID, ItemStack itemStack, String sender, long timestamp, long expireStamp) {
+        this(id, playerUUID, itemStack, sender, timestamp, expireStamp, null);
+    }
+
+    public Gift(String id, UUID playerUUID, ItemStack itemStack, String sender, long timestamp, long expireStamp, String campaignId) {
         this.id = id;
         this.playerUUID = playerUUID;
         this.itemStack = itemStack;
+        this.amount = itemStack != null ? itemStack.getAmount() : 0;
+        this.sender = sender;
+        this.timestamp = timestamp;
+        this.expireStamp = expireStamp;
+        this.campaignId = campaignId;
+    }
+
+    /**
+     * Creates a gift from a list of items. A list of one item is an ordinary gift, longer lists are bundles.
+     */
+    public Gift(String id, UUID playerUUID, List<ItemStack> items, String sender, long timestamp, long expireStamp, String campaignId) {
+        this.id = id;
+        this.playerUUID = playerUUID;
+        this.items = List.copyOf(items);
+        this.itemStack = this.items.get(0);
+        this.amount = this.items.stream().mapToInt(ItemStack::getAmount).sum();
+        this.sender = sender;
+        this.timestamp = timestamp;
+        this.expireStamp = expireStamp;
+        this.campaignId = campaignId;
+    }
+
+    public Gift(String id, UUID playerUUID, String serializedItem, int amount, String sender, long timestamp, long expireStamp) {
+        this(id, playerUUID, serializedItem, amount, sender, timestamp, expireStamp, null);
+    }
+
+    public Gift(String id, UUID playerUUID, String serializedItem, int amount, String sender, long timestamp, long expireStamp, String campaignId) {
+        this.id = id;
+        this.playerUUID = playerUUID;
+        this.serializedItem = serializedItem;
+        this.amount = amount;
         this.sender = sender;
         this.timestamp = timestamp;
         this.expireStamp = expireStamp;
+        this.campaignId = campaignId;
     }
 
     public String getId() {
@@ -29,8 +83,96 @@ public class Gift {
         return playerUUID;
     }
 
+    /**
+     * 선물 아이템을 반환합니다. 데이터베이스에서 불러온 선물은 처음 호출될 때 디코딩됩니다.
+     * @return 선물 아이템 (ItemStack).
+     * @throws IllegalStateException 저장된 아이템 데이터를 디코딩할 수 없는 경우
+     */
     public ItemStack getItemStack() {
-        return itemStack;
+        ItemStack item = itemStack;
+        if (item == null && serializedItem != null) {
+            if (isBundle()) {
+                return getItems().get(0);
+            }
+            synchronized (this) {
+                item = itemStack;
+                if (item == null) {
+                    try {
+                        item = ItemSerializer.deserialize(serializedItem);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Unable to decode item for gift " + id, e);
+                    }
+                    itemStack = item;
+                }
+            }
+        }
+        return item;
+    }
+
+    /**
+     * 선물에 담긴 모든 아이템을 순서대로 반환합니다. 꾸러미가 아닌 선물은 아이템 하나만 담긴 목록입니다.
+     * @return 변경할 수 없는 아이템 목록.
+     * @throws IllegalStateException 저장된 아이템 데이터를 디코딩할 수 없는 경우
+     */
+    public List<ItemStack> getItems() {
+        List<ItemStack> list = items;
+        if (list == null) {
+            if (!isBundle()) {
+                return List.of(getItemStack());
+            }
+            synchronized (this) {
+                list = items;
+                if (list == null) {
+                    try {
+                        list = List.copyOf(ItemSerializer.deserializeBundle(serializedItem));
+                    } catch (IOException | IllegalArgumentException e) {
+                        throw new IllegalStateException("Unable to decode items for gift " + id, e);
+                    }
+                    if (list.isEmpty()) {
+                        throw new IllegalStateException("Gift " + id + " is an empty bundle");
+                    }
+                    items = list;
+                    itemStack = list.get(0);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 여러 아이템을 묶은 꾸러미 선물인지 확인합니다. 아이템을 디코딩하지 않습니다.
+     * @return 꾸러미이면 true.
+     */
+    public boolean isBundle() {
+        List<ItemStack> list = items;
+        return list != null ? list.size() > 1 : ItemSerializer.isBundle(serializedItem);
+    }
+
+    /**
+     * 저장 형식으로 직렬화된 아이템 데이터를 반환합니다. 필요할 때 한 번만 인코딩됩니다.
+     * @return 직렬화된 아이템 문자열.
+     * @throws IllegalStateException 아이템을 직렬화할 수 없는 경우
+     */
+    public String getSerializedItem() {
+        String payload = serializedItem;
+        if (payload == null) {
+            synchronized (this) {
+                payload = serializedItem;
+                if (payload == null) {
+                    payload = isBundle() ? ItemSerializer.serializeBundle(items) : ItemSerializer.serialize(itemStack);
+                    serializedItem = payload;
+                }
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * 아이템을 디코딩하지 않고 선물 아이템의 수량을 반환합니다.
+     * @return 아이템 수량.
+     */
+    public int getAmount() {
+        return amount;
     }
 
     public String getSender() {
@@ -44,4 +186,12 @@ public class Gift {
     public long getExpireStamp() {
         return expireStamp;
     }
-}
\ No newline at end of file
+
+    /**
+     * 선물이 속한 캠페인(일괄 지급) ID를 반환합니다.
+     * @return 캠페인 ID, 캠페인 없이 보낸 선물은 null.
+     */
+    public String getCampaignId() {
+        return campaignId;
+    }
+}
@@ -0,0 +1,71 @@
+package wiki.creeper.creeperGiftBox.model;
+
+import org.bukkit.Material;
+
+/**
+ * Search criteria for gifts across all inboxes. Unset criteria match every gift.
+ */
+public class GiftSearch {
+    private final String sender;
+    private final Material material;
+    private final Integer customModelData;
+
+    private GiftSearch(Builder builder) {
+        this.sender = builder.sender;
+        this.material = builder.material;
+        this.customModelData = builder.customModelData;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return 발신인 조건 (대소문자 구분 없음), 없으면 null
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    /**
+     * @return 아이템 종류 조건, 없으면 null
+     */
+    public Material getMaterial() {
+        return material;
+    }
+
+    /**
+     * @return 커스텀 모델 데이터 조건, 없으면 null
+     */
+    public Integer getCustomModelData() {
+        return customModelData;
+    }
+
+    public static class Builder {
+        private String sender;
+        private Material material;
+        private Integer customModelData;
+
+        private Builder() {
+        }
+
+        public Builder sender(String sender) {
+            this.sender = sender;
+            return this;
+        }
+
+        public Builder material(Material material) {
+            this.material = material;
+            return this;
+        }
+
+        public Builder customModelData(Integer customModelData) {
+            this.customModelData = customModelData;
+            return this;
+        }
+
+        public GiftSearch build() {
+            return new GiftSearch(this);
+        }
+    }
+}
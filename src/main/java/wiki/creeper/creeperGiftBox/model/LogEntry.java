@@ -0,0 +1,93 @@
+package wiki.creeper.creeperGiftBox.model;
+
+import org.bukkit.inventory.ItemStack;
+import wiki.creeper.creeperGiftBox.database.LogResult;
+import wiki.creeper.creeperGiftBox.util.ItemSerializer;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * A single row of the gift history log. The item is decoded on the first call to {@link #getItemStack()}.
+ */
+public class LogEntry {
+    private final long logId;
+    private final String giftId;
+    private final UUID playerUUID;
+    private final String sender;
+    private final LogResult result;
+    private final int amount;
+    private final long timestamp;
+    private final String serializedItem;
+    private volatile ItemStack itemStack;
+
+    public LogEntry(long logId, String giftId, UUID playerUUID, String sender, LogResult result,
+                    int amount, long timestamp, String serializedItem) {
+        this.logId = logId;
+        this.giftId = giftId;
+        this.playerUUID = playerUUID;
+        this.sender = sender;
+        this.result = result;
+        this.amount = amount;
+        this.timestamp = timestamp;
+        this.serializedItem = serializedItem;
+    }
+
+    public long getLogId() {
+        return logId;
+    }
+
+    public String getGiftId() {
+        return giftId;
+    }
+
+    public UUID getPlayerUUID() {
+        return playerUUID;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public LogResult getResult() {
+        return result;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    /**
+     * @return 기록된 시각 (밀리초)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getSerializedItem() {
+        return serializedItem;
+    }
+
+    /**
+     * 기록된 아이템을 반환합니다. 처음 호출될 때 디코딩됩니다.
+     * @return 기록된 아이템 (ItemStack).
+     * @throws IllegalStateException 저장된 아이템 데이터를 디코딩할 수 없는 경우
+     */
+    public ItemStack getItemStack() {
+        ItemStack item = itemStack;
+        if (item == null && serializedItem != null) {
+            synchronized (this) {
+                item = itemStack;
+                if (item == null) {
+                    try {
+                        item = ItemSerializer.deserialize(serializedItem);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Unable to decode item for log entry " + logId, e);
+                    }
+                    itemStack = item;
+                }
+            }
+        }
+        return item;
+    }
+}
@@ -0,0 +1,107 @@
+package wiki.creeper.creeperGiftBox.model;
+
+import java.util.UUID;
+
+/**
+ * Search criteria for the gift history log. Unset criteria match every row.
+ */
+public class LogQuery {
+    private final UUID playerUUID;
+    private final String sender;
+    private final String giftId;
+    private final long fromTime;
+    private final long toTime;
+
+    private LogQuery(Builder builder) {
+        this.playerUUID = builder.playerUUID;
+        this.sender = builder.sender;
+        this.giftId = builder.giftId;
+        this.fromTime = builder.fromTime;
+        this.toTime = builder.toTime;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return 수령인 UUID 조건, 없으면 null
+     */
+    public UUID getPlayerUUID() {
+        return playerUUID;
+    }
+
+    /**
+     * @return 발신인 조건, 없으면 null
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    /**
+     * @return 선물 ID 조건, 없으면 null
+     */
+    public String getGiftId() {
+        return giftId;
+    }
+
+    /**
+     * @return 포함되는 시작 시각 (밀리초), 없으면 -1
+     */
+    public long getFromTime() {
+        return fromTime;
+    }
+
+    /**
+     * @return 포함되지 않는 종료 시각 (밀리초), 없으면 -1
+     */
+    public long getToTime() {
+        return toTime;
+    }
+
+    public static class Builder {
+        private UUID playerUUID;
+        private String sender;
+        private String giftId;
+        private long fromTime = -1;
+        private long toTime = -1;
+
+        private Builder() {
+        }
+
+        public Builder player(UUID playerUUID) {
+            this.playerUUID = playerUUID;
+            return this;
+        }
+
+        public Builder sender(String sender) {
+            this.sender = sender;
+            return this;
+        }
+
+        public Builder giftId(String giftId) {
+            this.giftId = giftId;
+            return this;
+        }
+
+        /**
+         * @param fromTime 포함되는 시작 시각 (밀리초)
+         */
+        public Builder from(long fromTime) {
+            this.fromTime = fromTime;
+            return this;
+        }
+
+        /**
+         * @param toTime 포함되지 않는 종료 시각 (밀리초)
+         */
+        public Builder to(long toTime) {
+            this.toTime = toTime;
+            return this;
+        }
+
+        public LogQuery build() {
+            return new LogQuery(this);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package wiki.creeper.creeperGiftBox.task;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.database.DatabaseManager;
+import wiki.creeper.creeperGiftBox.util.DebugLogger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compacts the gift boxes of online players a few at a time, round-robin.
+ * Only players online on this server are compacted, so servers sharing a database never compact the same box.
+ */
+public class CompactionTask implements Runnable {
+
+    private final CreeperGiftBox plugin;
+    private final DatabaseManager databaseManager;
+    private final DebugLogger debugLogger;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final Deque<UUID> queue = new ArrayDeque<>();
+
+    public CompactionTask(CreeperGiftBox plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+        this.debugLogger = new DebugLogger(plugin);
+    }
+
+    @Override
+    public void run() {
+        // A slow run must not overlap the next one
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (queue.isEmpty()) {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                queue.add(player.getUniqueId());
+            }
+        }
+
+        // Players are compacted one after another so a run never holds more than one connection
+        AtomicInteger merged = new AtomicInteger();
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        int budget = plugin.getConfigManager().getCompactionPlayersPerRun();
+        while (budget-- > 0 && !queue.isEmpty()) {
+            UUID playerUUID = queue.poll();
+            if (Bukkit.getPlayer(playerUUID) == null || plugin.getGiftBoxGUI().isViewing(playerUUID)) {
+                continue;
+            }
+            chain = chain.thenCompose(ignored -> databaseManager.compactGifts(playerUUID)).thenAccept(removed -> {
+                if (removed > 0) {
+                    merged.addAndGet(removed);
+                    plugin.getOnlineExpiryTracker().reload(playerUUID);
+                }
+            });
+        }
+
+        chain.whenComplete((ignored, throwable) -> {
+            running.set(false);
+            if (throwable != null) {
+                debugLogger.debugException("Error during gift compaction", throwable);
+                plugin.getLogger().warning("Failed to compact gifts: " + throwable.getMessage());
+            } else if (merged.get() > 0) {
+                debugLogger.debug("Merged %d gifts", merged.get());
+            }
+        });
+    }
+}
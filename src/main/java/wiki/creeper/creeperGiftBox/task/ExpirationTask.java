@@ -1,34 +1,94 @@
 package wiki.creeper.creeperGiftBox.task;
 
-import org.bukkit.scheduler.BukkitRunnable;
 import wiki.creeper.creeperGiftBox.CreeperGiftBox;
 import wiki.creeper.creeperGiftBox.database.DatabaseManager;
 import wiki.creeper.creeperGiftBox.util.DebugLogger;
 
-public class ExpirationTask extends BukkitRunnable {
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sweeps expired gifts from the database on one server of the network.
+ *
+ * Renews the sweeper lease on every run, even while a sweep is still in progress, so a long
+ * sweep does not let the lease lapse. Only the server holding the sweeper lease does any work:
+ * it remembers the earliest ExpireStamp and sweeps once that deadline has passed, so idle
+ * periods cost no sweep queries. The earliest deadline is looked up again after each sweep
+ * and at least every {@code expiration-check-interval} seconds, to pick up gifts sent from
+ * other servers.
+ */
+public class ExpirationTask implements Runnable {
 
     private final CreeperGiftBox plugin;
     private final DatabaseManager databaseManager;
     private final DebugLogger debugLogger;
+    private final long recheckMillis;
+    private final AtomicBoolean heartbeating = new AtomicBoolean(false);
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private volatile long nextExpiry = -1;
+    private volatile long nextRecheck = 0;
 
     public ExpirationTask(CreeperGiftBox plugin, DatabaseManager databaseManager) {
         this.plugin = plugin;
         this.databaseManager = databaseManager;
         this.debugLogger = new DebugLogger(plugin);
+        this.recheckMillis = plugin.getConfigManager().getExpirationCheckInterval() * 1000L;
     }
 
     @Override
     public void run() {
-        debugLogger.debug("Starting expired gift check...");
-        //plugin.getLogger().info("Checking for expired gifts...");
-        
-        databaseManager.findAndRemoveExpiredGifts().thenRun(() -> {
-            debugLogger.debug("Expired gift check completed successfully");
-            //plugin.getLogger().info("Expired gift check complete.");
-        }).exceptionally(throwable -> {
-            debugLogger.debugException("Error during expired gift check", throwable);
-            plugin.getLogger().severe("Failed to check for expired gifts: " + throwable.getMessage());
-            return null;
+        // Only a stuck heartbeat is skipped; a running sweep never delays the renewal
+        if (!heartbeating.compareAndSet(false, true)) {
+            return;
+        }
+
+        databaseManager.heartbeatSweeperLease().whenComplete((leader, throwable) -> {
+            heartbeating.set(false);
+            if (throwable != null) {
+                debugLogger.debugException("Error renewing the expiration sweeper lease", throwable);
+                plugin.getLogger().severe("Failed to renew the expiration sweeper lease: " + throwable.getMessage());
+                return;
+            }
+            if (!leader) {
+                // Look the deadline up again if leadership comes back
+                nextRecheck = 0;
+                return;
+            }
+            if (sweeping.compareAndSet(false, true)) {
+                check();
+            }
+        });
+    }
+
+    private void check() {
+        CompletableFuture<Void> check = System.currentTimeMillis() >= nextRecheck
+                ? refreshNextExpiry().thenCompose(ignored -> sweepIfDue())
+                : sweepIfDue();
+        check.whenComplete((ignored, throwable) -> {
+            sweeping.set(false);
+            if (throwable != null) {
+                debugLogger.debugException("Error during expired gift check", throwable);
+                plugin.getLogger().severe("Failed to check for expired gifts: " + throwable.getMessage());
+            }
+        });
+    }
+
+    private CompletableFuture<Void> sweepIfDue() {
+        long next = nextExpiry;
+        if (next == -1 || next > System.currentTimeMillis()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        debugLogger.debug("Starting expired gift sweep...");
+        return databaseManager.findAndRemoveExpiredGifts()
+                .thenCompose(ignored -> refreshNextExpiry())
+                .thenRun(() -> debugLogger.debug("Expired gift sweep completed, next expiry at %d", nextExpiry));
+    }
+
+    private CompletableFuture<Void> refreshNextExpiry() {
+        long now = System.currentTimeMillis();
+        return databaseManager.findNextExpiry().thenAccept(next -> {
+            nextExpiry = next;
+            nextRecheck = now + recheckMillis;
         });
     }
-}
\ No newline at end of file
+}
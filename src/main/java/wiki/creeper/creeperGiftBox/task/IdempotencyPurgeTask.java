@@ -0,0 +1,31 @@
+package wiki.creeper.creeperGiftBox.task;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.database.DatabaseManager;
+import wiki.creeper.creeperGiftBox.util.DebugLogger;
+
+public class IdempotencyPurgeTask implements Runnable {
+
+    private final CreeperGiftBox plugin;
+    private final DatabaseManager databaseManager;
+    private final DebugLogger debugLogger;
+
+    public IdempotencyPurgeTask(CreeperGiftBox plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+        this.debugLogger = new DebugLogger(plugin);
+    }
+
+    @Override
+    public void run() {
+        debugLogger.debug("Purging expired idempotency keys...");
+
+        databaseManager.purgeIdempotencyKeys().thenAccept(purged -> {
+            debugLogger.debug("Idempotency key purge completed, " + purged + " keys removed");
+        }).exceptionally(throwable -> {
+            debugLogger.debugException("Error during idempotency key purge", throwable);
+            plugin.getLogger().warning("Failed to purge idempotency keys: " + throwable.getMessage());
+            return null;
+        });
+    }
+}
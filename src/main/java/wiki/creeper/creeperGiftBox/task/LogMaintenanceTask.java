@@ -0,0 +1,31 @@
+package wiki.creeper.creeperGiftBox.task;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.database.DatabaseManager;
+import wiki.creeper.creeperGiftBox.util.DebugLogger;
+
+public class LogMaintenanceTask implements Runnable {
+
+    private final CreeperGiftBox plugin;
+    private final DatabaseManager databaseManager;
+    private final DebugLogger debugLogger;
+
+    public LogMaintenanceTask(CreeperGiftBox plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+        this.debugLogger = new DebugLogger(plugin);
+    }
+
+    @Override
+    public void run() {
+        debugLogger.debug("Starting gift log maintenance...");
+
+        databaseManager.runLogMaintenance().thenRun(() -> {
+            debugLogger.debug("Gift log maintenance completed successfully");
+        }).exceptionally(throwable -> {
+            debugLogger.debugException("Error during gift log maintenance", throwable);
+            plugin.getLogger().severe("Failed to maintain gift log: " + throwable.getMessage());
+            return null;
+        });
+    }
+}
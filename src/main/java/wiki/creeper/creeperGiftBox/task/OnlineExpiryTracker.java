@@ -0,0 +1,173 @@
+package wiki.creeper.creeperGiftBox.task;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.database.DatabaseManager;
+import wiki.creeper.creeperGiftBox.model.Gift;
+import wiki.creeper.creeperGiftBox.util.DebugLogger;
+import wiki.creeper.creeperGiftBox.util.SchedulerUtil;
+import wiki.creeper.creeperGiftBox.util.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Expires the gifts of online players at their exact deadline.
+ *
+ * The gifts a player can see are kept in a timing wheel while they are online. When a
+ * deadline passes, the gift is taken out of the open gift box and the player is told, without
+ * waiting for the next {@link ExpirationTask} sweep. The database row is left for that sweep,
+ * which still logs the expiry and fires the events, and offline players are only handled there.
+ */
+public class OnlineExpiryTracker implements Runnable {
+
+    /** Matches the number of gifts the gift box shows. */
+    public static final int TRACKED_GIFTS_PER_PLAYER = 36;
+
+    private static final long TICK_MILLIS = 1000L;
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_LEVELS = 4;
+
+    private final CreeperGiftBox plugin;
+    private final DatabaseManager databaseManager;
+    private final DebugLogger debugLogger;
+    private final TimingWheel<TrackedGift> wheel;
+    private final Map<UUID, Set<String>> sessions = new HashMap<>();
+
+    public OnlineExpiryTracker(CreeperGiftBox plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+        this.debugLogger = new DebugLogger(plugin);
+        this.wheel = new TimingWheel<>(TICK_MILLIS, WHEEL_SIZE, WHEEL_LEVELS, System.currentTimeMillis());
+    }
+
+    /**
+     * Starts tracking a player who just came online by loading their visible gifts.
+     */
+    public void load(Player player) {
+        UUID playerUUID = player.getUniqueId();
+        synchronized (this) {
+            sessions.putIfAbsent(playerUUID, new HashSet<>());
+        }
+        reload(playerUUID);
+    }
+
+    /**
+     * Reloads the gifts of every tracked player, after a change that may have moved deadlines.
+     */
+    public void reloadAll() {
+        List<UUID> players;
+        synchronized (this) {
+            players = new ArrayList<>(sessions.keySet());
+        }
+        players.forEach(this::reload);
+    }
+
+    /**
+     * Reloads the gifts of one player, after a change to their gift box that was not sent through {@link #track(Gift)}.
+     */
+    public void reload(UUID playerUUID) {
+        databaseManager.getGifts(playerUUID, TRACKED_GIFTS_PER_PLAYER)
+                .thenAccept(gifts -> track(playerUUID, gifts))
+                .exceptionally(throwable -> {
+                    plugin.getLogger().log(Level.WARNING, "Failed to load gifts for expiry tracking of " + playerUUID, throwable);
+                    return null;
+                });
+    }
+
+    /**
+     * Replaces the tracked gifts of a player with a freshly loaded list. Ignored for players who are not online.
+     */
+    public synchronized void track(UUID playerUUID, List<Gift> gifts) {
+        Set<String> tracked = sessions.get(playerUUID);
+        if (tracked == null) {
+            return;
+        }
+        tracked.forEach(wheel::cancel);
+        tracked.clear();
+        for (Gift gift : gifts) {
+            schedule(tracked, gift);
+        }
+    }
+
+    /**
+     * Adds a newly sent gift if its recipient is online.
+     */
+    public synchronized void track(Gift gift) {
+        Set<String> tracked = sessions.get(gift.getPlayerUUID());
+        if (tracked != null) {
+            schedule(tracked, gift);
+        }
+    }
+
+    /**
+     * Stops tracking a player who went offline.
+     */
+    public synchronized void untrack(UUID playerUUID) {
+        Set<String> tracked = sessions.remove(playerUUID);
+        if (tracked != null) {
+            tracked.forEach(wheel::cancel);
+        }
+    }
+
+    private void schedule(Set<String> tracked, Gift gift) {
+        if (gift.getExpireStamp() == -1) {
+            return;
+        }
+        tracked.add(gift.getId());
+        wheel.schedule(gift.getId(), gift.getExpireStamp(), new TrackedGift(gift.getPlayerUUID(), gift.getId(), gift.getSender()));
+    }
+
+    @Override
+    public void run() {
+        Map<UUID, List<TrackedGift>> expiredByPlayer = new HashMap<>();
+        synchronized (this) {
+            for (TrackedGift gift : wheel.advance(System.currentTimeMillis())) {
+                Set<String> tracked = sessions.get(gift.playerUUID);
+                if (tracked != null && tracked.remove(gift.giftId)) {
+                    expiredByPlayer.computeIfAbsent(gift.playerUUID, uuid -> new ArrayList<>()).add(gift);
+                }
+            }
+        }
+
+        expiredByPlayer.forEach((playerUUID, gifts) -> {
+            Player player = Bukkit.getPlayer(playerUUID);
+            if (player == null) {
+                return;
+            }
+            debugLogger.debug("%d tracked gifts of %s expired", gifts.size(), player.getName());
+            Set<String> giftIds = new HashSet<>();
+            gifts.forEach(gift -> giftIds.add(gift.giftId));
+            SchedulerUtil.runForPlayer(plugin, player, () -> {
+                if (!player.isOnline()) {
+                    return;
+                }
+                plugin.getGiftBoxGUI().removeGifts(player, giftIds);
+                if (gifts.size() == 1) {
+                    player.sendMessage(plugin.getConfigManager().getMessage("gift-expired-notice", "%sender%", gifts.get(0).sender));
+                } else {
+                    player.sendMessage(plugin.getConfigManager().getMessage("gifts-expired-notice", "%amount%", String.valueOf(gifts.size())));
+                }
+            });
+        });
+    }
+
+    private static final class TrackedGift {
+        private final UUID playerUUID;
+        private final String giftId;
+        private final String sender;
+
+        private TrackedGift(UUID playerUUID, String giftId, String sender) {
+            this.playerUUID = playerUUID;
+            this.giftId = giftId;
+            this.sender = sender;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package wiki.creeper.creeperGiftBox.task;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.database.DatabaseManager;
+import wiki.creeper.creeperGiftBox.util.DebugLogger;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ReplicaLagTask implements Runnable {
+
+    private final CreeperGiftBox plugin;
+    private final DatabaseManager databaseManager;
+    private final DebugLogger debugLogger;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public ReplicaLagTask(CreeperGiftBox plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+        this.debugLogger = new DebugLogger(plugin);
+    }
+
+    @Override
+    public void run() {
+        // A slow replica must not pile up overlapping checks
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        databaseManager.checkReplicaLag().whenComplete((ignored, throwable) -> {
+            running.set(false);
+            if (throwable != null) {
+                debugLogger.debugException("Error during replica lag check", throwable);
+                plugin.getLogger().warning("Failed to check replica lag: " + throwable.getMessage());
+            } else {
+                debugLogger.debug("Replica lag: %dms", databaseManager.getReplicaLag());
+            }
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package wiki.creeper.creeperGiftBox.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * {@link PlatformScheduler} for Bukkit/Paper servers with a single primary thread.
+ */
+final class BukkitPlatformScheduler implements PlatformScheduler {
+
+    private final Plugin plugin;
+
+    BukkitPlatformScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean isGlobalThread() {
+        return Bukkit.isPrimaryThread();
+    }
+
+    @Override
+    public boolean isOwnedByCurrentThread(Entity entity) {
+        return Bukkit.isPrimaryThread();
+    }
+
+    @Override
+    public void runGlobal(Runnable command) {
+        Bukkit.getScheduler().runTask(plugin, command);
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable command, long delayTicks, long periodTicks) {
+        BukkitTask task = Bukkit.getScheduler().runTaskTimer(plugin, command, delayTicks, periodTicks);
+        return task::cancel;
+    }
+
+    @Override
+    public void runForEntity(Entity entity, Runnable command) {
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            if (entity.isValid()) {
+                command.run();
+            }
+        });
+    }
+
+    @Override
+    public void runForEntity(Entity entity, Runnable command, Runnable retired) {
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            if (entity.isValid()) {
+                command.run();
+            } else {
+                retired.run();
+            }
+        });
+    }
+
+    @Override
+    public void runAsync(Runnable command) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, command);
+    }
+
+    @Override
+    public Task runAsyncTimer(Runnable command, long delayTicks, long periodTicks) {
+        BukkitTask task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, command, delayTicks, periodTicks);
+        return task::cancel;
+    }
+}
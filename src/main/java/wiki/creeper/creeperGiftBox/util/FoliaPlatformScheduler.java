@@ -0,0 +1,137 @@
+package wiki.creeper.creeperGiftBox.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * {@link PlatformScheduler} for Folia's regionised schedulers.
+ *
+ * The plugin compiles against the Spigot API, so the Folia scheduler methods are
+ * resolved reflectively once and reused for every call.
+ */
+final class FoliaPlatformScheduler implements PlatformScheduler {
+
+    private static final long MILLIS_PER_TICK = 50L;
+
+    private final Plugin plugin;
+    private final Object globalScheduler;
+    private final Object asyncScheduler;
+    private final Method globalExecute;
+    private final Method globalRunAtFixedRate;
+    private final Method asyncRunNow;
+    private final Method asyncRunAtFixedRate;
+    private final Method entityGetScheduler;
+    private final Method entityExecute;
+    private final Method taskCancel;
+    private final Method isGlobalTickThread;
+    private final Method isOwnedByCurrentRegion;
+
+    FoliaPlatformScheduler(Plugin plugin) throws ReflectiveOperationException {
+        this.plugin = plugin;
+        Class<?> globalType = Class.forName("io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler");
+        Class<?> asyncType = Class.forName("io.papermc.paper.threadedregions.scheduler.AsyncScheduler");
+        Class<?> entityType = Class.forName("io.papermc.paper.threadedregions.scheduler.EntityScheduler");
+        Class<?> taskType = Class.forName("io.papermc.paper.threadedregions.scheduler.ScheduledTask");
+
+        this.globalScheduler = Bukkit.class.getMethod("getGlobalRegionScheduler").invoke(null);
+        this.asyncScheduler = Bukkit.class.getMethod("getAsyncScheduler").invoke(null);
+        this.globalExecute = globalType.getMethod("execute", Plugin.class, Runnable.class);
+        this.globalRunAtFixedRate = globalType.getMethod("runAtFixedRate", Plugin.class, Consumer.class, long.class, long.class);
+        this.asyncRunNow = asyncType.getMethod("runNow", Plugin.class, Consumer.class);
+        this.asyncRunAtFixedRate = asyncType.getMethod("runAtFixedRate", Plugin.class, Consumer.class, long.class, long.class, TimeUnit.class);
+        this.entityGetScheduler = Entity.class.getMethod("getScheduler");
+        this.entityExecute = entityType.getMethod("execute", Plugin.class, Runnable.class, Runnable.class, long.class);
+        this.taskCancel = taskType.getMethod("cancel");
+        this.isGlobalTickThread = Bukkit.class.getMethod("isGlobalTickThread");
+        this.isOwnedByCurrentRegion = Bukkit.class.getMethod("isOwnedByCurrentRegion", Entity.class);
+    }
+
+    /**
+     * @return true if the server exposes Folia's regionised schedulers
+     */
+    static boolean isSupported() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isGlobalThread() {
+        return (Boolean) invoke(isGlobalTickThread, null);
+    }
+
+    @Override
+    public boolean isOwnedByCurrentThread(Entity entity) {
+        return (Boolean) invoke(isOwnedByCurrentRegion, null, entity);
+    }
+
+    @Override
+    public void runGlobal(Runnable command) {
+        invoke(globalExecute, globalScheduler, plugin, command);
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable command, long delayTicks, long periodTicks) {
+        Consumer<Object> consumer = task -> command.run();
+        Object task = invoke(globalRunAtFixedRate, globalScheduler, plugin, consumer,
+                Math.max(1L, delayTicks), Math.max(1L, periodTicks));
+        return () -> invoke(taskCancel, task);
+    }
+
+    @Override
+    public void runForEntity(Entity entity, Runnable command) {
+        Object scheduler = invoke(entityGetScheduler, entity);
+        // A null retired callback drops the work when the entity is removed
+        invoke(entityExecute, scheduler, plugin, command, null, 1L);
+    }
+
+    @Override
+    public void runForEntity(Entity entity, Runnable command, Runnable retired) {
+        Object scheduler = invoke(entityGetScheduler, entity);
+        // Returns false without calling back when the entity is already removed
+        if (!(Boolean) invoke(entityExecute, scheduler, plugin, command, retired, 1L)) {
+            retired.run();
+        }
+    }
+
+    @Override
+    public void runAsync(Runnable command) {
+        Consumer<Object> consumer = task -> command.run();
+        invoke(asyncRunNow, asyncScheduler, plugin, consumer);
+    }
+
+    @Override
+    public Task runAsyncTimer(Runnable command, long delayTicks, long periodTicks) {
+        Consumer<Object> consumer = task -> command.run();
+        Object task = invoke(asyncRunAtFixedRate, asyncScheduler, plugin, consumer,
+                Math.max(1L, delayTicks) * MILLIS_PER_TICK, Math.max(1L, periodTicks) * MILLIS_PER_TICK,
+                TimeUnit.MILLISECONDS);
+        return () -> invoke(taskCancel, task);
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Folia scheduler method is not accessible: " + method.getName(), e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Folia scheduler call failed: " + method.getName(), cause);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package wiki.creeper.creeperGiftBox.util;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.List;
+
+/**
+ * Checks whether items fit into inventory contents without touching the real inventory.
+ */
+public final class InventorySpace {
+
+    private InventorySpace() {
+    }
+
+    /**
+     * Adds the items to the given contents if all of them fit, merging into similar stacks first
+     * and then using empty slots, the same way {@code Inventory.addItem} fills an inventory.
+     * Stacks already in the array are never modified; changed slots get new stacks.
+     *
+     * @param contents Storage contents to fill, usually from {@code getStorageContents()}
+     * @return true if every item fit; the contents are only changed in that case
+     */
+    public static boolean tryAdd(ItemStack[] contents, List<ItemStack> items) {
+        ItemStack[] trial = contents.clone();
+        for (ItemStack item : items) {
+            int remaining = item.getAmount();
+            int maxStackSize = item.getMaxStackSize();
+            for (int i = 0; i < trial.length && remaining > 0; i++) {
+                ItemStack slot = trial[i];
+                if (slot != null && slot.getType() != Material.AIR && slot.getAmount() < maxStackSize && slot.isSimilar(item)) {
+                    int moved = Math.min(remaining, maxStackSize - slot.getAmount());
+                    ItemStack grown = slot.clone();
+                    grown.setAmount(slot.getAmount() + moved);
+                    trial[i] = grown;
+                    remaining -= moved;
+                }
+            }
+            for (int i = 0; i < trial.length && remaining > 0; i++) {
+                if (trial[i] == null || trial[i].getType() == Material.AIR) {
+                    int moved = Math.min(remaining, maxStackSize);
+                    ItemStack placed = item.clone();
+                    placed.setAmount(moved);
+                    trial[i] = placed;
+                    remaining -= moved;
+                }
+            }
+            if (remaining > 0) {
+                return false;
+            }
+        }
+        System.arraycopy(trial, 0, contents, 0, contents.length);
+        return true;
+    }
+}
@@ -8,9 +8,14 @@ import org.yaml.snakeyaml.external.biz.base64Coder.Base64Coder;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ItemSerializer {
 
+    // Bundle payloads are told apart from single items without decoding them
+    private static final String BUNDLE_PREFIX = "bundle:";
+
     public static String serialize(ItemStack item) throws IllegalStateException {
         if (item == null) {
             return "null";
@@ -26,6 +31,52 @@ public class ItemSerializer {
         }
     }
 
+    /**
+     * Encodes an ordered list of items as one payload.
+     */
+    public static String serializeBundle(List<ItemStack> items) throws IllegalStateException {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream);
+            dataOutput.writeInt(items.size());
+            for (ItemStack item : items) {
+                dataOutput.writeObject(item);
+            }
+            dataOutput.close();
+            return BUNDLE_PREFIX + Base64Coder.encodeLines(outputStream.toByteArray());
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to save item bundle.", e);
+        }
+    }
+
+    public static boolean isBundle(String data) {
+        return data != null && data.startsWith(BUNDLE_PREFIX);
+    }
+
+    /**
+     * Decodes a payload written by {@link #serializeBundle(List)} or {@link #serialize(ItemStack)}.
+     * A single item payload decodes to a list of one item.
+     */
+    public static List<ItemStack> deserializeBundle(String data) throws IOException {
+        if (!isBundle(data)) {
+            ItemStack item = deserialize(data);
+            return item != null ? List.of(item) : List.of();
+        }
+        try {
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(Base64Coder.decodeLines(data.substring(BUNDLE_PREFIX.length())));
+            BukkitObjectInputStream dataInput = new BukkitObjectInputStream(inputStream);
+            int size = dataInput.readInt();
+            List<ItemStack> items = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                items.add((ItemStack) dataInput.readObject());
+            }
+            dataInput.close();
+            return items;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to decode class type.", e);
+        }
+    }
+
     public static ItemStack deserialize(String data) throws IOException {
         if (data == null || data.equals("null")) {
             return null;
@@ -0,0 +1,179 @@
+package wiki.creeper.creeperGiftBox.util;
+
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Main-thread work queue drained by a single repeating task. On Folia the task
+ * runs on the global region thread and only carries global work; player work
+ * goes to the player's own scheduler instead.
+ *
+ * Each tick runs queued work until the configured time budget is spent, taking
+ * higher priority lanes first. Work that does not fit is carried to the next tick,
+ * and the number of ticks a backlog needed to drain is recorded.
+ */
+public final class MainThreadQueue {
+
+    /**
+     * Priority lanes, drained in declaration order.
+     */
+    public enum Lane {
+        /** Player-facing work such as GUI updates, inventory changes and messages. */
+        PLAYER,
+        /** General follow-up work from async completions. */
+        NORMAL,
+        /** Event fan-out to other plugins. */
+        EVENT
+    }
+
+    private static final int SLOW_DRAIN_WARNING_TICKS = 20;
+
+    private final CreeperGiftBox plugin;
+    private final PlatformScheduler scheduler;
+    private final DebugLogger debugLogger;
+    private final long budgetNanos;
+    private final Queue<Runnable>[] lanes;
+    private final AtomicInteger size = new AtomicInteger();
+    private PlatformScheduler.Task task;
+
+    private int backlogTicks;
+    private int backlogTasks;
+    private volatile int lastDrainTicks;
+    private volatile int maxDrainTicks;
+    private volatile long busyNanos;
+
+    @SuppressWarnings("unchecked")
+    public MainThreadQueue(CreeperGiftBox plugin, PlatformScheduler scheduler, double budgetMillis) {
+        this.plugin = plugin;
+        this.scheduler = scheduler;
+        this.debugLogger = new DebugLogger(plugin);
+        this.budgetNanos = (long) (budgetMillis * TimeUnit.MILLISECONDS.toNanos(1));
+        this.lanes = new Queue[Lane.values().length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Starts the drain task on the global tick thread.
+     */
+    public void start() {
+        if (task == null) {
+            task = scheduler.runGlobalTimer(this::drain, 1L, 1L);
+        }
+    }
+
+    /**
+     * Stops the drain task and discards queued work.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        for (Queue<Runnable> lane : lanes) {
+            lane.clear();
+        }
+        size.set(0);
+    }
+
+    /**
+     * Queues work for the main thread.
+     *
+     * @param lane priority lane of the work
+     * @param command runnable to execute
+     */
+    public void submit(Lane lane, Runnable command) {
+        lanes[lane.ordinal()].add(command);
+        size.incrementAndGet();
+    }
+
+    /**
+     * @return number of queued tasks not yet executed
+     */
+    public int getBacklogSize() {
+        return size.get();
+    }
+
+    /**
+     * @return ticks the most recent backlog took to drain
+     */
+    public int getLastDrainTicks() {
+        return lastDrainTicks;
+    }
+
+    /**
+     * @return highest number of ticks any backlog took to drain
+     */
+    public int getMaxDrainTicks() {
+        return maxDrainTicks;
+    }
+
+    /**
+     * @return total time spent running queued work since the queue was created
+     */
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    private void drain() {
+        if (size.get() == 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        backlogTicks++;
+        Runnable command;
+        // Always run at least one task so progress is made even if one task exceeds the budget
+        do {
+            command = poll();
+            if (command == null) {
+                break;
+            }
+            backlogTasks++;
+            try {
+                command.run();
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.SEVERE, "Queued main-thread task failed", t);
+            }
+        } while (System.nanoTime() < deadline);
+        // Only the drain task writes this, so the non-atomic add is safe
+        busyNanos += System.nanoTime() - start;
+
+        if (size.get() == 0) {
+            recordDrain();
+        }
+    }
+
+    private Runnable poll() {
+        for (Queue<Runnable> lane : lanes) {
+            Runnable command = lane.poll();
+            if (command != null) {
+                size.decrementAndGet();
+                return command;
+            }
+        }
+        return null;
+    }
+
+    private void recordDrain() {
+        lastDrainTicks = backlogTicks;
+        if (backlogTicks > maxDrainTicks) {
+            maxDrainTicks = backlogTicks;
+        }
+        if (backlogTicks >= SLOW_DRAIN_WARNING_TICKS) {
+            plugin.getLogger().warning("Main-thread queue backlog of " + backlogTasks + " tasks took "
+                    + backlogTicks + " ticks to drain");
+        } else if (backlogTicks > 1) {
+            debugLogger.debug("Main-thread queue backlog of %d tasks took %d ticks to drain", backlogTasks, backlogTicks);
+        }
+        backlogTicks = 0;
+        backlogTasks = 0;
+    }
+}
@@ -0,0 +1,64 @@
+package wiki.creeper.creeperGiftBox.util;
+
+import org.bukkit.entity.Entity;
+
+/**
+ * Scheduling operations that differ between Bukkit/Paper and Folia.
+ *
+ * "Global" work has no owning entity (event fan-out, plugin lifecycle). On Bukkit it
+ * runs on the primary thread; on Folia it runs on the global region thread. Entity
+ * work (inventory changes, GUI updates, messages) runs on whichever thread owns the
+ * entity, which on Bukkit is also the primary thread.
+ */
+public interface PlatformScheduler {
+
+    /**
+     * Handle to a repeating task.
+     */
+    interface Task {
+        void cancel();
+    }
+
+    /**
+     * @return true if the current thread may run global work directly
+     */
+    boolean isGlobalThread();
+
+    /**
+     * @param entity the entity to check
+     * @return true if the current thread may touch the entity directly
+     */
+    boolean isOwnedByCurrentThread(Entity entity);
+
+    /**
+     * Schedules global work for the next tick.
+     */
+    void runGlobal(Runnable command);
+
+    /**
+     * Schedules repeating global work.
+     */
+    Task runGlobalTimer(Runnable command, long delayTicks, long periodTicks);
+
+    /**
+     * Schedules work on the thread owning the entity. The work is dropped if the
+     * entity is removed (for players: logs out) before it runs.
+     */
+    void runForEntity(Entity entity, Runnable command);
+
+    /**
+     * Schedules work on the thread owning the entity, running {@code retired} instead if the
+     * entity is removed before the work runs.
+     */
+    void runForEntity(Entity entity, Runnable command, Runnable retired);
+
+    /**
+     * Runs work off the tick threads.
+     */
+    void runAsync(Runnable command);
+
+    /**
+     * Schedules repeating work off the tick threads.
+     */
+    Task runAsyncTimer(Runnable command, long delayTicks, long periodTicks);
+}
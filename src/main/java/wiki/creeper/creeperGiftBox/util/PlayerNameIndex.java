@@ -0,0 +1,189 @@
+package wiki.creeper.creeperGiftBox.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Known player names, kept in memory so commands never look names up on the main thread.
+ *
+ * An exact map answers name to UUID resolution, and a prefix trie answers tab completion
+ * without scanning every player. Both are safe to read and update from any thread.
+ * Names are matched case-insensitively; the stored spelling is the one last seen.
+ */
+public class PlayerNameIndex {
+
+    private final JavaPlugin plugin;
+    private final Map<String, UUID> uuidsByName = new ConcurrentHashMap<>();
+    private final Map<UUID, String> namesByUuid = new ConcurrentHashMap<>();
+    private final Set<UUID> online = ConcurrentHashMap.newKeySet();
+    private final Node root = new Node();
+
+    public PlayerNameIndex(JavaPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Loads every player the server has seen before. Must be called off the main thread
+     * because the server reads its player data files for this.
+     */
+    public void loadKnownPlayers() {
+        int loaded = 0;
+        for (OfflinePlayer player : Bukkit.getOfflinePlayers()) {
+            if (player.getName() != null) {
+                // A player who joined while loading already has the newer name
+                if (namesByUuid.putIfAbsent(player.getUniqueId(), player.getName()) == null) {
+                    insert(player.getName(), player.getUniqueId());
+                    loaded++;
+                }
+            }
+        }
+        plugin.getLogger().info("Indexed " + loaded + " known player names");
+    }
+
+    /**
+     * Records a player who came online, replacing any older name of the same UUID.
+     */
+    public void playerJoined(UUID uuid, String name) {
+        put(uuid, name);
+        online.add(uuid);
+    }
+
+    public void playerQuit(UUID uuid) {
+        online.remove(uuid);
+    }
+
+    /**
+     * Resolves a player name to a UUID without touching the main thread.
+     * Known names complete immediately; unknown names are looked up on an async thread
+     * and remembered if the server has seen the player before.
+     *
+     * @return the UUID, or null if no such player has played on this server
+     */
+    public CompletableFuture<UUID> resolve(String name) {
+        UUID uuid = uuidsByName.get(name.toLowerCase(Locale.ROOT));
+        if (uuid != null) {
+            return CompletableFuture.completedFuture(uuid);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            // May fetch the profile remotely, which is why it never runs on the main thread
+            OfflinePlayer player = Bukkit.getOfflinePlayer(name);
+            if (!player.hasPlayedBefore() && !player.isOnline()) {
+                return null;
+            }
+            put(player.getUniqueId(), player.getName() != null ? player.getName() : name);
+            return player.getUniqueId();
+        }, SchedulerUtil.asyncExecutor(plugin));
+    }
+
+    /**
+     * @return the UUID of a known name, or null without looking it up
+     */
+    public UUID getCachedUUID(String name) {
+        return uuidsByName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return the last seen name of a player, or null if unknown
+     */
+    public String getName(UUID uuid) {
+        return namesByUuid.get(uuid);
+    }
+
+    /**
+     * Returns up to {@code limit} known names starting with the prefix in alphabetical order,
+     * with online players moved to the front.
+     */
+    public List<String> complete(String prefix, int limit) {
+        Node node = root;
+        String key = prefix.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        if (node == null) {
+            return Collections.emptyList();
+        }
+
+        List<String> onlineNames = new ArrayList<>();
+        List<String> offlineNames = new ArrayList<>();
+        collect(node, limit, onlineNames, offlineNames);
+        onlineNames.addAll(offlineNames);
+        return onlineNames;
+    }
+
+    public int size() {
+        return namesByUuid.size();
+    }
+
+    private void collect(Node node, int limit, List<String> onlineNames, List<String> offlineNames) {
+        if (onlineNames.size() + offlineNames.size() >= limit) {
+            return;
+        }
+        UUID uuid = node.uuid;
+        String name = node.name;
+        if (uuid != null && name != null) {
+            (online.contains(uuid) ? onlineNames : offlineNames).add(name);
+        }
+        for (Node child : node.children.values()) {
+            collect(child, limit, onlineNames, offlineNames);
+        }
+    }
+
+    private void put(UUID uuid, String name) {
+        String previous = namesByUuid.put(uuid, name);
+        if (previous != null && !previous.equalsIgnoreCase(name)) {
+            remove(previous, uuid);
+        }
+        insert(name, uuid);
+    }
+
+    private void insert(String name, UUID uuid) {
+        String key = name.toLowerCase(Locale.ROOT);
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+        }
+        synchronized (node) {
+            node.uuid = uuid;
+            node.name = name;
+        }
+        uuidsByName.put(key, uuid);
+    }
+
+    private void remove(String name, UUID uuid) {
+        String key = name.toLowerCase(Locale.ROOT);
+        uuidsByName.remove(key, uuid);
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        if (node == null) {
+            return;
+        }
+        // Another player may have taken the name since; only clear our own entry
+        synchronized (node) {
+            if (uuid.equals(node.uuid)) {
+                node.uuid = null;
+                node.name = null;
+            }
+        }
+    }
+
+    private static final class Node {
+        // Sorted so completions come out in alphabetical order
+        private final Map<Character, Node> children = new ConcurrentSkipListMap<>();
+        private volatile UUID uuid;
+        private volatile String name;
+    }
+}
@@ -1,61 +1,204 @@
 package wiki.creeper.creeperGiftBox.util;
 
-import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
 
 import java.util.Objects;
 import java.util.concurrent.Executor;
+import java.util.logging.Level;
 
 /**
- * Utility methods to safely interact with the Bukkit scheduler from async contexts.
+ * Utility methods to safely interact with the server scheduler from async contexts.
+ * The scheduler implementation is chosen at runtime so the same jar runs on
+ * Bukkit/Paper and on Folia.
  */
 public final class SchedulerUtil {
 
+    private static volatile PlatformScheduler platform;
+    private static volatile MainThreadQueue mainThreadQueue;
+
     private SchedulerUtil() {
     }
 
     /**
-     * Returns an {@link Executor} that always executes the task on the Bukkit primary thread.
-     * If the caller is already on the primary thread the runnable executes immediately,
-     * otherwise it is scheduled for the next tick. Tasks are skipped when the plugin is disabled.
+     * Selects the platform scheduler and starts the tick-budgeted main-thread queue.
+     * Once started, global work handed to {@link #syncExecutor(JavaPlugin)} from other
+     * threads is queued instead of being scheduled as an individual task.
+     *
+     * @param plugin       the plugin owning the scheduled tasks
+     * @param budgetMillis maximum time spent draining the queue per tick
+     */
+    public static void initialize(CreeperGiftBox plugin, double budgetMillis) {
+        Objects.requireNonNull(plugin, "plugin");
+        shutdown();
+        PlatformScheduler scheduler = platform(plugin);
+        MainThreadQueue queue = new MainThreadQueue(plugin, scheduler, budgetMillis);
+        queue.start();
+        mainThreadQueue = queue;
+    }
+
+    /**
+     * Stops the main-thread queue, discarding pending work.
+     */
+    public static void shutdown() {
+        MainThreadQueue queue = mainThreadQueue;
+        mainThreadQueue = null;
+        if (queue != null) {
+            queue.stop();
+        }
+    }
+
+    /**
+     * @return the running main-thread queue, or null when it is not started
+     */
+    public static MainThreadQueue getMainThreadQueue() {
+        return mainThreadQueue;
+    }
+
+    /**
+     * @return true if the server runs Folia's regionised schedulers
+     */
+    public static boolean isFolia() {
+        return platform instanceof FoliaPlatformScheduler;
+    }
+
+    /**
+     * Returns the scheduler for the running server, detecting Folia on first use.
+     *
+     * @param plugin the plugin owning the scheduled tasks
+     * @return the platform scheduler
+     */
+    public static PlatformScheduler platform(JavaPlugin plugin) {
+        PlatformScheduler scheduler = platform;
+        if (scheduler != null) {
+            return scheduler;
+        }
+        synchronized (SchedulerUtil.class) {
+            if (platform == null) {
+                platform = createPlatform(plugin);
+            }
+            return platform;
+        }
+    }
+
+    private static PlatformScheduler createPlatform(JavaPlugin plugin) {
+        Objects.requireNonNull(plugin, "plugin");
+        if (FoliaPlatformScheduler.isSupported()) {
+            try {
+                PlatformScheduler scheduler = new FoliaPlatformScheduler(plugin);
+                plugin.getLogger().info("Folia detected, using region schedulers");
+                return scheduler;
+            } catch (ReflectiveOperationException e) {
+                plugin.getLogger().log(Level.WARNING, "Folia detected but its schedulers are unavailable, falling back to the Bukkit scheduler", e);
+            }
+        }
+        return new BukkitPlatformScheduler(plugin);
+    }
+
+    /**
+     * Returns an {@link Executor} that always executes the task on the global tick thread
+     * (the primary thread on Bukkit). If the caller is already on that thread the runnable
+     * executes immediately, otherwise it is queued in the {@link MainThreadQueue.Lane#NORMAL} lane.
+     * Tasks are skipped when the plugin is disabled.
      *
      * @param plugin the plugin requesting synchronous execution
      * @return executor that mirrors runTask behaviour
      */
     public static Executor syncExecutor(JavaPlugin plugin) {
-        Objects.requireNonNull(plugin, "plugin");
+        return syncExecutor(plugin, MainThreadQueue.Lane.NORMAL);
+    }
+
+    /**
+     * Returns an {@link Executor} that always executes the task on the global tick thread
+     * in the given priority lane. Falls back to one scheduler task per runnable when the
+     * main-thread queue is not running.
+     *
+     * @param plugin the plugin requesting synchronous execution
+     * @param lane   priority lane used when the task has to be queued
+     * @return executor that mirrors runTask behaviour
+     */
+    public static Executor syncExecutor(JavaPlugin plugin, MainThreadQueue.Lane lane) {
+        Objects.requireNonNull(lane, "lane");
+        PlatformScheduler scheduler = platform(plugin);
         return command -> {
-            if (Bukkit.isPrimaryThread()) {
+            if (scheduler.isGlobalThread()) {
                 command.run();
                 return;
             }
             if (!plugin.isEnabled()) {
                 return;
             }
-            Bukkit.getScheduler().runTask(plugin, command);
+            MainThreadQueue queue = mainThreadQueue;
+            if (queue != null) {
+                queue.submit(lane, command);
+            } else {
+                scheduler.runGlobal(command);
+            }
         };
     }
 
     /**
-     * Returns an {@link Executor} that delegates work to Bukkit's asynchronous scheduler,
+     * Returns an {@link Executor} for work that touches a player: inventory changes,
+     * GUI updates and messages. On Bukkit this is the {@link MainThreadQueue.Lane#PLAYER}
+     * lane of the main-thread queue; on Folia it is the player's entity scheduler.
+     * Work is dropped if the player logs out before it runs.
+     *
+     * @param plugin the plugin requesting synchronous execution
+     * @param player the player the work belongs to
+     * @return executor running on the thread that owns the player
+     */
+    public static Executor playerExecutor(JavaPlugin plugin, Player player) {
+        Objects.requireNonNull(player, "player");
+        PlatformScheduler scheduler = platform(plugin);
+        if (!(scheduler instanceof FoliaPlatformScheduler)) {
+            return syncExecutor(plugin, MainThreadQueue.Lane.PLAYER);
+        }
+        return command -> {
+            if (scheduler.isOwnedByCurrentThread(player)) {
+                command.run();
+                return;
+            }
+            if (!plugin.isEnabled()) {
+                return;
+            }
+            scheduler.runForEntity(player, command);
+        };
+    }
+
+    /**
+     * Returns an {@link Executor} that delegates work to the server's asynchronous scheduler,
      * avoiding direct thread creation inside the plugin.
      *
      * @param plugin the plugin requesting asynchronous execution
-     * @return executor backed by Bukkit's async scheduler
+     * @return executor backed by the async scheduler
      */
     public static Executor asyncExecutor(JavaPlugin plugin) {
-        Objects.requireNonNull(plugin, "plugin");
+        PlatformScheduler scheduler = platform(plugin);
         return command -> {
             if (!plugin.isEnabled()) {
                 command.run();
                 return;
             }
-            Bukkit.getScheduler().runTaskAsynchronously(plugin, command);
+            scheduler.runAsync(command);
         };
     }
 
     /**
-     * Convenience helper to run a single task on the primary thread.
+     * Schedules repeating work off the tick threads.
+     *
+     * @param plugin      the plugin owning the task
+     * @param command     runnable to execute
+     * @param delayTicks  ticks before the first run
+     * @param periodTicks ticks between runs
+     * @return handle to cancel the task
+     */
+    public static PlatformScheduler.Task runAsyncTimer(JavaPlugin plugin, Runnable command, long delayTicks, long periodTicks) {
+        return platform(plugin).runAsyncTimer(command, delayTicks, periodTicks);
+    }
+
+    /**
+     * Convenience helper to run a single task on the global tick thread.
      *
      * @param plugin  the plugin requesting synchronous execution
      * @param command runnable to execute
@@ -63,4 +206,89 @@ public final class SchedulerUtil {
     public static void runSync(JavaPlugin plugin, Runnable command) {
         syncExecutor(plugin).execute(command);
     }
+
+    /**
+     * Convenience helper to run a single task on the global tick thread in the given lane.
+     *
+     * @param plugin  the plugin requesting synchronous execution
+     * @param lane    priority lane used when the task has to be queued
+     * @param command runnable to execute
+     */
+    public static void runSync(JavaPlugin plugin, MainThreadQueue.Lane lane, Runnable command) {
+        syncExecutor(plugin, lane).execute(command);
+    }
+
+    /**
+     * Queues a task for the global tick thread in the given lane, even when called from that
+     * thread, so it counts against the main-thread queue's tick budget instead of running inline.
+     *
+     * @param plugin  the plugin requesting synchronous execution
+     * @param lane    priority lane of the task
+     * @param command runnable to execute
+     */
+    public static void queueSync(JavaPlugin plugin, MainThreadQueue.Lane lane, Runnable command) {
+        Objects.requireNonNull(lane, "lane");
+        if (!plugin.isEnabled()) {
+            return;
+        }
+        MainThreadQueue queue = mainThreadQueue;
+        if (queue != null) {
+            queue.submit(lane, command);
+        } else {
+            platform(plugin).runGlobal(command);
+        }
+    }
+
+    /**
+     * Convenience helper to run a single task on the thread that owns the player.
+     *
+     * @param plugin  the plugin requesting synchronous execution
+     * @param player  the player the work belongs to
+     * @param command runnable to execute
+     */
+    public static void runForPlayer(JavaPlugin plugin, Player player, Runnable command) {
+        playerExecutor(plugin, player).execute(command);
+    }
+
+    /**
+     * Runs a task on the thread that owns the player, or {@code retired} instead if the player
+     * logs out first or the plugin is disabled. Exactly one of the two runs, for work that must
+     * be undone when it cannot reach the player.
+     *
+     * @param plugin  the plugin requesting synchronous execution
+     * @param player  the player the work belongs to
+     * @param command runnable to execute
+     * @param retired runnable to execute instead when the player is gone
+     */
+    public static void runForPlayer(JavaPlugin plugin, Player player, Runnable command, Runnable retired) {
+        Objects.requireNonNull(retired, "retired");
+        PlatformScheduler scheduler = platform(plugin);
+        if (!plugin.isEnabled()) {
+            retired.run();
+            return;
+        }
+        if (scheduler instanceof FoliaPlatformScheduler) {
+            if (scheduler.isOwnedByCurrentThread(player)) {
+                command.run();
+            } else {
+                scheduler.runForEntity(player, command, retired);
+            }
+            return;
+        }
+        Runnable checked = () -> {
+            if (player.isOnline()) {
+                command.run();
+            } else {
+                retired.run();
+            }
+        };
+        MainThreadQueue queue = mainThreadQueue;
+        if (scheduler.isGlobalThread()) {
+            checked.run();
+        } else if (queue != null) {
+            queue.submit(MainThreadQueue.Lane.PLAYER, checked);
+        } else {
+            scheduler.runGlobal(checked);
+        }
+    }
 }
@@ -0,0 +1,150 @@
+package wiki.creeper.creeperGiftBox.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel keyed by string IDs.
+ *
+ * Level 0 has one slot per tick; each higher level has one slot per full turn of the level
+ * below. Entries start in the coarsest level that fits their deadline and cascade down as
+ * time advances, so scheduling, cancelling and advancing one tick are all O(1) regardless
+ * of how many entries are pending. Deadlines past the top level wait in its furthest slot
+ * and are re-placed on every turn of that level.
+ *
+ * Not thread-safe; callers synchronize.
+ *
+ * @param <T> value delivered when an entry expires
+ */
+public class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<List<Map<String, Entry<T>>>> levels = new ArrayList<>();
+    private final Map<String, Entry<T>> entries = new HashMap<>();
+    private final List<Entry<T>> due = new ArrayList<>();
+    private long currentTick;
+
+    /**
+     * @param tickMillis resolution of the wheel
+     * @param wheelSize slots per level
+     * @param levelCount number of levels; the wheel covers {@code tickMillis * wheelSize^levelCount}
+     * @param nowMillis current time
+     */
+    public TimingWheel(long tickMillis, int wheelSize, int levelCount, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTick = nowMillis / tickMillis;
+        for (int level = 0; level < levelCount; level++) {
+            List<Map<String, Entry<T>>> slots = new ArrayList<>(wheelSize);
+            for (int slot = 0; slot < wheelSize; slot++) {
+                slots.add(new HashMap<>());
+            }
+            levels.add(slots);
+        }
+    }
+
+    /**
+     * Schedules or reschedules an entry. Deadlines already in the past fire on the next advance.
+     */
+    public void schedule(String id, long deadlineMillis, T value) {
+        cancel(id);
+        Entry<T> entry = new Entry<>(id, Math.floorDiv(deadlineMillis, tickMillis), value);
+        entries.put(id, entry);
+        place(entry);
+    }
+
+    /**
+     * @return the value of the removed entry, or null if it was not scheduled
+     */
+    public T cancel(String id) {
+        Entry<T> entry = entries.remove(id);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.slot != null) {
+            entry.slot.remove(id);
+        } else {
+            due.remove(entry);
+        }
+        return entry.value;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Moves the wheel forward to the given time.
+     *
+     * @return values of every entry whose deadline has passed
+     */
+    public List<T> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Higher levels first so cascaded entries can land in the level 0 slot handled below
+            long span = 1;
+            for (int level = 1; level < levels.size(); level++) {
+                span *= wheelSize;
+                if (currentTick % span != 0) {
+                    break;
+                }
+                Map<String, Entry<T>> slot = levels.get(level).get((int) ((currentTick / span) % wheelSize));
+                List<Entry<T>> cascaded = new ArrayList<>(slot.values());
+                slot.clear();
+                cascaded.forEach(this::place);
+            }
+            Map<String, Entry<T>> slot = levels.get(0).get((int) (currentTick % wheelSize));
+            due.addAll(slot.values());
+            slot.clear();
+        }
+
+        if (due.isEmpty()) {
+            return List.of();
+        }
+        List<T> expired = new ArrayList<>(due.size());
+        for (Entry<T> entry : due) {
+            entries.remove(entry.id);
+            expired.add(entry.value);
+        }
+        due.clear();
+        return expired;
+    }
+
+    private void place(Entry<T> entry) {
+        long delta = entry.deadlineTick - currentTick;
+        if (delta <= 0) {
+            entry.slot = null;
+            due.add(entry);
+            return;
+        }
+        long span = 1;
+        for (int level = 0; level < levels.size(); level++) {
+            long levelSpan = span * wheelSize;
+            if (delta < levelSpan || level == levels.size() - 1) {
+                long slotTick = delta < levelSpan ? entry.deadlineTick / span : currentTick / span + wheelSize - 1;
+                Map<String, Entry<T>> slot = levels.get(level).get((int) (slotTick % wheelSize));
+                slot.put(entry.id, entry);
+                entry.slot = slot;
+                return;
+            }
+            span = levelSpan;
+        }
+    }
+
+    private static final class Entry<T> {
+        private final String id;
+        private final long deadlineTick;
+        private final T value;
+        private Map<String, Entry<T>> slot;
+
+        private Entry(String id, long deadlineTick, T value) {
+            this.id = id;
+            this.deadlineTick = deadlineTick;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package wiki.creeper.creeperGiftBox.load;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@link LoadSimulator} against a throwaway MySQL container. The scenario comes from the
+ * {@code loadtest.*} properties in the {@code loadtest} profile, e.g.
+ * {@code mvn -P loadtest verify -Dloadtest.players=10000 -Dloadtest.background-gifts=1000000}.
+ */
+@Testcontainers
+class GiftBoxLoadIT {
+
+    private static final long STARTUP_TIMEOUT_MILLIS = 60_000;
+
+    @Container
+    // Lets the driver send each seeded chunk as one multi-row insert
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0")
+            .withUrlParam("rewriteBatchedStatements", "true");
+
+    private ServerMock server;
+    private CreeperGiftBox plugin;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = MockBukkit.mock();
+        plugin = (CreeperGiftBox) server.getPluginManager().loadPlugin(CreeperGiftBox.class, new Object[0]);
+
+        // Written before enabling, since the database settings are only read on enable
+        plugin.saveDefaultConfig();
+        File file = new File(plugin.getDataFolder(), "config.yml");
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
+        config.set("database.host", MYSQL.getHost());
+        config.set("database.port", MYSQL.getMappedPort(MySQLContainer.MYSQL_PORT));
+        config.set("database.database", MYSQL.getDatabaseName());
+        config.set("database.username", MYSQL.getUsername());
+        config.set("database.password", MYSQL.getPassword());
+        config.set("inbox.max-gifts", 0);
+        config.save(file);
+
+        server.getPluginManager().enablePlugin(plugin);
+        assertTrue(plugin.isEnabled(), "plugin failed to enable");
+
+        CompletableFuture<Void> ready = plugin.getDatabaseManager().whenReady();
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (!ready.isDone() && System.currentTimeMillis() < deadline) {
+            server.getScheduler().performOneTick();
+            Thread.sleep(50);
+        }
+        assertTrue(ready.isDone() && !ready.isCompletedExceptionally(), "database did not initialize");
+    }
+
+    @AfterEach
+    void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Test
+    void claimsEveryGiftExactlyOnce() throws Exception {
+        LoadSimulator.Connections connections = () -> DriverManager.getConnection(MYSQL.getJdbcUrl(), MYSQL.getUsername(), MYSQL.getPassword());
+        LoadSimulator simulator = new LoadSimulator(server, plugin, connections, LoadSimulator.Scenario.fromSystemProperties());
+        LoadSimulator.Report report = simulator.run();
+        try (Connection connection = connections.open()) {
+            simulator.verify(connection);
+        }
+        System.out.println(report);
+
+        assertEquals(0, report.getErrorCount(), () -> "errors: " + report.getErrors());
+        assertEquals(0, report.getRemainingGifts(), "gifts left in the gift boxes");
+        assertEquals(0, report.getLostUnits(), "items granted do not match items stored (negative means duplicated)");
+        assertEquals(0, report.getDuplicateLogGifts(), "gifts logged as claimed more than once");
+        assertEquals(0, report.getClaimLogMismatch(), "claim log does not match the gifts claimed");
+    }
+}
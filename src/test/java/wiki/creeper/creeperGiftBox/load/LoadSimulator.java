@@ -0,0 +1,698 @@
+package wiki.creeper.creeperGiftBox.load;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.event.inventory.ClickType;
+import org.bukkit.inventory.InventoryView;
+import org.bukkit.inventory.ItemStack;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+import wiki.creeper.creeperGiftBox.CreeperGiftBox;
+import wiki.creeper.creeperGiftBox.config.ConfigManager;
+import wiki.creeper.creeperGiftBox.database.DatabaseManager;
+import wiki.creeper.creeperGiftBox.database.LogResult;
+import wiki.creeper.creeperGiftBox.gui.GiftBoxGUI;
+import wiki.creeper.creeperGiftBox.util.ItemSerializer;
+import wiki.creeper.creeperGiftBox.util.MainThreadQueue;
+import wiki.creeper.creeperGiftBox.util.SchedulerUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays player traffic against a running plugin on a MockBukkit server, to reproduce production
+ * contention before an upgrade.
+ *
+ * A run first seeds every virtual player's gift box with batched inserts straight into the database,
+ * rebuilding the gift box counters afterwards, then keeps a bounded
+ * number of sessions in flight. A session joins, opens the gift box through {@code GiftBoxGUI},
+ * clicks "claim all" through {@code GUIListener} until its box is empty, and meanwhile receives
+ * bundles through {@code GiftBoxAPI#sendGift}. The items that land in the players' inventories are
+ * counted and compared with what was stored, so a claim that hands a gift out twice or loses one
+ * shows up in the report.
+ *
+ * Everything that touches the server runs on the calling thread, which plays the main thread:
+ * {@link #run()} ticks the scheduler at 20 TPS until the run is over. Player UUIDs and seeded items
+ * are derived from the seed, so runs with the same seed generate the same data.
+ */
+final class LoadSimulator {
+
+    private static final long TICK_NANOS = 50_000_000L;
+    // GiftBoxGUI ignores opens within 500ms of the previous one
+    private static final long REOPEN_DELAY_MILLIS = 600;
+    private static final long SESSION_TIMEOUT_MILLIS = 120_000;
+    private static final long LOG_SETTLE_MILLIS = 1_000;
+    private static final int SEED_CHUNK = 1000;
+    private static final int SEED_PARALLELISM = 4;
+    private static final int BACKGROUND_GIFTS_PER_PLAYER = 100;
+    private static final int MAX_ERRORS_KEPT = 20;
+    private static final String SQL_SEED = "INSERT INTO present (ID, UUID, ItemStack, Count, Sender, TimeStamp, ExpireStamp, "
+            + "Material, CustomModelData, SenderKey, CampaignID) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final Material[] PALETTE = {
+            Material.STONE, Material.BREAD, Material.DIAMOND, Material.EXPERIENCE_BOTTLE, Material.GOLDEN_APPLE
+    };
+
+    private final ServerMock server;
+    private final CreeperGiftBox plugin;
+    private final DatabaseManager databaseManager;
+    private final Connections connections;
+    private final Scenario scenario;
+    private final String runId;
+    private final Messages messages;
+    private final List<ItemStack> bundle;
+    private final int bundleUnits;
+    private final String[][] serialized;
+    private final Report report = new Report();
+
+    LoadSimulator(ServerMock server, CreeperGiftBox plugin, Connections connections, Scenario scenario) {
+        this.server = server;
+        this.plugin = plugin;
+        this.databaseManager = plugin.getDatabaseManager();
+        this.connections = connections;
+        this.scenario = scenario;
+        this.runId = "loadtest-" + Long.toString(scenario.seed(), 36);
+        this.messages = new Messages(plugin.getConfigManager());
+        this.bundle = List.of(new ItemStack(Material.DIAMOND, 2), new ItemStack(Material.EMERALD, 8));
+        this.bundleUnits = bundle.stream().mapToInt(ItemStack::getAmount).sum();
+        this.serialized = new String[PALETTE.length][16];
+        for (int i = 0; i < PALETTE.length; i++) {
+            for (int amount = 1; amount <= 16; amount++) {
+                serialized[i][amount - 1] = ItemSerializer.serialize(new ItemStack(PALETTE[i], amount));
+            }
+        }
+    }
+
+    /**
+     * Seeds the gift boxes and runs every session. Must be called on the server's main thread.
+     */
+    Report run() {
+        if (scenario.backgroundGifts() > 0) {
+            long start = System.nanoTime();
+            int players = (int) Math.ceil((double) scenario.backgroundGifts() / BACKGROUND_GIFTS_PER_PLAYER);
+            await(seed(playerUUIDs("background", players), BACKGROUND_GIFTS_PER_PLAYER,
+                    scenario.backgroundGifts(), runId + "-background", 1L << 40, null));
+            report.backgroundNanos = System.nanoTime() - start;
+        }
+
+        List<UUID> players = playerUUIDs("player", scenario.players());
+        long start = System.nanoTime();
+        await(seed(players, scenario.giftsPerPlayer(), (long) scenario.players() * scenario.giftsPerPlayer(),
+                runId, 0, report.expectedUnits));
+        recountGiftBoxes();
+        report.seedNanos = System.nanoTime() - start;
+
+        sessions(players);
+        return report;
+    }
+
+    /**
+     * Checks the database after {@link #run()}: gifts left over, and gifts the log records as claimed more than once.
+     * Waits for the claim log, which is written in the background, to stop growing.
+     */
+    void verify(Connection connection) throws SQLException {
+        long[] remaining = new long[2];
+        for (String table : List.of("present", "present_overflow")) {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT COUNT(*), COALESCE(SUM(Count), 0) FROM " + table + " WHERE Sender = ?")) {
+                ps.setString(1, runId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    remaining[0] += rs.getLong(1);
+                    remaining[1] += rs.getLong(2);
+                }
+            }
+        }
+        report.remainingGifts = remaining[0];
+        report.remainingUnits = remaining[1];
+
+        long claimed = -1;
+        long next = countClaimLog(connection);
+        while (next != claimed) {
+            claimed = next;
+            long until = System.currentTimeMillis() + LOG_SETTLE_MILLIS;
+            while (System.currentTimeMillis() < until) {
+                tick();
+            }
+            next = countClaimLog(connection);
+        }
+        report.loggedClaims = claimed;
+
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT COUNT(*) FROM (SELECT GiftID FROM present_log WHERE Sender = ? AND Result = ? " +
+                        "GROUP BY GiftID HAVING COUNT(*) > 1) duplicates")) {
+            ps.setString(1, runId);
+            ps.setInt(2, LogResult.CLAIMED.getValue());
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                report.duplicateLogGifts = rs.getLong(1);
+            }
+        }
+    }
+
+    private long countClaimLog(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT COUNT(*) FROM present_log WHERE Sender = ? AND Result = ?")) {
+            ps.setString(1, runId);
+            ps.setInt(2, LogResult.CLAIMED.getValue());
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private List<UUID> playerUUIDs(String kind, int count) {
+        List<UUID> uuids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uuids.add(UUID.nameUUIDFromBytes(("loadtest:" + kind + ":" + scenario.seed() + ":" + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        return uuids;
+    }
+
+    private CompletableFuture<Void> seed(List<UUID> uuids, int perPlayer, long total, String sender, long salt, AtomicLong units) {
+        AtomicLong next = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(SEED_PARALLELISM);
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[SEED_PARALLELISM];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = CompletableFuture.runAsync(() -> seedWorker(uuids, perPlayer, total, sender, salt, units, next), executor);
+        }
+        return CompletableFuture.allOf(workers).whenComplete((ignored, throwable) -> executor.shutdown());
+    }
+
+    /**
+     * Inserts chunks of generated gifts on its own connection, one transaction per chunk, until none are left.
+     */
+    private void seedWorker(List<UUID> uuids, int perPlayer, long total, String sender, long salt, AtomicLong units, AtomicLong next) {
+        try (Connection connection = connections.open();
+             PreparedStatement ps = connection.prepareStatement(SQL_SEED)) {
+            connection.setAutoCommit(false);
+            long from;
+            while ((from = next.getAndAdd(SEED_CHUNK)) < total) {
+                long to = Math.min(total, from + SEED_CHUNK);
+                long now = System.currentTimeMillis();
+                long chunkUnits = 0;
+                for (long row = from; row < to; row++) {
+                    // Seeded per row so the data does not depend on how chunks are spread over workers
+                    SplittableRandom random = new SplittableRandom(scenario.seed() ^ ((row + salt) * 0x9E3779B97F4A7C15L));
+                    int item = random.nextInt(PALETTE.length);
+                    int amount = 1 + random.nextInt(16);
+                    ps.setString(1, new UUID(random.nextLong(), random.nextLong()).toString());
+                    ps.setString(2, uuids.get((int) (row / perPlayer)).toString());
+                    ps.setString(3, serialized[item][amount - 1]);
+                    ps.setInt(4, amount);
+                    ps.setString(5, sender);
+                    ps.setLong(6, now);
+                    ps.setLong(7, -1);
+                    // Filled the way the plugin fills them, so searches and campaign jobs see the seeded gifts
+                    ps.setString(8, PALETTE[item].name());
+                    ps.setNull(9, Types.INTEGER);
+                    ps.setString(10, sender.toLowerCase(Locale.ROOT));
+                    ps.setString(11, units != null ? runId : null);
+                    ps.addBatch();
+                    chunkUnits += amount;
+                }
+                ps.executeBatch();
+                connection.commit();
+                if (units != null) {
+                    units.addAndGet(chunkUnits);
+                    report.seeded.addAndGet(to - from);
+                } else {
+                    report.backgroundSeeded.addAndGet(to - from);
+                }
+            }
+        } catch (SQLException e) {
+            throw new CompletionException("Failed to seed gifts", e);
+        }
+    }
+
+    /**
+     * Rebuilds the gift box counters from present, since seeding inserts around them.
+     * Runs before any session, while nothing else writes gifts.
+     */
+    private void recountGiftBoxes() {
+        try (Connection connection = connections.open()) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM giftbox_inbox");
+                statement.executeUpdate("INSERT INTO giftbox_inbox (UUID, Count) SELECT UUID, COUNT(*) FROM present GROUP BY UUID");
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to recount the seeded gift boxes", e);
+        }
+    }
+
+    private void sessions(List<UUID> players) {
+        MainThreadQueue queue = SchedulerUtil.getMainThreadQueue();
+        long busyBefore = queue != null ? queue.getBusyNanos() : 0;
+        long ticksBefore = report.ticks;
+        long tickNanosBefore = report.tickNanos;
+        GiftBoxGUI gui = plugin.getGiftBoxGUI();
+        long opensBefore = gui.getFullPageOpens();
+        long renderBefore = gui.getFullPageRenderNanos();
+        long commitBefore = gui.getFullPageCommitNanos();
+
+        Deque<UUID> pending = new ArrayDeque<>(players);
+        List<Session> active = new ArrayList<>();
+        int started = 0;
+        long start = System.nanoTime();
+        while (!pending.isEmpty() || !active.isEmpty()) {
+            while (active.size() < scenario.concurrency() && !pending.isEmpty()) {
+                active.add(new Session(started++, pending.poll()));
+            }
+            tick();
+            active.removeIf(Session::step);
+        }
+        report.runNanos = System.nanoTime() - start;
+        report.runTicks = report.ticks - ticksBefore;
+        report.runTickNanos = report.tickNanos - tickNanosBefore;
+        if (queue != null) {
+            report.queueBusyNanos = queue.getBusyNanos() - busyBefore;
+            report.maxDrainTicks = queue.getMaxDrainTicks();
+        }
+        report.fullPageOpens = gui.getFullPageOpens() - opensBefore;
+        report.fullPageRenderNanos = gui.getFullPageRenderNanos() - renderBefore;
+        report.fullPageCommitNanos = gui.getFullPageCommitNanos() - commitBefore;
+        report.maxFullPageCommitNanos = gui.getMaxFullPageCommitNanos();
+    }
+
+    private CompletableFuture<Void> send(UUID playerUUID) {
+        long start = System.nanoTime();
+        return plugin.getGiftBoxAPI().sendGift(playerUUID, bundle, runId, -1, runId).handle((ignored, throwable) -> {
+            report.record("send", System.nanoTime() - start);
+            if (throwable == null) {
+                report.sent.incrementAndGet();
+                report.expectedUnits.addAndGet(bundleUnits);
+            } else {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                report.error("send to " + playerUUID + " failed: " + cause);
+            }
+            return null;
+        });
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        while (!future.isDone()) {
+            tick();
+        }
+        return future.join();
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        server.getScheduler().performOneTick();
+        long elapsed = System.nanoTime() - start;
+        report.recordTick(elapsed);
+
+        HikariPoolMXBean pool = databaseManager.getPoolStats();
+        if (pool != null) {
+            report.recordPool(pool.getThreadsAwaitingConnection());
+        }
+        if (elapsed < TICK_NANOS) {
+            LockSupport.parkNanos(TICK_NANOS - elapsed);
+        }
+    }
+
+    private enum State {
+        LOADING,
+        CLAIMING,
+        WAITING
+    }
+
+    /**
+     * One virtual player, stepped once per tick until its gift box stays empty after all of its live sends.
+     */
+    private final class Session {
+        private final PlayerMock player;
+        private final CompletableFuture<Void> sends;
+        private final long deadline;
+        private State state;
+        private long actionStart;
+        private long reopenAt;
+        private boolean sendsDoneAtOpen;
+
+        private Session(int index, UUID playerUUID) {
+            this.player = new PlayerMock(server, "load" + index, playerUUID);
+            server.addPlayer(player);
+            CompletableFuture<?>[] live = new CompletableFuture<?>[scenario.liveSends()];
+            for (int i = 0; i < live.length; i++) {
+                live[i] = send(playerUUID);
+            }
+            this.sends = CompletableFuture.allOf(live);
+            this.deadline = System.currentTimeMillis() + SESSION_TIMEOUT_MILLIS;
+            open();
+        }
+
+        private void open() {
+            sendsDoneAtOpen = sends.isDone();
+            actionStart = System.nanoTime();
+            state = State.LOADING;
+            plugin.getGiftBoxGUI().open(player);
+        }
+
+        private void reopenLater() {
+            state = State.WAITING;
+            reopenAt = System.currentTimeMillis() + REOPEN_DELAY_MILLIS;
+        }
+
+        /**
+         * @return true once the session is over
+         */
+        private boolean step() {
+            if (System.currentTimeMillis() > deadline) {
+                report.error(player.getName() + " timed out while " + state);
+                return finish();
+            }
+            readMessages();
+
+            switch (state) {
+                case LOADING -> {
+                    InventoryView view = player.getOpenInventory();
+                    if (!messages.isGiftBox(view.getTitle())) {
+                        return false;
+                    }
+                    ItemStack button = view.getTopInventory().getItem(4);
+                    if (button != null && button.getType() == Material.PAPER) {
+                        return false;
+                    }
+                    report.record("open", System.nanoTime() - actionStart);
+                    if (button == null) {
+                        if (sendsDoneAtOpen) {
+                            return finish();
+                        }
+                        reopenLater();
+                        return false;
+                    }
+                    collectInventory();
+                    state = State.CLAIMING;
+                    actionStart = System.nanoTime();
+                    player.simulateInventoryClick(view, ClickType.LEFT, 4);
+                }
+                case WAITING -> {
+                    if (System.currentTimeMillis() >= reopenAt) {
+                        open();
+                    }
+                }
+                case CLAIMING -> {
+                    // Driven by the claim result message
+                }
+            }
+            return false;
+        }
+
+        private void readMessages() {
+            String message;
+            while ((message = player.nextMessage()) != null) {
+                String text = ChatColor.stripColor(message);
+                int claimed = messages.claimedAmount(text);
+                if (claimed >= 0) {
+                    report.record("claim", System.nanoTime() - actionStart);
+                    report.claimedGifts.addAndGet(claimed);
+                    collectInventory();
+                    reopenLater();
+                } else if (text.equals(messages.noGifts)) {
+                    report.record("claim", System.nanoTime() - actionStart);
+                    reopenLater();
+                } else if (text.equals(messages.concurrentClaim)) {
+                    report.concurrentRejections.incrementAndGet();
+                } else if (text.equals(messages.inventoryFull)) {
+                    collectInventory();
+                    reopenLater();
+                } else {
+                    report.error(player.getName() + " received: " + text);
+                    reopenLater();
+                }
+            }
+        }
+
+        private void collectInventory() {
+            for (ItemStack item : player.getInventory().getStorageContents()) {
+                if (item != null && item.getType() != Material.AIR) {
+                    report.grant(item.getType(), item.getAmount());
+                }
+            }
+            player.getInventory().clear();
+        }
+
+        private boolean finish() {
+            collectInventory();
+            player.disconnect();
+            report.sessions.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Player-facing messages as configured, with colour codes stripped.
+     */
+    private static final class Messages {
+        private final String titlePrefix;
+        private final String claimedHead;
+        private final String claimedTail;
+        private final String noGifts;
+        private final String concurrentClaim;
+        private final String inventoryFull;
+
+        private Messages(ConfigManager configManager) {
+            this.titlePrefix = configManager.getRawMessage("gui-title").split("%")[0];
+            String claimed = ChatColor.stripColor(configManager.getMessage("all-gifts-claimed", "%amount%", "%amount%"));
+            int split = claimed.indexOf("%amount%");
+            this.claimedHead = claimed.substring(0, split);
+            this.claimedTail = claimed.substring(split + "%amount%".length());
+            this.noGifts = ChatColor.stripColor(configManager.getMessage("no-gifts-to-claim"));
+            this.concurrentClaim = ChatColor.stripColor(configManager.getMessage("concurrent-claim-error"));
+            this.inventoryFull = ChatColor.stripColor(configManager.getMessage("inventory-full"));
+        }
+
+        private boolean isGiftBox(String title) {
+            return title != null && title.startsWith(titlePrefix);
+        }
+
+        /**
+         * @return the number of gifts a claim-all message reports, or -1 if it is another message
+         */
+        private int claimedAmount(String text) {
+            if (text.length() <= claimedHead.length() + claimedTail.length()
+                    || !text.startsWith(claimedHead) || !text.endsWith(claimedTail)) {
+                return -1;
+            }
+            try {
+                return Integer.parseInt(text.substring(claimedHead.length(), text.length() - claimedTail.length()));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Opens connections to the database the plugin runs against, for seeding around the plugin.
+     */
+    interface Connections {
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * Scenario parameters, read from {@code loadtest.*} system properties.
+     */
+    record Scenario(int players, int giftsPerPlayer, int concurrency, int liveSends, long backgroundGifts, long seed) {
+
+        static Scenario fromSystemProperties() {
+            return new Scenario(
+                    Integer.getInteger("loadtest.players", 200),
+                    Integer.getInteger("loadtest.gifts-per-player", 50),
+                    Math.max(1, Integer.getInteger("loadtest.concurrency", 50)),
+                    Integer.getInteger("loadtest.live-sends", 2),
+                    Long.getLong("loadtest.background-gifts", 0L),
+                    Long.getLong("loadtest.seed", 42L));
+        }
+    }
+
+    /**
+     * Results of one run. Latencies are in milliseconds, items are counted in units (stack amounts).
+     */
+    static final class Report {
+        private final Map<String, long[]> latencies = new LinkedHashMap<>();
+        private final Map<String, Integer> latencyCounts = new LinkedHashMap<>();
+        private final Map<Material, Long> granted = new LinkedHashMap<>();
+        private final List<String> errors = new ArrayList<>();
+        private final AtomicLong backgroundSeeded = new AtomicLong();
+        private final AtomicLong seeded = new AtomicLong();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong expectedUnits = new AtomicLong();
+        private final AtomicLong claimedGifts = new AtomicLong();
+        private final AtomicLong concurrentRejections = new AtomicLong();
+        private final AtomicLong sessions = new AtomicLong();
+        private long errorCount;
+        private long grantedUnits;
+        private long ticks;
+        private long tickNanos;
+        private long maxTickNanos;
+        private long poolSamples;
+        private long poolWaitingSum;
+        private int poolWaitingMax;
+        private long backgroundNanos;
+        private long seedNanos;
+        private long runNanos;
+        private long runTicks;
+        private long runTickNanos;
+        private long queueBusyNanos;
+        private int maxDrainTicks;
+        private long fullPageOpens;
+        private long fullPageRenderNanos;
+        private long fullPageCommitNanos;
+        private long maxFullPageCommitNanos;
+        private long remainingGifts;
+        private long remainingUnits;
+        private long loggedClaims;
+        private long duplicateLogGifts;
+
+        private synchronized void record(String operation, long nanos) {
+            long[] values = latencies.computeIfAbsent(operation, key -> new long[64]);
+            int count = latencyCounts.getOrDefault(operation, 0);
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+                latencies.put(operation, values);
+            }
+            values[count] = nanos;
+            latencyCounts.put(operation, count + 1);
+        }
+
+        private synchronized void error(String error) {
+            errorCount++;
+            if (errors.size() < MAX_ERRORS_KEPT) {
+                errors.add(error);
+            }
+        }
+
+        private void grant(Material material, int amount) {
+            granted.merge(material, (long) amount, Long::sum);
+            grantedUnits += amount;
+        }
+
+        private void recordTick(long nanos) {
+            ticks++;
+            tickNanos += nanos;
+            maxTickNanos = Math.max(maxTickNanos, nanos);
+        }
+
+        private void recordPool(int waiting) {
+            poolSamples++;
+            poolWaitingSum += waiting;
+            poolWaitingMax = Math.max(poolWaitingMax, waiting);
+        }
+
+        /**
+         * @param percentile between 0 and 100; 100 is the maximum
+         */
+        synchronized double getLatency(String operation, double percentile) {
+            int count = latencyCounts.getOrDefault(operation, 0);
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies.get(operation), count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))] / 1_000_000.0;
+        }
+
+        synchronized long getErrorCount() {
+            return errorCount;
+        }
+
+        synchronized List<String> getErrors() {
+            return List.copyOf(errors);
+        }
+
+        /**
+         * @return units neither granted nor left in a gift box; negative if more were granted than stored
+         */
+        long getLostUnits() {
+            return expectedUnits.get() - grantedUnits - remainingUnits;
+        }
+
+        long getRemainingGifts() {
+            return remainingGifts;
+        }
+
+        long getDuplicateLogGifts() {
+            return duplicateLogGifts;
+        }
+
+        /**
+         * @return average time to build a gift box page of 36 gifts off the main thread, in microseconds
+         */
+        double getFullPageRenderMicros() {
+            return fullPageOpens == 0 ? 0 : fullPageRenderNanos / 1e3 / fullPageOpens;
+        }
+
+        /**
+         * @return average time to hand such a page to the inventory on the main thread, in microseconds
+         */
+        double getFullPageCommitMicros() {
+            return fullPageOpens == 0 ? 0 : fullPageCommitNanos / 1e3 / fullPageOpens;
+        }
+
+        /**
+         * @return claims in the gift log beyond the run's gifts that left the gift boxes; negative if claims were not logged
+         */
+        long getClaimLogMismatch() {
+            return loggedClaims - (seeded.get() + sent.get() - remainingGifts);
+        }
+
+        @Override
+        public synchronized String toString() {
+            StringBuilder out = new StringBuilder("Load test report\n");
+            if (backgroundNanos > 0) {
+                out.append(String.format("  background: %d gifts seeded in %.1fs%n", backgroundSeeded.get(), backgroundNanos / 1e9));
+            }
+            out.append(String.format("  seeded: %d gifts in %.1fs (%.0f/s)%n",
+                    seeded.get(), seedNanos / 1e9, seedNanos == 0 ? 0 : seeded.get() / (seedNanos / 1e9)));
+            out.append(String.format("  sessions: %d in %.1fs, %d live sends, %d gifts claimed, %d concurrent-claim rejections%n",
+                    sessions.get(), runNanos / 1e9, sent.get(), claimedGifts.get(), concurrentRejections.get()));
+            long operations = latencyCounts.values().stream().mapToLong(Integer::longValue).sum();
+            out.append(String.format("  throughput: %.1f operations/s%n", runNanos == 0 ? 0 : operations / (runNanos / 1e9)));
+            for (String operation : latencies.keySet()) {
+                out.append(String.format("  %-6s n=%-7d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms%n", operation,
+                        latencyCounts.get(operation), getLatency(operation, 50), getLatency(operation, 95),
+                        getLatency(operation, 99), getLatency(operation, 100)));
+            }
+            out.append(String.format("  main thread: %.1fms per tick on average, %.1fms max, main-thread queue busy %.0fms, longest drain %d ticks%n",
+                    runTicks == 0 ? 0 : runTickNanos / 1e6 / runTicks, maxTickNanos / 1e6, queueBusyNanos / 1e6, maxDrainTicks));
+            if (fullPageOpens > 0) {
+                out.append(String.format("  gift box pages of 36 gifts: %d opens, built in %.0fus off the main thread, committed in %.0fus on it (max %.0fus)%n",
+                        fullPageOpens, getFullPageRenderMicros(), getFullPageCommitMicros(), maxFullPageCommitNanos / 1e3));
+            }
+            out.append(String.format("  pool: %.2f threads waiting on average, %d max%n",
+                    poolSamples == 0 ? 0 : (double) poolWaitingSum / poolSamples, poolWaitingMax));
+            out.append(String.format("  items: expected %d, granted %d, left in gift boxes %d (%d gifts), lost %d%n",
+                    expectedUnits.get(), grantedUnits, remainingUnits, remainingGifts, getLostUnits()));
+            out.append("  granted by material: ").append(granted).append('\n');
+            out.append(String.format("  claim log: %d entries, %d gifts logged more than once%n", loggedClaims, duplicateLogGifts));
+            out.append(String.format("  errors: %d%n", errorCount));
+            errors.forEach(error -> out.append("    ").append(error).append('\n'));
+            return out.toString();
+        }
+    }
+}